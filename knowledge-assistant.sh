@@ -0,0 +1,19 @@
+#!/bin/sh
+# Starts the Knowledge Assistant from the shaded jar, mapping the AppCDS archive built next to it
+# (mvn -Pcds package) when there is one, which saves most of the class loading at startup.
+#
+#   ./knowledge-assistant.sh [arguments]     run the assistant
+#   ./knowledge-assistant.sh --training-run  (re)create the archive for the current jar
+#
+# KB_JAR and KB_CDS_ARCHIVE override the jar and archive paths; JAVA_OPTS is passed to the JVM.
+JAR=${KB_JAR:-$(dirname "$0")/target/knowledge-base-chat-1.0-SNAPSHOT.jar}
+ARCHIVE=${KB_CDS_ARCHIVE:-${JAR%.jar}.jsa}
+
+if [ "$1" = "--training-run" ]; then
+  exec java -XX:ArchiveClassesAtExit="$ARCHIVE" $JAVA_OPTS -jar "$JAR" "$@"
+fi
+# An archive older than the jar no longer matches it; the JVM would ignore it with a warning.
+if [ -f "$ARCHIVE" ] && [ "$ARCHIVE" -nt "$JAR" ]; then
+  exec java -XX:SharedArchiveFile="$ARCHIVE" $JAVA_OPTS -jar "$JAR" "$@"
+fi
+exec java $JAVA_OPTS -jar "$JAR" "$@"
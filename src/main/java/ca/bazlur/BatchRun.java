@@ -0,0 +1,148 @@
+package ca.bazlur;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Answers a list of questions through the assistant concurrently and writes the results as JSON
+ * lines.
+ *
+ * <p>Questions are read one per line; blank lines and lines starting with {@code #} are skipped.
+ * Up to the given number of questions are answered at once, each on its own virtual thread, and
+ * the next question is read as soon as a slot is free, so questions piped into stdin stream
+ * through without being read up front. Each result is written and flushed when its question is
+ * answered, so results appear in completion order; the line number identifies the question:
+ *
+ * <pre>{@code
+ * {"line":3,"question":"What is the status of PUMP-001?","answer":"...","waitMillis":0,"millis":812}
+ * }</pre>
+ *
+ * {@code waitMillis} is the time the question waited for a free slot after it was read and {@code
+ * millis} the time it took to answer. A question that fails has an {@code error} instead of an
+ * {@code answer}, and the run goes on. The run stops reading questions when a result cannot be
+ * written.
+ */
+final class BatchRun {
+  private static final Logger logger = LoggerFactory.getLogger(BatchRun.class);
+
+  private static final ObjectMapper JSON = new ObjectMapper();
+
+  /** Where the answering threads write their results. */
+  private record Output(Writer writer, ReentrantLock lock, AtomicReference<IOException> failure) {}
+
+  /**
+   * The outcome of a run.
+   *
+   * @param answered The number of questions answered
+   * @param failed The number of questions that failed
+   */
+  record Summary(int answered, int failed) {}
+
+  private BatchRun() {}
+
+  /**
+   * Answers the questions.
+   *
+   * @param assistant Answers one question; called from several threads at once
+   * @param questions The questions, one per line
+   * @param results Receives one JSON object per line for each question
+   * @param concurrency The number of questions answered at once
+   * @return The numbers of answered and failed questions
+   * @throws IOException if the questions cannot be read or the results cannot be written
+   */
+  static Summary run(
+      Function<String, String> assistant, BufferedReader questions, Writer results, int concurrency)
+      throws IOException {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be positive");
+    }
+    Semaphore slots = new Semaphore(concurrency);
+    AtomicInteger answered = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    Output output = new Output(results, new ReentrantLock(), new AtomicReference<>());
+    long start = System.nanoTime();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      int lineNumber = 0;
+      String line;
+      while (output.failure().get() == null && (line = questions.readLine()) != null) {
+        lineNumber++;
+        String question = line.trim();
+        if (question.isEmpty() || question.startsWith("#")) {
+          continue;
+        }
+        long read = System.nanoTime();
+        slots.acquire();
+        int questionLine = lineNumber;
+        executor.submit(
+            () -> {
+              try {
+                answer(assistant, questionLine, question, read, output, answered, failed);
+              } finally {
+                slots.release();
+              }
+            });
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while answering questions", e);
+    }
+    if (output.failure().get() != null) {
+      throw output.failure().get();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    logger.info(
+        "Answered {} questions ({} failed) in {} s, {} questions/s",
+        answered.get(),
+        failed.get(),
+        String.format("%.1f", seconds),
+        String.format("%.2f", (answered.get() + failed.get()) / Math.max(seconds, 1e-9)));
+    return new Summary(answered.get(), failed.get());
+  }
+
+  private static void answer(
+      Function<String, String> assistant,
+      int line,
+      String question,
+      long read,
+      Output output,
+      AtomicInteger answered,
+      AtomicInteger failed) {
+    long started = System.nanoTime();
+    ObjectNode result = JSON.createObjectNode().put("line", line).put("question", question);
+    try {
+      result.put("answer", assistant.apply(question));
+      answered.incrementAndGet();
+    } catch (RuntimeException e) {
+      logger.warn("Question on line {} failed", line, e);
+      result.put("error", e.getMessage() != null ? e.getMessage() : e.toString());
+      failed.incrementAndGet();
+    }
+    long finished = System.nanoTime();
+    result
+        .put("waitMillis", (started - read) / 1_000_000)
+        .put("millis", (finished - started) / 1_000_000);
+    output.lock().lock();
+    try {
+      output.writer().write(JSON.writeValueAsString(result));
+      output.writer().write('\n');
+      output.writer().flush();
+    } catch (IOException e) {
+      output.failure().compareAndSet(null, e);
+    } finally {
+      output.lock().unlock();
+    }
+  }
+}
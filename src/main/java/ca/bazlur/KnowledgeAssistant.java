@@ -3,14 +3,31 @@ package ca.bazlur;
 import ca.bazlur.config.AppConfig;
 import ca.bazlur.config.ConfigProvider;
 import ca.bazlur.service.AssistantService;
+import ca.bazlur.service.KnowledgeBaseRegistry;
 import ca.bazlur.service.KnowledgeBaseService;
+import ca.bazlur.store.remote.ScatterGatherEmbeddingStore;
+import ca.bazlur.store.remote.ShardServer;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Properties;
 import java.util.Scanner;
 
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
 /**
  * Main class for the Knowledge Assistant application. Handles the user interface and coordinates
  * the services.
@@ -19,35 +36,177 @@ public class KnowledgeAssistant {
 
   private static final Logger logger = LoggerFactory.getLogger(KnowledgeAssistant.class);
 
+  private static final String BUILD_INDEX_OPTION = "--build-index";
+  private static final String SERVE_SHARD_OPTION = "--serve-shard";
+  private static final String TRAINING_RUN_OPTION = "--training-run";
+  private static final String BATCH_OPTION = "--batch";
+  private static final String STANDARD_STREAM = "-";
+  private static final String FILTER_COMMAND = "filter";
+  private static final String KNOWLEDGE_BASE_COMMAND = "kb";
+
   public static void main(String[] args) {
     try {
       ConfigProvider config = AppConfig.create();
       logger.info("Configuration initialized");
 
-      logger.info("Loading knowledge base...");
       KnowledgeBaseService knowledgeBaseService = new KnowledgeBaseService(config);
-      EmbeddingStore<TextSegment> embeddingStore = knowledgeBaseService.loadKnowledgeBase();
-      logger.info("Knowledge base loaded");
+
+      if (args.length > 0 && BUILD_INDEX_OPTION.equals(args[0])) {
+        Path indexPath = Path.of(args.length > 1 ? args[1] : config.getIndexPath());
+        knowledgeBaseService.buildIndex().write(indexPath);
+        logger.info("Knowledge base index written to {}", indexPath.toAbsolutePath());
+        return;
+      }
+
+      if (args.length > 0 && TRAINING_RUN_OPTION.equals(args[0])) {
+        TrainingRun.run(new Properties());
+        return;
+      }
+
+      if (args.length > 0 && SERVE_SHARD_OPTION.equals(args[0])) {
+        serveShard(knowledgeBaseService, args);
+        return;
+      }
+
+      if (args.length > 0 && BATCH_OPTION.equals(args[0])) {
+        runBatch(config, knowledgeBaseService, args);
+        return;
+      }
+
+      if (config.getKnowledgeBaseDir() != null) {
+        logger.info("Serving the knowledge bases in '{}'", config.getKnowledgeBaseDir());
+        try (KnowledgeBaseRegistry registry = new KnowledgeBaseRegistry(config)) {
+          AssistantService assistantService = new AssistantService(config, registry);
+          runChatInterface(assistantService, registry);
+        }
+        return;
+      }
+
+      EmbeddingStore<TextSegment> embeddingStore = loadEmbeddingStore(config, knowledgeBaseService);
 
       logger.info("Initializing assistant service...");
       AssistantService assistantService = new AssistantService(config, embeddingStore);
       logger.info("Assistant service initialized");
 
-      runChatInterface(assistantService);
+      runChatInterface(assistantService, null);
 
     } catch (Exception e) {
       logger.error("An error occurred during assistant setup or chat", e);
       System.err.println("Error: " + e.getMessage());
       System.err.println("Please check the logs for more details.");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Loads the knowledge base from the prebuilt index or by ingesting it, or connects to the
+   * shards of a distributed index.
+   *
+   * @param config The application configuration
+   * @param knowledgeBaseService The service used to load the knowledge base
+   * @return The embedding store to answer from
+   */
+  private static EmbeddingStore<TextSegment> loadEmbeddingStore(
+      ConfigProvider config, KnowledgeBaseService knowledgeBaseService) {
+    if (!config.getShardUrls().isEmpty()) {
+      logger.info("Using distributed index on shards {}", config.getShardUrls());
+      return ScatterGatherEmbeddingStore.overHttp(
+          config.getShardUrls(), Duration.ofMillis(config.getShardTimeoutMillis()));
+    }
+    logger.info("Loading knowledge base...");
+    EmbeddingStore<TextSegment> embeddingStore =
+        knowledgeBaseService.loadPrebuiltIndex().orElseGet(knowledgeBaseService::loadKnowledgeBase);
+    logger.info("Knowledge base loaded");
+    return embeddingStore;
+  }
+
+  /**
+   * Answers a file of questions concurrently and writes the results as JSON lines. Usage: {@code
+   * --batch <questions> <results>}, where {@code -} stands for stdin and stdout. The knowledge base
+   * and the model clients are loaded once and shared by all questions.
+   *
+   * @param config The application configuration
+   * @param knowledgeBaseService The service used to load the knowledge base
+   * @param args The command line arguments
+   * @throws IOException if the questions cannot be read or the results cannot be written
+   */
+  private static void runBatch(
+      ConfigProvider config, KnowledgeBaseService knowledgeBaseService, String[] args)
+      throws IOException {
+    if (args.length < 3) {
+      throw new IllegalArgumentException("Usage: --batch <questions|-> <results|->");
+    }
+    if (config.getKnowledgeBaseDir() != null) {
+      throw new IllegalArgumentException(
+          "Batch mode answers from a single knowledge base; unset kb.dir to use it.");
+    }
+    EmbeddingStore<TextSegment> embeddingStore = loadEmbeddingStore(config, knowledgeBaseService);
+    AssistantService assistantService =
+        new AssistantService(config, embeddingStore, AssistantService.Mode.BATCH);
+    logger.info(
+        "Answering the questions of {} with {} at a time",
+        args[1],
+        config.getBatchConcurrency());
+
+    try (BufferedReader questions =
+            STANDARD_STREAM.equals(args[1])
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(args[1]));
+        Writer results =
+            STANDARD_STREAM.equals(args[2])
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Path.of(args[2]))) {
+      BatchRun.Summary summary =
+          BatchRun.run(
+              assistantService::processMessage, questions, results, config.getBatchConcurrency());
+      if (summary.failed() > 0) {
+        logger.warn("{} questions failed; see the error field of their results", summary.failed());
+      }
+    }
+  }
+
+  /**
+   * Serves one slice of the prebuilt index to remote assistants until the process is stopped.
+   * Usage: {@code --serve-shard <port> [<slice>/<sliceCount>]}.
+   *
+   * @param knowledgeBaseService The service used to load the index slice
+   * @param args The command line arguments
+   * @throws Exception if the index cannot be loaded or the server cannot be started
+   */
+  private static void serveShard(KnowledgeBaseService knowledgeBaseService, String[] args)
+      throws Exception {
+    if (args.length < 2) {
+      throw new IllegalArgumentException("Usage: --serve-shard <port> [<slice>/<sliceCount>]");
     }
+    int port = Integer.parseInt(args[1]);
+    String[] slice = (args.length > 2 ? args[2] : "0/1").split("/");
+    int sliceIndex = Integer.parseInt(slice[0]);
+    int sliceCount = Integer.parseInt(slice[1]);
+
+    EmbeddingStore<TextSegment> embeddingStore =
+        knowledgeBaseService
+            .loadPrebuiltIndex(sliceIndex, sliceCount)
+            .orElseThrow(
+                () ->
+                    new IllegalStateException(
+                        "No prebuilt index matching the configuration; run --build-index first"));
+
+    ShardServer server = new ShardServer(embeddingStore, port);
+    Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    server.start();
+    logger.info("Serving index slice {}/{} on port {}", sliceIndex, sliceCount, server.getPort());
+    Thread.currentThread().join();
   }
 
   /**
    * Runs the interactive chat interface for interacting with the assistant.
    *
    * @param assistantService The assistant service to use
+   * @param registry The registry of the knowledge bases the user chooses from, or null for the
+   *     single knowledge base
    */
-  private static void runChatInterface(AssistantService assistantService) {
+  private static void runChatInterface(
+      AssistantService assistantService, KnowledgeBaseRegistry registry) {
     Scanner scanner = new Scanner(System.in);
     logger.info("Starting chat interface");
 
@@ -56,6 +215,12 @@ public class KnowledgeAssistant {
     System.out.println("======================================");
     System.out.println("Ask me anything based on my knowledge.");
     System.out.println("Type 'help' for commands or 'exit' to quit.\n");
+    Filter filter = null;
+    String knowledgeBase = null;
+    if (registry != null) {
+      System.out.println(
+          "Type 'kb <name>' to choose a knowledge base: " + String.join(", ", registry.names()));
+    }
 
     while (true) {
       System.out.print("\nYou: ");
@@ -78,10 +243,54 @@ public class KnowledgeAssistant {
         break;
       }
 
+      if (FILTER_COMMAND.equalsIgnoreCase(userQuery)
+          || userQuery.toLowerCase().startsWith(FILTER_COMMAND + " ")) {
+        try {
+          filter = parseFilter(userQuery.substring(FILTER_COMMAND.length()).trim());
+          System.out.println(
+              filter == null
+                  ? "\nAssistant: Searching all knowledge."
+                  : "\nAssistant: Only searching knowledge matching " + filter + ".");
+        } catch (IllegalArgumentException e) {
+          System.out.println("\nAssistant: " + e.getMessage());
+        }
+        continue;
+      }
+
+      if (registry != null
+          && (KNOWLEDGE_BASE_COMMAND.equalsIgnoreCase(userQuery)
+              || userQuery.toLowerCase().startsWith(KNOWLEDGE_BASE_COMMAND + " "))) {
+        String name = userQuery.substring(KNOWLEDGE_BASE_COMMAND.length()).trim();
+        if (name.isEmpty()) {
+          System.out.println(
+              "\nAssistant: Knowledge bases: "
+                  + String.join(", ", registry.names())
+                  + (knowledgeBase == null ? "" : " (asking " + knowledgeBase + ")"));
+          continue;
+        }
+        try {
+          System.out.println("\nAssistant: Loading " + name + "...");
+          registry.get(name);
+          knowledgeBase = name;
+          System.out.println("\nAssistant: Asking the " + name + " knowledge base.");
+        } catch (IllegalArgumentException e) {
+          System.out.println("\nAssistant: " + e.getMessage());
+        } catch (RuntimeException e) {
+          logger.error("Failed to load knowledge base '{}'", name, e);
+          System.out.println("\nAssistant: The " + name + " knowledge base could not be loaded.");
+        }
+        continue;
+      }
+
+      if (registry != null && knowledgeBase == null) {
+        System.out.println("\nAssistant: Type 'kb <name>' to choose a knowledge base first.");
+        continue;
+      }
+
       try {
         logger.debug("Processing user query: {}", userQuery);
         System.out.println("\nAssistant: Thinking...");
-        String assistantResponse = assistantService.processMessage(userQuery);
+        String assistantResponse = assistantService.processMessage(knowledgeBase, userQuery, filter);
         System.out.println("\nAssistant:\n");
         System.out.println(assistantResponse);
       } catch (Exception e) {
@@ -96,9 +305,42 @@ public class KnowledgeAssistant {
     logger.info("Chat interface closed");
   }
 
+  /**
+   * Parses the arguments of the filter command into a metadata filter.
+   *
+   * @param arguments Space-separated {@code key=value} conditions, all of which must match
+   * @return The filter, or null if there are no conditions
+   * @throws IllegalArgumentException if a condition is not of the form {@code key=value}
+   */
+  static Filter parseFilter(String arguments) {
+    Filter filter = null;
+    for (String condition : arguments.split("\\s+")) {
+      if (condition.isEmpty()) {
+        continue;
+      }
+      int separator = condition.indexOf('=');
+      if (separator <= 0 || separator == condition.length() - 1) {
+        throw new IllegalArgumentException(
+            "Filter conditions look like key=value, got '" + condition + "'.");
+      }
+      Filter next =
+          metadataKey(condition.substring(0, separator))
+              .isEqualTo(condition.substring(separator + 1));
+      filter = filter == null ? next : filter.and(next);
+    }
+    return filter;
+  }
+
   private static void printHelp() {
     System.out.println("\nAssistant: How I can help:");
     System.out.println("  - Ask any question based on the loaded knowledge.");
+    System.out.println(
+        "  - Type 'filter key=value ...' to only search matching knowledge, for example");
+    System.out.println(
+        "    'filter record_type=safety_procedure components=PUMP-001'. Type 'filter' to clear.");
+    System.out.println(
+        "  - Type 'kb <name>' to ask another knowledge base, or 'kb' to list them, when several"
+            + " are served.");
     System.out.println("  - Type 'help' to see this message again.");
     System.out.println("  - Type 'exit' to quit the application.");
   }
@@ -0,0 +1,119 @@
+package ca.bazlur;
+
+import ca.bazlur.config.AIProvider;
+import ca.bazlur.config.AppConfig;
+import ca.bazlur.config.ConfigProvider;
+import ca.bazlur.loadtest.LatencyDistribution;
+import ca.bazlur.loadtest.StubModelServer;
+import ca.bazlur.service.AssistantService;
+import ca.bazlur.service.KnowledgeBaseService;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs the assistant through a short scripted session against a stub model server, so that a JVM
+ * started with {@code -XX:ArchiveClassesAtExit} records the classes a real session loads into an
+ * AppCDS archive.
+ *
+ * <p>The run covers the same code as a normal start: configuration loading, building and loading
+ * an index, creating the assistant and answering questions with and without a metadata filter.
+ * The configured AI provider is kept, so the archive contains its client classes, but its base URL
+ * points at an in-process {@link StubModelServer} that answers without delay. The index is written
+ * to a temporary file and the durable store is disabled, so the run leaves nothing behind.
+ */
+final class TrainingRun {
+  private static final Logger logger = LoggerFactory.getLogger(TrainingRun.class);
+
+  /** A question of the scripted session, with the filter arguments to apply. */
+  private record Step(String question, String filter) {}
+
+  private static final List<Step> SCRIPT =
+      List.of(
+          new Step("What is the status of PUMP-001?", ""),
+          new Step("Why is PIPE-002 pressure low and what's the safety procedure?", ""),
+          new Step(
+              "What should I do before servicing PUMP-001?", "record_type=safety_procedure"),
+          new Step("Which components are connected to VALVE-001?", ""));
+
+  private TrainingRun() {}
+
+  /**
+   * Runs the scripted session.
+   *
+   * @param overrides Properties replacing those from application.properties
+   * @return The number of questions answered
+   * @throws IOException if the stub server cannot be started or the index cannot be written
+   */
+  static int run(Properties overrides) throws IOException {
+    StubModelServer.Behavior behavior =
+        new StubModelServer.Behavior(
+            LatencyDistribution.fixed(Duration.ZERO),
+            LatencyDistribution.fixed(Duration.ZERO),
+            0,
+            32,
+            0,
+            0,
+            StubModelServer.Behavior.defaults().embeddingDimension());
+    Path indexPath = Files.createTempFile("training-index", ".bin");
+    try (StubModelServer stub = new StubModelServer(behavior, 0)) {
+      stub.start();
+      ConfigProvider config = AppConfig.create(stubProperties(overrides, stub, indexPath));
+      logger.info("Training run against the stub {} API", config.getAIProvider());
+
+      KnowledgeBaseService knowledgeBaseService = new KnowledgeBaseService(config);
+      knowledgeBaseService.buildIndex().write(indexPath);
+      EmbeddingStore<TextSegment> embeddingStore =
+          knowledgeBaseService
+              .loadPrebuiltIndex()
+              .orElseThrow(() -> new IllegalStateException("The training index could not be loaded"));
+
+      AssistantService assistantService = new AssistantService(config, embeddingStore);
+      int answered = 0;
+      for (Step step : SCRIPT) {
+        try {
+          assistantService.processMessage(
+              step.question(), KnowledgeAssistant.parseFilter(step.filter()));
+          answered++;
+        } catch (RuntimeException e) {
+          // A failed step only leaves some classes out of the archive.
+          logger.warn("Training question '{}' failed: {}", step.question(), e.toString());
+        }
+      }
+      logger.info("Training run answered {} of {} questions", answered, SCRIPT.size());
+      return answered;
+    } finally {
+      Files.deleteIfExists(indexPath);
+    }
+  }
+
+  /**
+   * Points the configured AI provider at the stub and keeps the run from touching local state.
+   */
+  private static Properties stubProperties(
+      Properties overrides, StubModelServer stub, Path indexPath) {
+    Properties properties = new Properties();
+    properties.putAll(overrides);
+    AIProvider provider = AppConfig.create(overrides).getAIProvider();
+    if (provider == AIProvider.OPENAI) {
+      properties.setProperty("openai.base.url", stub.getOpenAiBaseUrl());
+      properties.setProperty("openai.api.key", "stub");
+    } else {
+      properties.setProperty("ollama.base.url", stub.getOllamaBaseUrl());
+    }
+    properties.setProperty("ai.fallback.provider", "");
+    properties.setProperty("index.path", indexPath.toString());
+    properties.setProperty("store.dir", "");
+    properties.setProperty("ingest.checkpoint.path", "");
+    properties.setProperty("warmup.keepalive.seconds", "0");
+    return properties;
+  }
+}
@@ -12,5 +12,11 @@ public enum AIProvider {
     /**
      * Ollama provider (local models)
      */
-    OLLAMA
+    OLLAMA,
+
+    /**
+     * In-process ONNX models run on the CPU. Only provides embeddings; select it with
+     * {@code embedding.provider}.
+     */
+    LOCAL
 }
\ No newline at end of file
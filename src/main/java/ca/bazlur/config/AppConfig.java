@@ -5,6 +5,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -29,13 +32,45 @@ public class AppConfig implements ConfigProvider {
     private static final String DEFAULT_OLLAMA_EMBEDDING_MODEL = "nomic-embed-text";
     private static final String DEFAULT_OLLAMA_BASE_URL = "http://localhost:11434";
 
+    // Default values for the in-process embedding model
+    private static final String DEFAULT_LOCAL_EMBEDDING_MODEL = "all-minilm-l6-v2-q";
+    private static final int DEFAULT_LOCAL_EMBEDDING_THREADS = 0;
+
     // Common default values
     private static final int DEFAULT_MAX_RESULTS = 3;
     private static final double DEFAULT_MIN_SCORE = 0.6;
+    private static final int DEFAULT_MAX_SUB_QUERIES = 3;
+    private static final int DEFAULT_SESSION_CANDIDATES = 20;
+    private static final double DEFAULT_SESSION_MIN_SIMILARITY = 0.7;
+    private static final int DEFAULT_ROUTER_SIMPLE_MAX_WORDS = 20;
+    private static final double DEFAULT_ROUTER_SIMPLE_MIN_SCORE = 0.75;
+    private static final boolean DEFAULT_WARMUP_ENABLED = true;
+    private static final long DEFAULT_WARMUP_KEEP_ALIVE_SECONDS = 240;
     private static final int DEFAULT_CHAT_MEMORY_MESSAGES = 10;
+    private static final int DEFAULT_CHAT_MEMORY_MAX_TOKENS = 2000;
     private static final int DEFAULT_CHUNK_SIZE = 300;
     private static final int DEFAULT_CHUNK_OVERLAP = 30;
+    private static final double DEFAULT_DEDUP_SIMILARITY = 0.9;
+    private static final int DEFAULT_INGEST_WINDOW_CHARS = 65_536;
+    private static final int DEFAULT_INGEST_BATCH_CHARS = 1_048_576;
+    private static final int DEFAULT_INGEST_MAX_CONCURRENCY = 8;
+    private static final int DEFAULT_INGEST_MAX_BATCH_TOKENS = 32_768;
+    private static final int DEFAULT_INGEST_MAX_RETRIES = 10;
+    private static final String DEFAULT_INGEST_CHECKPOINT_FILE = "ingest-checkpoint.bin";
     private static final AIProvider DEFAULT_AI_PROVIDER = AIProvider.OPENAI;
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 5_000;
+    private static final String DEFAULT_INDEX_PATH = "knowledge-index.bin";
+    private static final int DEFAULT_SEARCH_PARALLELISM = 0;
+    private static final int DEFAULT_SEARCH_PARALLEL_THRESHOLD = 10_000;
+    private static final int DEFAULT_SEGMENT_BLOCK_BYTES = 16 * 1024;
+    private static final int DEFAULT_SEGMENT_CACHE_BLOCKS = 256;
+    private static final long DEFAULT_SHARD_TIMEOUT_MILLIS = 500;
+    private static final long DEFAULT_STORE_SNAPSHOT_INTERVAL_SECONDS = 300;
+    private static final long DEFAULT_STORE_SNAPSHOT_LOG_BYTES = 64L << 20;
+    private static final double DEFAULT_STORE_COMPACTION_RATIO = 0.2;
+    private static final long DEFAULT_KNOWLEDGE_BASE_MEMORY_BYTES = 1L << 30;
+    private static final int DEFAULT_BATCH_CONCURRENCY = 8;
+    private static final int DEFAULT_BATCH_EMBEDDING_SIZE = 64;
 
     // Singleton instance for backward compatibility
     private static final AppConfig INSTANCE = new AppConfig();
@@ -78,6 +113,19 @@ public class AppConfig implements ConfigProvider {
         return new AppConfig();
     }
 
+    /**
+     * Creates a new AppConfig instance with properties loaded from application.properties, with
+     * the given properties taking precedence.
+     *
+     * @param overrides The properties replacing those from application.properties
+     * @return A new AppConfig instance
+     */
+    public static ConfigProvider create(Properties overrides) {
+        AppConfig config = new AppConfig();
+        config.properties.putAll(overrides);
+        return config;
+    }
+
     /**
      * Loads properties from application.properties.
      */
@@ -98,13 +146,88 @@ public class AppConfig implements ConfigProvider {
     public AIProvider getAIProvider() {
         String providerStr = getProperty("ai.provider", DEFAULT_AI_PROVIDER.name());
         try {
-            return AIProvider.valueOf(providerStr.toUpperCase());
+            AIProvider provider = AIProvider.valueOf(providerStr.toUpperCase());
+            if (provider == AIProvider.LOCAL) {
+                logger.warn("AI provider {} only provides embeddings; set 'embedding.provider' instead. Using default: {}",
+                        provider, DEFAULT_AI_PROVIDER);
+                return DEFAULT_AI_PROVIDER;
+            }
+            return provider;
         } catch (IllegalArgumentException e) {
             logger.warn("Invalid AI provider '{}', using default: {}", providerStr, DEFAULT_AI_PROVIDER);
             return DEFAULT_AI_PROVIDER;
         }
     }
 
+    @Override
+    public AIProvider getFallbackProvider() {
+        String providerStr = blankToNull(getProperty("ai.fallback.provider", null));
+        if (providerStr == null) {
+            return null;
+        }
+        try {
+            AIProvider provider = AIProvider.valueOf(providerStr.toUpperCase());
+            if (provider == AIProvider.LOCAL || provider == getAIProvider()) {
+                logger.warn("Fallback provider '{}' must be a chat provider other than the AI provider; ignoring it.", providerStr);
+                return null;
+            }
+            return provider;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid fallback provider '{}'; ignoring it.", providerStr);
+            return null;
+        }
+    }
+
+    @Override
+    public long getHedgeDelayMillis() {
+        return getLongProperty("ai.hedge.delay.ms", DEFAULT_HEDGE_DELAY_MILLIS);
+    }
+
+    @Override
+    public ConfigProvider forProvider(AIProvider provider) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        copy.setProperty("ai.provider", provider.name());
+        return new AppConfig(copy);
+    }
+
+    @Override
+    public ConfigProvider forKnowledgeBase(Path directory) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        copy.setProperty("index.path", directory.resolve(Path.of(getIndexPath()).getFileName()).toString());
+        if (getStoreDir() != null) {
+            copy.setProperty("store.dir", directory.resolve("store").toString());
+        }
+        if (getIngestCheckpointPath() != null) {
+            copy.setProperty("ingest.checkpoint.path",
+                    directory.resolve(Path.of(getIngestCheckpointPath()).getFileName()).toString());
+        }
+        copy.setProperty("kb.dir", "");
+        return new AppConfig(copy);
+    }
+
+    @Override
+    public AIProvider getEmbeddingProvider() {
+        AIProvider aiProvider = getAIProvider();
+        String providerStr = getProperty("embedding.provider", null);
+        if (providerStr == null || providerStr.isBlank()) {
+            return aiProvider;
+        }
+        try {
+            AIProvider provider = AIProvider.valueOf(providerStr.trim().toUpperCase());
+            if (provider != AIProvider.LOCAL && provider != aiProvider) {
+                // Credentials and base URLs are configured per AI provider, so remote embeddings follow it.
+                logger.warn("Embedding provider '{}' must be LOCAL or match the AI provider, using: {}", providerStr, aiProvider);
+                return aiProvider;
+            }
+            return provider;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid embedding provider '{}', using AI provider: {}", providerStr, aiProvider);
+            return aiProvider;
+        }
+    }
+
     @Override
     public String getChatModelName() {
         if (getAIProvider() == AIProvider.OPENAI) {
@@ -115,14 +238,46 @@ public class AppConfig implements ConfigProvider {
     }
 
     @Override
-    public String getEmbeddingModelName() {
+    public String getSmallChatModelName() {
         if (getAIProvider() == AIProvider.OPENAI) {
-            return getProperty("openai.embedding.model", DEFAULT_OPENAI_EMBEDDING_MODEL);
+            return blankToNull(getProperty("openai.chat.model.small", null));
         } else {
-            return getProperty("ollama.embedding.model", DEFAULT_OLLAMA_EMBEDDING_MODEL);
+            return blankToNull(getProperty("ollama.chat.model.small", null));
         }
     }
 
+    @Override
+    public int getRouterSimpleMaxWords() {
+        return getIntProperty("router.simple.max.words", DEFAULT_ROUTER_SIMPLE_MAX_WORDS);
+    }
+
+    @Override
+    public double getRouterSimpleMinScore() {
+        return getDoubleProperty("router.simple.min.score", DEFAULT_ROUTER_SIMPLE_MIN_SCORE);
+    }
+
+    @Override
+    public boolean isWarmupEnabled() {
+        return getBooleanProperty("warmup.enabled", DEFAULT_WARMUP_ENABLED);
+    }
+
+    @Override
+    public long getWarmupKeepAliveSeconds() {
+        return getLongProperty("warmup.keepalive.seconds", DEFAULT_WARMUP_KEEP_ALIVE_SECONDS);
+    }
+
+    @Override
+    public String getEmbeddingModelName() {
+        return switch (getEmbeddingProvider()) {
+            case OPENAI -> getProperty("openai.embedding.model", DEFAULT_OPENAI_EMBEDDING_MODEL);
+            case OLLAMA -> getProperty("ollama.embedding.model", DEFAULT_OLLAMA_EMBEDDING_MODEL);
+            case LOCAL -> {
+                String modelPath = getLocalEmbeddingModelPath();
+                yield modelPath != null ? modelPath : DEFAULT_LOCAL_EMBEDDING_MODEL;
+            }
+        };
+    }
+
     @Override
     public String getApiKey() {
         if (getAIProvider() == AIProvider.OPENAI) {
@@ -146,8 +301,8 @@ public class AppConfig implements ConfigProvider {
         if (getAIProvider() == AIProvider.OLLAMA) {
             return getProperty("ollama.base.url", DEFAULT_OLLAMA_BASE_URL);
         } else {
-            // OpenAI doesn't use a base URL in the same way
-            return null;
+            // Unset for the public OpenAI API; set to target a compatible endpoint
+            return blankToNull(getProperty("openai.base.url", null));
         }
     }
 
@@ -161,11 +316,46 @@ public class AppConfig implements ConfigProvider {
         return getDoubleProperty("retriever.min.score", DEFAULT_MIN_SCORE);
     }
 
+    @Override
+    public int getMaxSubQueries() {
+        return getIntProperty("retriever.subqueries.max", DEFAULT_MAX_SUB_QUERIES);
+    }
+
+    @Override
+    public int getSessionCandidates() {
+        return getIntProperty("retriever.session.candidates", DEFAULT_SESSION_CANDIDATES);
+    }
+
+    @Override
+    public double getSessionMinSimilarity() {
+        return getDoubleProperty("retriever.session.min.similarity", DEFAULT_SESSION_MIN_SIMILARITY);
+    }
+
     @Override
     public int getChatMemoryMessages() {
         return getIntProperty("chat.memory.messages", DEFAULT_CHAT_MEMORY_MESSAGES);
     }
 
+    @Override
+    public int getChatMemoryMaxTokens() {
+        return getIntProperty("chat.memory.max.tokens", DEFAULT_CHAT_MEMORY_MAX_TOKENS);
+    }
+
+    @Override
+    public String getLocalEmbeddingModelPath() {
+        return blankToNull(getProperty("local.embedding.model.path", null));
+    }
+
+    @Override
+    public String getLocalEmbeddingTokenizerPath() {
+        return blankToNull(getProperty("local.embedding.tokenizer.path", null));
+    }
+
+    @Override
+    public int getLocalEmbeddingThreads() {
+        return getIntProperty("local.embedding.threads", DEFAULT_LOCAL_EMBEDDING_THREADS);
+    }
+
     @Override
     public int getChunkSize() {
         return getIntProperty("document.chunk.size", DEFAULT_CHUNK_SIZE);
@@ -176,6 +366,125 @@ public class AppConfig implements ConfigProvider {
         return getIntProperty("document.chunk.overlap", DEFAULT_CHUNK_OVERLAP);
     }
 
+    @Override
+    public double getDedupSimilarity() {
+        return getDoubleProperty("ingest.dedup.similarity", DEFAULT_DEDUP_SIMILARITY);
+    }
+
+    @Override
+    public int getIngestWindowChars() {
+        return getIntProperty("ingest.window.chars", DEFAULT_INGEST_WINDOW_CHARS);
+    }
+
+    @Override
+    public int getIngestBatchChars() {
+        return getIntProperty("ingest.batch.chars", DEFAULT_INGEST_BATCH_CHARS);
+    }
+
+    @Override
+    public int getIngestMaxConcurrency() {
+        return getIntProperty("ingest.concurrency.max", DEFAULT_INGEST_MAX_CONCURRENCY);
+    }
+
+    @Override
+    public int getIngestMaxBatchTokens() {
+        return getIntProperty("ingest.batch.tokens.max", DEFAULT_INGEST_MAX_BATCH_TOKENS);
+    }
+
+    @Override
+    public int getIngestMaxRetries() {
+        return getIntProperty("ingest.retries.max", DEFAULT_INGEST_MAX_RETRIES);
+    }
+
+    @Override
+    public String getIngestCheckpointPath() {
+        String path = getProperty("ingest.checkpoint.path", null);
+        if (path != null) {
+            return blankToNull(path);
+        }
+        String storeDir = getStoreDir();
+        return storeDir != null ? Path.of(storeDir).resolve(DEFAULT_INGEST_CHECKPOINT_FILE).toString() : null;
+    }
+
+    @Override
+    public String getIndexPath() {
+        return getProperty("index.path", DEFAULT_INDEX_PATH);
+    }
+
+    @Override
+    public int getSearchParallelism() {
+        return getIntProperty("store.search.parallelism", DEFAULT_SEARCH_PARALLELISM);
+    }
+
+    @Override
+    public int getSearchParallelThreshold() {
+        return getIntProperty("store.search.parallel.threshold", DEFAULT_SEARCH_PARALLEL_THRESHOLD);
+    }
+
+    @Override
+    public int getSegmentBlockBytes() {
+        return getIntProperty("store.segment.block.bytes", DEFAULT_SEGMENT_BLOCK_BYTES);
+    }
+
+    @Override
+    public int getSegmentCacheBlocks() {
+        return getIntProperty("store.segment.cache.blocks", DEFAULT_SEGMENT_CACHE_BLOCKS);
+    }
+
+    @Override
+    public List<String> getShardUrls() {
+        String value = getProperty("retriever.shards", "");
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .toList();
+    }
+
+    @Override
+    public long getShardTimeoutMillis() {
+        return getLongProperty("retriever.shard.timeout.ms", DEFAULT_SHARD_TIMEOUT_MILLIS);
+    }
+
+    @Override
+    public String getStoreDir() {
+        return blankToNull(getProperty("store.dir", null));
+    }
+
+    @Override
+    public long getStoreSnapshotIntervalSeconds() {
+        return getLongProperty("store.snapshot.interval.seconds", DEFAULT_STORE_SNAPSHOT_INTERVAL_SECONDS);
+    }
+
+    @Override
+    public long getStoreSnapshotLogBytes() {
+        return getLongProperty("store.snapshot.log.bytes", DEFAULT_STORE_SNAPSHOT_LOG_BYTES);
+    }
+
+    @Override
+    public double getStoreCompactionRatio() {
+        return getDoubleProperty("store.compaction.ratio", DEFAULT_STORE_COMPACTION_RATIO);
+    }
+
+    @Override
+    public String getKnowledgeBaseDir() {
+        return blankToNull(getProperty("kb.dir", null));
+    }
+
+    @Override
+    public long getKnowledgeBaseMemoryBytes() {
+        return getLongProperty("kb.memory.bytes", DEFAULT_KNOWLEDGE_BASE_MEMORY_BYTES);
+    }
+
+    @Override
+    public int getBatchConcurrency() {
+        return getIntProperty("batch.concurrency", DEFAULT_BATCH_CONCURRENCY);
+    }
+
+    @Override
+    public int getBatchEmbeddingSize() {
+        return getIntProperty("batch.embedding.size", DEFAULT_BATCH_EMBEDDING_SIZE);
+    }
+
     @Override
     public boolean isLogRequests() {
         if (getAIProvider() == AIProvider.OPENAI) {
@@ -240,6 +549,10 @@ public class AppConfig implements ConfigProvider {
         return resolvedValue != null ? resolvedValue : defaultValue;
     }
 
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
     private int getIntProperty(String key, int defaultValue) {
         String value = getProperty(key, null);
         if (value != null) {
@@ -252,6 +565,18 @@ public class AppConfig implements ConfigProvider {
         return defaultValue;
     }
 
+    private long getLongProperty(String key, long defaultValue) {
+        String value = getProperty(key, null);
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid long value for key '{}': '{}' (from properties/env). Using default: {}", key, value, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     private double getDoubleProperty(String key, double defaultValue) {
         String value = getProperty(key, null);
         if (value != null) {
@@ -1,5 +1,8 @@
 package ca.bazlur.config;
 
+import java.nio.file.Path;
+import java.util.List;
+
 /**
  * Interface for providing configuration values.
  * This allows for easier testing by enabling dependency injection of configuration.
@@ -12,6 +15,47 @@ public interface ConfigProvider {
      */
     AIProvider getAIProvider();
 
+    /**
+     * Gets the provider of the embedding model. Defaults to the AI provider; may be set to
+     * {@link AIProvider#LOCAL} to embed in-process while chatting with a remote model.
+     *
+     * @return The embedding provider
+     */
+    AIProvider getEmbeddingProvider();
+
+    /**
+     * Gets the chat provider that requests are hedged to when the AI provider is slow or failing.
+     *
+     * @return The fallback provider, or null to use the AI provider alone
+     */
+    AIProvider getFallbackProvider();
+
+    /**
+     * Gets the time to wait for a chat response before the request is also sent to the fallback provider.
+     *
+     * @return The hedge delay in milliseconds
+     */
+    long getHedgeDelayMillis();
+
+    /**
+     * Gets this configuration as seen with another AI provider selected, for setting up a second
+     * provider alongside the first.
+     *
+     * @param provider The AI provider to select
+     * @return The configuration for that provider
+     */
+    ConfigProvider forProvider(AIProvider provider);
+
+    /**
+     * Gets this configuration as seen by one knowledge base of the registry, whose index, store
+     * and ingestion checkpoint live in the knowledge base's directory under their configured file
+     * names.
+     *
+     * @param directory The directory of the knowledge base
+     * @return The configuration for that knowledge base
+     */
+    ConfigProvider forKnowledgeBase(Path directory);
+
     /**
      * Gets the chat model name for the selected provider.
      *
@@ -19,6 +63,42 @@ public interface ConfigProvider {
      */
     String getChatModelName();
 
+    /**
+     * Gets the small, fast chat model that simple lookups are routed to for the selected provider.
+     *
+     * @return The small chat model name, or null to send every request to the chat model
+     */
+    String getSmallChatModelName();
+
+    /**
+     * Gets the maximum number of words of a question routed to the small chat model.
+     *
+     * @return The maximum number of words
+     */
+    int getRouterSimpleMaxWords();
+
+    /**
+     * Gets the relevance score the best retrieved segment needs for a question to be routed to the
+     * small chat model.
+     *
+     * @return The minimum retrieval score
+     */
+    double getRouterSimpleMinScore();
+
+    /**
+     * Gets whether the Ollama models are loaded at startup and kept loaded while idle.
+     *
+     * @return True if the Ollama models are warmed up
+     */
+    boolean isWarmupEnabled();
+
+    /**
+     * Gets the idle time after which the Ollama models are loaded again so that Ollama keeps them loaded.
+     *
+     * @return The keep-alive interval in seconds, or 0 to warm up only at startup
+     */
+    long getWarmupKeepAliveSeconds();
+
     /**
      * Gets the embedding model name for the selected provider.
      *
@@ -35,9 +115,9 @@ public interface ConfigProvider {
 
     /**
      * Gets the base URL for the selected provider.
-     * This is primarily used for Ollama, which requires a base URL.
+     * Ollama requires a base URL; for OpenAI it is optional and points at a compatible endpoint.
      *
-     * @return The base URL
+     * @return The base URL, or null to use the provider's default
      */
     String getBaseUrl();
 
@@ -55,6 +135,29 @@ public interface ConfigProvider {
      */
     double getMinScore();
 
+    /**
+     * Gets the maximum number of sub-queries a compound question is split into for retrieval.
+     *
+     * @return The maximum number of sub-queries; 1 retrieves with the whole question
+     */
+    int getMaxSubQueries();
+
+    /**
+     * Gets the number of candidate segments kept per conversation for answering follow-up
+     * questions without searching the store.
+     *
+     * @return The number of candidates; 0 searches the store for every question
+     */
+    int getSessionCandidates();
+
+    /**
+     * Gets the cosine similarity a follow-up question must have to a recent question of the
+     * conversation to be answered from the cached candidates.
+     *
+     * @return The minimum similarity
+     */
+    double getSessionMinSimilarity();
+
     /**
      * Gets the number of messages to keep in chat memory.
      *
@@ -62,6 +165,34 @@ public interface ConfigProvider {
      */
     int getChatMemoryMessages();
 
+    /**
+     * Gets the token budget of the chat memory. Older turns beyond the budget are summarized.
+     *
+     * @return The maximum number of tokens
+     */
+    int getChatMemoryMaxTokens();
+
+    /**
+     * Gets the path of a custom ONNX model for the local embedding provider.
+     *
+     * @return The model path, or null to use the bundled all-MiniLM-L6-v2 model
+     */
+    String getLocalEmbeddingModelPath();
+
+    /**
+     * Gets the path of the tokenizer of the custom local embedding model.
+     *
+     * @return The tokenizer.json path, or null to use the bundled model
+     */
+    String getLocalEmbeddingTokenizerPath();
+
+    /**
+     * Gets the number of threads the local embedding model runs inference on.
+     *
+     * @return The number of threads, or 0 for one per available processor
+     */
+    int getLocalEmbeddingThreads();
+
     /**
      * Gets the document chunk size.
      *
@@ -76,6 +207,59 @@ public interface ConfigProvider {
      */
     int getChunkOverlap();
 
+    /**
+     * Gets the Jaccard similarity from which segments are dropped as near duplicates at ingestion.
+     *
+     * @return The similarity threshold; 1 or more only drops exact duplicates
+     */
+    double getDedupSimilarity();
+
+    /**
+     * Gets the maximum size of the document windows sources are read in.
+     *
+     * @return The window size in characters
+     */
+    int getIngestWindowChars();
+
+    /**
+     * Gets the number of characters read before a batch is split, embedded and stored.
+     *
+     * @return The batch size in characters
+     */
+    int getIngestBatchChars();
+
+    /**
+     * Gets the maximum number of embedding requests in flight during ingestion against a
+     * rate-limited provider.
+     *
+     * @return The maximum concurrency
+     */
+    int getIngestMaxConcurrency();
+
+    /**
+     * Gets the maximum estimated tokens per embedding request during ingestion against a
+     * rate-limited provider.
+     *
+     * @return The maximum batch size in tokens
+     */
+    int getIngestMaxBatchTokens();
+
+    /**
+     * Gets the number of times a rate-limited embedding request is retried before ingestion fails.
+     *
+     * @return The maximum number of retries
+     */
+    int getIngestMaxRetries();
+
+    /**
+     * Gets the file in which the embeddings of an unfinished ingestion are kept for resuming it.
+     * Unless configured, the checkpoint is kept in the store directory, or in memory only when the
+     * store is not durable, in which case a restarted ingestion embeds everything again.
+     *
+     * @return The checkpoint path, or null to keep the checkpoint in memory only
+     */
+    String getIngestCheckpointPath();
+
     /**
      * Checks if API requests should be logged.
      *
@@ -89,4 +273,116 @@ public interface ConfigProvider {
      * @return True if responses should be logged, false otherwise
      */
     boolean isLogResponses();
+
+    /**
+     * Gets the location of the prebuilt knowledge base index.
+     * The value is resolved as a file path first and as a classpath resource otherwise.
+     *
+     * @return The index path
+     */
+    String getIndexPath();
+
+    /**
+     * Gets the number of shards and threads used for vector search.
+     * Values below 1 mean one per available processor.
+     *
+     * @return The search parallelism
+     */
+    int getSearchParallelism();
+
+    /**
+     * Gets the number of stored vectors from which a search is run in parallel across shards.
+     * Smaller stores are searched on the calling thread.
+     *
+     * @return The parallel search threshold
+     */
+    int getSearchParallelThreshold();
+
+    /**
+     * Gets the uncompressed size of the off-heap blocks holding segment text and metadata.
+     *
+     * @return The block size in bytes, or 0 or less to keep segments on the heap
+     */
+    int getSegmentBlockBytes();
+
+    /**
+     * Gets the number of decompressed segment blocks kept in the cache.
+     *
+     * @return The number of cached blocks
+     */
+    int getSegmentCacheBlocks();
+
+    /**
+     * Gets the base URLs of the shard servers holding a distributed index.
+     * When empty, the knowledge base is loaded into the local process.
+     *
+     * @return The shard server URLs
+     */
+    List<String> getShardUrls();
+
+    /**
+     * Gets the time each shard has to answer a search before its results are left out.
+     *
+     * @return The per-shard timeout in milliseconds
+     */
+    long getShardTimeoutMillis();
+
+    /**
+     * Gets the directory in which the embedding store keeps its write-ahead log and snapshots.
+     *
+     * @return The store directory, or null to keep the store in memory only
+     */
+    String getStoreDir();
+
+    /**
+     * Gets how often the embedding store is snapshotted when it has changed.
+     *
+     * @return The snapshot interval in seconds
+     */
+    long getStoreSnapshotIntervalSeconds();
+
+    /**
+     * Gets the write-ahead log size from which a snapshot is taken right away, which bounds the
+     * log replayed on recovery.
+     *
+     * @return The log size in bytes
+     */
+    long getStoreSnapshotLogBytes();
+
+    /**
+     * Gets the share of removed entries from which the in-memory store is compacted.
+     *
+     * @return The compaction ratio between 0 and 1
+     */
+    double getStoreCompactionRatio();
+
+    /**
+     * Gets the directory holding one subdirectory per knowledge base, each with its sources and
+     * its prebuilt index.
+     *
+     * @return The knowledge base directory, or null to serve the single bundled knowledge base
+     */
+    String getKnowledgeBaseDir();
+
+    /**
+     * Gets the memory the loaded knowledge bases may take before the least recently used ones are
+     * unloaded.
+     *
+     * @return The memory budget in bytes
+     */
+    long getKnowledgeBaseMemoryBytes();
+
+    /**
+     * Gets the number of questions batch mode answers at once.
+     *
+     * @return The batch concurrency
+     */
+    int getBatchConcurrency();
+
+    /**
+     * Gets the most query texts batch mode sends in one embedding call.
+     *
+     * @return The embedding batch size
+     */
+    int getBatchEmbeddingSize();
 }
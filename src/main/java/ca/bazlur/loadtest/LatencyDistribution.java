@@ -0,0 +1,51 @@
+package ca.bazlur.loadtest;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+
+/**
+ * A log-normal latency distribution described by its median and 99th percentile, the shape
+ * model-serving latencies usually have: most requests near the median and a long right tail.
+ *
+ * @param median The median latency
+ * @param p99 The 99th percentile latency; equal to the median for a fixed latency
+ */
+public record LatencyDistribution(Duration median, Duration p99) {
+    /** The standard normal quantile of the 99th percentile. */
+    private static final double Z_99 = 2.3263478740408408;
+
+    public LatencyDistribution {
+        if (median.isNegative() || p99.compareTo(median) < 0) {
+            throw new IllegalArgumentException("Expected 0 <= median <= p99, got " + median + " and " + p99);
+        }
+    }
+
+    /**
+     * Creates a distribution that always yields the same latency.
+     *
+     * @param latency The latency
+     * @return The distribution
+     */
+    public static LatencyDistribution fixed(Duration latency) {
+        return new LatencyDistribution(latency, latency);
+    }
+
+    /**
+     * Draws a latency.
+     *
+     * @param random The source of randomness
+     * @return The sampled latency
+     */
+    public Duration sample(RandomGenerator random) {
+        if (median.isZero() || p99.equals(median)) {
+            return median;
+        }
+        double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+        return Duration.ofNanos((long) (median.toNanos() * Math.exp(sigma * random.nextGaussian())));
+    }
+
+    @Override
+    public String toString() {
+        return p99.equals(median) ? median.toMillis() + "ms" : median.toMillis() + "ms median, " + p99.toMillis() + "ms p99";
+    }
+}
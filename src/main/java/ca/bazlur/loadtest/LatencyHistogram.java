@@ -0,0 +1,84 @@
+package ca.bazlur.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, thread-safe latency histogram with logarithmic buckets.
+ *
+ * <p>Bucket bounds grow by 1%, so percentiles are accurate to about 1% from one microsecond up to
+ * an hour while memory stays constant however long a soak run lasts. Values outside that range are
+ * counted in the first or last bucket.
+ */
+public class LatencyHistogram {
+    private static final long MIN_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final double LOG_GROWTH = Math.log(1.01);
+    private static final int BUCKETS = (int) Math.ceil(Math.log((double) MAX_NANOS / MIN_NANOS) / LOG_GROWTH) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets the latency below which the given share of the recorded values fall.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The upper bound of the bucket holding that percentile in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBound(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos <= MIN_NANOS) {
+            return 0;
+        }
+        int bucket = (int) Math.ceil(Math.log((double) nanos / MIN_NANOS) / LOG_GROWTH);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (long) Math.ceil(MIN_NANOS * Math.exp(bucket * LOG_GROWTH));
+    }
+}
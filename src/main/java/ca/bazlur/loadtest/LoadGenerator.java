@@ -0,0 +1,259 @@
+package ca.bazlur.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives a target with concurrent requests for a fixed time and measures latency, time to first
+ * token, throughput and JVM heap and GC behaviour.
+ *
+ * <p>In closed-loop mode each of {@code concurrency} virtual users sends its next request as soon
+ * as the previous one completes. In open-loop mode requests are started at a fixed rate, at most
+ * {@code concurrency} at a time, and latency is measured from the time a request was due rather
+ * than when it could actually be sent, so a stalled system shows up in the tail latencies instead
+ * of silently lowering the load.
+ */
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    /** The system under test. */
+    @FunctionalInterface
+    public interface Target {
+        /**
+         * Sends one request and waits for its completion.
+         *
+         * @param prompt The prompt to send
+         * @param firstToken To be called when the first token of a streamed answer arrives; targets
+         *                   that do not stream never call it
+         * @throws Exception if the request fails
+         */
+        void call(String prompt, Runnable firstToken) throws Exception;
+    }
+
+    /**
+     * The shape of a run.
+     *
+     * @param concurrency The number of virtual users, or the maximum requests in flight in open-loop mode
+     * @param ratePerSecond The request rate for open-loop mode; 0 or less for closed-loop mode
+     * @param warmup The time to run before measuring, to let the JIT and caches settle
+     * @param duration The time to measure
+     * @param reportInterval The interval between progress reports
+     */
+    public record Settings(int concurrency, double ratePerSecond, Duration warmup, Duration duration,
+                           Duration reportInterval) {
+        public Settings {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("concurrency must be positive");
+            }
+        }
+    }
+
+    private final Target target;
+    private final List<String> prompts;
+    private final Settings settings;
+    private final AtomicInteger nextPrompt = new AtomicInteger();
+
+    /**
+     * Creates a load generator.
+     *
+     * @param target The system under test
+     * @param prompts The prompts to send, in rotation
+     * @param settings The shape of the run
+     */
+    public LoadGenerator(Target target, List<String> prompts, Settings settings) {
+        if (prompts.isEmpty()) {
+            throw new IllegalArgumentException("At least one prompt is required");
+        }
+        this.target = target;
+        this.prompts = List.copyOf(prompts);
+        this.settings = settings;
+    }
+
+    /**
+     * Runs the warm-up and then the measured phase.
+     *
+     * @return The measurements of the measured phase
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public LoadReport run() throws InterruptedException {
+        if (settings.warmup().isPositive()) {
+            logger.info("Warming up for {} s...", settings.warmup().toSeconds());
+            drive(new Recorder(), settings.warmup(), null);
+        }
+
+        logger.info("Measuring for {} s with {} {}...", settings.duration().toSeconds(), settings.concurrency(),
+                settings.ratePerSecond() > 0 ? "requests in flight at most, " + settings.ratePerSecond() + " requests/s" : "virtual users");
+        JvmSample before = JvmSample.take(true);
+        Recorder recorder = new Recorder();
+        long start = System.nanoTime();
+        drive(recorder, settings.duration(), before);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        JvmSample after = JvmSample.take(false);
+
+        Map<String, Long> errors = new TreeMap<>();
+        recorder.errors.forEach((type, count) -> errors.put(type, count.sum()));
+        return new LoadReport(recorder.successes.sum(), errors, elapsed, recorder.latency, recorder.timeToFirstToken,
+                after.gcCount() - before.gcCount(), after.gcMillis() - before.gcMillis(),
+                before.heapAfterGc(), after.heapAfterGc(), after.peakHeap());
+    }
+
+    /**
+     * Sends requests until the phase ends and waits for those still in flight. Reports progress if
+     * a baseline JVM sample is given.
+     */
+    private void drive(Recorder recorder, Duration phase, JvmSample baseline) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + phase.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Void> pacer = null;
+            if (settings.ratePerSecond() > 0) {
+                pacer = executor.submit(() -> pace(executor, recorder, start, deadline));
+            } else {
+                for (int i = 0; i < settings.concurrency(); i++) {
+                    executor.submit(() -> {
+                        while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                            send(recorder, System.nanoTime());
+                        }
+                    });
+                }
+            }
+            if (baseline != null) {
+                report(recorder, start, deadline, baseline);
+            }
+            // The pacer submits to the executor, so it has to finish before the executor is closed.
+            if (pacer != null) {
+                try {
+                    pacer.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Request pacing failed", e.getCause());
+                }
+            }
+        }
+    }
+
+    private Void pace(ExecutorService executor, Recorder recorder, long start, long deadline) throws InterruptedException {
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / settings.ratePerSecond());
+        Semaphore inFlight = new Semaphore(settings.concurrency());
+        for (long due = start; due < deadline; due += period) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            inFlight.acquire();
+            long scheduled = due;
+            executor.submit(() -> {
+                try {
+                    send(recorder, scheduled);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        return null;
+    }
+
+    private void send(Recorder recorder, long scheduled) {
+        String prompt = prompts.get(Math.floorMod(nextPrompt.getAndIncrement(), prompts.size()));
+        AtomicLong firstToken = new AtomicLong();
+        try {
+            target.call(prompt, () -> firstToken.compareAndSet(0, System.nanoTime()));
+            long end = System.nanoTime();
+            recorder.latency.record(end - scheduled);
+            if (firstToken.get() != 0) {
+                recorder.timeToFirstToken.record(firstToken.get() - scheduled);
+            }
+            recorder.successes.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            recorder.errors.computeIfAbsent(e.getClass().getSimpleName(), type -> new LongAdder()).increment();
+            logger.debug("Request failed", e);
+        }
+    }
+
+    private void report(Recorder recorder, long start, long deadline, JvmSample baseline) throws InterruptedException {
+        long interval = settings.reportInterval().toNanos();
+        if (interval <= 0) {
+            return;
+        }
+        long lastRequests = 0;
+        long lastTime = start;
+        for (long next = start + interval; next < deadline; next += interval) {
+            TimeUnit.NANOSECONDS.sleep(next - System.nanoTime());
+            long requests = recorder.latency.getCount();
+            long now = System.nanoTime();
+            JvmSample sample = JvmSample.take(false);
+            logger.info("{} s: {} requests/s, p99 so far {} ms, {} errors, heap {} MB (after GC {} MB), {} GCs taking {} ms",
+                    TimeUnit.NANOSECONDS.toSeconds(now - start),
+                    String.format("%.1f", (requests - lastRequests) * 1e9 / (now - lastTime)),
+                    TimeUnit.NANOSECONDS.toMillis(recorder.latency.getPercentileNanos(99)),
+                    recorder.errors.values().stream().mapToLong(LongAdder::sum).sum(),
+                    sample.heapUsed() >> 20, sample.heapAfterGc() >> 20,
+                    sample.gcCount() - baseline.gcCount(), sample.gcMillis() - baseline.gcMillis());
+            lastRequests = requests;
+            lastTime = now;
+        }
+    }
+
+    private static final class Recorder {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram timeToFirstToken = new LatencyHistogram();
+        final LongAdder successes = new LongAdder();
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Heap and GC counters at one point in time. The heap after GC is the occupancy the collectors
+     * left behind at their last collection, the best cheap estimate of the live set; if it keeps
+     * growing over a soak run, something is leaking.
+     */
+    private record JvmSample(long gcCount, long gcMillis, long heapUsed, long heapAfterGc, long peakHeap) {
+
+        static JvmSample take(boolean resetPeak) {
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, collector.getCollectionCount());
+                gcMillis += Math.max(0, collector.getCollectionTime());
+            }
+            long heapUsed = 0;
+            long heapAfterGc = 0;
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() != MemoryType.HEAP) {
+                    continue;
+                }
+                if (resetPeak) {
+                    pool.resetPeakUsage();
+                }
+                heapUsed += pool.getUsage().getUsed();
+                MemoryUsage collectionUsage = pool.getCollectionUsage();
+                if (collectionUsage != null) {
+                    heapAfterGc += collectionUsage.getUsed();
+                }
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+            return new JvmSample(gcCount, gcMillis, heapUsed, heapAfterGc, peakHeap);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ca.bazlur.loadtest;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The measurements of one load test run.
+ *
+ * @param successes The number of requests that completed successfully
+ * @param errors The number of failed requests by exception type
+ * @param elapsed The wall-clock time of the measured phase, including draining in-flight requests
+ * @param latency The end-to-end latency of the successful requests
+ * @param timeToFirstToken The time to the first streamed token; empty for targets that do not stream
+ * @param gcCount The number of garbage collections during the run
+ * @param gcMillis The accumulated garbage collection time during the run
+ * @param heapAfterGcStartBytes The heap occupancy after the last collection before the run
+ * @param heapAfterGcEndBytes The heap occupancy after the last collection of the run
+ * @param peakHeapBytes The sum of the peak occupancies of the heap pools during the run
+ */
+public record LoadReport(long successes, Map<String, Long> errors, Duration elapsed, LatencyHistogram latency,
+                         LatencyHistogram timeToFirstToken, long gcCount, long gcMillis, long heapAfterGcStartBytes,
+                         long heapAfterGcEndBytes, long peakHeapBytes) {
+
+    public long getErrorCount() {
+        return errors.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Gets the share of requests that failed.
+     *
+     * @return The error rate between 0 and 1
+     */
+    public double getErrorRate() {
+        long total = successes + getErrorCount();
+        return total == 0 ? 0 : (double) getErrorCount() / total;
+    }
+
+    /**
+     * Gets the number of successful requests per second.
+     *
+     * @return The throughput
+     */
+    public double getThroughput() {
+        return elapsed.isZero() ? 0 : successes * 1e9 / elapsed.toNanos();
+    }
+
+    /**
+     * Gets the share of the run spent in garbage collection.
+     *
+     * @return The GC overhead between 0 and 1
+     */
+    public double getGcOverhead() {
+        return elapsed.isZero() ? 0 : Math.min(1, gcMillis / (double) elapsed.toMillis());
+    }
+
+    /**
+     * Formats the report for the console.
+     *
+     * @return The human-readable report
+     */
+    public String format() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "Requests:        %d succeeded, %d failed (%.2f%%) in %.1f s%n",
+                successes, getErrorCount(), getErrorRate() * 100, elapsed.toMillis() / 1000.0));
+        errors.forEach((type, count) -> report.append(String.format(Locale.ROOT, "                 %d x %s%n", count, type)));
+        report.append(String.format(Locale.ROOT, "Throughput:      %.2f requests/s%n", getThroughput()));
+        report.append("Latency:         ").append(percentiles(latency)).append(System.lineSeparator());
+        report.append("First token:     ")
+                .append(timeToFirstToken.getCount() == 0 ? "n/a (target does not stream)" : percentiles(timeToFirstToken))
+                .append(System.lineSeparator());
+        report.append(String.format(Locale.ROOT, "GC:              %d collections, %d ms (%.2f%% of the run)%n",
+                gcCount, gcMillis, getGcOverhead() * 100));
+        report.append(String.format(Locale.ROOT, "Heap after GC:   %d MB at start, %d MB at end; peak %d MB%n",
+                heapAfterGcStartBytes >> 20, heapAfterGcEndBytes >> 20, peakHeapBytes >> 20));
+        return report.toString();
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms, mean %.1f ms",
+                millis(histogram.getPercentileNanos(50)), millis(histogram.getPercentileNanos(99)),
+                millis(histogram.getPercentileNanos(99.9)), millis(histogram.getMaxNanos()),
+                histogram.getMeanNanos() / 1e6);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
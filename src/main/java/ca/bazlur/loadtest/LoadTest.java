@@ -0,0 +1,327 @@
+package ca.bazlur.loadtest;
+
+import ca.bazlur.config.AIProvider;
+import ca.bazlur.config.AppConfig;
+import ca.bazlur.config.ConfigProvider;
+import ca.bazlur.service.AssistantService;
+import ca.bazlur.service.KnowledgeBaseService;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Command line entry point for load and soak tests of the assistant.
+ *
+ * <p>The {@code assistant} target sends each prompt through {@link AssistantService}, exercising
+ * retrieval, chat memory and the chat model; the {@code stream} target streams answers straight
+ * from the configured chat model and also measures time to first token. With {@code --stub} the
+ * configured backend is replaced by an in-process {@link StubModelServer}, so the run measures this
+ * application alone. {@code --stub-only} just serves the stub, to put a deployed instance under load.
+ * With {@code --max-p99} or {@code --max-error-rate} the run exits with status 2 when the threshold
+ * is exceeded, so it can gate a build.
+ */
+public final class LoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final String USAGE = """
+            Usage: LoadTest [options]
+              --help                      Show this help
+              --target assistant|stream   What to load (default: assistant)
+              --concurrency <n>           Virtual users, or max requests in flight with --rate (default: 8)
+              --rate <requests/s>         Start requests at a fixed rate instead of back to back
+              --duration <time>           Measured time, e.g. 90s, 30m, 8h (default: 60s)
+              --warmup <time>             Unmeasured time before the run (default: 10s)
+              --report <time>             Progress report interval (default: 10s)
+              --prompts <file>            Prompts to send in rotation, one per line
+              --max-p99 <time>            Fail if the p99 latency exceeds this
+              --max-error-rate <ratio>    Fail if more than this share of requests fails
+              --stub [ollama|openai]      Replace the backend with a local stub (default: ollama)
+              --stub-only                 Only run the stub server, on --port (default: 11434)
+              --latency <median>[,<p99>]  Stub time to first token (default: 200ms,800ms)
+              --embedding-latency <median>[,<p99>]  Stub embedding latency (default: 20ms,80ms)
+              --tokens-per-second <n>     Stub token rate (default: 50)
+              --response-tokens <n>       Stub answer length (default: 64)
+              --error-rate <ratio>        Share of stub requests failing with HTTP 500 (default: 0)
+              --rate-limit-rate <ratio>   Share of stub requests rejected with HTTP 429 (default: 0)
+            Time values take ms, s, m or h suffixes.""";
+
+    private static final List<String> DEFAULT_PROMPTS = List.of(
+            "What is the status of PUMP-001?",
+            "What are the possible causes of high temperature on PUMP-001?",
+            "Which components are connected to VALVE-001?",
+            "What should I do before servicing PUMP-001?",
+            "What does SENSOR-P1 monitor and what is its reading?",
+            "Why would the flow rate in PIPE-003 drop below 50 GPM?",
+            "When is the next inspection of PUMP-001 bearings due?",
+            "What triggers a HIGH_TEMP_ALERT?");
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            Options options = Options.parse(args);
+            if (options.has("help")) {
+                System.out.println(USAGE);
+                return;
+            }
+            System.exit(run(options) ? 0 : 2);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (Exception e) {
+            logger.error("Load test failed", e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the load test described by the options.
+     *
+     * @return Whether the run stayed within the given thresholds
+     */
+    private static boolean run(Options options) throws Exception {
+        StubModelServer.Behavior behavior = behavior(options);
+        if (options.has("stub-only")) {
+            StubModelServer stub = new StubModelServer(behavior, options.intValue("port", 11434));
+            Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+            stub.start();
+            logger.info("Serving stub models ({}); Ollama base URL {}, OpenAI base URL {}",
+                    behavior, stub.getOllamaBaseUrl(), stub.getOpenAiBaseUrl());
+            Thread.currentThread().join();
+            return true;
+        }
+
+        StubModelServer stub = null;
+        Properties overrides = new Properties();
+        if (options.has("stub")) {
+            stub = new StubModelServer(behavior, 0);
+            stub.start();
+            if ("openai".equalsIgnoreCase(options.string("stub", "ollama"))) {
+                overrides.setProperty("ai.provider", AIProvider.OPENAI.name());
+                overrides.setProperty("openai.base.url", stub.getOpenAiBaseUrl());
+                overrides.setProperty("openai.api.key", "stub");
+            } else {
+                overrides.setProperty("ai.provider", AIProvider.OLLAMA.name());
+                overrides.setProperty("ollama.base.url", stub.getOllamaBaseUrl());
+            }
+            // Per-request logging would dominate the measurement.
+            for (String provider : List.of("openai", "ollama")) {
+                overrides.setProperty(provider + ".log.requests", "false");
+                overrides.setProperty(provider + ".log.responses", "false");
+            }
+        }
+
+        try {
+            ConfigProvider config = AppConfig.create(overrides);
+            LoadGenerator.Target target = switch (options.string("target", "assistant")) {
+                case "assistant" -> assistantTarget(config);
+                case "stream" -> streamTarget(config);
+                default -> throw new IllegalArgumentException("Unknown target: " + options.string("target", ""));
+            };
+            LoadGenerator.Settings settings = new LoadGenerator.Settings(
+                    options.intValue("concurrency", 8),
+                    options.doubleValue("rate", 0),
+                    options.duration("warmup", Duration.ofSeconds(10)),
+                    options.duration("duration", Duration.ofSeconds(60)),
+                    options.duration("report", Duration.ofSeconds(10)));
+
+            LoadReport report = new LoadGenerator(target, prompts(options), settings).run();
+            System.out.println();
+            System.out.print(report.format());
+            return withinThresholds(report, options);
+        } finally {
+            if (stub != null) {
+                stub.close();
+            }
+        }
+    }
+
+    private static LoadGenerator.Target assistantTarget(ConfigProvider config) {
+        KnowledgeBaseService knowledgeBaseService = new KnowledgeBaseService(config);
+        EmbeddingStore<TextSegment> embeddingStore = knowledgeBaseService
+                .loadPrebuiltIndex()
+                .orElseGet(knowledgeBaseService::loadKnowledgeBase);
+        // One assistant, and so one chat memory, shared by all virtual users, as in the chat application.
+        AssistantService assistantService = new AssistantService(config, embeddingStore);
+        return (prompt, firstToken) -> assistantService.processMessage(prompt);
+    }
+
+    private static LoadGenerator.Target streamTarget(ConfigProvider config) {
+        StreamingChatLanguageModel model = config.getAIProvider() == AIProvider.OPENAI
+                ? OpenAiStreamingChatModel.builder()
+                        .baseUrl(config.getBaseUrl())
+                        .apiKey(config.getApiKey())
+                        .modelName(config.getChatModelName())
+                        .build()
+                : OllamaStreamingChatModel.builder()
+                        .baseUrl(config.getBaseUrl())
+                        .modelName(config.getChatModelName())
+                        .build();
+        return (prompt, firstToken) -> {
+            CompletableFuture<ChatResponse> response = new CompletableFuture<>();
+            model.chat(prompt, new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                    if (!partialResponse.isEmpty()) {
+                        firstToken.run();
+                    }
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                    response.complete(completeResponse);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    response.completeExceptionally(error);
+                }
+            });
+            try {
+                response.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        };
+    }
+
+    private static StubModelServer.Behavior behavior(Options options) {
+        StubModelServer.Behavior defaults = StubModelServer.Behavior.defaults();
+        return new StubModelServer.Behavior(
+                options.latency("latency", defaults.firstTokenLatency()),
+                options.latency("embedding-latency", defaults.embeddingLatency()),
+                options.doubleValue("tokens-per-second", defaults.tokensPerSecond()),
+                options.intValue("response-tokens", defaults.responseTokens()),
+                options.doubleValue("error-rate", defaults.errorRate()),
+                options.doubleValue("rate-limit-rate", defaults.rateLimitRate()),
+                defaults.embeddingDimension());
+    }
+
+    private static List<String> prompts(Options options) throws IOException {
+        if (!options.has("prompts")) {
+            return DEFAULT_PROMPTS;
+        }
+        List<String> prompts = Files.readAllLines(Path.of(options.string("prompts", ""))).stream()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty())
+                .toList();
+        if (prompts.isEmpty()) {
+            throw new IllegalArgumentException("No prompts in " + options.string("prompts", ""));
+        }
+        return prompts;
+    }
+
+    private static boolean withinThresholds(LoadReport report, Options options) {
+        boolean passed = true;
+        if (options.has("max-p99")) {
+            Duration limit = options.duration("max-p99", Duration.ZERO);
+            Duration p99 = Duration.ofNanos(report.latency().getPercentileNanos(99));
+            if (p99.compareTo(limit) > 0) {
+                System.out.printf(Locale.ROOT, "FAILED: p99 latency %d ms exceeds %d ms%n", p99.toMillis(), limit.toMillis());
+                passed = false;
+            }
+        }
+        if (options.has("max-error-rate")) {
+            double limit = options.doubleValue("max-error-rate", 0);
+            if (report.getErrorRate() > limit) {
+                System.out.printf(Locale.ROOT, "FAILED: error rate %.4f exceeds %.4f%n", report.getErrorRate(), limit);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /** Parsed {@code --name value} and {@code --flag} arguments. */
+    static final class Options {
+        private final Map<String, String> values;
+
+        private Options(Map<String, String> values) {
+            this.values = values;
+        }
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--")) {
+                    throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                }
+                String name = args[i].substring(2);
+                boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+                values.put(name, hasValue ? args[++i] : "");
+            }
+            return new Options(values);
+        }
+
+        boolean has(String name) {
+            return values.containsKey(name);
+        }
+
+        String string(String name, String defaultValue) {
+            String value = values.get(name);
+            return value == null || value.isEmpty() ? defaultValue : value;
+        }
+
+        int intValue(String name, int defaultValue) {
+            String value = string(name, null);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+
+        double doubleValue(String name, double defaultValue) {
+            String value = string(name, null);
+            return value == null ? defaultValue : Double.parseDouble(value);
+        }
+
+        Duration duration(String name, Duration defaultValue) {
+            String value = string(name, null);
+            return value == null ? defaultValue : parseDuration(value);
+        }
+
+        LatencyDistribution latency(String name, LatencyDistribution defaultValue) {
+            String value = string(name, null);
+            if (value == null) {
+                return defaultValue;
+            }
+            String[] parts = value.split(",");
+            Duration median = parseDuration(parts[0]);
+            return new LatencyDistribution(median, parts.length > 1 ? parseDuration(parts[1]) : median);
+        }
+
+        static Duration parseDuration(String text) {
+            String value = text.strip().toLowerCase(Locale.ROOT);
+            try {
+                if (value.endsWith("ms")) {
+                    return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+                }
+                long amount = Long.parseLong(value.substring(0, value.length() - 1));
+                return switch (value.charAt(value.length() - 1)) {
+                    case 's' -> Duration.ofSeconds(amount);
+                    case 'm' -> Duration.ofMinutes(amount);
+                    case 'h' -> Duration.ofHours(amount);
+                    default -> throw new IllegalArgumentException("Invalid time: " + text);
+                };
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid time: " + text);
+            }
+        }
+    }
+}
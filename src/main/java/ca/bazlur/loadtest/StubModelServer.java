@@ -0,0 +1,395 @@
+package ca.bazlur.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the Ollama and OpenAI APIs, for load tests that should measure this
+ * application rather than a model backend.
+ *
+ * <p>Serves the Ollama {@code /api/chat}, {@code /api/embed} and {@code /api/embeddings} endpoints
+ * and the OpenAI {@code /v1/chat/completions} and {@code /v1/embeddings} endpoints, with and
+ * without streaming. Answers are canned text produced at a configured token rate after a sampled
+ * time to first token. Embeddings hash the words of the input, so texts sharing words are similar
+ * and retrieval behaves plausibly. A configurable share of requests fails with a server error or
+ * a rate-limit response.
+ */
+public class StubModelServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(StubModelServer.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String[] VOCABULARY = ("Based on the provided context, PUMP-001 is running within normal "
+            + "parameters. Check lubrication levels and bearing condition before the next scheduled inspection, "
+            + "and ensure MOTOR-001 is locked out while servicing.").split(" ");
+
+    /**
+     * How the stub behaves.
+     *
+     * @param firstTokenLatency The delay before the first token of a chat answer
+     * @param embeddingLatency The delay before an embedding response
+     * @param tokensPerSecond The rate at which answer tokens are produced; 0 or less for no delay
+     * @param responseTokens The number of tokens per answer
+     * @param errorRate The share of requests failing with HTTP 500
+     * @param rateLimitRate The share of requests rejected with HTTP 429
+     * @param embeddingDimension The dimension of the returned embeddings
+     */
+    public record Behavior(LatencyDistribution firstTokenLatency, LatencyDistribution embeddingLatency,
+                           double tokensPerSecond, int responseTokens, double errorRate, double rateLimitRate,
+                           int embeddingDimension) {
+
+        /**
+         * Gets a behavior resembling a small self-hosted model: 200 ms median time to first token
+         * with an 800 ms p99, 50 tokens per second and no injected errors.
+         *
+         * @return The default behavior
+         */
+        public static Behavior defaults() {
+            return new Behavior(
+                    new LatencyDistribution(Duration.ofMillis(200), Duration.ofMillis(800)),
+                    new LatencyDistribution(Duration.ofMillis(20), Duration.ofMillis(80)),
+                    50, 64, 0, 0, 384);
+        }
+    }
+
+    private enum Api { OLLAMA, OPENAI }
+
+    private final Behavior behavior;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedFailures = new AtomicLong();
+
+    /**
+     * Creates a stub server. The server does not accept requests until {@link #start()} is called.
+     *
+     * @param behavior The latencies, token rate and error injection to apply
+     * @param port The port to listen on, or 0 to pick a free port
+     * @throws IOException if the port cannot be bound
+     */
+    public StubModelServer(Behavior behavior, int port) throws IOException {
+        this.behavior = behavior;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/chat", post(Api.OLLAMA, this::chat));
+        server.createContext("/api/embed", post(Api.OLLAMA, this::embed));
+        server.createContext("/api/embeddings", post(Api.OLLAMA, this::embed));
+        server.createContext("/v1/chat/completions", post(Api.OPENAI, this::chat));
+        server.createContext("/v1/embeddings", post(Api.OPENAI, this::embed));
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Stub model server listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the URL to configure as {@code ollama.base.url}.
+     *
+     * @return The Ollama base URL
+     */
+    public String getOllamaBaseUrl() {
+        return "http://localhost:" + getPort();
+    }
+
+    /**
+     * Gets the URL to configure as {@code openai.base.url}.
+     *
+     * @return The OpenAI base URL
+     */
+    public String getOpenAiBaseUrl() {
+        return "http://localhost:" + getPort() + "/v1";
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        logger.info("Stub model server on port {} stopped after {} requests ({} failures injected)",
+                getPort(), requests.get(), injectedFailures.get());
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        void handle(Api api, JsonNode request, HttpExchange exchange) throws IOException, InterruptedException;
+    }
+
+    private HttpHandler post(Api api, Endpoint endpoint) {
+        return exchange -> {
+            try (exchange) {
+                requests.incrementAndGet();
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                JsonNode request;
+                try (InputStream body = exchange.getRequestBody()) {
+                    request = JSON.readTree(body);
+                }
+                if (!injectFailure(api, exchange)) {
+                    endpoint.handle(api, request, exchange);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // The client went away mid-response; nothing left to answer.
+                logger.debug("Stub response aborted", e);
+            }
+        };
+    }
+
+    private boolean injectFailure(Api api, HttpExchange exchange) throws IOException {
+        double draw = ThreadLocalRandom.current().nextDouble();
+        if (draw < behavior.rateLimitRate()) {
+            injectedFailures.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendJson(exchange, 429, error(api, "Rate limit exceeded (injected by stub)"));
+            return true;
+        }
+        if (draw < behavior.rateLimitRate() + behavior.errorRate()) {
+            injectedFailures.incrementAndGet();
+            sendJson(exchange, 500, error(api, "Internal error (injected by stub)"));
+            return true;
+        }
+        return false;
+    }
+
+    private void chat(Api api, JsonNode request, HttpExchange exchange) throws IOException, InterruptedException {
+        String model = request.path("model").asText("stub");
+        int promptTokens = promptTokens(request.path("messages"));
+        // Ollama streams unless told otherwise; OpenAI only when asked to.
+        boolean stream = request.path("stream").asBoolean(api == Api.OLLAMA);
+
+        Thread.sleep(behavior.firstTokenLatency().sample(ThreadLocalRandom.current()));
+        if (!stream) {
+            StringBuilder answer = new StringBuilder();
+            for (int i = 0; i < behavior.responseTokens(); i++) {
+                answer.append(token(i));
+            }
+            pauseForTokens(behavior.responseTokens() - 1);
+            sendJson(exchange, 200, api == Api.OLLAMA
+                    ? ollamaChat(model, answer.toString(), true, promptTokens)
+                    : openAiChat(model, answer.toString(), promptTokens));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", api == Api.OLLAMA ? "application/x-ndjson" : "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < behavior.responseTokens(); i++) {
+                if (i > 0) {
+                    pauseForTokens(1);
+                }
+                if (api == Api.OLLAMA) {
+                    writeLine(out, JSON.writeValueAsString(ollamaChat(model, token(i), false, promptTokens)));
+                } else {
+                    writeEvent(out, JSON.writeValueAsString(openAiChunk(model, token(i), null)));
+                }
+            }
+            if (api == Api.OLLAMA) {
+                writeLine(out, JSON.writeValueAsString(ollamaChat(model, "", true, promptTokens)));
+            } else {
+                writeEvent(out, JSON.writeValueAsString(openAiChunk(model, null, "stop")));
+                writeEvent(out, "[DONE]");
+            }
+        }
+    }
+
+    private void embed(Api api, JsonNode request, HttpExchange exchange) throws IOException, InterruptedException {
+        String model = request.path("model").asText("stub");
+        List<String> inputs = new ArrayList<>();
+        JsonNode input = request.has("input") ? request.get("input") : request.path("prompt");
+        if (input.isArray()) {
+            input.forEach(node -> inputs.add(node.asText()));
+        } else {
+            inputs.add(input.asText());
+        }
+
+        Thread.sleep(behavior.embeddingLatency().sample(ThreadLocalRandom.current()));
+        ObjectNode response = JSON.createObjectNode();
+        response.put("model", model);
+        if (api == Api.OPENAI) {
+            response.put("object", "list");
+            ArrayNode data = response.putArray("data");
+            int tokens = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                ObjectNode item = data.addObject();
+                item.put("object", "embedding");
+                item.put("index", i);
+                putVector(item.putArray("embedding"), inputs.get(i));
+                tokens += countTokens(inputs.get(i));
+            }
+            response.putObject("usage").put("prompt_tokens", tokens).put("total_tokens", tokens);
+        } else if (request.has("input")) {
+            ArrayNode embeddings = response.putArray("embeddings");
+            inputs.forEach(text -> putVector(embeddings.addArray(), text));
+        } else {
+            putVector(response.putArray("embedding"), inputs.get(0));
+        }
+        sendJson(exchange, 200, response);
+    }
+
+    /**
+     * Hashes each word of the text to a dimension, so the cosine similarity of two embeddings
+     * reflects the words their texts share.
+     */
+    static float[] embedding(String text, int dimension) {
+        float[] vector = new float[dimension];
+        for (String word : text.toLowerCase(Locale.ROOT).split("\\W+")) {
+            if (!word.isEmpty()) {
+                int hash = word.hashCode() * 0x9E3779B9;
+                vector[Math.floorMod(hash, dimension)] += (hash & 1) == 0 ? 1 : -1;
+            }
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            vector[0] = 1;
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimension; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private void putVector(ArrayNode array, String text) {
+        for (float value : embedding(text, behavior.embeddingDimension())) {
+            array.add(value);
+        }
+    }
+
+    private void pauseForTokens(int tokens) throws InterruptedException {
+        if (behavior.tokensPerSecond() > 0 && tokens > 0) {
+            Thread.sleep(Duration.ofNanos((long) (tokens * 1e9 / behavior.tokensPerSecond())));
+        }
+    }
+
+    private static String token(int index) {
+        return VOCABULARY[index % VOCABULARY.length] + " ";
+    }
+
+    private static int promptTokens(JsonNode messages) {
+        int tokens = 0;
+        for (JsonNode message : messages) {
+            tokens += countTokens(message.path("content").asText(""));
+        }
+        return tokens;
+    }
+
+    /** Roughly four characters per token, as for English text with common tokenizers. */
+    private static int countTokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    private static ObjectNode ollamaChat(String model, String content, boolean done, int promptTokens) {
+        ObjectNode response = JSON.createObjectNode();
+        response.put("model", model);
+        response.put("created_at", Instant.now().toString());
+        response.putObject("message").put("role", "assistant").put("content", content);
+        response.put("done", done);
+        if (done) {
+            response.put("done_reason", "stop");
+            response.put("prompt_eval_count", promptTokens);
+            response.put("eval_count", content.isEmpty() ? 0 : countTokens(content));
+        }
+        return response;
+    }
+
+    private static ObjectNode openAiChat(String model, String content, int promptTokens) {
+        ObjectNode response = openAiEnvelope(model, "chat.completion");
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", content);
+        choice.put("finish_reason", "stop");
+        int completionTokens = countTokens(content);
+        response.putObject("usage")
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", completionTokens)
+                .put("total_tokens", promptTokens + completionTokens);
+        return response;
+    }
+
+    private static ObjectNode openAiChunk(String model, String content, String finishReason) {
+        ObjectNode response = openAiEnvelope(model, "chat.completion.chunk");
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode delta = choice.putObject("delta");
+        if (content != null) {
+            delta.put("content", content);
+        }
+        choice.put("finish_reason", finishReason);
+        return response;
+    }
+
+    private static ObjectNode openAiEnvelope(String model, String object) {
+        ObjectNode response = JSON.createObjectNode();
+        response.put("id", "stub-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        response.put("object", object);
+        response.put("created", Instant.now().getEpochSecond());
+        response.put("model", model);
+        return response;
+    }
+
+    private static ObjectNode error(Api api, String message) {
+        ObjectNode response = JSON.createObjectNode();
+        if (api == Api.OPENAI) {
+            response.putObject("error").put("message", message).put("type", "server_error");
+        } else {
+            response.put("error", message);
+        }
+        return response;
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void writeEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
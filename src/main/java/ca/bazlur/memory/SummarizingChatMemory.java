@@ -0,0 +1,286 @@
+package ca.bazlur.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chat memory bounded by a token budget that folds older turns into a running summary.
+ *
+ * <p>Recent turns are kept verbatim. When the memory exceeds its token budget or message limit,
+ * the oldest complete turns are handed to a background summarization, so the request path never
+ * waits for the summarizer. Until the new summary is ready the handed-over turns stay in the
+ * prompt, which keeps the context complete at the cost of briefly exceeding the budget.
+ *
+ * <p>If the summarizer fails, the handed-over turns stay in the prompt only as far as the token
+ * budget allows; the oldest are dropped beyond it. The summary is retried with exponential backoff
+ * when messages are added, so a summarizer that stays down neither grows the prompt nor is sent
+ * the backlog on every turn.
+ *
+ * <p>The summary is a message of its own after the system message rather than part of it, so the
+ * system message stays byte-identical from turn to turn and backends can reuse the cached prompt
+ * prefix; only the messages after a changed summary have to be processed again.
+ */
+public class SummarizingChatMemory implements ChatMemory {
+    private static final Logger logger = LoggerFactory.getLogger(SummarizingChatMemory.class);
+
+    private static final String SUMMARIZER_INSTRUCTIONS = """
+            You maintain a running summary of a conversation between a user and an assistant about \
+            technical systems. Merge the previous summary with the new turns into one concise summary. \
+            Keep component IDs, readings, faults, decisions and open questions; drop pleasantries. \
+            Answer with the summary only.""";
+
+    private static final long INITIAL_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final Object id;
+    private final int maxTokens;
+    private final int maxMessages;
+    private final Tokenizer tokenizer;
+    private final ChatLanguageModel summarizer;
+    private final Executor executor;
+
+    private SystemMessage systemMessage;
+    private String summary;
+    /** Turns handed to the summarizer that the current summary does not cover yet. */
+    private final List<ChatMessage> pending = new ArrayList<>();
+    private final List<ChatMessage> recent = new ArrayList<>();
+    private boolean summarizing;
+    private long generation;
+    /** Summaries that failed in a row, and when the next one may be attempted. */
+    private int failures;
+    private long retryAt;
+
+    /**
+     * Creates a memory that summarizes on virtual threads.
+     *
+     * @param maxTokens The token budget of all messages, including the system message and summary
+     * @param maxMessages The maximum number of recent messages kept verbatim
+     * @param tokenizer The tokenizer used to estimate message sizes
+     * @param summarizer The model that writes the summary
+     */
+    public SummarizingChatMemory(int maxTokens, int maxMessages, Tokenizer tokenizer, ChatLanguageModel summarizer) {
+        this("default", maxTokens, maxMessages, tokenizer, summarizer,
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("memory-summarizer").factory()));
+    }
+
+    /**
+     * Creates a memory.
+     *
+     * @param id The memory ID
+     * @param maxTokens The token budget of all messages, including the system message and summary
+     * @param maxMessages The maximum number of recent messages kept verbatim
+     * @param tokenizer The tokenizer used to estimate message sizes
+     * @param summarizer The model that writes the summary
+     * @param executor The executor summaries are generated on
+     */
+    public SummarizingChatMemory(Object id, int maxTokens, int maxMessages, Tokenizer tokenizer,
+                                 ChatLanguageModel summarizer, Executor executor) {
+        this.id = id;
+        this.maxTokens = maxTokens;
+        this.maxMessages = maxMessages;
+        this.tokenizer = tokenizer;
+        this.summarizer = summarizer;
+        this.executor = executor;
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof SystemMessage system) {
+            systemMessage = system;
+            return;
+        }
+        recent.add(message);
+        evictOldTurns();
+        summarizePending();
+        if (!summarizing) {
+            // The summarizer failed and waits for its next attempt.
+            dropPendingOverBudget();
+        }
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>(pending.size() + recent.size() + 2);
+        addPrefix(messages);
+        messages.addAll(pending);
+        messages.addAll(recent);
+        return messages;
+    }
+
+    @Override
+    public synchronized void clear() {
+        systemMessage = null;
+        summary = null;
+        pending.clear();
+        recent.clear();
+        // Results of summaries still running belong to the cleared conversation.
+        generation++;
+        summarizing = false;
+        failures = 0;
+    }
+
+    /**
+     * Gets the current summary of the turns no longer kept verbatim.
+     *
+     * @return The summary, or null if nothing has been summarized yet
+     */
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    /**
+     * Adds the system message and the summary, the messages that precede the turns.
+     */
+    private void addPrefix(List<ChatMessage> messages) {
+        if (systemMessage != null) {
+            messages.add(systemMessage);
+        }
+        if (summary != null) {
+            messages.add(SystemMessage.from("Summary of the earlier conversation:\n" + summary));
+        }
+    }
+
+    /**
+     * Moves the oldest complete turns out of the verbatim window while it is over budget. The latest
+     * turn always stays verbatim, and turns are moved whole so tool calls stay with their results.
+     */
+    private void evictOldTurns() {
+        while (overBudget()) {
+            int end = endOfFirstTurn(recent);
+            if (end >= recent.size()) {
+                break;
+            }
+            List<ChatMessage> turn = recent.subList(0, end);
+            pending.addAll(turn);
+            turn.clear();
+        }
+    }
+
+    /**
+     * Drops the oldest pending turns while the prompt is over budget, which keeps it bounded while
+     * the summarizer is failing. Turns are dropped whole.
+     */
+    private void dropPendingOverBudget() {
+        int dropped = 0;
+        while (!pending.isEmpty() && tokenCount() > maxTokens) {
+            List<ChatMessage> turn = pending.subList(0, endOfFirstTurn(pending));
+            dropped += turn.size();
+            turn.clear();
+        }
+        if (dropped > 0) {
+            logger.warn("Dropped {} chat messages that could not be summarized", dropped);
+        }
+    }
+
+    private int tokenCount() {
+        List<ChatMessage> counted = new ArrayList<>(pending.size() + recent.size() + 2);
+        addPrefix(counted);
+        counted.addAll(pending);
+        counted.addAll(recent);
+        return tokenizer.estimateTokenCountInMessages(counted);
+    }
+
+    private boolean overBudget() {
+        if (recent.size() > maxMessages) {
+            return true;
+        }
+        List<ChatMessage> counted = new ArrayList<>(recent.size() + 2);
+        addPrefix(counted);
+        counted.addAll(recent);
+        return tokenizer.estimateTokenCountInMessages(counted) > maxTokens;
+    }
+
+    private static int endOfFirstTurn(List<ChatMessage> messages) {
+        int end = 1;
+        while (end < messages.size() && !(messages.get(end) instanceof UserMessage)) {
+            end++;
+        }
+        return end;
+    }
+
+    private void summarizePending() {
+        if (summarizing || pending.isEmpty() || failures > 0 && System.nanoTime() - retryAt < 0) {
+            return;
+        }
+        summarizing = true;
+        String previousSummary = summary;
+        List<ChatMessage> turns = List.copyOf(pending);
+        long requestGeneration = generation;
+        executor.execute(() -> {
+            String newSummary = null;
+            try {
+                newSummary = summarize(previousSummary, turns);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to summarize {} chat messages; keeping them verbatim within the token budget", turns.size(), e);
+            }
+            onSummary(requestGeneration, turns.size(), newSummary);
+        });
+    }
+
+    private synchronized void onSummary(long requestGeneration, int summarizedCount, String newSummary) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        summarizing = false;
+        if (newSummary == null) {
+            failures++;
+            retryAt = System.nanoTime() + Math.min(MAX_RETRY_DELAY_NANOS,
+                    INITIAL_RETRY_DELAY_NANOS << Math.min(failures - 1, 20));
+            dropPendingOverBudget();
+            return;
+        }
+        failures = 0;
+        summary = newSummary;
+        pending.subList(0, summarizedCount).clear();
+        logger.debug("Chat memory summary updated, {} messages still pending", pending.size());
+        // Turns evicted while this summary was written are picked up by the next one.
+        summarizePending();
+    }
+
+    private String summarize(String previousSummary, List<ChatMessage> turns) {
+        StringBuilder prompt = new StringBuilder();
+        if (previousSummary != null) {
+            prompt.append("Previous summary:\n").append(previousSummary).append("\n\n");
+        }
+        prompt.append("New turns:\n");
+        for (ChatMessage turn : turns) {
+            String text = textOf(turn);
+            if (text != null) {
+                prompt.append(turn instanceof UserMessage ? "User: " : "Assistant: ").append(text).append('\n');
+            }
+        }
+        return summarizer.chat(List.of(SystemMessage.from(SUMMARIZER_INSTRUCTIONS), UserMessage.from(prompt.toString())))
+                .aiMessage()
+                .text();
+    }
+
+    private static String textOf(ChatMessage message) {
+        if (message instanceof UserMessage user) {
+            return user.hasSingleText() ? user.singleText() : null;
+        } else if (message instanceof AiMessage ai) {
+            return ai.text();
+        } else if (message instanceof ToolExecutionResultMessage result) {
+            return result.text();
+        }
+        return null;
+    }
+}
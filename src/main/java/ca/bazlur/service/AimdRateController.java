@@ -0,0 +1,204 @@
+package ca.bazlur.service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Finds the request concurrency and batch size at which a rate-limited provider is used at its
+ * real limit, with additive increase and multiplicative decrease (AIMD).
+ *
+ * <p>Every successful request raises the concurrency by {@code 1 / concurrency}, which adds one
+ * request in flight per round of requests, and grows the batch size by one step in the same way.
+ * A rate-limit response halves both and pauses all requests, at first for the initial backoff and
+ * then twice as long for every further rate-limit response in a row, or until the provider's
+ * limit resets if that is known. Rate-limit responses that arrive during a pause belong to the
+ * same overload and do not halve again. The result oscillates just below the limit instead of
+ * running far under it or repeatedly into it.
+ *
+ * <p>When the provider reports its remaining requests and tokens, as OpenAI does in its
+ * {@code x-ratelimit-*} headers, a request that does not fit the remaining budget waits for the
+ * reset instead of being sent to fail.
+ */
+public class AimdRateController {
+
+    /** Default pause after the first rate-limit response in a row. */
+    public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofSeconds(1);
+
+    private static final int INITIAL_CONCURRENCY = 2;
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final int maxConcurrency;
+    private final int minBatchTokens;
+    private final int maxBatchTokens;
+    private final long initialBackoffNanos;
+    private final LongSupplier nanoTime;
+
+    private double concurrency;
+    private double batchTokens;
+    private int inFlight;
+    private long pausedUntil;
+    private long backoffNanos;
+    private long remainingRequests = -1;
+    private long requestsResetAt;
+    private long remainingTokens = -1;
+    private long tokensResetAt;
+
+    /**
+     * Creates a controller.
+     *
+     * @param maxConcurrency The maximum number of requests in flight
+     * @param maxBatchTokens The maximum estimated tokens per request
+     */
+    public AimdRateController(int maxConcurrency, int maxBatchTokens) {
+        this(maxConcurrency, Math.min(512, maxBatchTokens), maxBatchTokens, DEFAULT_INITIAL_BACKOFF, System::nanoTime);
+    }
+
+    AimdRateController(int maxConcurrency, int minBatchTokens, int maxBatchTokens, Duration initialBackoff,
+                       LongSupplier nanoTime) {
+        if (maxConcurrency < 1 || minBatchTokens < 1 || maxBatchTokens < minBatchTokens) {
+            throw new IllegalArgumentException("Expected maxConcurrency >= 1 and 1 <= minBatchTokens <= maxBatchTokens");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.minBatchTokens = minBatchTokens;
+        this.maxBatchTokens = maxBatchTokens;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.nanoTime = nanoTime;
+        this.concurrency = Math.min(INITIAL_CONCURRENCY, maxConcurrency);
+        this.batchTokens = Math.max(minBatchTokens, maxBatchTokens / 4.0);
+        this.backoffNanos = initialBackoffNanos;
+        this.pausedUntil = nanoTime.getAsLong();
+    }
+
+    /**
+     * Gets the number of estimated tokens to put into the next request.
+     *
+     * @return The batch size in tokens
+     */
+    public synchronized int getBatchTokens() {
+        return (int) batchTokens;
+    }
+
+    /**
+     * Gets the number of requests currently allowed in flight.
+     *
+     * @return The concurrency limit
+     */
+    public synchronized int getConcurrency() {
+        return (int) concurrency;
+    }
+
+    /**
+     * Waits until a request of the given size may be sent and counts it as in flight. Every call
+     * must be followed by exactly one of {@link #onSuccess()}, {@link #onRateLimited()} or
+     * {@link #onFailure()}.
+     *
+     * @param tokens The estimated tokens of the request
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void acquire(int tokens) throws InterruptedException {
+        long delay;
+        while ((delay = delayNanos(tokens)) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, delay);
+        }
+        inFlight++;
+        if (remainingRequests >= 0) {
+            remainingRequests--;
+        }
+        if (remainingTokens >= 0) {
+            remainingTokens -= tokens;
+        }
+    }
+
+    /**
+     * Gets how long a request of the given size has to wait before it may be sent.
+     *
+     * @param tokens The estimated tokens of the request
+     * @return The delay in nanoseconds, or 0 if it may be sent now
+     */
+    synchronized long delayNanos(int tokens) {
+        long now = nanoTime.getAsLong();
+        if (now - pausedUntil < 0) {
+            return pausedUntil - now;
+        }
+        if (remainingRequests == 0 && now - requestsResetAt < 0) {
+            return requestsResetAt - now;
+        }
+        if (remainingTokens >= 0 && remainingTokens < tokens && now - tokensResetAt < 0) {
+            return tokensResetAt - now;
+        }
+        if (inFlight >= (int) concurrency) {
+            // Woken up by the release of a request.
+            return MAX_BACKOFF_NANOS;
+        }
+        return 0;
+    }
+
+    /**
+     * Records a successful request and increases the concurrency and batch size additively.
+     */
+    public synchronized void onSuccess() {
+        release();
+        backoffNanos = initialBackoffNanos;
+        batchTokens = Math.min(maxBatchTokens, batchTokens + minBatchTokens / concurrency);
+        concurrency = Math.min(maxConcurrency, concurrency + 1 / concurrency);
+    }
+
+    /**
+     * Records a rate-limited request. Unless a pause is already in progress, halves the concurrency
+     * and batch size and pauses all requests.
+     */
+    public synchronized void onRateLimited() {
+        release();
+        long now = nanoTime.getAsLong();
+        if (now - pausedUntil < 0) {
+            return;
+        }
+        concurrency = Math.max(1, concurrency / 2);
+        batchTokens = Math.max(minBatchTokens, batchTokens / 2);
+        long pause = backoffNanos;
+        if (remainingTokens >= 0 && tokensResetAt - now > pause) {
+            pause = tokensResetAt - now;
+        }
+        if (remainingRequests >= 0 && requestsResetAt - now > pause) {
+            pause = requestsResetAt - now;
+        }
+        pausedUntil = now + Math.min(pause, MAX_BACKOFF_NANOS);
+        backoffNanos = Math.min(backoffNanos * 2, MAX_BACKOFF_NANOS);
+    }
+
+    /**
+     * Records a request that failed for another reason than the rate limit.
+     */
+    public synchronized void onFailure() {
+        release();
+    }
+
+    /**
+     * Updates the remaining budget reported by the provider. Null arguments leave the respective
+     * budget unchanged.
+     *
+     * @param remainingRequests The requests left in the current window
+     * @param requestsReset The time until the request budget is refilled
+     * @param remainingTokens The tokens left in the current window
+     * @param tokensReset The time until the token budget is refilled
+     */
+    public synchronized void updateLimits(Long remainingRequests, Duration requestsReset, Long remainingTokens,
+                                          Duration tokensReset) {
+        long now = nanoTime.getAsLong();
+        if (remainingRequests != null && requestsReset != null) {
+            this.remainingRequests = remainingRequests;
+            this.requestsResetAt = now + requestsReset.toNanos();
+        }
+        if (remainingTokens != null && tokensReset != null) {
+            this.remainingTokens = remainingTokens;
+            this.tokensResetAt = now + tokensReset.toNanos();
+        }
+        notifyAll();
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+}
@@ -2,23 +2,40 @@ package ca.bazlur.service;
 
 import ca.bazlur.config.AIProvider;
 import ca.bazlur.config.ConfigProvider;
+import ca.bazlur.memory.SummarizingChatMemory;
+import ca.bazlur.service.QueryComplexityClassifier.Complexity;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.memory.ChatMemory;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.Tokenizer;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
 import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiChatModelName;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
 import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.MemoryId;
 import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.UserMessage;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
 /**
  * Service class that handles the assistant functionality. This class is responsible for creating
  * and configuring the AI assistant.
@@ -28,20 +45,77 @@ public class AssistantService {
 
   private final ConfigProvider config;
   private final EmbeddingStore<TextSegment> embeddingStore;
+  private final KnowledgeBaseRegistry registry;
+  private final Mode mode;
+
+  /** How the assistant is used. */
+  public enum Mode {
+    /** One conversation: answers remember the earlier turns, and follow-ups reuse retrievals. */
+    CONVERSATION,
+
+    /**
+     * Independent questions answered concurrently: there is no chat memory or follow-up cache, so
+     * messages may be processed from many threads at once, and the query embeddings of concurrent
+     * questions are joined into batched calls.
+     */
+    BATCH
+  }
+
+  /**
+   * Knowledge base of the message being processed, when the assistant serves the knowledge bases
+   * of a registry. The retriever runs on the calling thread and searches this knowledge base.
+   */
+  private final ThreadLocal<String> activeKnowledgeBase = new ThreadLocal<>();
+
+  /**
+   * Metadata filter of the message being processed. The retriever runs on the thread that called
+   * {@link #processMessage(String, Filter)}, so it picks the filter up from here.
+   */
+  private final ThreadLocal<Filter> activeFilter = new ThreadLocal<>();
+
+  /**
+   * Complexity of the message being processed, decided once its content has been retrieved and
+   * read by the chat model on the same thread to pick the small or the large model.
+   */
+  private final ThreadLocal<Complexity> activeComplexity = new ThreadLocal<>();
 
   /** Interface defining the assistant's capabilities. */
   public interface Assistant {
 
-    @SystemMessage("""
+    /** The system message that starts every prompt, kept constant so that backends can cache it. */
+    String SYSTEM_MESSAGE =
+        """
 					You are an AI assistant specialized in querying operational knowledge about technical systems 
 					(components, status, faults, procedures). Answer user questions accurately and concisely, 
 					relying *strictly* on the information provided in the context. Do not use any prior knowledge or make assumptions.
-					Return result in markdwon format.""")
+					Return result in markdwon format.""";
+
+    @SystemMessage(SYSTEM_MESSAGE)
     String chat(String userMessage);
   }
 
+  /** The assistant of a registry, which keeps a separate conversation for each knowledge base. */
+  public interface KnowledgeBaseAssistant {
+
+    @SystemMessage(Assistant.SYSTEM_MESSAGE)
+    String chat(@MemoryId String knowledgeBase, @UserMessage String userMessage);
+  }
+
   private Assistant assistant;
 
+  private KnowledgeBaseAssistant knowledgeBaseAssistant;
+
+  /**
+   * The retrievers of the knowledge bases of a registry, each holding the retrieval cache of its
+   * knowledge base. A retriever is dropped when its knowledge base is unloaded.
+   */
+  private final Map<String, ContentRetriever> retrievers = new ConcurrentHashMap<>();
+
+  /** The Ollama models behind the assistant, which the warmer keeps loaded. */
+  private final Set<ModelWarmer.OllamaModel> ollamaModels = new LinkedHashSet<>();
+
+  private ModelWarmer warmer;
+
   /**
    * Creates a new AssistantService with the given configuration and embedding store.
    *
@@ -49,8 +123,40 @@ public class AssistantService {
    * @param embeddingStore The embedding store containing the knowledge base
    */
   public AssistantService(ConfigProvider config, EmbeddingStore<TextSegment> embeddingStore) {
+    this(config, embeddingStore, Mode.CONVERSATION);
+  }
+
+  /**
+   * Creates a new AssistantService with the given configuration and embedding store for the
+   * given use.
+   *
+   * @param config The application configuration
+   * @param embeddingStore The embedding store containing the knowledge base
+   * @param mode Whether the messages form a conversation or are independent questions
+   */
+  public AssistantService(
+      ConfigProvider config, EmbeddingStore<TextSegment> embeddingStore, Mode mode) {
     this.config = config;
     this.embeddingStore = embeddingStore;
+    this.registry = null;
+    this.mode = mode;
+    initialize();
+  }
+
+  /**
+   * Creates a new AssistantService that answers from the knowledge bases of a registry, each
+   * message from the knowledge base it is sent to. Each knowledge base has its own conversation and
+   * retrieval cache, so nothing said about one knowledge base reaches the answers of another.
+   *
+   * @param config The application configuration
+   * @param registry The registry of the knowledge bases
+   */
+  public AssistantService(ConfigProvider config, KnowledgeBaseRegistry registry) {
+    this.config = config;
+    this.embeddingStore = null;
+    this.registry = registry;
+    this.mode = Mode.CONVERSATION;
+    registry.addUnloadListener(retrievers::remove);
     initialize();
   }
 
@@ -64,64 +170,203 @@ public class AssistantService {
     ChatLanguageModel chatModel = createChatModel();
     logger.info("Chat Model initialized.");
 
-    logger.info("Initializing {} Embedding Model...", provider);
+    logger.info("Initializing {} Embedding Model...", config.getEmbeddingProvider());
     EmbeddingModel embeddingModel = createEmbeddingModel();
     logger.info("Embedding Model initialized.");
 
     logger.info("Initializing Content Retriever...");
-    ContentRetriever contentRetriever = createContentRetriever(embeddingModel);
+    ContentRetriever contentRetriever =
+        createContentRetriever(
+            mode == Mode.BATCH
+                ? new CoalescingEmbeddingModel(embeddingModel, config.getBatchEmbeddingSize())
+                : embeddingModel);
     logger.info("Content Retriever initialized.");
 
-    ChatMemory chatMemory = MessageWindowChatMemory.withMaxMessages(config.getChatMemoryMessages());
-    logger.info("Chat Memory initialized (window size {}).", config.getChatMemoryMessages());
-
     logger.info("Creating AI Service...");
-    assistant =
-        AiServices.builder(Assistant.class)
-            .chatLanguageModel(chatModel)
+    DefaultRetrievalAugmentor retrievalAugmentor =
+        DefaultRetrievalAugmentor.builder()
             .contentRetriever(contentRetriever)
-            .chatMemory(chatMemory)
+            .contentInjector(new StableContentInjector())
             .build();
+    if (registry != null) {
+      Tokenizer tokenizer = createTokenizer();
+      knowledgeBaseAssistant =
+          AiServices.builder(KnowledgeBaseAssistant.class)
+              .chatLanguageModel(chatModel)
+              .retrievalAugmentor(retrievalAugmentor)
+              .chatMemoryProvider(knowledgeBase -> createChatMemory(tokenizer, chatModel))
+              .build();
+      logger.info(
+          "Chat Memory initialized per knowledge base ({} tokens, {} recent messages).",
+          config.getChatMemoryMaxTokens(),
+          config.getChatMemoryMessages());
+    } else {
+      AiServices<Assistant> builder =
+          AiServices.builder(Assistant.class)
+              .chatLanguageModel(chatModel)
+              .retrievalAugmentor(retrievalAugmentor);
+      if (mode == Mode.CONVERSATION) {
+        builder.chatMemory(createChatMemory(createTokenizer(), chatModel));
+        logger.info(
+            "Chat Memory initialized ({} tokens, {} recent messages).",
+            config.getChatMemoryMaxTokens(),
+            config.getChatMemoryMessages());
+      } else {
+        logger.info(
+            "Answering independent questions; query embeddings are batched up to {} texts.",
+            config.getBatchEmbeddingSize());
+      }
+      assistant = builder.build();
+    }
     logger.info("AI Service created. Assistant is ready.");
+
+    if (config.isWarmupEnabled() && !ollamaModels.isEmpty()) {
+      warmer =
+          new ModelWarmer(
+              List.copyOf(ollamaModels), Duration.ofSeconds(config.getWarmupKeepAliveSeconds()));
+      warmer.start();
+      logger.info(
+          "Loading {} Ollama models (keep-alive every {} s).",
+          ollamaModels.size(),
+          config.getWarmupKeepAliveSeconds());
+    }
   }
 
   /**
-   * Creates a chat model using the configured settings.
+   * Creates the chat model. With a small chat model configured, simple lookups are routed to it and
+   * everything else to the chat model.
    *
    * @return The configured chat model
    */
   private ChatLanguageModel createChatModel() {
-    if (config.getAIProvider() == AIProvider.OPENAI) {
+    ChatLanguageModel large = createChatModel(false);
+    if (config.getSmallChatModelName() == null) {
+      return large;
+    }
+    logger.info(
+        "Routing simple questions to {} and others to {}.",
+        config.getSmallChatModelName(),
+        config.getChatModelName());
+    return new RoutingChatModel(createChatModel(true), large, activeComplexity::get);
+  }
+
+  /**
+   * Creates the chat model of one tier. With a fallback provider configured, requests go to the
+   * healthier of the two and are hedged to the other one when the answer takes longer than the
+   * hedge delay.
+   *
+   * @param small Whether to create the small model rather than the large one
+   * @return The configured chat model
+   */
+  private ChatLanguageModel createChatModel(boolean small) {
+    ChatLanguageModel primary = createChatModel(config, small);
+    addOllamaChatModel(config, small);
+    AIProvider fallback = config.getFallbackProvider();
+    if (fallback == null) {
+      return primary;
+    }
+    logger.info(
+        "Hedging chat requests to {} after {} ms.", fallback, config.getHedgeDelayMillis());
+    ChatLanguageModel secondary = createChatModel(config.forProvider(fallback), small);
+    addOllamaChatModel(config.forProvider(fallback), small);
+    return new HedgingChatModel(
+        List.of(
+            new HedgingChatModel.Backend(config.getAIProvider().name(), primary),
+            new HedgingChatModel.Backend(fallback.name(), secondary)),
+        Duration.ofMillis(config.getHedgeDelayMillis()));
+  }
+
+  /**
+   * Creates a chat model for the AI provider of the given configuration.
+   *
+   * @param providerConfig The configuration selecting the provider
+   * @param small Whether to use the provider's small chat model, if it has one
+   * @return The configured chat model
+   */
+  private static ChatLanguageModel createChatModel(ConfigProvider providerConfig, boolean small) {
+    String modelName = chatModelName(providerConfig, small);
+    if (providerConfig.getAIProvider() == AIProvider.OPENAI) {
       return OpenAiChatModel.builder()
-          .apiKey(config.getApiKey())
-          .modelName(config.getChatModelName())
-          .logRequests(config.isLogRequests())
-          .logResponses(config.isLogResponses())
+          .baseUrl(providerConfig.getBaseUrl())
+          .apiKey(providerConfig.getApiKey())
+          .modelName(modelName)
+          .logRequests(providerConfig.isLogRequests())
+          .logResponses(providerConfig.isLogResponses())
           .build();
     } else {
       return OllamaChatModel.builder()
-          .baseUrl(config.getBaseUrl())
-          .modelName(config.getChatModelName())
-          .logRequests(config.isLogRequests())
-          .logResponses(config.isLogResponses())
+          .baseUrl(providerConfig.getBaseUrl())
+          .modelName(modelName)
+          .logRequests(providerConfig.isLogRequests())
+          .logResponses(providerConfig.isLogResponses())
           .build();
     }
   }
 
+  private static String chatModelName(ConfigProvider providerConfig, boolean small) {
+    return small && providerConfig.getSmallChatModelName() != null
+        ? providerConfig.getSmallChatModelName()
+        : providerConfig.getChatModelName();
+  }
+
+  /**
+   * Records a chat model for the warmer if the provider of the given configuration is Ollama.
+   *
+   * @param providerConfig The configuration selecting the provider
+   * @param small Whether the model is the provider's small chat model
+   */
+  private void addOllamaChatModel(ConfigProvider providerConfig, boolean small) {
+    if (providerConfig.getAIProvider() == AIProvider.OLLAMA) {
+      ollamaModels.add(
+          new ModelWarmer.OllamaModel(
+              providerConfig.getBaseUrl(), chatModelName(providerConfig, small), false));
+    }
+  }
+
+  private ChatMemory createChatMemory(Tokenizer tokenizer, ChatLanguageModel chatModel) {
+    return new SummarizingChatMemory(
+        config.getChatMemoryMaxTokens(), config.getChatMemoryMessages(), tokenizer, chatModel);
+  }
+
+  /**
+   * Creates the tokenizer used to keep the chat memory within its token budget. Ollama models have
+   * no tokenizer available here, so their token counts are estimated with an OpenAI encoding.
+   *
+   * @return The tokenizer
+   */
+  private Tokenizer createTokenizer() {
+    if (config.getAIProvider() == AIProvider.OPENAI) {
+      OpenAiTokenizer tokenizer = new OpenAiTokenizer(config.getChatModelName());
+      try {
+        tokenizer.estimateTokenCountInText("");
+        return tokenizer;
+      } catch (RuntimeException e) {
+        logger.info("No tokenizer known for {}; estimating token counts.", config.getChatModelName());
+      }
+    }
+    return new OpenAiTokenizer(OpenAiChatModelName.GPT_4_O_MINI);
+  }
+
   /**
    * Creates an embedding model using the configured settings.
    *
    * @return The configured embedding model
    */
   private EmbeddingModel createEmbeddingModel() {
-    if (config.getAIProvider() == AIProvider.OPENAI) {
+    AIProvider provider = config.getEmbeddingProvider();
+    if (provider == AIProvider.LOCAL) {
+      return LocalEmbeddingModels.get(config);
+    } else if (provider == AIProvider.OPENAI) {
       return OpenAiEmbeddingModel.builder()
+          .baseUrl(config.getBaseUrl())
           .apiKey(config.getApiKey())
           .modelName(config.getEmbeddingModelName())
           .logRequests(config.isLogRequests())
           .logResponses(config.isLogResponses())
           .build();
     } else {
+      ollamaModels.add(
+          new ModelWarmer.OllamaModel(config.getBaseUrl(), config.getEmbeddingModelName(), true));
       return OllamaEmbeddingModel.builder()
           .baseUrl(config.getBaseUrl())
           .modelName(config.getEmbeddingModelName())
@@ -132,26 +377,79 @@ public class AssistantService {
   }
 
   /**
-   * Creates a content retriever using the configured settings.
+   * Creates a content retriever using the configured settings. With a registry, each knowledge
+   * base gets its own retriever, so that follow-up questions are only answered from the cached
+   * candidates of the same knowledge base.
    *
    * @param embeddingModel The embedding model to use
    * @return The configured content retriever
    */
   private ContentRetriever createContentRetriever(EmbeddingModel embeddingModel) {
-    ContentRetriever contentRetriever =
-        EmbeddingStoreContentRetriever.builder()
-            .embeddingStore(embeddingStore)
-            .embeddingModel(embeddingModel)
-            .maxResults(config.getMaxResults())
-            .minScore(config.getMinScore())
-            .build();
+    ContentRetriever contentRetriever;
+    if (registry == null) {
+      contentRetriever = createContentRetriever(embeddingModel, query -> embeddingStore);
+    } else {
+      contentRetriever =
+          query ->
+              retrievers
+                  .computeIfAbsent(
+                      activeKnowledgeBase.get(),
+                      name -> createContentRetriever(embeddingModel, q -> registry.get(name)))
+                  .retrieve(query);
+    }
+    if (config.getSmallChatModelName() != null) {
+      QueryComplexityClassifier classifier =
+          new QueryComplexityClassifier(
+              config.getRouterSimpleMaxWords(), config.getRouterSimpleMinScore());
+      ContentRetriever retriever = contentRetriever;
+      contentRetriever =
+          query -> {
+            List<Content> contents = retriever.retrieve(query);
+            activeComplexity.set(classifier.classify(query.text(), contents));
+            return contents;
+          };
+    }
     logger.info(
-        "Content Retriever configured with maxResults={}, minScore={}",
+        "Content Retriever configured with maxResults={}, minScore={}, maxSubQueries={},"
+            + " sessionCandidates={}",
         config.getMaxResults(),
-        config.getMinScore());
+        config.getMinScore(),
+        config.getMaxSubQueries(),
+        config.getSessionCandidates());
     return contentRetriever;
   }
 
+  /**
+   * Creates the content retriever of one embedding store.
+   *
+   * @param embeddingModel The embedding model to use
+   * @param storeProvider Gives the store to search; looked up for every query, so that an
+   *     unloaded knowledge base is loaded again
+   * @return The content retriever
+   */
+  private ContentRetriever createContentRetriever(
+      EmbeddingModel embeddingModel, Function<Query, EmbeddingStore<TextSegment>> storeProvider) {
+    MultiQueryContentRetriever multiQueryRetriever =
+        new MultiQueryContentRetriever(
+            storeProvider,
+            embeddingModel,
+            new QueryDecomposer(config.getMaxSubQueries()),
+            config.getMaxResults(),
+            config.getMinScore(),
+            query -> activeFilter.get());
+    if (config.getSessionCandidates() <= 0 || mode == Mode.BATCH) {
+      return multiQueryRetriever;
+    }
+    return new SessionContentRetriever(
+        multiQueryRetriever,
+        embeddingModel,
+        config.getMaxResults(),
+        config.getMinScore(),
+        config.getSessionCandidates(),
+        config.getSessionMinSimilarity(),
+        query -> activeFilter.get());
+  }
+
   /**
    * Processes a user message and returns the assistant's response.
    *
@@ -159,7 +457,57 @@ public class AssistantService {
    * @return The assistant's response
    */
   public String processMessage(String userMessage) {
-    logger.debug("Processing user message: {}", userMessage);
-    return assistant.chat(userMessage);
+    return processMessage(userMessage, null);
+  }
+
+  /**
+   * Processes a user message, retrieving context only from segments whose metadata matches the
+   * filter.
+   *
+   * @param userMessage The user's message
+   * @param filter The metadata filter to apply to retrieval, or null to search all segments
+   * @return The assistant's response
+   */
+  public String processMessage(String userMessage, Filter filter) {
+    return processMessage(null, userMessage, filter);
+  }
+
+  /**
+   * Processes a user message sent to one knowledge base of the registry, retrieving context only
+   * from segments whose metadata matches the filter.
+   *
+   * @param knowledgeBase The name of the knowledge base to answer from; ignored without a registry
+   * @param userMessage The user's message
+   * @param filter The metadata filter to apply to retrieval, or null to search all segments
+   * @return The assistant's response
+   * @throws IllegalArgumentException if the assistant has a registry and no knowledge base is given
+   *     or the registry has no knowledge base of that name
+   */
+  public String processMessage(String knowledgeBase, String userMessage, Filter filter) {
+    if (registry != null && knowledgeBase == null) {
+      throw new IllegalArgumentException("Select a knowledge base to ask.");
+    }
+    if (registry != null && !registry.contains(knowledgeBase)) {
+      throw new IllegalArgumentException("Unknown knowledge base '" + knowledgeBase + "'.");
+    }
+    logger.debug(
+        "Processing user message: {} (knowledge base {}, filter {})",
+        userMessage,
+        knowledgeBase,
+        filter);
+    activeKnowledgeBase.set(knowledgeBase);
+    activeFilter.set(filter);
+    if (warmer != null) {
+      warmer.touch();
+    }
+    try {
+      return registry != null
+          ? knowledgeBaseAssistant.chat(knowledgeBase, userMessage)
+          : assistant.chat(userMessage);
+    } finally {
+      activeKnowledgeBase.remove();
+      activeFilter.remove();
+      activeComplexity.remove();
+    }
   }
 }
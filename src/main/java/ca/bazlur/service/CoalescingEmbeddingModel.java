@@ -0,0 +1,149 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Embedding model that joins the embedding requests of concurrent callers into batched calls.
+ *
+ * <p>One call to the underlying model is in flight at a time. The texts requested meanwhile queue
+ * up and are sent together, up to the maximum batch size, by one of the waiting callers when the
+ * call returns. A single caller therefore waits no longer than it would without batching, while
+ * many concurrent questions, as in batch mode, need a fraction of the embedding calls.
+ */
+public class CoalescingEmbeddingModel implements EmbeddingModel {
+
+    private record Request(TextSegment segment, CompletableFuture<Embedding> embedding) {
+    }
+
+    private final EmbeddingModel delegate;
+    private final int maxBatchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private final Deque<Request> pending = new ArrayDeque<>();
+    private boolean dispatching;
+
+    /**
+     * Creates a coalescing model.
+     *
+     * @param delegate The model that embeds the batches
+     * @param maxBatchSize The most texts sent in one call
+     */
+    public CoalescingEmbeddingModel(EmbeddingModel delegate, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        if (segments.isEmpty()) {
+            return Response.from(List.of());
+        }
+        List<CompletableFuture<Embedding>> embeddings = new ArrayList<>(segments.size());
+        lock.lock();
+        try {
+            for (TextSegment segment : segments) {
+                CompletableFuture<Embedding> embedding = new CompletableFuture<>();
+                pending.addLast(new Request(segment, embedding));
+                embeddings.add(embedding);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        while (true) {
+            List<Request> batch;
+            lock.lock();
+            try {
+                while (dispatching && !isDone(embeddings)) {
+                    idle.await();
+                }
+                if (isDone(embeddings)) {
+                    break;
+                }
+                batch = takeBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for embeddings", e);
+            } finally {
+                lock.unlock();
+            }
+            dispatch(batch);
+        }
+
+        List<Embedding> result = new ArrayList<>(embeddings.size());
+        for (CompletableFuture<Embedding> embedding : embeddings) {
+            try {
+                result.add(embedding.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtime ? runtime
+                        : new IllegalStateException("Embedding failed", e.getCause());
+            }
+        }
+        return Response.from(result);
+    }
+
+    private static boolean isDone(List<CompletableFuture<Embedding>> embeddings) {
+        return embeddings.stream().allMatch(CompletableFuture::isDone);
+    }
+
+    /**
+     * Takes the oldest pending requests and marks a call as in flight. Called with the lock held.
+     */
+    private List<Request> takeBatch() {
+        List<Request> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+        while (batch.size() < maxBatchSize && !pending.isEmpty()) {
+            batch.add(pending.removeFirst());
+        }
+        dispatching = true;
+        return batch;
+    }
+
+    /**
+     * Embeds a batch, completes its requests and lets the next caller send the requests that
+     * queued up meanwhile.
+     */
+    private void dispatch(List<Request> batch) {
+        try {
+            List<Embedding> embeddings = delegate.embedAll(batch.stream().map(Request::segment).toList()).content();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).embedding().complete(embeddings.get(i));
+            }
+        } catch (RuntimeException | Error e) {
+            for (Request request : batch) {
+                request.embedding().completeExceptionally(e);
+            }
+            if (e instanceof Error) {
+                throw e;
+            }
+        } finally {
+            lock.lock();
+            try {
+                dispatching = false;
+                idle.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
@@ -0,0 +1,283 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Embeddings computed during an ingestion that has not completed yet, so that an ingestion that
+ * fails part-way, for example because the provider's rate limit could not be met, resumes without
+ * paying for the segments it already embedded.
+ *
+ * <p>Embeddings are keyed by the SHA-256 of the segment text. With a file, every embedded batch is
+ * appended as it completes; the file starts with the name of the embedding model, and a file
+ * written by another model is discarded. Each embedding is a record of the form {@code length,
+ * CRC32C, hash, vector}; a record that is cut short by a crash or fails its checksum ends the file
+ * and is overwritten by the next append. The file is locked while it is open, so two ingestions
+ * cannot share it, and deleted once the ingestion completes.
+ */
+public class EmbeddingCheckpoint implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingCheckpoint.class);
+
+    /** Magic number at the start of a checkpoint file ("KBEC"). */
+    private static final int MAGIC = 0x4B424543;
+    private static final short FORMAT_VERSION = 1;
+    private static final int HASH_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final Map<String, float[]> embeddings = new ConcurrentHashMap<>();
+    private final Path path;
+    private FileChannel channel;
+
+    private EmbeddingCheckpoint(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Creates a checkpoint that is kept in memory only.
+     *
+     * @return The checkpoint
+     */
+    public static EmbeddingCheckpoint inMemory() {
+        return new EmbeddingCheckpoint(null);
+    }
+
+    /**
+     * Opens a checkpoint file, loading the embeddings it holds if it was written by the same model.
+     *
+     * @param path The checkpoint file; created if it does not exist
+     * @param model The name of the embedding model, such as provider and model name
+     * @return The checkpoint, open for appending
+     * @throws IOException if the file cannot be read or written, or is in use by another ingestion
+     */
+    public static EmbeddingCheckpoint open(Path path, String model) throws IOException {
+        EmbeddingCheckpoint checkpoint = new EmbeddingCheckpoint(path);
+        byte[] header = header(model);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            lock(channel, path);
+            long validLength = checkpoint.load(channel, header);
+            channel.truncate(validLength);
+            channel.position(validLength);
+            if (validLength == 0) {
+                writeFully(channel, ByteBuffer.wrap(header));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        checkpoint.channel = channel;
+        if (!checkpoint.embeddings.isEmpty()) {
+            logger.info("Resuming ingestion with {} embeddings from checkpoint '{}'.", checkpoint.embeddings.size(), path);
+        }
+        return checkpoint;
+    }
+
+    private static void lock(FileChannel channel, Path path) throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            throw new IOException("Checkpoint " + path + " is in use by another ingestion");
+        }
+    }
+
+    private static byte[] header(String model) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeShort(FORMAT_VERSION);
+        header.writeUTF(model);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the embeddings of the file.
+     *
+     * @return The length of the intact part of the file, or 0 if the file must be started anew
+     */
+    private long load(FileChannel channel, byte[] expectedHeader) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize == 0) {
+            return 0;
+        }
+        // Not closed: closing the stream would close the channel
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        byte[] header = new byte[expectedHeader.length];
+        if (fileSize >= header.length) {
+            in.readFully(header);
+        }
+        if (!Arrays.equals(header, expectedHeader)) {
+            logger.info("Discarding checkpoint '{}' written by another embedding model.", path);
+            return 0;
+        }
+        long validLength = header.length;
+        while (validLength < fileSize) {
+            byte[] body = readRecord(in, fileSize - validLength);
+            if (body == null) {
+                logger.warn("Discarding {} bytes of incomplete or damaged records at the end of {}",
+                        fileSize - validLength, path);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(body);
+            byte[] hash = new byte[HASH_BYTES];
+            record.get(hash);
+            float[] vector = new float[record.remaining() / Float.BYTES];
+            record.asFloatBuffer().get(vector);
+            embeddings.put(HexFormat.of().formatHex(hash), vector);
+            validLength += RECORD_HEADER_BYTES + body.length;
+        }
+        return validLength;
+    }
+
+    /**
+     * Reads the body of the next record, or returns null if it is incomplete or fails its checksum.
+     */
+    private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        if (remaining < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        int length = in.readInt();
+        int checksum = in.readInt();
+        if (length <= HASH_BYTES || (length - HASH_BYTES) % Float.BYTES != 0
+                || length > remaining - RECORD_HEADER_BYTES) {
+            return null;
+        }
+        byte[] body = new byte[length];
+        try {
+            in.readFully(body);
+        } catch (EOFException e) {
+            return null;
+        }
+        return checksum(body) == checksum ? body : null;
+    }
+
+    /**
+     * Gets the embedding of a text, if it is in the checkpoint.
+     *
+     * @param text The segment text
+     * @return The embedding, or null if the text has not been embedded yet
+     */
+    public Embedding get(String text) {
+        float[] vector = embeddings.get(key(text));
+        return vector == null ? null : Embedding.from(vector);
+    }
+
+    /**
+     * Adds the embeddings of a batch and writes them to the file.
+     *
+     * @param texts The segment texts
+     * @param batch The embeddings, in the order of the texts
+     */
+    public synchronized void putAll(List<String> texts, List<Embedding> batch) {
+        try {
+            ByteBuffer[] records = new ByteBuffer[channel != null ? texts.size() : 0];
+            for (int i = 0; i < texts.size(); i++) {
+                String key = key(texts.get(i));
+                float[] vector = batch.get(i).vector();
+                if (channel != null) {
+                    records[i] = record(HexFormat.of().parseHex(key), vector);
+                }
+                embeddings.put(key, vector);
+            }
+            // A gathering write appends the whole batch with one system call
+            while (records.length > 0 && records[records.length - 1].hasRemaining()) {
+                channel.write(records);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write checkpoint " + path, e);
+        }
+    }
+
+    /**
+     * Gets the number of embeddings in the checkpoint.
+     *
+     * @return The number of embeddings
+     */
+    public int size() {
+        return embeddings.size();
+    }
+
+    /**
+     * Closes the checkpoint and deletes its file, once the ingestion it belongs to has completed.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    public void delete() throws IOException {
+        close();
+        embeddings.clear();
+        if (path != null) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static ByteBuffer record(byte[] hash, float[] vector) {
+        ByteBuffer body = ByteBuffer.allocate(HASH_BYTES + Float.BYTES * vector.length);
+        body.put(hash).asFloatBuffer().put(vector);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + body.capacity());
+        record.putInt(body.capacity()).putInt(checksum(body.array())).put(body.array()).flip();
+        return record;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static String key(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Chat model that sends each request to the healthiest of several backends and hedges to the next
+ * one when the answer is slow.
+ *
+ * <p>If the first backend has not answered within the hedge delay, or fails before that, the same
+ * request is sent to the next backend. The first successful answer wins and the other attempts are
+ * cancelled, which interrupts their threads; whether that aborts the HTTP call depends on the
+ * client. The latency of a stalled backend is thereby capped at the hedge delay plus the latency of
+ * the next one.
+ *
+ * <p>Each backend has a health score: an exponentially weighted failure rate, where an attempt
+ * counts as failed if it threw or was overtaken by a hedge started after it. Failures fade with a
+ * half-life, so a backend recovers once it stops failing. Backends whose failure rate is below one
+ * half are tried first, in their configured order, so a backend that keeps stalling stops
+ * delaying every request and only serves as the hedge until it has recovered.
+ */
+public class HedgingChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(HedgingChatModel.class);
+
+    /** Default time after which the failures of a backend count half as much. */
+    public static final Duration DEFAULT_RECOVERY_HALF_LIFE = Duration.ofSeconds(30);
+
+    private static final double FAILURE_WEIGHT = 0.3;
+    private static final double UNHEALTHY_FAILURE_RATE = 0.5;
+
+    /**
+     * A chat model to route to.
+     *
+     * @param name The name used in logs
+     * @param model The model
+     */
+    public record Backend(String name, ChatLanguageModel model) {
+    }
+
+    private final List<BackendState> backends;
+    private final Duration hedgeDelay;
+    private final long halfLifeNanos;
+    private final LongSupplier nanoTime;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Creates a hedging chat model.
+     *
+     * @param backends The backends in order of preference
+     * @param hedgeDelay The time to wait for an answer before sending the request to the next backend
+     */
+    public HedgingChatModel(List<Backend> backends, Duration hedgeDelay) {
+        this(backends, hedgeDelay, DEFAULT_RECOVERY_HALF_LIFE, System::nanoTime);
+    }
+
+    HedgingChatModel(List<Backend> backends, Duration hedgeDelay, Duration recoveryHalfLife, LongSupplier nanoTime) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend is required");
+        }
+        this.hedgeDelay = hedgeDelay;
+        this.halfLifeNanos = Math.max(recoveryHalfLife.toNanos(), 1);
+        this.nanoTime = nanoTime;
+        this.backends = backends.stream().map(BackendState::new).toList();
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest request) {
+        List<BackendState> order = rankByHealth();
+        BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        List<Attempt> attempts = new ArrayList<>();
+        RuntimeException failure = null;
+        int pending = 0;
+        try {
+            while (true) {
+                boolean canHedge = attempts.size() < order.size();
+                if (canHedge && pending == 0) {
+                    attempts.add(start(order.get(attempts.size()), request, outcomes));
+                    pending++;
+                }
+                Outcome outcome = canHedge
+                        ? outcomes.poll(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS)
+                        : outcomes.take();
+                if (outcome == null) {
+                    BackendState next = order.get(attempts.size());
+                    logger.info("No answer from {} within {} ms, hedging to {}",
+                            attempts.get(attempts.size() - 1).backend().backend().name(), hedgeDelay.toMillis(),
+                            next.backend().name());
+                    attempts.add(start(next, request, outcomes));
+                    pending++;
+                    continue;
+                }
+                pending--;
+                if (outcome.error() == null) {
+                    outcome.backend().record(false);
+                    penalizeOvertaken(attempts, outcome.backend());
+                    return outcome.response();
+                }
+                outcome.backend().record(true);
+                logger.warn("Chat request to {} failed: {}", outcome.backend().backend().name(),
+                        outcome.error().toString());
+                if (failure == null) {
+                    failure = outcome.error();
+                } else {
+                    failure.addSuppressed(outcome.error());
+                }
+                if (pending == 0 && attempts.size() == order.size()) {
+                    throw failure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a chat response", e);
+        } finally {
+            for (Attempt attempt : attempts) {
+                attempt.future().cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Records a failure for the attempts that were started before the winner and had not finished,
+     * since a hedge overtook them.
+     */
+    private static void penalizeOvertaken(List<Attempt> attempts, BackendState winner) {
+        for (Attempt attempt : attempts) {
+            if (attempt.backend() == winner) {
+                return;
+            }
+            if (!attempt.future().isDone()) {
+                attempt.backend().record(true);
+            }
+        }
+    }
+
+    private Attempt start(BackendState backend, ChatRequest request, BlockingQueue<Outcome> outcomes) {
+        Future<?> future = executor.submit(() -> {
+            try {
+                outcomes.add(new Outcome(backend, backend.backend().model().chat(request), null));
+            } catch (RuntimeException e) {
+                if (!Thread.currentThread().isInterrupted()) {
+                    outcomes.add(new Outcome(backend, null, e));
+                }
+            }
+        });
+        return new Attempt(backend, future);
+    }
+
+    /**
+     * Orders the backends healthy first, keeping the configured order within each group.
+     */
+    private List<BackendState> rankByHealth() {
+        List<BackendState> healthy = new ArrayList<>();
+        List<BackendState> unhealthy = new ArrayList<>();
+        for (BackendState backend : backends) {
+            (backend.failureRate() < UNHEALTHY_FAILURE_RATE ? healthy : unhealthy).add(backend);
+        }
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    /**
+     * Gets the current failure rate of a backend.
+     *
+     * @param name The backend name
+     * @return The exponentially weighted failure rate between 0 and 1
+     */
+    public double getFailureRate(String name) {
+        return backends.stream()
+                .filter(backend -> backend.backend().name().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown backend " + name))
+                .failureRate();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        Set<Capability> capabilities = new HashSet<>(backends.get(0).backend().model().supportedCapabilities());
+        for (BackendState backend : backends) {
+            capabilities.retainAll(backend.backend().model().supportedCapabilities());
+        }
+        return capabilities;
+    }
+
+    private record Outcome(BackendState backend, ChatResponse response, RuntimeException error) {
+    }
+
+    private record Attempt(BackendState backend, Future<?> future) {
+    }
+
+    /**
+     * A backend with its failure rate, which decays towards zero while nothing is recorded.
+     */
+    private final class BackendState {
+        private final Backend backend;
+        private double failureRate;
+        private long updatedAt;
+
+        BackendState(Backend backend) {
+            this.backend = backend;
+            this.updatedAt = nanoTime.getAsLong();
+        }
+
+        Backend backend() {
+            return backend;
+        }
+
+        synchronized double failureRate() {
+            return decayed(nanoTime.getAsLong());
+        }
+
+        synchronized void record(boolean failed) {
+            long now = nanoTime.getAsLong();
+            failureRate = decayed(now) * (1 - FAILURE_WEIGHT) + (failed ? FAILURE_WEIGHT : 0);
+            updatedAt = now;
+        }
+
+        private double decayed(long now) {
+            return failureRate * Math.pow(0.5, (double) (now - updatedAt) / halfLifeNanos);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package ca.bazlur.service;
+
+import ca.bazlur.config.ConfigProvider;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Named knowledge bases, such as one per plant, that are loaded on first use and unloaded when
+ * memory runs short.
+ *
+ * <p>Every subdirectory of the registry directory is a knowledge base: its {@code .txt} files are
+ * the sources, and its prebuilt index is kept next to them under the file name of
+ * {@code index.path}. A knowledge base is loaded from its index when it is first asked for; a
+ * missing or stale index is built from the sources and written first, so every knowledge base is
+ * embedded once. Concurrent requests for a knowledge base that is being loaded wait for the same
+ * load.
+ *
+ * <p>The memory of a loaded knowledge base is estimated by the size of its index file, which holds
+ * the vectors and segment text the store keeps in memory. When the loaded knowledge bases exceed
+ * the memory budget, the least recently used ones are unloaded, never the one just loaded. An
+ * unloaded store still answers the searches already running on it; a durable store is closed,
+ * which only ends its writes. Unload listeners are told about every unloaded knowledge base, so
+ * that state kept for it elsewhere, such as its retrieval cache, is released with it.
+ */
+public class KnowledgeBaseRegistry implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(KnowledgeBaseRegistry.class);
+
+    private static final String SOURCE_EXTENSION = ".txt";
+
+    /**
+     * A loaded knowledge base.
+     *
+     * @param store The embedding store holding the knowledge base
+     * @param bytes The estimated memory of the store
+     */
+    record Loaded(EmbeddingStore<TextSegment> store, long bytes) {
+    }
+
+    private final Path directory;
+    private final long memoryBytes;
+    private final Function<Path, Loaded> loader;
+
+    /** Loaded knowledge bases in access order, least recently used first. */
+    private final LinkedHashMap<String, Loaded> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Loaded>> loading = new HashMap<>();
+    private final List<Consumer<String>> unloadListeners = new CopyOnWriteArrayList<>();
+    private long loadedBytes;
+
+    /**
+     * Creates a registry over the configured knowledge base directory.
+     *
+     * @param config The application configuration; {@code kb.dir} must be set
+     */
+    public KnowledgeBaseRegistry(ConfigProvider config) {
+        this(Path.of(config.getKnowledgeBaseDir()), config.getKnowledgeBaseMemoryBytes(),
+                knowledgeBase -> loadFromIndex(config.forKnowledgeBase(knowledgeBase), knowledgeBase));
+    }
+
+    KnowledgeBaseRegistry(Path directory, long memoryBytes, Function<Path, Loaded> loader) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.memoryBytes = memoryBytes;
+        this.loader = loader;
+    }
+
+    /**
+     * Gets the names of the knowledge bases in the registry directory.
+     *
+     * @return The names, sorted
+     */
+    public List<String> names() {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.filter(Files::isDirectory)
+                    .map(entry -> entry.getFileName().toString())
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list knowledge bases in " + directory, e);
+        }
+    }
+
+    /**
+     * Gets the store of a knowledge base, loading it if it is not loaded.
+     *
+     * @param name The name of the knowledge base
+     * @return The embedding store of the knowledge base
+     * @throws IllegalArgumentException if there is no knowledge base of that name
+     * @throws RuntimeException if the knowledge base cannot be loaded
+     */
+    public EmbeddingStore<TextSegment> get(String name) {
+        if (!contains(name)) {
+            throw new IllegalArgumentException("Unknown knowledge base '" + name + "'.");
+        }
+        Path knowledgeBase = directory.resolve(name);
+
+        CompletableFuture<Loaded> future;
+        boolean owner;
+        synchronized (this) {
+            Loaded knowledge = loaded.get(name);
+            if (knowledge != null) {
+                return knowledge.store();
+            }
+            future = loading.get(name);
+            owner = future == null;
+            if (owner) {
+                future = new CompletableFuture<>();
+                loading.put(name, future);
+            }
+        }
+        if (owner) {
+            load(name, knowledgeBase, future);
+        }
+        try {
+            return future.join().store();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime
+                    : new IllegalStateException("Failed to load knowledge base '" + name + "'", e.getCause());
+        }
+    }
+
+    /**
+     * Checks whether there is a knowledge base of the given name, without loading it.
+     *
+     * @param name The name of the knowledge base
+     * @return Whether the name is a subdirectory of the registry directory
+     */
+    public boolean contains(String name) {
+        Path knowledgeBase = directory.resolve(name).normalize();
+        return directory.equals(knowledgeBase.getParent()) && Files.isDirectory(knowledgeBase);
+    }
+
+    /**
+     * Adds a listener that is called with the name of every knowledge base that is unloaded.
+     *
+     * @param listener The listener; called after the knowledge base has been unloaded
+     */
+    public void addUnloadListener(Consumer<String> listener) {
+        unloadListeners.add(listener);
+    }
+
+    private void load(String name, Path knowledgeBase, CompletableFuture<Loaded> future) {
+        logger.info("Loading knowledge base '{}'...", name);
+        Loaded knowledge;
+        try {
+            knowledge = loader.apply(knowledgeBase);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loading.remove(name);
+            }
+            future.completeExceptionally(e);
+            return;
+        }
+        List<String> unloaded;
+        synchronized (this) {
+            loading.remove(name);
+            loaded.put(name, knowledge);
+            loadedBytes += knowledge.bytes();
+            unloaded = evict(name);
+        }
+        notifyUnloaded(unloaded);
+        logger.info("Loaded knowledge base '{}' ({} bytes, {} of {} bytes in use).", name, knowledge.bytes(),
+                getLoadedBytes(), memoryBytes);
+        future.complete(knowledge);
+    }
+
+    /**
+     * Gets the names of the loaded knowledge bases.
+     *
+     * @return The names, least recently used first
+     */
+    public synchronized List<String> loadedNames() {
+        return new ArrayList<>(loaded.keySet());
+    }
+
+    /**
+     * Gets the estimated memory of the loaded knowledge bases.
+     *
+     * @return The memory in bytes
+     */
+    public synchronized long getLoadedBytes() {
+        return loadedBytes;
+    }
+
+    /**
+     * Unloads the least recently used knowledge bases until the loaded ones fit the memory budget.
+     *
+     * @param keep The knowledge base that stays loaded regardless
+     * @return The names of the unloaded knowledge bases
+     */
+    private List<String> evict(String keep) {
+        List<String> unloaded = new ArrayList<>();
+        Iterator<Map.Entry<String, Loaded>> entries = loaded.entrySet().iterator();
+        while (loadedBytes > memoryBytes && entries.hasNext()) {
+            Map.Entry<String, Loaded> entry = entries.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            entries.remove();
+            loadedBytes -= entry.getValue().bytes();
+            logger.info("Unloaded knowledge base '{}' ({} bytes).", entry.getKey(), entry.getValue().bytes());
+            closeStore(entry.getValue().store());
+            unloaded.add(entry.getKey());
+        }
+        return unloaded;
+    }
+
+    private void notifyUnloaded(List<String> names) {
+        for (String name : names) {
+            for (Consumer<String> listener : unloadListeners) {
+                listener.accept(name);
+            }
+        }
+    }
+
+    /**
+     * Loads a knowledge base from its index, building the index first if it is missing or stale.
+     */
+    private static Loaded loadFromIndex(ConfigProvider config, Path knowledgeBase) {
+        List<String> sources;
+        try (Stream<Path> entries = Files.list(knowledgeBase)) {
+            sources = entries.filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(SOURCE_EXTENSION))
+                    .sorted()
+                    .map(Path::toString)
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list the sources of " + knowledgeBase, e);
+        }
+        KnowledgeBaseService service = new KnowledgeBaseService(config, sources);
+        EmbeddingStore<TextSegment> store = service.loadPrebuiltIndex().orElse(null);
+        Path indexPath = Path.of(config.getIndexPath());
+        try {
+            if (store == null) {
+                service.buildIndex().write(indexPath);
+                store = service.loadPrebuiltIndex()
+                        .orElseThrow(() -> new IllegalStateException("The index written to " + indexPath
+                                + " could not be loaded"));
+            }
+            return new Loaded(store, Files.size(indexPath));
+        } catch (IOException e) {
+            closeStore(store);
+            throw new UncheckedIOException("Failed to write the index " + indexPath, e);
+        }
+    }
+
+    private static void closeStore(EmbeddingStore<TextSegment> store) {
+        if (store instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close an unloaded knowledge base store", e);
+            }
+        }
+    }
+
+    /**
+     * Unloads all knowledge bases.
+     */
+    @Override
+    public void close() {
+        List<String> unloaded;
+        synchronized (this) {
+            for (Loaded knowledge : loaded.values()) {
+                closeStore(knowledge.store());
+            }
+            unloaded = new ArrayList<>(loaded.keySet());
+            loaded.clear();
+            loadedBytes = 0;
+        }
+        notifyUnloaded(unloaded);
+    }
+}
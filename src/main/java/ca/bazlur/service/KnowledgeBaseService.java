@@ -2,26 +2,38 @@ package ca.bazlur.service;
 
 import ca.bazlur.config.AIProvider;
 import ca.bazlur.config.ConfigProvider;
+import ca.bazlur.store.CompressedSegmentStore;
+import ca.bazlur.store.DurableEmbeddingStore;
+import ca.bazlur.store.IndexArtifact;
+import ca.bazlur.store.IndexFingerprint;
+import ca.bazlur.store.MetadataIndex;
+import ca.bazlur.store.SegmentStore;
+import ca.bazlur.store.ShardedEmbeddingStore;
 import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
 import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.parser.TextDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * Service class that handles loading and processing knowledge base data.
@@ -29,8 +41,15 @@ import java.util.Objects;
 public class KnowledgeBaseService {
     private static final Logger logger = LoggerFactory.getLogger(KnowledgeBaseService.class);
 
+    private static final Set<String> INDEXED_METADATA_KEYS = Set.of(
+            SegmentMetadataExtractor.SOURCE, SegmentMetadataExtractor.RECORD_TYPE, SegmentMetadataExtractor.COMPONENTS);
+    private static final Set<String> MULTI_VALUED_METADATA_KEYS = Set.of(
+            SegmentMetadataExtractor.RECORD_TYPE, SegmentMetadataExtractor.COMPONENTS);
+
     private final ConfigProvider config;
     private final List<String> resourceNames;
+    private DurableEmbeddingStore durableStore;
+    private EmbeddingCheckpoint checkpoint;
 
     /**
      * Creates a new KnowledgeBaseService with the given configuration.
@@ -59,63 +78,203 @@ public class KnowledgeBaseService {
      * @throws RuntimeException if there is an error loading or processing the data
      */
     public EmbeddingStore<TextSegment> loadKnowledgeBase() {
+        Optional<DurableEmbeddingStore> durable = durableStore();
+        if (durable.isPresent() && durable.get().isComplete()) {
+            logger.info("Using the {} segments recovered from '{}'.", durable.get().size(), config.getStoreDir());
+            return durable.get();
+        }
+        durable.ifPresent(this::discardUnfinished);
         logger.info("Starting knowledge base ingestion...");
 
-        List<Document> documents = loadDocuments();
+        checkSourcesExist();
         EmbeddingModel embeddingModel = createEmbeddingModel();
-        EmbeddingStore<TextSegment> embeddingStore = createEmbeddingStore();
+        EmbeddingStore<TextSegment> embeddingStore = durable.isPresent() ? durable.get() : createEmbeddingStore();
         DocumentSplitter splitter = createDocumentSplitter();
 
-        ingestDocuments(documents, embeddingModel, embeddingStore, splitter);
+        try {
+            ingestDocuments(documentWindows(), embeddingModel, embeddingStore, splitter);
+        } catch (RuntimeException e) {
+            closeCheckpoint();
+            closeDurableStore();
+            throw e;
+        }
+        durable.ifPresent(this::complete);
+        deleteCheckpoint();
 
         return embeddingStore;
     }
 
     /**
-     * Loads documents from the configured resource files.
+     * Loads the prebuilt index configured by {@code index.path}, if one exists and was built
+     * with the currently configured embedding model and splitting settings.
      *
-     * @return A list of loaded documents
-     * @throws RuntimeException if there is an error loading the documents
+     * @return An embedding store populated from the index, or empty if no usable index is available
      */
-    private List<Document> loadDocuments() {
-        List<Document> documents = new ArrayList<>();
-        DocumentParser parser = new TextDocumentParser();
+    public Optional<EmbeddingStore<TextSegment>> loadPrebuiltIndex() {
+        return loadPrebuiltIndex(0, 1);
+    }
 
-        try {
-            for (String resourceName : resourceNames) {
-                logger.info("Loading document from resource: {}", resourceName);
-                documents.add(loadDocumentFromResource(resourceName, parser));
-            }
+    /**
+     * Loads one slice of the prebuilt index, for serving it as a shard of a distributed index.
+     *
+     * @param slice The slice to load, from 0 to {@code sliceCount - 1}
+     * @param sliceCount The number of slices the index is divided into
+     * @return An embedding store populated from the slice, or empty if no usable index is available
+     */
+    public Optional<EmbeddingStore<TextSegment>> loadPrebuiltIndex(int slice, int sliceCount) {
+        // A durable store holds the index it was seeded with plus every change since.
+        Optional<DurableEmbeddingStore> durable = sliceCount == 1 ? durableStore() : Optional.empty();
+        if (durable.isPresent() && durable.get().isComplete()) {
+            logger.info("Using the {} segments recovered from '{}'.", durable.get().size(), config.getStoreDir());
+            return Optional.of(durable.get());
+        }
+        durable.ifPresent(this::discardUnfinished);
 
-            logger.info("Documents loaded successfully.");
-            return documents;
+        String indexPath = config.getIndexPath();
+        if (indexPath == null || indexPath.isBlank()) {
+            return Optional.empty();
+        }
 
+        IndexFingerprint expected = IndexFingerprint.from(config);
+        try (InputStream inputStream = openIndex(indexPath)) {
+            if (inputStream == null) {
+                logger.info("No prebuilt index found at '{}'.", indexPath);
+                return Optional.empty();
+            }
+            Optional<IndexArtifact> artifact = IndexArtifact.read(inputStream, expected, slice, sliceCount);
+            if (artifact.isEmpty()) {
+                logger.warn("Prebuilt index '{}' does not match the configured embedding model and settings {}; re-ingesting.",
+                        indexPath, expected);
+                return Optional.empty();
+            }
+            logger.info("Loaded prebuilt index '{}' with {} segments.", indexPath, artifact.get().getEntries().size());
+            if (durable.isPresent()) {
+                artifact.get().loadInto(durable.get());
+                complete(durable.get());
+                return Optional.of(durable.get());
+            }
+            return Optional.of(artifact.get().loadInto(createEmbeddingStore()));
         } catch (IOException e) {
-            logger.error("Failed to load documents from resources", e);
-            throw new RuntimeException("Failed to load knowledge base documents", e);
-        } catch (NullPointerException e) {
-            logger.error("A required resource file was not found.", e);
-            throw new RuntimeException("Failed to find knowledge base documents", e);
+            logger.warn("Failed to read prebuilt index '{}'; re-ingesting.", indexPath, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Splits and embeds the knowledge base documents into an index artifact that can be written
+     * at build time and loaded with {@link #loadPrebuiltIndex()} at startup.
+     *
+     * @return The index artifact
+     * @throws RuntimeException if there is an error loading or processing the data
+     */
+    public IndexArtifact buildIndex() {
+        logger.info("Building knowledge base index...");
+
+        checkSourcesExist();
+        ShardedEmbeddingStore embeddingStore = createEmbeddingStore();
+        try {
+            ingestDocuments(documentWindows(), createEmbeddingModel(), embeddingStore, createDocumentSplitter());
+        } catch (RuntimeException e) {
+            closeCheckpoint();
+            throw e;
+        }
+        deleteCheckpoint();
+
+        IndexArtifact artifact = new IndexArtifact(IndexFingerprint.from(config), embeddingStore.entries());
+        logger.info("Index built with {} segments.", artifact.getEntries().size());
+        return artifact;
+    }
+
+    /**
+     * Checks that every configured source exists before any embedding work starts.
+     *
+     * @throws RuntimeException if a source is not found
+     */
+    private void checkSourcesExist() {
+        for (String resourceName : resourceNames) {
+            try (Reader reader = openSource(resourceName)) {
+                if (reader == null) {
+                    logger.error("A required resource file was not found: {}", resourceName);
+                    throw new RuntimeException("Failed to find knowledge base documents: " + resourceName);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to open resource {}", resourceName, e);
+                throw new RuntimeException("Failed to load knowledge base documents", e);
+            }
         }
     }
 
+    /**
+     * Lazily reads the configured sources one after another as bounded-size documents, so that no
+     * source is ever held in memory as a whole.
+     *
+     * @return An iterator over the document windows of all sources
+     */
+    private Iterator<Document> documentWindows() {
+        StreamingDocumentLoader loader = new StreamingDocumentLoader(config.getIngestWindowChars());
+        Iterator<String> sources = resourceNames.iterator();
+        return new Iterator<>() {
+            private Iterator<Document> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && sources.hasNext()) {
+                    String resourceName = sources.next();
+                    logger.info("Streaming documents from resource: {}", resourceName);
+                    try {
+                        Reader reader = openSource(resourceName);
+                        if (reader == null) {
+                            throw new RuntimeException("Failed to find knowledge base documents: " + resourceName);
+                        }
+                        current = loader.windows(resourceName, reader);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to open " + resourceName, e);
+                    }
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Document next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
     /**
      * Creates an embedding model using the configured settings.
      *
      * @return The configured embedding model
      */
     private EmbeddingModel createEmbeddingModel() {
-        AIProvider provider = config.getAIProvider();
+        AIProvider provider = config.getEmbeddingProvider();
         logger.info("Initializing {} Embedding Model...", provider);
 
         EmbeddingModel embeddingModel;
-        if (provider == AIProvider.OPENAI) {
-            embeddingModel = OpenAiEmbeddingModel.builder()
-                    .apiKey(config.getApiKey())
-                    .modelName(config.getEmbeddingModelName())
-                    .logRequests(config.isLogRequests())
-                    .logResponses(config.isLogResponses())
-                    .build();
+        if (provider == AIProvider.LOCAL) {
+            embeddingModel = LocalEmbeddingModels.get(config);
+        } else if (provider == AIProvider.OPENAI) {
+            AimdRateController controller = new AimdRateController(
+                    config.getIngestMaxConcurrency(), config.getIngestMaxBatchTokens());
+            embeddingModel = new ThrottledEmbeddingModel(
+                    OpenAiEmbeddingModel.builder()
+                            .baseUrl(config.getBaseUrl())
+                            .apiKey(config.getApiKey())
+                            .modelName(config.getEmbeddingModelName())
+                            .httpClientBuilder(RateLimitTrackingHttpClient.builder(controller))
+                            // Rate-limited requests are retried by the throttle, after it has backed off.
+                            .maxRetries(0)
+                            .logRequests(config.isLogRequests())
+                            .logResponses(config.isLogResponses())
+                            .build(),
+                    controller,
+                    openCheckpoint(),
+                    config.getIngestMaxRetries());
+            logger.info("Throttling embedding requests (up to {} concurrent, {} tokens per request).",
+                    config.getIngestMaxConcurrency(), config.getIngestMaxBatchTokens());
         } else {
             embeddingModel = OllamaEmbeddingModel.builder()
                     .baseUrl(config.getBaseUrl())
@@ -130,74 +289,251 @@ public class KnowledgeBaseService {
     }
 
     /**
-     * Creates an in-memory embedding store.
+     * Opens the checkpoint configured by {@code ingest.checkpoint.path}, which holds the embeddings
+     * of an earlier ingestion that did not complete.
+     *
+     * @return The checkpoint, kept in memory only if no path is configured or the file is unusable
+     */
+    private EmbeddingCheckpoint openCheckpoint() {
+        String checkpointPath = config.getIngestCheckpointPath();
+        if (checkpointPath == null) {
+            checkpoint = EmbeddingCheckpoint.inMemory();
+            return checkpoint;
+        }
+        try {
+            checkpoint = EmbeddingCheckpoint.open(Path.of(checkpointPath),
+                    config.getEmbeddingProvider() + "/" + config.getEmbeddingModelName());
+        } catch (IOException e) {
+            logger.warn("Failed to open the ingestion checkpoint '{}'; keeping it in memory.", checkpointPath, e);
+            checkpoint = EmbeddingCheckpoint.inMemory();
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Deletes the checkpoint of a completed ingestion.
+     */
+    private void deleteCheckpoint() {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.delete();
+        } catch (IOException e) {
+            logger.warn("Failed to delete the ingestion checkpoint.", e);
+        }
+        checkpoint = null;
+    }
+
+    /**
+     * Closes the checkpoint of a failed ingestion, keeping its file for the next attempt to resume from.
+     */
+    private void closeCheckpoint() {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the ingestion checkpoint.", e);
+        }
+        checkpoint = null;
+    }
+
+    /**
+     * Creates an in-memory embedding store that searches its shards in parallel once it is large enough
+     * and answers filters on the segment metadata keys from bitset indexes.
      *
      * @return The created embedding store
      */
-    private EmbeddingStore<TextSegment> createEmbeddingStore() {
-        logger.info("Initializing In-Memory Embedding Store...");
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
-        logger.info("Embedding Store initialized.");
+    private ShardedEmbeddingStore createEmbeddingStore() {
+        logger.info("Initializing Sharded In-Memory Embedding Store...");
+        int blockBytes = config.getSegmentBlockBytes();
+        ShardedEmbeddingStore embeddingStore = new ShardedEmbeddingStore(
+                config.getSearchParallelism(),
+                config.getSearchParallelThreshold(),
+                new MetadataIndex(INDEXED_METADATA_KEYS, MULTI_VALUED_METADATA_KEYS),
+                blockBytes > 0
+                        ? new CompressedSegmentStore(blockBytes, config.getSegmentCacheBlocks())
+                        : SegmentStore.onHeap());
+        logger.info("Embedding Store initialized (parallelism {}, parallel threshold {}, segments {}).",
+                config.getSearchParallelism(), config.getSearchParallelThreshold(),
+                blockBytes > 0 ? "compressed off-heap" : "on heap");
         return embeddingStore;
     }
 
+    /**
+     * Opens the durable embedding store configured by {@code store.dir} on first use, recovering
+     * the segments it held when the application last ran.
+     *
+     * @return The durable store, or empty if the store is configured to be in memory only
+     * @throws RuntimeException if the store directory cannot be read or written
+     */
+    private Optional<DurableEmbeddingStore> durableStore() {
+        String storeDir = config.getStoreDir();
+        if (storeDir == null) {
+            return Optional.empty();
+        }
+        if (durableStore == null) {
+            try {
+                durableStore = new DurableEmbeddingStore(
+                        Path.of(storeDir),
+                        IndexFingerprint.from(config),
+                        createEmbeddingStore(),
+                        Duration.ofSeconds(config.getStoreSnapshotIntervalSeconds()),
+                        config.getStoreSnapshotLogBytes(),
+                        config.getStoreCompactionRatio());
+            } catch (IOException e) {
+                logger.error("Failed to open the embedding store in {}", storeDir, e);
+                throw new RuntimeException("Failed to open the embedding store in " + storeDir, e);
+            }
+        }
+        return Optional.of(durableStore);
+    }
+
+    /**
+     * Snapshots a durable store that has been filled and marks it complete, so later starts use it
+     * instead of filling it again. A store whose snapshot fails is not marked and is filled again
+     * on the next start.
+     */
+    private void complete(DurableEmbeddingStore store) {
+        try {
+            store.snapshot();
+        } catch (IOException e) {
+            logger.warn("Failed to snapshot the embedding store; it will be filled again on the next start.", e);
+            return;
+        }
+        store.markComplete();
+    }
+
+    /**
+     * Closes the durable store after a failed ingestion, keeping what it logged, so that the next
+     * load opens it again and finds it unfinished.
+     */
+    private void closeDurableStore() {
+        if (durableStore == null) {
+            return;
+        }
+        try {
+            durableStore.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the embedding store in '{}'.", config.getStoreDir(), e);
+        }
+        durableStore = null;
+    }
+
+    /**
+     * Clears what an ingestion or index load that did not complete left in a durable store.
+     */
+    private void discardUnfinished(DurableEmbeddingStore store) {
+        if (store.size() > 0) {
+            logger.warn("Discarding the {} segments of an unfinished ingestion in '{}'.", store.size(),
+                    config.getStoreDir());
+            store.removeAll();
+        }
+    }
+
     /**
      * Creates a document splitter using the configured settings.
      *
      * @return The configured document splitter
      */
     private DocumentSplitter createDocumentSplitter() {
-        DocumentSplitter splitter = DocumentSplitters.recursive(
-                config.getChunkSize(), 
+        DocumentSplitter splitter = new ZeroCopyDocumentSplitter(
+                config.getChunkSize(),
                 config.getChunkOverlap()
         );
-        logger.info("Using recursive document splitter ({} chars, {} overlap).",
+        logger.info("Using zero-copy recursive document splitter ({} chars, {} overlap).",
                 config.getChunkSize(), config.getChunkOverlap());
         return splitter;
     }
 
     /**
-     * Ingests documents into the embedding store.
+     * Ingests documents into the embedding store in batches of about {@code ingest.batch.chars}
+     * characters. Each batch is split, embedded and stored before the next one is read, which bounds
+     * the memory used by the pipeline independently of the size of the knowledge base.
      *
      * @param documents The documents to ingest
      * @param embeddingModel The embedding model to use
      * @param embeddingStore The embedding store to ingest into
      * @param splitter The document splitter to use
+     * @throws RuntimeException if there is an error reading the documents
      */
     private void ingestDocuments(
-            List<Document> documents,
+            Iterator<Document> documents,
             EmbeddingModel embeddingModel,
             EmbeddingStore<TextSegment> embeddingStore,
             DocumentSplitter splitter
     ) {
         EmbeddingStoreIngestor ingestor = EmbeddingStoreIngestor.builder()
                 .documentSplitter(splitter)
+                .textSegmentTransformer(new SegmentDeduplicator(new SegmentMetadataExtractor(), config.getDedupSimilarity()))
                 .embeddingModel(embeddingModel)
                 .embeddingStore(embeddingStore)
                 .build();
 
         logger.info("Ingesting documents into the embedding store...");
-        ingestor.ingest(documents);
+        int batchLimit = config.getIngestBatchChars();
+        List<Document> batch = new ArrayList<>();
+        long batchChars = 0;
+        int windows = 0;
+        int batches = 0;
+        try {
+            while (documents.hasNext()) {
+                Document document = documents.next();
+                batch.add(document);
+                batchChars += document.text().length();
+                windows++;
+                if (batchChars >= batchLimit) {
+                    ingestor.ingest(batch);
+                    batches++;
+                    batch = new ArrayList<>();
+                    batchChars = 0;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            logger.error("Failed to read knowledge base documents", e);
+            throw new RuntimeException("Failed to load knowledge base documents", e.getCause());
+        }
+        if (!batch.isEmpty()) {
+            ingestor.ingest(batch);
+            batches++;
+        }
 
-        // Log the number of documents ingested
         // Note: The actual number of segments may be different due to document splitting
-        logger.info("Ingestion complete. {} documents ingested into the embedding store.", documents.size());
+        logger.info("Ingestion complete. {} document windows ingested in {} batches.", windows, batches);
+    }
+
+    /**
+     * Opens a knowledge base source, preferring a file on disk over a classpath resource. Large
+     * files are memory-mapped.
+     *
+     * @param resourceName The file path or resource name
+     * @return A reader over the source, or null if it does not exist
+     * @throws IOException if the file exists but cannot be opened
+     */
+    private Reader openSource(String resourceName) throws IOException {
+        Path file = Path.of(resourceName);
+        if (Files.isRegularFile(file)) {
+            return StreamingDocumentLoader.openFile(file);
+        }
+        InputStream inputStream = getResourceAsStream(resourceName);
+        return inputStream == null ? null : StreamingDocumentLoader.openStream(inputStream);
     }
 
     /**
-     * Loads a document from a resource file.
+     * Opens the prebuilt index, preferring a file on disk over a classpath resource.
      *
-     * @param resourceName The name of the resource file
-     * @param parser The document parser to use
-     * @return The loaded document
-     * @throws IOException if there is an error loading the document
-     * @throws NullPointerException if the resource file is not found
+     * @param indexPath The configured index path
+     * @return An input stream for the index, or null if it does not exist
+     * @throws IOException if the file exists but cannot be opened
      */
-    private Document loadDocumentFromResource(String resourceName, DocumentParser parser) throws IOException {
-        try (InputStream inputStream = getResourceAsStream(resourceName)) {
-            Objects.requireNonNull(inputStream, "Resource not found: " + resourceName);
-            return parser.parse(inputStream);
+    private InputStream openIndex(String indexPath) throws IOException {
+        Path file = Path.of(indexPath);
+        if (Files.isRegularFile(file)) {
+            return Files.newInputStream(file);
         }
+        return getResourceAsStream(indexPath);
     }
 
     /**
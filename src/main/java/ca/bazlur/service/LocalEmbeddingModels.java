@@ -0,0 +1,70 @@
+package ca.bazlur.service;
+
+import ca.bazlur.config.ConfigProvider;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.OnnxEmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.PoolingMode;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2q.AllMiniLmL6V2QuantizedEmbeddingModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the in-process ONNX embedding models of the {@code LOCAL} provider.
+ *
+ * <p>Loading a model takes a while and holds its weights in memory, so models are created once per
+ * JVM and shared by the ingestion and retrieval sides. {@code embedAll} spreads the segments of a
+ * batch over a fixed pool of daemon inference threads.
+ */
+public final class LocalEmbeddingModels {
+    private static final Logger logger = LoggerFactory.getLogger(LocalEmbeddingModels.class);
+
+    private static final Map<String, EmbeddingModel> MODELS = new ConcurrentHashMap<>();
+
+    private LocalEmbeddingModels() {
+    }
+
+    /**
+     * Gets the local embedding model for the given configuration, loading it on first use.
+     *
+     * @param config The application configuration
+     * @return The shared embedding model
+     * @throws IllegalStateException if a custom model path is set without a tokenizer path
+     */
+    public static EmbeddingModel get(ConfigProvider config) {
+        String modelPath = config.getLocalEmbeddingModelPath();
+        String tokenizerPath = config.getLocalEmbeddingTokenizerPath();
+        if (modelPath != null && tokenizerPath == null) {
+            throw new IllegalStateException("'local.embedding.tokenizer.path' is required with a custom local model");
+        }
+        String key = config.getEmbeddingModelName() + "|" + config.getLocalEmbeddingThreads();
+        return MODELS.computeIfAbsent(key, k -> load(modelPath, tokenizerPath, config.getLocalEmbeddingThreads()));
+    }
+
+    private static EmbeddingModel load(String modelPath, String tokenizerPath, int threads) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = inferencePool(poolSize);
+        long start = System.nanoTime();
+        EmbeddingModel model = modelPath == null
+                ? new AllMiniLmL6V2QuantizedEmbeddingModel(executor)
+                : new OnnxEmbeddingModel(modelPath, tokenizerPath, PoolingMode.MEAN, executor);
+        logger.info("Loaded local embedding model {} in {} ms ({} inference threads).",
+                modelPath == null ? "all-MiniLM-L6-v2 (quantized)" : modelPath,
+                (System.nanoTime() - start) / 1_000_000, poolSize);
+        return model;
+    }
+
+    private static ExecutorService inferencePool(int size) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "local-embedding-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package ca.bazlur.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decodes a UTF-8 file from memory-mapped regions, so the file content is paged in by the OS
+ * instead of being copied through stream buffers.
+ *
+ * <p>A single mapping is limited to 2 GB, so the file is mapped one region at a time. A character
+ * whose bytes straddle a region boundary is left undecoded and the next region starts at its first byte.
+ */
+final class MappedFileReader extends Reader {
+    static final long DEFAULT_REGION_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long regionBytes;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private MappedByteBuffer region;
+    private long regionStart;
+    private boolean finished;
+
+    MappedFileReader(Path path) throws IOException {
+        this(path, DEFAULT_REGION_BYTES);
+    }
+
+    MappedFileReader(Path path, long regionBytes) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.regionBytes = regionBytes;
+        map(0);
+    }
+
+    private void map(long position) throws IOException {
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionBytes, size - position));
+    }
+
+    private boolean isLastRegion() {
+        return regionStart + region.limit() >= size;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (finished) {
+            return -1;
+        }
+        CharBuffer out = CharBuffer.wrap(chars, offset, length);
+        while (out.position() == offset) {
+            boolean lastRegion = isLastRegion();
+            CoderResult result = decoder.decode(region, out, lastRegion);
+            if (out.position() > offset || result.isOverflow()) {
+                break;
+            }
+            if (lastRegion) {
+                decoder.flush(out);
+                finished = true;
+                break;
+            }
+            map(regionStart + region.position());
+        }
+        int read = out.position() - offset;
+        return read == 0 && finished ? -1 : read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
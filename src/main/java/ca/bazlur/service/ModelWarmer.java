@@ -0,0 +1,158 @@
+package ca.bazlur.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Loads the Ollama chat and embedding models at startup and keeps them loaded while the assistant
+ * is idle.
+ *
+ * <p>Ollama loads a model on its first request and unloads it after a few idle minutes, so without
+ * a warm-up the first question pays for the load. The warm-up asks Ollama to load each model
+ * without generating anything: an empty {@code /api/generate} request for a chat model and an
+ * empty {@code /api/embed} request for an embedding model. Both carry a {@code keep_alive} of twice
+ * the keep-alive interval. Every question resets the models to Ollama's default keep-alive, so while
+ * no question has been asked for a keep-alive interval, the warm-up is repeated; a busy assistant
+ * keeps its models loaded by itself. Hosted providers need no warm-up and are never sent requests.
+ */
+public class ModelWarmer {
+    private static final Logger logger = LoggerFactory.getLogger(ModelWarmer.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2);
+
+    /**
+     * A model served by Ollama.
+     *
+     * @param baseUrl The base URL of the Ollama server
+     * @param modelName The name of the model
+     * @param embedding Whether it is an embedding model rather than a chat model
+     */
+    public record OllamaModel(String baseUrl, String modelName, boolean embedding) {
+    }
+
+    private final List<OllamaModel> models;
+    private final Duration keepAliveInterval;
+    private final HttpClient httpClient;
+    private final LongSupplier nanoTime;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "model-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile long lastActivity;
+
+    /**
+     * Creates a warmer.
+     *
+     * @param models The Ollama models to keep loaded
+     * @param keepAliveInterval The idle time after which the models are loaded again; zero or
+     *                          negative to load them only at startup
+     */
+    public ModelWarmer(List<OllamaModel> models, Duration keepAliveInterval) {
+        this(models, keepAliveInterval, HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build(),
+                System::nanoTime);
+    }
+
+    ModelWarmer(List<OllamaModel> models, Duration keepAliveInterval, HttpClient httpClient, LongSupplier nanoTime) {
+        this.models = List.copyOf(models);
+        this.keepAliveInterval = keepAliveInterval;
+        this.httpClient = httpClient;
+        this.nanoTime = nanoTime;
+        this.lastActivity = nanoTime.getAsLong();
+    }
+
+    /**
+     * Warms the models up in the background and schedules the keep-alive.
+     */
+    public void start() {
+        scheduler.execute(this::warmUp);
+        if (keepAliveInterval.isPositive()) {
+            long interval = keepAliveInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::keepAlive, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records that the models have just been used, which postpones the next keep-alive.
+     */
+    public void touch() {
+        lastActivity = nanoTime.getAsLong();
+    }
+
+    /**
+     * Warms the models up again if they have been idle for the keep-alive interval.
+     */
+    void keepAlive() {
+        if (nanoTime.getAsLong() - lastActivity >= keepAliveInterval.toNanos()) {
+            warmUp();
+        }
+    }
+
+    /**
+     * Asks Ollama to load every model. Failures are logged and otherwise ignored; a model that
+     * cannot be loaded now will be loaded by the first real request instead.
+     */
+    void warmUp() {
+        long start = System.nanoTime();
+        for (OllamaModel model : models) {
+            try {
+                load(model);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to load {} on {}: {}", model.modelName(), model.baseUrl(), e.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        touch();
+        logger.debug("Loaded {} Ollama models in {} ms", models.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void load(OllamaModel model) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(loadUri(model))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(loadRequest(model)))
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Ollama answered " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    private static URI loadUri(OllamaModel model) {
+        String baseUrl = model.baseUrl().endsWith("/") ? model.baseUrl() : model.baseUrl() + "/";
+        return URI.create(baseUrl + (model.embedding() ? "api/embed" : "api/generate"));
+    }
+
+    /**
+     * Builds a request that loads the model without a prompt or input, so nothing is generated or embedded.
+     */
+    private String loadRequest(OllamaModel model) throws JsonProcessingException {
+        ObjectNode request = JSON.createObjectNode().put("model", model.modelName());
+        if (model.embedding()) {
+            request.putArray("input");
+        }
+        if (keepAliveInterval.isPositive()) {
+            request.put("keep_alive", keepAliveInterval.multipliedBy(2).toSeconds() + "s");
+        }
+        return JSON.writeValueAsString(request);
+    }
+}
@@ -0,0 +1,197 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Content retriever that searches each part of a compound question on its own and fuses the
+ * results.
+ *
+ * <p>The question is split by a {@link QueryDecomposer}; all sub-queries are embedded in one
+ * batched call and searched concurrently on virtual threads, so retrieval takes about as long as a
+ * single search. The ranked lists are merged with reciprocal rank fusion, which scores a segment by
+ * {@code sum(1 / (k + rank))} over the lists it appears in. Rank fusion needs no comparable
+ * scores, and a segment that several sub-queries agree on rises to the top while each sub-query
+ * still contributes its best matches. A question that does not split is retrieved like a plain
+ * embedding store search.
+ */
+public class MultiQueryContentRetriever implements ContentRetriever {
+    private static final Logger logger = LoggerFactory.getLogger(MultiQueryContentRetriever.class);
+
+    /** The rank offset of reciprocal rank fusion; 60 is the value from the original paper. */
+    static final int RRF_K = 60;
+
+    private final Function<Query, EmbeddingStore<TextSegment>> storeProvider;
+    private final EmbeddingModel embeddingModel;
+    private final QueryDecomposer decomposer;
+    private final int maxResults;
+    private final double minScore;
+    private final Function<Query, Filter> filterProvider;
+
+    /**
+     * Creates a retriever.
+     *
+     * @param embeddingStore The store to search
+     * @param embeddingModel The model that embeds the sub-queries
+     * @param decomposer Splits questions into sub-queries
+     * @param maxResults The number of segments to return, and to retrieve per sub-query
+     * @param minScore The minimum relevance score of a retrieved segment
+     * @param filterProvider Gives the metadata filter for a query, or null to search all segments;
+     *                       called on the thread that calls {@link #retrieve(Query)}
+     */
+    public MultiQueryContentRetriever(EmbeddingStore<TextSegment> embeddingStore, EmbeddingModel embeddingModel,
+                                      QueryDecomposer decomposer, int maxResults, double minScore,
+                                      Function<Query, Filter> filterProvider) {
+        this(query -> embeddingStore, embeddingModel, decomposer, maxResults, minScore, filterProvider);
+    }
+
+    /**
+     * Creates a retriever that searches the store the query belongs to.
+     *
+     * @param storeProvider Gives the store to search for a query; called once per query on the
+     *                      thread that calls {@link #retrieve(Query)}
+     * @param embeddingModel The model that embeds the sub-queries
+     * @param decomposer Splits questions into sub-queries
+     * @param maxResults The number of segments to return, and to retrieve per sub-query
+     * @param minScore The minimum relevance score of a retrieved segment
+     * @param filterProvider Gives the metadata filter for a query, or null to search all segments;
+     *                       called on the thread that calls {@link #retrieve(Query)}
+     */
+    public MultiQueryContentRetriever(Function<Query, EmbeddingStore<TextSegment>> storeProvider,
+                                      EmbeddingModel embeddingModel, QueryDecomposer decomposer, int maxResults,
+                                      double minScore, Function<Query, Filter> filterProvider) {
+        this.storeProvider = storeProvider;
+        this.embeddingModel = embeddingModel;
+        this.decomposer = decomposer;
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+        this.filterProvider = filterProvider;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        return toContents(retrieveMatches(query, null, maxResults, minScore));
+    }
+
+    /**
+     * Retrieves like {@link #retrieve(Query)}, but searches each sub-query for more segments,
+     * ignores the minimum score and returns the matches with their embeddings, so that the caller
+     * can re-score them against later queries.
+     *
+     * @param query The query
+     * @param queryEmbedding The embedding of the whole query text, used when it does not split, or
+     *                       null to embed it here
+     * @param candidates The number of segments to retrieve per sub-query and to return
+     * @return The fused matches, best first
+     */
+    public List<EmbeddingMatch<TextSegment>> retrieveCandidates(Query query, Embedding queryEmbedding,
+                                                                int candidates) {
+        return retrieveMatches(query, queryEmbedding, candidates, 0.0);
+    }
+
+    private List<EmbeddingMatch<TextSegment>> retrieveMatches(Query query, Embedding queryEmbedding, int limit,
+                                                              double minScore) {
+        EmbeddingStore<TextSegment> embeddingStore = storeProvider.apply(query);
+        Filter filter = filterProvider.apply(query);
+        List<String> subQueries = decomposer.decompose(query.text());
+        if (subQueries.size() == 1 && queryEmbedding != null) {
+            return search(embeddingStore, queryEmbedding, filter, limit, minScore);
+        }
+        List<TextSegment> texts = subQueries.stream().map(TextSegment::from).toList();
+        List<Embedding> embeddings = embeddingModel.embedAll(texts).content();
+
+        if (subQueries.size() == 1) {
+            return search(embeddingStore, embeddings.get(0), filter, limit, minScore);
+        }
+        logger.debug("Retrieving {} sub-queries: {}", subQueries.size(), subQueries);
+        List<List<EmbeddingMatch<TextSegment>>> rankings = new ArrayList<>(subQueries.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<EmbeddingMatch<TextSegment>>>> searches = new ArrayList<>();
+            for (Embedding embedding : embeddings) {
+                searches.add(executor.submit(() -> search(embeddingStore, embedding, filter, limit, minScore)));
+            }
+            for (Future<List<EmbeddingMatch<TextSegment>>> search : searches) {
+                rankings.add(search.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrieving content", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime
+                    : new IllegalStateException("Content retrieval failed", e.getCause());
+        }
+        return fuse(rankings, limit);
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(EmbeddingStore<TextSegment> embeddingStore,
+                                                            Embedding embedding, Filter filter, int limit,
+                                                            double minScore) {
+        return embeddingStore.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(embedding)
+                .maxResults(limit)
+                .minScore(minScore)
+                .filter(filter)
+                .build()).matches();
+    }
+
+    /**
+     * Merges ranked lists with reciprocal rank fusion. Matches are identified by their embedding ID;
+     * ties keep the order in which the matches were first seen.
+     *
+     * @param rankings The ranked matches of each sub-query
+     * @param maxResults The number of matches to keep
+     * @return The fused matches, best first
+     */
+    static List<EmbeddingMatch<TextSegment>> fuse(List<List<EmbeddingMatch<TextSegment>>> rankings, int maxResults) {
+        Map<String, EmbeddingMatch<TextSegment>> matches = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (List<EmbeddingMatch<TextSegment>> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                EmbeddingMatch<TextSegment> match = ranking.get(rank);
+                matches.putIfAbsent(match.embeddingId(), match);
+                scores.merge(match.embeddingId(), 1.0 / (RRF_K + rank + 1), Double::sum);
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(maxResults)
+                .map(entry -> matches.get(entry.getKey()))
+                .toList();
+    }
+
+    /**
+     * Converts matches into retrieved content carrying their score and embedding ID.
+     *
+     * @param matches The matches
+     * @return The content, in the order of the matches
+     */
+    static List<Content> toContents(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream()
+                .map(match -> Content.from(match.embedded(), Map.of(
+                        ContentMetadata.SCORE, match.score(),
+                        ContentMetadata.EMBEDDING_ID, match.embeddingId())))
+                .toList();
+    }
+}
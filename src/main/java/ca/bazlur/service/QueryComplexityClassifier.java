@@ -0,0 +1,83 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a question is a simple lookup that a small chat model can answer from the
+ * retrieved context, or needs the large model.
+ *
+ * <p>The decision uses only signals that are already at hand when the chat model is called, so it
+ * costs no extra model call. A question is simple if it is short, asks about at most one
+ * component, contains no word that asks for reasoning such as "why" or "compare", and retrieval
+ * found a confident match that mentions the component asked about. Everything else goes to the
+ * large model, so a wrong guess costs latency rather than answer quality.
+ */
+public class QueryComplexityClassifier {
+
+    /** The model tier a question is routed to. */
+    public enum Complexity {
+        SIMPLE,
+        COMPLEX
+    }
+
+    private static final Pattern REASONING = Pattern.compile(
+            "\\b(?:why|how|explain|compare|diagnos\\w*|troubleshoot\\w*|cause[sd]?|analy[sz]\\w*|recommend\\w*|should|"
+                    + "predict\\w*|impact|what if)\\b");
+
+    private final int maxSimpleWords;
+    private final double minSimpleScore;
+
+    /**
+     * Creates a classifier.
+     *
+     * @param maxSimpleWords The maximum number of words of a simple question
+     * @param minSimpleScore The relevance score the best retrieved segment needs for a simple question
+     */
+    public QueryComplexityClassifier(int maxSimpleWords, double minSimpleScore) {
+        this.maxSimpleWords = maxSimpleWords;
+        this.minSimpleScore = minSimpleScore;
+    }
+
+    /**
+     * Classifies a question.
+     *
+     * @param question The question as the user asked it
+     * @param contents The content retrieved for the question, best first
+     * @return The complexity of the question
+     */
+    public Complexity classify(String question, List<Content> contents) {
+        String trimmed = question.strip();
+        if (trimmed.isEmpty() || trimmed.split("\\s+").length > maxSimpleWords) {
+            return Complexity.COMPLEX;
+        }
+        if (REASONING.matcher(trimmed.toLowerCase(Locale.ROOT)).find()) {
+            return Complexity.COMPLEX;
+        }
+        Set<String> components = new LinkedHashSet<>();
+        Matcher matcher = SegmentMetadataExtractor.COMPONENT_ID.matcher(trimmed);
+        while (matcher.find()) {
+            components.add(matcher.group());
+        }
+        if (components.size() > 1 || contents.isEmpty()) {
+            return Complexity.COMPLEX;
+        }
+        Content best = contents.get(0);
+        Object score = best.metadata().get(ContentMetadata.SCORE);
+        if (!(score instanceof Number number) || number.doubleValue() < minSimpleScore) {
+            return Complexity.COMPLEX;
+        }
+        if (!components.isEmpty() && contents.stream()
+                .noneMatch(content -> content.textSegment().text().contains(components.iterator().next()))) {
+            return Complexity.COMPLEX;
+        }
+        return Complexity.SIMPLE;
+    }
+}
@@ -0,0 +1,82 @@
+package ca.bazlur.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a compound question into sub-queries that can be retrieved separately.
+ *
+ * <p>A question such as "why is PIPE-002 pressure low and what's the safety procedure?" asks for
+ * two kinds of records, and a single embedding of it lands between them. The question is split at
+ * sentence ends, semicolons and at "and", "also" or "then" followed by a new question word. Sub-queries
+ * that name no component inherit the component IDs named elsewhere in the question, so "what's the
+ * safety procedure" is retrieved as "what's the safety procedure for PIPE-002". The split is rule
+ * based, so it costs no model call.
+ */
+public class QueryDecomposer {
+
+    private static final Pattern SENTENCE_END = Pattern.compile("[?;!\\n]+|\\.(?=\\s|$)");
+    private static final Pattern CONJUNCTION = Pattern.compile(
+            "(?i)(?:,\\s*|\\s+)(?:and|also|then|as well as)\\s+(?:also\\s+)?"
+                    + "(?=(?:what|what's|how|when|where|why|which|who|is|are|was|were|does|do|did|can|should|list|show|describe)\\b)");
+    private static final int MIN_WORDS = 2;
+
+    private final int maxSubQueries;
+
+    /**
+     * Creates a decomposer.
+     *
+     * @param maxSubQueries The maximum number of sub-queries per question; 1 leaves questions whole
+     */
+    public QueryDecomposer(int maxSubQueries) {
+        this.maxSubQueries = Math.max(maxSubQueries, 1);
+    }
+
+    /**
+     * Splits a question into sub-queries.
+     *
+     * @param question The question
+     * @return The sub-queries, or the question alone if it does not split
+     */
+    public List<String> decompose(String question) {
+        if (maxSubQueries == 1) {
+            return List.of(question);
+        }
+        List<String> parts = new ArrayList<>();
+        for (String sentence : SENTENCE_END.split(question)) {
+            for (String part : CONJUNCTION.split(sentence)) {
+                String trimmed = part.strip();
+                if (trimmed.split("\\s+").length >= MIN_WORDS) {
+                    parts.add(trimmed);
+                }
+            }
+        }
+        if (parts.size() < 2) {
+            return List.of(question);
+        }
+
+        Set<String> components = new LinkedHashSet<>();
+        Matcher matcher = SegmentMetadataExtractor.COMPONENT_ID.matcher(question);
+        while (matcher.find()) {
+            components.add(matcher.group());
+        }
+        Set<String> subQueries = new LinkedHashSet<>();
+        for (String part : parts) {
+            if (!components.isEmpty() && !SegmentMetadataExtractor.COMPONENT_ID.matcher(part).find()) {
+                part = part + " for " + String.join(", ", components);
+            }
+            subQueries.add(part);
+            if (subQueries.size() == maxSubQueries) {
+                break;
+            }
+        }
+        if (subQueries.size() < 2) {
+            return List.of(question);
+        }
+        return List.copyOf(subQueries);
+    }
+}
@@ -0,0 +1,151 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+import dev.langchain4j.http.client.HttpClientBuilderLoader;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP client that passes the rate-limit headers of OpenAI responses to an
+ * {@link AimdRateController}.
+ *
+ * <p>OpenAI reports the requests and tokens left in the current window in
+ * {@code x-ratelimit-remaining-requests} and {@code x-ratelimit-remaining-tokens}, and the time
+ * until they are refilled in {@code x-ratelimit-reset-requests} and
+ * {@code x-ratelimit-reset-tokens}, as durations such as {@code 1s}, {@code 6m0s} or
+ * {@code 120ms}. Responses without these headers are passed through unchanged.
+ */
+public class RateLimitTrackingHttpClient implements HttpClient {
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final HttpClient delegate;
+    private final AimdRateController controller;
+
+    /**
+     * Creates a client.
+     *
+     * @param delegate The client that sends the requests
+     * @param controller The controller to report the rate limits to
+     */
+    public RateLimitTrackingHttpClient(HttpClient delegate, AimdRateController controller) {
+        this.delegate = delegate;
+        this.controller = controller;
+    }
+
+    /**
+     * Gets a builder for the model builders' {@code httpClientBuilder}, which builds the default
+     * HTTP client and wraps it.
+     *
+     * @param controller The controller to report the rate limits to
+     * @return The builder
+     */
+    public static HttpClientBuilder builder(AimdRateController controller) {
+        HttpClientBuilder delegate = HttpClientBuilderLoader.loadHttpClientBuilder();
+        return new HttpClientBuilder() {
+            @Override
+            public Duration connectTimeout() {
+                return delegate.connectTimeout();
+            }
+
+            @Override
+            public HttpClientBuilder connectTimeout(Duration timeout) {
+                delegate.connectTimeout(timeout);
+                return this;
+            }
+
+            @Override
+            public Duration readTimeout() {
+                return delegate.readTimeout();
+            }
+
+            @Override
+            public HttpClientBuilder readTimeout(Duration timeout) {
+                delegate.readTimeout(timeout);
+                return this;
+            }
+
+            @Override
+            public HttpClient build() {
+                return new RateLimitTrackingHttpClient(delegate.build(), controller);
+            }
+        };
+    }
+
+    @Override
+    public SuccessfulHttpResponse execute(HttpRequest request) {
+        SuccessfulHttpResponse response = delegate.execute(request);
+        Map<String, List<String>> headers = response.headers();
+        if (headers != null) {
+            controller.updateLimits(
+                    parseLong(header(headers, "x-ratelimit-remaining-requests")),
+                    parseDuration(header(headers, "x-ratelimit-reset-requests")),
+                    parseLong(header(headers, "x-ratelimit-remaining-tokens")),
+                    parseDuration(header(headers, "x-ratelimit-reset-tokens")));
+        }
+        return response;
+    }
+
+    @Override
+    public void execute(HttpRequest request, ServerSentEventParser parser, ServerSentEventListener listener) {
+        delegate.execute(request, parser, listener);
+    }
+
+    private static String header(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses a duration in the format of the OpenAI reset headers.
+     *
+     * @param value The header value, such as {@code 6m0s} or {@code 120ms}
+     * @return The duration, or null if the value is missing or malformed
+     */
+    static Duration parseDuration(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        Matcher matcher = DURATION_PART.matcher(value.trim());
+        double millis = 0;
+        int end = 0;
+        while (matcher.find()) {
+            if (matcher.start() != end) {
+                return null;
+            }
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += amount * switch (matcher.group(2)) {
+                case "h" -> 3_600_000;
+                case "m" -> 60_000;
+                case "s" -> 1_000;
+                default -> 1;
+            };
+            end = matcher.end();
+        }
+        return end == value.trim().length() && end > 0 ? Duration.ofNanos((long) (millis * 1_000_000)) : null;
+    }
+}
@@ -0,0 +1,55 @@
+package ca.bazlur.service;
+
+import ca.bazlur.service.QueryComplexityClassifier.Complexity;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Chat model that sends simple requests to a small, fast model and all others to a large one.
+ *
+ * <p>The complexity of the current request is supplied from outside, because it is decided from
+ * the question and its retrieved context before the prompt is assembled. Requests without a
+ * decision, such as background summaries, go to the large model.
+ */
+public class RoutingChatModel implements ChatLanguageModel {
+    private static final Logger logger = LoggerFactory.getLogger(RoutingChatModel.class);
+
+    private final ChatLanguageModel small;
+    private final ChatLanguageModel large;
+    private final Supplier<Complexity> complexity;
+
+    /**
+     * Creates a routing chat model.
+     *
+     * @param small The model for simple requests
+     * @param large The model for all other requests
+     * @param complexity Supplies the complexity of the current request, or null if it is unknown
+     */
+    public RoutingChatModel(ChatLanguageModel small, ChatLanguageModel large, Supplier<Complexity> complexity) {
+        this.small = small;
+        this.large = large;
+        this.complexity = complexity;
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest request) {
+        Complexity current = complexity.get();
+        logger.debug("Routing {} request to the {} model", current, current == Complexity.SIMPLE ? "small" : "large");
+        return (current == Complexity.SIMPLE ? small : large).chat(request);
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        Set<Capability> capabilities = new HashSet<>(small.supportedCapabilities());
+        capabilities.retainAll(large.supportedCapabilities());
+        return capabilities;
+    }
+}
@@ -0,0 +1,341 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.data.segment.TextSegmentTransformer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Drops duplicate and near-duplicate segments before they are embedded.
+ *
+ * <p>Segments are first transformed by the delegate, then compared in ingestion order. Exact
+ * duplicates are found by a hash of the whitespace- and case-normalized text. Near duplicates are
+ * found with MinHash signatures over word shingles, bucketed with locality-sensitive hashing so each
+ * segment is only compared with the few earlier segments that share a band, and confirmed by the
+ * Jaccard similarity the signatures estimate. The first occurrence is kept as the canonical
+ * segment; the {@code record_type} and {@code components} metadata of its copies in the same batch
+ * is merged into it, and {@code copies} lists where the dropped copies came from. Its {@code source}
+ * stays the single resource it was loaded from, so a filter on the {@code source} of a copy does
+ * not find it.
+ *
+ * <p>Once a batch is returned its canonical segments are stored, so only their hash and signature
+ * are remembered. Copies of them in later batches are still dropped, but their metadata is lost and
+ * they are not listed in {@code copies}. One instance should be used per ingestion run.
+ */
+public class SegmentDeduplicator implements TextSegmentTransformer {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentDeduplicator.class);
+
+    /**
+     * Metadata key listing the {@code source@offset#index} references of the dropped copies: the
+     * source, the offset of the window in it and the index of the segment in the window.
+     */
+    public static final String COPIES = "copies";
+
+    private static final String SEGMENT_INDEX = "index";
+    private static final List<String> MERGED_KEYS = List.of(
+            SegmentMetadataExtractor.RECORD_TYPE, SegmentMetadataExtractor.COMPONENTS);
+
+    private static final int SHINGLE_SIZE = 3;
+    private static final int BANDS = 16;
+    private static final int ROWS = 8;
+    private static final long[] SEEDS = seeds(BANDS * ROWS);
+
+    private final TextSegmentTransformer delegate;
+    private final double similarityThreshold;
+    private final Set<String> storedHashes = new HashSet<>();
+    private final Map<Long, List<long[]>> storedBuckets = new HashMap<>();
+
+    /**
+     * Creates a deduplicator.
+     *
+     * @param delegate The transformer applied to every segment before deduplication
+     * @param similarityThreshold The Jaccard similarity from which segments count as near duplicates;
+     *                            1 or more only removes exact duplicates
+     */
+    public SegmentDeduplicator(TextSegmentTransformer delegate, double similarityThreshold) {
+        this.delegate = delegate;
+        this.similarityThreshold = similarityThreshold;
+    }
+
+    @Override
+    public TextSegment transform(TextSegment segment) {
+        return delegate.transform(segment);
+    }
+
+    /**
+     * Transforms a batch of segments and removes the duplicates. Segments are also compared with the
+     * canonical segments of earlier batches; copies of those are dropped as well, but as the
+     * canonical segment has already been stored, their metadata is not merged into it.
+     */
+    @Override
+    public synchronized List<TextSegment> transformAll(List<TextSegment> segments) {
+        List<TextSegment> transformed = delegate.transformAll(segments);
+        List<Canonical> canonicals = new ArrayList<>();
+        Map<String, Canonical> byHash = new HashMap<>();
+        Map<Long, List<Canonical>> buckets = new HashMap<>();
+        int exact = 0;
+        int near = 0;
+        int stored = 0;
+
+        for (TextSegment segment : transformed) {
+            String normalized = normalize(segment.text());
+            String hash = sha256(normalized);
+            Canonical original = byHash.get(hash);
+            if (original != null) {
+                original.absorb(segment);
+                exact++;
+                continue;
+            }
+            if (storedHashes.contains(hash)) {
+                exact++;
+                stored++;
+                continue;
+            }
+
+            long[] signature = null;
+            long[] bandKeys = null;
+            if (similarityThreshold < 1.0) {
+                signature = signature(shingles(normalized));
+                bandKeys = bandKeys(signature);
+                original = findNearDuplicate(buckets, bandKeys, signature, candidate -> candidate.signature);
+                if (original != null) {
+                    original.absorb(segment);
+                    near++;
+                    continue;
+                }
+                if (findNearDuplicate(storedBuckets, bandKeys, signature, candidate -> candidate) != null) {
+                    near++;
+                    stored++;
+                    continue;
+                }
+            }
+
+            Canonical canonical = new Canonical(segment, hash, signature, bandKeys);
+            canonicals.add(canonical);
+            byHash.put(hash, canonical);
+            if (bandKeys != null) {
+                for (long key : bandKeys) {
+                    buckets.computeIfAbsent(key, k -> new ArrayList<>(1)).add(canonical);
+                }
+            }
+        }
+
+        if (exact + near > 0) {
+            logger.info("Removed {} duplicate segments before embedding ({} exact, {} near duplicates, {} of earlier batches); {} remain.",
+                    exact + near, exact, near, stored, canonicals.size());
+        }
+        List<TextSegment> result = new ArrayList<>(canonicals.size());
+        for (Canonical canonical : canonicals) {
+            result.add(canonical.toSegment());
+            storedHashes.add(canonical.hash);
+            if (canonical.bandKeys != null) {
+                for (long key : canonical.bandKeys) {
+                    storedBuckets.computeIfAbsent(key, k -> new ArrayList<>(1)).add(canonical.signature);
+                }
+            }
+        }
+        return result;
+    }
+
+    private <T> T findNearDuplicate(Map<Long, List<T>> buckets, long[] bandKeys, long[] signature,
+                                    Function<T, long[]> signatureOf) {
+        T best = null;
+        double bestSimilarity = similarityThreshold;
+        Set<T> checked = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (long key : bandKeys) {
+            for (T candidate : buckets.getOrDefault(key, List.of())) {
+                if (!checked.add(candidate)) {
+                    continue;
+                }
+                double similarity = estimatedSimilarity(signature, signatureOf.apply(candidate));
+                if (similarity >= bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+        return best;
+    }
+
+    static String normalize(String text) {
+        return text.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Hashes the overlapping word n-grams of the text. Texts shorter than one shingle are a single shingle.
+     */
+    static Set<Long> shingles(String normalized) {
+        String[] words = normalized.split(" ");
+        Set<Long> shingles = new LinkedHashSet<>();
+        for (int i = 0; i + SHINGLE_SIZE <= words.length || i == 0; i++) {
+            StringBuilder shingle = new StringBuilder();
+            for (int j = i; j < Math.min(words.length, i + SHINGLE_SIZE); j++) {
+                shingle.append(words[j]).append(' ');
+            }
+            shingles.add(hash64(shingle.toString()));
+        }
+        return shingles;
+    }
+
+    static long[] signature(Set<Long> shingles) {
+        long[] signature = new long[SEEDS.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (long shingle : shingles) {
+            for (int i = 0; i < SEEDS.length; i++) {
+                long value = mix(shingle ^ SEEDS[i]);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Hashes each band of the signature together with its band number, so only segments that agree
+     * on every row of some band share a bucket.
+     */
+    private static long[] bandKeys(long[] signature) {
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long key = mix(band + 1);
+            for (int row = 0; row < ROWS; row++) {
+                key = mix(key ^ signature[band * ROWS + row]);
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * Estimates the Jaccard similarity of two shingle sets as the fraction of equal signature rows.
+     */
+    static double estimatedSimilarity(long[] a, long[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    static double jaccard(Set<Long> a, Set<Long> b) {
+        Set<Long> smaller = a.size() <= b.size() ? a : b;
+        Set<Long> larger = smaller == a ? b : a;
+        int intersection = 0;
+        for (Long value : smaller) {
+            if (larger.contains(value)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+
+    private static long hash64(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /** The SplitMix64 finalizer; turns correlated inputs into independent-looking hashes. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long[] seeds(int count) {
+        long[] seeds = new long[count];
+        long state = 0x5DEECE66DL;
+        for (int i = 0; i < count; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            seeds[i] = mix(state);
+        }
+        return seeds;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The first occurrence of a segment in the current batch, collecting the metadata of its copies.
+     */
+    private static final class Canonical {
+        private final TextSegment segment;
+        private final String hash;
+        private final long[] signature;
+        private final long[] bandKeys;
+        private final Map<String, Set<String>> mergedValues = new HashMap<>();
+        private final Set<String> copies = new LinkedHashSet<>();
+
+        Canonical(TextSegment segment, String hash, long[] signature, long[] bandKeys) {
+            this.segment = segment;
+            this.hash = hash;
+            this.signature = signature;
+            this.bandKeys = bandKeys;
+            collect(segment.metadata());
+        }
+
+        void absorb(TextSegment copy) {
+            collect(copy.metadata());
+            String source = copy.metadata().getString(SegmentMetadataExtractor.SOURCE);
+            Object offset = copy.metadata().toMap().get(StreamingDocumentLoader.OFFSET);
+            Object index = copy.metadata().toMap().get(SEGMENT_INDEX);
+            copies.add((source == null ? "unknown" : source) + (offset == null ? "" : "@" + offset)
+                    + (index == null ? "" : "#" + index));
+        }
+
+        private void collect(Metadata metadata) {
+            for (String key : MERGED_KEYS) {
+                Object value = metadata.toMap().get(key);
+                if (value == null) {
+                    continue;
+                }
+                Set<String> values = mergedValues.computeIfAbsent(key, k -> new LinkedHashSet<>());
+                for (String element : String.valueOf(value).split(",")) {
+                    if (!element.isBlank()) {
+                        values.add(element.trim());
+                    }
+                }
+            }
+        }
+
+        TextSegment toSegment() {
+            if (copies.isEmpty()) {
+                return segment;
+            }
+            Metadata metadata = segment.metadata().copy();
+            mergedValues.forEach((key, values) -> metadata.put(key, String.join(",", values)));
+            metadata.put(COPIES, String.join(",", copies));
+            return TextSegment.from(segment.text(), metadata);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.data.segment.TextSegmentTransformer;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Attaches filterable metadata to segments during ingestion.
+ *
+ * <p>The knowledge base records start with a fixed prefix such as {@code Fault ID:} or
+ * {@code Safety Procedure}, and refer to components by IDs such as {@code PUMP-001}. Segments get
+ * the record types and component IDs they contain as comma-separated lists, so retrieval can be
+ * restricted with metadata filters. The {@code source} resource name is inherited from the document.
+ */
+public class SegmentMetadataExtractor implements TextSegmentTransformer {
+
+    /** Metadata key holding the resource the segment was loaded from. */
+    public static final String SOURCE = "source";
+    /** Metadata key holding the comma-separated record types in the segment. */
+    public static final String RECORD_TYPE = "record_type";
+    /** Metadata key holding the comma-separated component IDs referenced by the segment. */
+    public static final String COMPONENTS = "components";
+
+    private static final Map<String, String> RECORD_PREFIXES = Map.of(
+            "Component ID:", "component",
+            "Fault ID:", "fault",
+            "Event ID:", "event",
+            "Rule ID:", "rule",
+            "Maintenance Note", "maintenance_note",
+            "Safety Procedure", "safety_procedure");
+
+    /** Matches component IDs such as {@code PUMP-001}, in segments as well as in questions. */
+    static final Pattern COMPONENT_ID = Pattern.compile("\\b[A-Z]{2,}(?:-[A-Z0-9]+)+\\b");
+
+    @Override
+    public TextSegment transform(TextSegment segment) {
+        Metadata metadata = segment.metadata().copy();
+
+        Set<String> recordTypes = new LinkedHashSet<>();
+        for (String line : segment.text().split("\\R")) {
+            String trimmed = line.strip();
+            RECORD_PREFIXES.forEach((prefix, type) -> {
+                if (trimmed.startsWith(prefix)) {
+                    recordTypes.add(type);
+                }
+            });
+        }
+        if (!recordTypes.isEmpty()) {
+            metadata.put(RECORD_TYPE, String.join(",", recordTypes));
+        }
+
+        Set<String> components = new LinkedHashSet<>();
+        Matcher matcher = COMPONENT_ID.matcher(segment.text());
+        while (matcher.find()) {
+            components.add(matcher.group());
+        }
+        if (!components.isEmpty()) {
+            metadata.put(COMPONENTS, String.join(",", components));
+        }
+
+        return TextSegment.from(segment.text(), metadata);
+    }
+}
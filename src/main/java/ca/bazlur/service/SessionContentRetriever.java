@@ -0,0 +1,173 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+
+/**
+ * Content retriever of one conversation that answers follow-up questions from the candidates of
+ * the previous search instead of searching the store again.
+ *
+ * <p>A search retrieves a deeper candidate set than is returned, with the embeddings of the
+ * matches. A later question is re-scored locally against these candidates when
+ * <ul>
+ *   <li>it is searched with the same metadata filter,</li>
+ *   <li>it names no component other than the active ones: those named by the question that
+ *       filled the cache or in the metadata of the content returned for it, and</li>
+ *   <li>its embedding is at least the minimum similarity close to one of the recent questions
+ *       answered from the candidates.</li>
+ * </ul>
+ * Follow-ups such as "and what's the safety procedure for it?" thus need one query embedding but
+ * no store search. When any condition fails, or no candidate reaches the minimum score, the store
+ * is searched and the cache filled anew.
+ */
+public class SessionContentRetriever implements ContentRetriever {
+    private static final Logger logger = LoggerFactory.getLogger(SessionContentRetriever.class);
+
+    /** The number of recent questions a follow-up is compared with. */
+    static final int RECENT_QUERIES = 4;
+
+    private final MultiQueryContentRetriever delegate;
+    private final EmbeddingModel embeddingModel;
+    private final int maxResults;
+    private final double minScore;
+    private final int candidates;
+    private final double minSimilarity;
+    private final Function<Query, Filter> filterProvider;
+
+    private List<EmbeddingMatch<TextSegment>> cached = List.of();
+    private Filter cachedFilter;
+    private final Set<String> activeComponents = new HashSet<>();
+    private final Deque<Embedding> recentQueries = new ArrayDeque<>();
+
+    /**
+     * Creates a retriever.
+     *
+     * @param delegate Searches the store
+     * @param embeddingModel The model that embeds the questions
+     * @param maxResults The number of segments to return
+     * @param minScore The minimum relevance score of a returned segment
+     * @param candidates The number of candidates to keep from a search
+     * @param minSimilarity The cosine similarity a follow-up needs to a recent question
+     * @param filterProvider Gives the metadata filter for a query, or null to search all segments;
+     *                       the same as the delegate's
+     */
+    public SessionContentRetriever(MultiQueryContentRetriever delegate, EmbeddingModel embeddingModel,
+                                   int maxResults, double minScore, int candidates, double minSimilarity,
+                                   Function<Query, Filter> filterProvider) {
+        this.delegate = delegate;
+        this.embeddingModel = embeddingModel;
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+        this.candidates = Math.max(candidates, maxResults);
+        this.minSimilarity = minSimilarity;
+        this.filterProvider = filterProvider;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        Filter filter = filterProvider.apply(query);
+        Set<String> components = components(query.text());
+        Embedding embedding = embeddingModel.embed(query.text()).content();
+
+        List<EmbeddingMatch<TextSegment>> reused = reuse(embedding, filter, components);
+        if (reused != null) {
+            logger.debug("Answered '{}' from {} cached candidates.", query.text(), cached.size());
+            return MultiQueryContentRetriever.toContents(reused);
+        }
+        List<EmbeddingMatch<TextSegment>> found = delegate.retrieveCandidates(query, embedding, candidates);
+        List<EmbeddingMatch<TextSegment>> matches = found.stream()
+                .filter(match -> match.score() >= minScore)
+                .limit(maxResults)
+                .toList();
+        remember(found, matches, embedding, filter, components);
+        return MultiQueryContentRetriever.toContents(matches);
+    }
+
+    /**
+     * Re-scores the cached candidates for a follow-up question.
+     *
+     * @return The best candidates, or null if the store has to be searched
+     */
+    private synchronized List<EmbeddingMatch<TextSegment>> reuse(Embedding embedding, Filter filter,
+                                                                 Set<String> components) {
+        if (cached.isEmpty() || !Objects.equals(filter, cachedFilter) || !activeComponents.containsAll(components)) {
+            return null;
+        }
+        double similarity = recentQueries.stream()
+                .mapToDouble(recent -> CosineSimilarity.between(recent, embedding))
+                .max()
+                .orElse(-1);
+        if (similarity < minSimilarity) {
+            return null;
+        }
+        List<EmbeddingMatch<TextSegment>> rescored = cached.stream()
+                .map(match -> new EmbeddingMatch<>(
+                        RelevanceScore.fromCosineSimilarity(CosineSimilarity.between(embedding, match.embedding())),
+                        match.embeddingId(), match.embedding(), match.embedded()))
+                .filter(match -> match.score() >= minScore)
+                .sorted(Comparator.comparingDouble(EmbeddingMatch<TextSegment>::score).reversed())
+                .limit(maxResults)
+                .toList();
+        if (rescored.isEmpty()) {
+            return null;
+        }
+        addRecentQuery(embedding);
+        return rescored;
+    }
+
+    /**
+     * Replaces the cache with the candidates of a search.
+     */
+    private synchronized void remember(List<EmbeddingMatch<TextSegment>> found,
+                                       List<EmbeddingMatch<TextSegment>> returned, Embedding embedding,
+                                       Filter filter, Set<String> components) {
+        cached = found.stream().filter(match -> match.embedding() != null).toList();
+        cachedFilter = filter;
+        activeComponents.clear();
+        activeComponents.addAll(components);
+        for (EmbeddingMatch<TextSegment> match : returned) {
+            String listed = match.embedded().metadata().getString(SegmentMetadataExtractor.COMPONENTS);
+            if (listed != null) {
+                activeComponents.addAll(List.of(listed.split(",")));
+            }
+        }
+        recentQueries.clear();
+        addRecentQuery(embedding);
+    }
+
+    private void addRecentQuery(Embedding embedding) {
+        if (recentQueries.size() == RECENT_QUERIES) {
+            recentQueries.removeFirst();
+        }
+        recentQueries.addLast(embedding);
+    }
+
+    private static Set<String> components(String text) {
+        Set<String> components = new HashSet<>();
+        Matcher matcher = SegmentMetadataExtractor.COMPONENT_ID.matcher(text);
+        while (matcher.find()) {
+            components.add(matcher.group());
+        }
+        return components;
+    }
+}
@@ -0,0 +1,76 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.injector.ContentInjector;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Injects retrieved content into the user message in document order rather than score order.
+ *
+ * <p>The injected message is stored in the chat memory and becomes part of the prompt prefix of
+ * every later turn. Ordering the segments by source and position, the offset of the window they
+ * were split from and their index in it, makes the same set of segments always produce
+ * byte-identical text, whatever small differences in score put them in a different order, so
+ * backends can keep reusing their cached prefix. The model reads the segments in the order they
+ * appear in the knowledge base, which also keeps related records together.
+ */
+public class StableContentInjector implements ContentInjector {
+
+    private static final Comparator<Content> DOCUMENT_ORDER = Comparator
+            .comparing((Content content) -> string(content.textSegment().metadata(), SegmentMetadataExtractor.SOURCE))
+            .thenComparingLong(content -> number(content.textSegment().metadata(), StreamingDocumentLoader.OFFSET))
+            .thenComparingLong(content -> number(content.textSegment().metadata(), "index"))
+            .thenComparing(content -> content.textSegment().text());
+
+    private final ContentInjector delegate;
+
+    /**
+     * Creates an injector using the default prompt template.
+     */
+    public StableContentInjector() {
+        this(new DefaultContentInjector());
+    }
+
+    /**
+     * Creates an injector that formats the ordered content with another injector.
+     *
+     * @param delegate The injector that formats the content
+     */
+    public StableContentInjector(ContentInjector delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ChatMessage inject(List<Content> contents, ChatMessage chatMessage) {
+        return delegate.inject(contents.stream().sorted(DOCUMENT_ORDER).toList(), chatMessage);
+    }
+
+    private static String string(Metadata metadata, String key) {
+        Object value = metadata.toMap().get(key);
+        return value == null ? "" : value.toString();
+    }
+
+    /**
+     * Gets a position recorded in the metadata: the offset of the window a segment was split from,
+     * or its index within that window.
+     */
+    private static long number(Metadata metadata, String key) {
+        Object value = metadata.toMap().get(key);
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString());
+            } catch (NumberFormatException e) {
+                // Not a position; fall back to ordering by text.
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,165 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads knowledge base sources as a sequence of bounded-size documents instead of one string per file.
+ *
+ * <p>Each source is read incrementally and cut into windows of at most {@code windowChars}
+ * characters, preferably at a line break so records stay whole. Only the window being filled is
+ * held in memory, so files far larger than the heap can be ingested. Local files above the mapping
+ * threshold are read through memory-mapped regions rather than a stream.
+ *
+ * <p>Every window carries the character offset at which it starts in its source, since the
+ * splitter numbers the segments of each window from 0: source, offset and segment index together
+ * give the position of a segment in its source.
+ */
+public class StreamingDocumentLoader {
+
+    /** Metadata key holding the character offset at which a window starts in its source. */
+    public static final String OFFSET = "offset";
+
+    /** Local files from this size on are memory-mapped. */
+    static final long MMAP_THRESHOLD_BYTES = 8L << 20;
+
+    private final int windowChars;
+
+    /**
+     * Creates a loader.
+     *
+     * @param windowChars The maximum number of characters per emitted document
+     */
+    public StreamingDocumentLoader(int windowChars) {
+        if (windowChars < 1) {
+            throw new IllegalArgumentException("windowChars must be positive");
+        }
+        this.windowChars = windowChars;
+    }
+
+    /**
+     * Opens a local file for streaming, memory-mapping it when it is large.
+     *
+     * @param path The file to read
+     * @return A reader over the UTF-8 content of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public static Reader openFile(Path path) throws IOException {
+        if (Files.size(path) >= MMAP_THRESHOLD_BYTES) {
+            return new BufferedReader(new MappedFileReader(path));
+        }
+        return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Wraps a classpath resource or other stream for streaming.
+     *
+     * @param inputStream The UTF-8 encoded stream
+     * @return A buffered reader over the stream
+     */
+    public static Reader openStream(InputStream inputStream) {
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Lazily cuts the content of a reader into documents. The reader is closed once it is exhausted.
+     * {@link UncheckedIOException} is thrown from the iterator if reading fails.
+     *
+     * @param source The source name, stored as {@code source} metadata on every document along with
+     *               the {@code offset} of the document
+     * @param reader The reader to consume
+     * @return An iterator over the windows of the source
+     */
+    public Iterator<Document> windows(String source, Reader reader) {
+        return new WindowIterator(source, reader);
+    }
+
+    private final class WindowIterator implements Iterator<Document> {
+        private final String source;
+        private final Reader reader;
+        private final char[] buffer = new char[windowChars];
+        private int filled;
+        /** Offset of the start of the buffer in the source. */
+        private long offset;
+        private boolean exhausted;
+        private Document next;
+
+        WindowIterator(String source, Reader reader) {
+            this.source = source;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !(exhausted && filled == 0)) {
+                next = readWindow();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Document document = next;
+            next = null;
+            return document;
+        }
+
+        /**
+         * Fills the buffer and emits everything up to its last line break, carrying the rest over to
+         * the next window. Returns null for windows that contain only whitespace.
+         */
+        private Document readWindow() {
+            try {
+                while (!exhausted && filled < buffer.length) {
+                    int read = reader.read(buffer, filled, buffer.length - filled);
+                    if (read < 0) {
+                        exhausted = true;
+                        reader.close();
+                    } else {
+                        filled += read;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + source, e);
+            }
+
+            int end = exhausted ? filled : cutPoint();
+            String text = new String(buffer, 0, end);
+            System.arraycopy(buffer, end, buffer, 0, filled - end);
+            filled -= end;
+            long start = offset;
+            offset += end;
+            return text.isBlank() ? null : Document.from(text, Metadata.from(SegmentMetadataExtractor.SOURCE, source)
+                    .put(OFFSET, start));
+        }
+
+        private int cutPoint() {
+            int whitespace = -1;
+            for (int i = filled - 1; i > 0; i--) {
+                if (buffer[i] == '\n') {
+                    return i + 1;
+                }
+                if (whitespace < 0 && Character.isWhitespace(buffer[i])) {
+                    whitespace = i + 1;
+                }
+            }
+            // A single line longer than the window: cut between words, or mid-word as a last resort.
+            return whitespace > 0 ? whitespace : filled;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.RateLimitException;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Embedding model for bulk ingestion against a rate-limited provider.
+ *
+ * <p>The segments of one {@link #embedAll(List)} call are cut into requests of the batch size
+ * chosen by an {@link AimdRateController}, estimating four characters per token, and sent
+ * concurrently on virtual threads as far as the controller allows. A rate-limited request is
+ * retried once the controller's pause is over. Every completed request is recorded in an
+ * {@link EmbeddingCheckpoint}, and segments found there are not embedded again, so an ingestion
+ * that fails after the retries are exhausted resumes where it stopped. When a request fails for
+ * good, the requests already in flight still complete and are checkpointed before the failure is
+ * thrown.
+ */
+public class ThrottledEmbeddingModel implements EmbeddingModel {
+    private static final Logger logger = LoggerFactory.getLogger(ThrottledEmbeddingModel.class);
+
+    /** The most inputs OpenAI accepts in one embedding request. */
+    private static final int MAX_SEGMENTS_PER_REQUEST = 2048;
+
+    private final EmbeddingModel delegate;
+    private final AimdRateController controller;
+    private final EmbeddingCheckpoint checkpoint;
+    private final int maxRetries;
+
+    /**
+     * Creates a throttled model.
+     *
+     * @param delegate The model that embeds each request; it should not retry rate-limited
+     *                 requests itself
+     * @param controller Chooses the batch size and concurrency
+     * @param checkpoint Records completed requests
+     * @param maxRetries The number of times a rate-limited request is retried
+     */
+    public ThrottledEmbeddingModel(EmbeddingModel delegate, AimdRateController controller,
+                                   EmbeddingCheckpoint checkpoint, int maxRetries) {
+        this.delegate = delegate;
+        this.controller = controller;
+        this.checkpoint = checkpoint;
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        Embedding[] embeddings = new Embedding[segments.size()];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            embeddings[i] = checkpoint.get(segments.get(i).text());
+            if (embeddings[i] == null) {
+                pending.add(i);
+            }
+        }
+        if (pending.size() < segments.size()) {
+            logger.info("{} of {} segments taken from the checkpoint.", segments.size() - pending.size(),
+                    segments.size());
+        }
+
+        List<Future<?>> requests = new ArrayList<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        RuntimeException failure = null;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            int next = 0;
+            while (next < pending.size() && !aborted.get()) {
+                int budget = controller.getBatchTokens();
+                List<Integer> batch = new ArrayList<>();
+                int tokens = 0;
+                while (next < pending.size() && batch.size() < MAX_SEGMENTS_PER_REQUEST) {
+                    int segmentTokens = estimateTokens(segments.get(pending.get(next)).text());
+                    if (!batch.isEmpty() && tokens + segmentTokens > budget) {
+                        break;
+                    }
+                    batch.add(pending.get(next++));
+                    tokens += segmentTokens;
+                }
+                // Waiting here, rather than in the request, keeps the batches cut to the latest size.
+                controller.acquire(tokens);
+                int batchTokens = tokens;
+                requests.add(executor.submit(() -> {
+                    embedBatch(segments, batch, batchTokens, embeddings, aborted);
+                    return null;
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while embedding segments", e);
+        }
+        for (Future<?> request : requests) {
+            try {
+                request.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while embedding segments", e);
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtime ? runtime
+                        : new IllegalStateException("Embedding failed", e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else if (failure != cause) {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            logger.warn("Embedding failed; {} embeddings are checkpointed for the next attempt.", checkpoint.size());
+            throw failure;
+        }
+        return Response.from(Arrays.asList(embeddings));
+    }
+
+    /**
+     * Embeds one request, retrying it while it is rate limited. The request has been acquired
+     * from the controller. Once any request has failed for good, rate-limited requests are no
+     * longer retried, so that a failing ingestion stops soon.
+     */
+    private void embedBatch(List<TextSegment> segments, List<Integer> batch, int tokens, Embedding[] embeddings,
+                            AtomicBoolean aborted) throws InterruptedException {
+        List<TextSegment> inputs = batch.stream().map(segments::get).toList();
+        for (int attempt = 0; ; attempt++) {
+            List<Embedding> result;
+            try {
+                result = delegate.embedAll(inputs).content();
+            } catch (RuntimeException e) {
+                if (!isRateLimit(e)) {
+                    controller.onFailure();
+                    aborted.set(true);
+                    throw e;
+                }
+                controller.onRateLimited();
+                if (attempt >= maxRetries || aborted.get()) {
+                    aborted.set(true);
+                    throw e;
+                }
+                logger.debug("Rate limited; retrying {} segments with concurrency {} and {} tokens per batch.",
+                        inputs.size(), controller.getConcurrency(), controller.getBatchTokens());
+                controller.acquire(tokens);
+                continue;
+            }
+            controller.onSuccess();
+            for (int i = 0; i < batch.size(); i++) {
+                embeddings[batch.get(i)] = result.get(i);
+            }
+            checkpoint.putAll(inputs.stream().map(TextSegment::text).toList(), result);
+            return;
+        }
+    }
+
+    /**
+     * Estimates the tokens of a text at about four characters per token, the usual ratio of
+     * English text with OpenAI's tokenizers.
+     *
+     * @param text The text
+     * @return The estimated number of tokens
+     */
+    static int estimateTokens(String text) {
+        return text.length() / 4 + 1;
+    }
+
+    private static boolean isRateLimit(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RateLimitException
+                    || cause instanceof HttpException http && http.statusCode() == 429) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
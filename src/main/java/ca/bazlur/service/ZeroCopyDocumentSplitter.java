@@ -0,0 +1,461 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.util.Span;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Document splitter that produces the same segments as {@link DocumentSplitters#recursive(int, int)}
+ * without copying the text it splits.
+ *
+ * <p>Like the recursive splitter, the text is split into paragraphs, a paragraph too long for a
+ * segment into lines, then sentences, words and characters, and each segment starts with the
+ * trailing sentences of the previous one that fit into the overlap. Here the parts of a level are
+ * offset ranges into the text, and a segment is collected as a list of ranges that is measured,
+ * trimmed and compared in place; a {@code String} is built only for each final segment. The text
+ * may be any {@link CharSequence}, such as a {@link java.nio.CharBuffer} over a decoded file.
+ *
+ * <p>OpenNLP detects sentences only in a {@code String}. A part that has to be split into
+ * sentences is therefore copied unless it is the whole text, and the overlap is detected in the
+ * segment {@code String} it is taken from.
+ *
+ * <p>The sentence model is loaded once and shared; everything else belongs to one call of
+ * {@link #split(Document)}, so one splitter can split documents in parallel.
+ */
+public class ZeroCopyDocumentSplitter implements DocumentSplitter {
+
+    private static final String SENTENCE_MODEL = "/opennlp/opennlp-en-ud-ewt-sentence-1.0-1.9.3.bin";
+
+    /** The levels of the recursive splitter, each splitting the parts too long for the one above. */
+    private enum Level {
+        PARAGRAPH(Pattern.compile("\\s*(?>\\R)\\s*(?>\\R)\\s*"), "\n\n"),
+        LINE(Pattern.compile("\\s*\\R\\s*"), "\n"),
+        SENTENCE(null, " "),
+        WORD(Pattern.compile("\\s+"), " "),
+        CHARACTER(Pattern.compile(""), "");
+
+        private final Pattern separator;
+        private final String delimiter;
+
+        Level(Pattern separator, String delimiter) {
+            this.separator = separator;
+            this.delimiter = delimiter;
+        }
+
+        Level next() {
+            return this == CHARACTER ? null : values()[ordinal() + 1];
+        }
+    }
+
+    private final int maxSegmentSize;
+    private final int maxOverlapSize;
+    private final SentenceModel sentenceModel;
+
+    /**
+     * Creates a splitter.
+     *
+     * @param maxSegmentSize The maximum length of a segment in characters
+     * @param maxOverlapSize The maximum length of the overlap between segments in characters
+     */
+    public ZeroCopyDocumentSplitter(int maxSegmentSize, int maxOverlapSize) {
+        if (maxSegmentSize <= 0) {
+            throw new IllegalArgumentException("maxSegmentSize must be greater than zero, but is: " + maxSegmentSize);
+        }
+        if (maxOverlapSize < 0 || maxOverlapSize > maxSegmentSize) {
+            throw new IllegalArgumentException("maxOverlapSize must be between 0 and " + maxSegmentSize
+                    + ", but is: " + maxOverlapSize);
+        }
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxOverlapSize = maxOverlapSize;
+        this.sentenceModel = loadSentenceModel();
+    }
+
+    private static SentenceModel loadSentenceModel() {
+        try (InputStream model = DocumentBySentenceSplitter.class.getResourceAsStream(SENTENCE_MODEL)) {
+            if (model == null) {
+                throw new IllegalStateException("Sentence model " + SENTENCE_MODEL + " not found");
+            }
+            return new SentenceModel(model);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the sentence model " + SENTENCE_MODEL, e);
+        }
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        if (document == null) {
+            throw new IllegalArgumentException("document cannot be null");
+        }
+        return split(document.text(), document.metadata());
+    }
+
+    /**
+     * Splits a text into segments.
+     *
+     * @param text The text, which is not copied
+     * @param metadata The metadata of the text, copied into each segment with its {@code index}
+     * @return The segments
+     */
+    public List<TextSegment> split(CharSequence text, Metadata metadata) {
+        List<String> texts = new ArrayList<>();
+        new Run().split(Level.PARAGRAPH, text, 0, text.length(), texts);
+        List<TextSegment> segments = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            segments.add(TextSegment.from(texts.get(i), metadata.copy().put("index", String.valueOf(i))));
+        }
+        return segments;
+    }
+
+    /**
+     * The state of one split. A level is never entered again while it is splitting, so each level
+     * keeps one set of buffers.
+     */
+    private final class Run {
+        private final SentenceDetectorME sentenceDetector = new SentenceDetectorME(sentenceModel);
+        private final Matcher[] matchers = new Matcher[Level.values().length];
+        private final Ranges[] parts = new Ranges[Level.values().length];
+        private final Ranges[] segments = new Ranges[Level.values().length];
+        private final Ranges[] overlaps = new Ranges[Level.values().length];
+        private final StringBuilder scratch = new StringBuilder();
+
+        Run() {
+            for (Level level : Level.values()) {
+                if (level.separator != null) {
+                    matchers[level.ordinal()] = level.separator.matcher("");
+                }
+                parts[level.ordinal()] = new Ranges("");
+                segments[level.ordinal()] = new Ranges(level.delimiter);
+                overlaps[level.ordinal()] = new Ranges(level.delimiter);
+            }
+        }
+
+        /**
+         * Splits a range of a text at one level, adding the segment texts to the output. A part
+         * that does not fit into a segment is split at the next level, whose segments are added
+         * in its place.
+         */
+        void split(Level level, CharSequence text, int start, int end, List<String> output) {
+            Ranges parts = this.parts[level.ordinal()];
+            splitIntoParts(level, text, start, end, parts);
+            Ranges segment = segments[level.ordinal()];
+            Ranges overlap = overlaps[level.ordinal()];
+            segment.reset();
+            overlap.reset();
+            boolean hasOverlap = false;
+
+            for (int i = 0; i < parts.count; i++) {
+                CharSequence source = parts.sources[i];
+                int partStart = parts.starts[i];
+                int partEnd = parts.ends[i];
+                int size = partEnd - partStart;
+                if (segment.hasSpaceFor(size, maxSegmentSize)) {
+                    segment.append(source, partStart, partEnd);
+                    continue;
+                }
+                if (segment.length > 0 && !(hasOverlap && segment.trimmedEquals(overlap))) {
+                    String segmentText = segment.trimmedString(scratch);
+                    output.add(segmentText);
+                    overlapFrom(level, segmentText, overlap);
+                    hasOverlap = true;
+                    segment.reset();
+                    segment.appendAll(overlap);
+                    if (segment.hasSpaceFor(size, maxSegmentSize)) {
+                        segment.append(source, partStart, partEnd);
+                        continue;
+                    }
+                }
+                Level next = level.next();
+                segment.append(source, partStart, partEnd);
+                if (next == null) {
+                    String tooLong = segment.trimmedString(scratch);
+                    throw new IllegalStateException(String.format("The text \"%s...\" (%s characters long) doesn't "
+                                    + "fit into the maximum segment size (%s characters), and there is no level "
+                                    + "left to split it further.",
+                            tooLong.substring(0, Math.min(30, tooLong.length())), tooLong.length(), maxSegmentSize));
+                }
+                int from = segment.trimStart();
+                int to = segment.trimEnd(from);
+                if (segment.count == 1) {
+                    split(next, segment.sources[0], segment.starts[0] + from, segment.starts[0] + to, output);
+                } else {
+                    String subText = segment.trimmedString(scratch);
+                    split(next, subText, 0, subText.length(), output);
+                }
+                overlapFrom(level, output.get(output.size() - 1), overlap);
+                hasOverlap = true;
+                segment.reset();
+                segment.appendAll(overlap);
+            }
+            if (segment.length > 0 && !(hasOverlap && segment.trimmedEquals(overlap))) {
+                output.add(segment.trimmedString(scratch));
+            }
+            parts.reset();
+        }
+
+        /**
+         * Splits a range of a text into the parts of a level, as {@link String#split(String)}
+         * splits the text of that range.
+         */
+        private void splitIntoParts(Level level, CharSequence text, int start, int end, Ranges parts) {
+            parts.reset();
+            if (level == Level.SENTENCE) {
+                String sentences = start == 0 && end == text.length() && text instanceof String string
+                        ? string : text.subSequence(start, end).toString();
+                for (Span span : sentenceDetector.sentPosDetect(sentences)) {
+                    parts.add(sentences, span.getStart(), span.getEnd());
+                }
+                return;
+            }
+            Matcher matcher = matchers[level.ordinal()].reset(text).region(start, end);
+            int index = start;
+            while (matcher.find()) {
+                if (index == start && matcher.start() == start && matcher.end() == start) {
+                    continue;
+                }
+                parts.add(text, index, matcher.start());
+                index = matcher.end();
+            }
+            if (index == start) {
+                parts.add(text, start, end);
+            } else {
+                parts.add(text, index, end);
+                while (parts.count > 0 && parts.ends[parts.count - 1] == parts.starts[parts.count - 1]) {
+                    parts.removeLast();
+                }
+            }
+            matcher.reset("");
+        }
+
+        /**
+         * Sets the overlap to the trailing sentences of a segment that fit into the maximum
+         * overlap, joined by the delimiter of the level.
+         */
+        private void overlapFrom(Level level, String segmentText, Ranges overlap) {
+            overlap.reset();
+            if (maxOverlapSize == 0) {
+                return;
+            }
+            Span[] sentences = sentenceDetector.sentPosDetect(segmentText);
+            int first = sentences.length;
+            int length = 0;
+            for (int i = sentences.length - 1; i >= 0; i--) {
+                int size = sentences[i].length();
+                if (size + (length > 0 ? length + level.delimiter.length() : 0) > maxOverlapSize) {
+                    break;
+                }
+                length = length > 0 ? length + level.delimiter.length() + size : size;
+                first = i;
+            }
+            for (int i = first; i < sentences.length; i++) {
+                overlap.append(segmentText, sentences[i].getStart(), sentences[i].getEnd());
+            }
+            overlap.trim(scratch);
+        }
+    }
+
+    /**
+     * Ranges of texts joined by a delimiter: the parts of a level, or a segment or overlap under
+     * construction with the semantics of langchain4j's segment builder.
+     */
+    private static final class Ranges {
+        private final String delimiter;
+        CharSequence[] sources = new CharSequence[16];
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int count;
+        /** The length of the joined text. */
+        int length;
+
+        Ranges(String delimiter) {
+            this.delimiter = delimiter;
+        }
+
+        void reset() {
+            Arrays.fill(sources, 0, count, null);
+            count = 0;
+            length = 0;
+        }
+
+        void add(CharSequence source, int start, int end) {
+            if (count == sources.length) {
+                sources = Arrays.copyOf(sources, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            sources[count] = source;
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        void removeLast() {
+            sources[--count] = null;
+        }
+
+        boolean hasSpaceFor(int size, int maxSize) {
+            return size + (length > 0 ? length + delimiter.length() : 0) <= maxSize;
+        }
+
+        /** Appends a part, preceded by the delimiter unless the joined text is empty. */
+        void append(CharSequence source, int start, int end) {
+            int size = end - start;
+            if (length > 0) {
+                length += delimiter.length() + size;
+                add(source, start, end);
+            } else if (size > 0) {
+                length = size;
+                add(source, start, end);
+            }
+        }
+
+        /** Appends the joined text of other ranges with the same delimiter as one part. */
+        void appendAll(Ranges other) {
+            if (other.length == 0) {
+                append("", 0, 0);
+                return;
+            }
+            for (int i = 0; i < other.count; i++) {
+                append(other.sources[i], other.starts[i], other.ends[i]);
+            }
+        }
+
+        private char charAt(int position) {
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    if (position < delimiter.length()) {
+                        return delimiter.charAt(position);
+                    }
+                    position -= delimiter.length();
+                }
+                int size = ends[i] - starts[i];
+                if (position < size) {
+                    return sources[i].charAt(starts[i] + position);
+                }
+                position -= size;
+            }
+            throw new IndexOutOfBoundsException(position);
+        }
+
+        /** Gets the position of the first character of the joined text that {@link String#trim()} keeps. */
+        int trimStart() {
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    for (int j = 0; j < delimiter.length(); j++, position++) {
+                        if (delimiter.charAt(j) > ' ') {
+                            return position;
+                        }
+                    }
+                }
+                for (int j = starts[i]; j < ends[i]; j++, position++) {
+                    if (sources[i].charAt(j) > ' ') {
+                        return position;
+                    }
+                }
+            }
+            return length;
+        }
+
+        /** Gets the end of the joined text that {@link String#trim()} keeps. */
+        int trimEnd(int trimStart) {
+            int position = length;
+            for (int i = count - 1; i >= 0 && position > trimStart; i--) {
+                for (int j = ends[i] - 1; j >= starts[i]; j--, position--) {
+                    if (sources[i].charAt(j) > ' ') {
+                        return position;
+                    }
+                }
+                if (i > 0) {
+                    for (int j = delimiter.length() - 1; j >= 0; j--, position--) {
+                        if (delimiter.charAt(j) > ' ') {
+                            return position;
+                        }
+                    }
+                }
+            }
+            return trimStart;
+        }
+
+        /** Checks whether the trimmed joined text equals the joined text of other ranges. */
+        boolean trimmedEquals(Ranges other) {
+            int from = trimStart();
+            int to = trimEnd(from);
+            if (to - from != other.length) {
+                return false;
+            }
+            for (int position = from; position < to; position++) {
+                if (charAt(position) != other.charAt(position - from)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Builds the trimmed joined text, the only copy of the characters. */
+        String trimmedString(StringBuilder scratch) {
+            int from = trimStart();
+            int to = trimEnd(from);
+            scratch.setLength(0);
+            int position = 0;
+            for (int i = 0; i < count && position < to; i++) {
+                if (i > 0) {
+                    position = appendClipped(scratch, delimiter, 0, delimiter.length(), position, from, to);
+                }
+                position = appendClipped(scratch, sources[i], starts[i], ends[i], position, from, to);
+            }
+            return scratch.toString();
+        }
+
+        private static int appendClipped(StringBuilder scratch, CharSequence source, int start, int end,
+                                         int position, int from, int to) {
+            int size = end - start;
+            int clippedStart = Math.max(from - position, 0);
+            int clippedEnd = Math.min(to - position, size);
+            if (clippedStart < clippedEnd) {
+                scratch.append(source, start + clippedStart, start + clippedEnd);
+            }
+            return position + size;
+        }
+
+        /**
+         * Trims the joined text as {@link String#trim()} does. Trimming normally stays within the
+         * first and last range; otherwise the trimmed text is copied into a single range.
+         */
+        void trim(StringBuilder scratch) {
+            int from = trimStart();
+            int to = trimEnd(from);
+            if (from == 0 && to == length) {
+                return;
+            }
+            int firstSize = ends[0] - starts[0];
+            int lastSize = ends[count - 1] - starts[count - 1];
+            if (count == 1 || from < firstSize && length - to < lastSize) {
+                starts[0] += from;
+                ends[count - 1] -= length - to;
+                length = to - from;
+                if (length == 0) {
+                    reset();
+                }
+                return;
+            }
+            String trimmed = trimmedString(scratch);
+            reset();
+            append(trimmed, 0, trimmed.length());
+        }
+    }
+}
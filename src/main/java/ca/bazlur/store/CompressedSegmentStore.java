@@ -0,0 +1,243 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps segment text and metadata off the heap in compressed blocks.
+ *
+ * <p>Segments are encoded one after another into a block of about {@code blockBytes}; a full
+ * block is deflated into a direct buffer outside the Java heap. The only per-segment state on the
+ * heap is one {@code long} holding the segment's block and offset, so the garbage collector no
+ * longer traces a string and a metadata map for every chunk of the knowledge base. A segment is
+ * decoded only when it is read, which for a search means the top-k matches, and the most recently
+ * used decompressed blocks are kept in a small LRU cache so that neighbouring segments and
+ * repeated questions do not inflate the same block again.
+ *
+ * <p>Removed segments stay in their block until the owning store is compacted and rebuilt.
+ */
+public class CompressedSegmentStore implements SegmentStore {
+
+    /** Default uncompressed size of a block. */
+    public static final int DEFAULT_BLOCK_BYTES = 16 * 1024;
+
+    /** Default number of decompressed blocks kept in the cache. */
+    public static final int DEFAULT_CACHED_BLOCKS = 256;
+
+    private static final long NO_SEGMENT = -1;
+
+    private final int blockBytes;
+    private final int cachedBlocks;
+    private final List<Block> blocks = new ArrayList<>();
+    private final Map<Integer, byte[]> cache;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private long[] locations = new long[64];
+    private int count;
+    private ByteArrayOutputStream pending;
+    private DataOutputStream pendingOut;
+    private long compressedBytes;
+
+    /**
+     * Creates a store with the default block and cache sizes.
+     */
+    public CompressedSegmentStore() {
+        this(DEFAULT_BLOCK_BYTES, DEFAULT_CACHED_BLOCKS);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param blockBytes The uncompressed size from which a block is sealed and compressed
+     * @param cachedBlocks The number of decompressed blocks to keep in the cache
+     */
+    public CompressedSegmentStore(int blockBytes, int cachedBlocks) {
+        if (blockBytes < 1) {
+            throw new IllegalArgumentException("blockBytes must be positive");
+        }
+        this.blockBytes = blockBytes;
+        this.cachedBlocks = Math.max(cachedBlocks, 0);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > CompressedSegmentStore.this.cachedBlocks;
+            }
+        };
+        startBlock();
+    }
+
+    @Override
+    public void add(TextSegment segment) {
+        if (count == locations.length) {
+            locations = Arrays.copyOf(locations, count * 2);
+        }
+        if (segment == null) {
+            locations[count++] = NO_SEGMENT;
+            return;
+        }
+        int offset = pending.size();
+        try {
+            StoreCodec.writeSegment(pendingOut, segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        locations[count++] = ((long) blocks.size() << 32) | offset;
+        if (pending.size() >= blockBytes) {
+            seal();
+        }
+    }
+
+    @Override
+    public TextSegment get(int ordinal) {
+        if (ordinal < 0 || ordinal >= count) {
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of bounds for length " + count);
+        }
+        long location = locations[ordinal];
+        if (location == NO_SEGMENT) {
+            return null;
+        }
+        int blockIndex = (int) (location >>> 32);
+        int offset = (int) location;
+        byte[] block = blockIndex == blocks.size() ? pending.toByteArray() : decompressed(blockIndex);
+        try {
+            return StoreCodec.readSegment(new DataInputStream(
+                    new ByteArrayInputStream(block, offset, block.length - offset)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void remove(int ordinal) {
+        locations[ordinal] = NO_SEGMENT;
+    }
+
+    @Override
+    public void clear() {
+        blocks.clear();
+        synchronized (cache) {
+            cache.clear();
+        }
+        locations = new long[64];
+        count = 0;
+        compressedBytes = 0;
+        startBlock();
+    }
+
+    /**
+     * Gets the off-heap memory held by the compressed blocks.
+     *
+     * @return The size in bytes
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * Gets the number of block reads served from the cache.
+     *
+     * @return The number of cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Gets the number of block reads that had to decompress the block.
+     *
+     * @return The number of cache misses
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Gets a decompressed block from the cache, inflating it on a miss. Concurrent readers may
+     * inflate the same block twice; the cache lock is not held while inflating.
+     */
+    private byte[] decompressed(int blockIndex) {
+        synchronized (cache) {
+            byte[] cached = cache.get(blockIndex);
+            if (cached != null) {
+                cacheHits.increment();
+                return cached;
+            }
+        }
+        cacheMisses.increment();
+        byte[] block = blocks.get(blockIndex).inflate();
+        synchronized (cache) {
+            cache.put(blockIndex, block);
+        }
+        return block;
+    }
+
+    private void seal() {
+        byte[] bytes = pending.toByteArray();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                compressed.write(buffer, 0, n);
+            }
+            ByteBuffer data = ByteBuffer.allocateDirect(compressed.size());
+            data.put(compressed.toByteArray()).flip();
+            blocks.add(new Block(data, bytes.length));
+            compressedBytes += data.capacity();
+        } finally {
+            deflater.end();
+        }
+        startBlock();
+    }
+
+    private void startBlock() {
+        pending = new ByteArrayOutputStream(blockBytes + blockBytes / 4);
+        pendingOut = new DataOutputStream(pending);
+    }
+
+    /**
+     * A sealed block: its deflated bytes off the heap and its uncompressed length.
+     */
+    private record Block(ByteBuffer data, int length) {
+
+        byte[] inflate() {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data.duplicate());
+                byte[] block = new byte[length];
+                int read = 0;
+                while (read < length) {
+                    int n = inflater.inflate(block, read, length - read);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IllegalStateException("Compressed segment block is truncated");
+                    }
+                    read += n;
+                }
+                return block;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Compressed segment block is corrupted", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
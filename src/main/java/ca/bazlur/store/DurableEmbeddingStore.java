@@ -0,0 +1,596 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Makes a {@link ShardedEmbeddingStore} survive restarts by logging every mutation to a
+ * write-ahead log before it returns, and periodically writing snapshots in the background.
+ *
+ * <p>The directory holds numbered generations: {@code snapshot-N.bin} is the store contents
+ * before {@code wal-N.log}, the log of everything changed since. Taking a snapshot starts a new
+ * log generation, writes the live entries as an {@link IndexArtifact} and then deletes the older
+ * generations. Removed entries are not written to snapshots, and the in-memory store is compacted
+ * once the share of removed entries passes the compaction ratio. At startup the newest readable
+ * snapshot is loaded and only the logs after it are replayed, so recovery time is bounded by the
+ * log written since the last snapshot rather than by the size of the knowledge base.
+ *
+ * <p>Mutations are checked, logged, applied in log order and return once their log record is on
+ * disk; concurrent mutations share disk flushes through the log's group commit. If the log cannot
+ * be written, the store fails: it rejects all later mutations, as the in-memory store may hold
+ * changes the log does not, and a restart recovers what the log holds. A mutation made while a
+ * snapshot is written is logged in the new generation, so a crash at any point leaves a snapshot
+ * and the logs needed to bring it up to date. Snapshots are streamed from a pinned view of the
+ * store, so neither mutations nor searches wait for a snapshot to be written.
+ *
+ * <p>Entries are logged as they are added, so a store that was being filled when the process
+ * stopped recovers part of its contents. Whoever fills the store calls {@link #markComplete()}
+ * once it is done, which logs a marker record that every later generation repeats until the store
+ * is cleared; {@link #isComplete()} tells a finished store from a partial one.
+ */
+public class DurableEmbeddingStore implements EmbeddingStore<TextSegment>, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DurableEmbeddingStore.class);
+
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+    private static final Pattern WAL_FILE = Pattern.compile("wal-(\\d+)\\.log");
+
+    static final byte ADD = 1;
+    static final byte REMOVE_IDS = 2;
+    static final byte REMOVE_FILTER = 3;
+    static final byte REMOVE_ALL = 4;
+    static final byte COMPLETE = 5;
+
+    /** Entries per log record, so a large batch does not become one huge record. */
+    private static final int ENTRIES_PER_RECORD = 1024;
+
+    private final Path directory;
+    private final IndexFingerprint fingerprint;
+    private final ShardedEmbeddingStore delegate;
+    private final long snapshotLogBytes;
+    private final double compactionRatio;
+
+    /** Orders mutations so the log and the store see them in the same order. */
+    private final ReentrantLock mutationLock = new ReentrantLock();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService snapshotter;
+    private WriteAheadLog log;
+    private long generation;
+    private boolean closed;
+    private volatile RuntimeException failure;
+    private volatile boolean complete;
+    /** Whether entries changed since the last snapshot; the completion marker is no change. */
+    private boolean changed;
+
+    /**
+     * Opens the store in the given directory, recovering its previous contents into the delegate.
+     *
+     * @param directory The directory holding the snapshots and logs; created if missing
+     * @param fingerprint The fingerprint of the embeddings stored; files written for another
+     *                    fingerprint are moved aside instead of being loaded
+     * @param delegate The empty in-memory store that serves searches
+     * @param snapshotInterval How often to snapshot if anything was logged since the last snapshot
+     * @param snapshotLogBytes The log size from which a snapshot is taken right away
+     * @param compactionRatio The share of removed entries from which the in-memory store is compacted
+     * @throws IOException if the files cannot be read or written
+     */
+    public DurableEmbeddingStore(Path directory, IndexFingerprint fingerprint, ShardedEmbeddingStore delegate,
+                                 Duration snapshotInterval, long snapshotLogBytes, double compactionRatio)
+            throws IOException {
+        this.directory = directory;
+        this.fingerprint = fingerprint;
+        this.delegate = delegate;
+        this.snapshotLogBytes = snapshotLogBytes;
+        this.compactionRatio = compactionRatio;
+        Files.createDirectories(directory);
+        recover();
+
+        this.snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "store-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshotInterval.isPositive()) {
+            snapshotter.scheduleWithFixedDelay(this::snapshotIfChanged,
+                    snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        complete = false;
+        changed = false;
+        TreeMap<Long, Path> snapshots = generations(SNAPSHOT_FILE);
+        TreeMap<Long, Path> logs = generations(WAL_FILE);
+
+        long base = 0;
+        for (Long candidate : snapshots.descendingKeySet()) {
+            Optional<IndexArtifact> snapshot = readSnapshot(snapshots.get(candidate));
+            if (snapshot == null) {
+                continue;
+            }
+            if (snapshot.isEmpty()) {
+                moveAside("snapshot " + snapshots.get(candidate) + " was written for another embedding model or settings");
+                recover();
+                return;
+            }
+            snapshot.get().loadInto(delegate);
+            base = candidate;
+            break;
+        }
+
+        int replayed = 0;
+        List<Long> tail = new ArrayList<>(logs.tailMap(base, true).keySet());
+        WriteAheadLog.Replay last = null;
+        for (int i = 0; i < tail.size(); i++) {
+            Path path = logs.get(tail.get(i));
+            Optional<WriteAheadLog.Replay> replay = WriteAheadLog.replay(path, fingerprint, this::apply);
+            if (replay.isEmpty()) {
+                delegate.removeAll();
+                moveAside("log " + path + " was written for another embedding model or settings");
+                recover();
+                return;
+            }
+            if (replay.get().torn() && i < tail.size() - 1) {
+                throw new IOException("Write-ahead log " + path + " is damaged before its end; "
+                        + "later generations cannot be applied");
+            }
+            replayed += replay.get().records();
+            last = replay.get();
+        }
+
+        if (tail.isEmpty()) {
+            generation = Math.max(base, 1);
+            log = WriteAheadLog.create(logPath(generation), fingerprint);
+        } else {
+            generation = tail.get(tail.size() - 1);
+            log = WriteAheadLog.reopen(logPath(generation), last);
+        }
+        if (base > 0 || replayed > 0) {
+            logger.info("Recovered {} entries from snapshot {} and {} log records in {} ms",
+                    delegate.size(), base, replayed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Reads a snapshot, returning empty if it belongs to another fingerprint and null if it is unreadable.
+     */
+    private Optional<IndexArtifact> readSnapshot(Path path) {
+        try (InputStream in = Files.newInputStream(path)) {
+            return IndexArtifact.read(in, fingerprint);
+        } catch (IOException e) {
+            logger.warn("Skipping unreadable snapshot {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Moves all generations into a {@code stale-<time>} subdirectory, keeping them for inspection
+     * while the store starts over.
+     */
+    private void moveAside(String reason) throws IOException {
+        Path stale = directory.resolve("stale-" + System.currentTimeMillis());
+        logger.warn("Moving the stored embeddings to {} because the {}", stale, reason);
+        Files.createDirectories(stale);
+        for (Path path : generationFiles()) {
+            Files.move(path, stale.resolve(path.getFileName()));
+        }
+    }
+
+    private void apply(byte type, DataInputStream in) throws IOException {
+        switch (type) {
+            case ADD -> {
+                int count = in.readInt();
+                List<String> ids = new ArrayList<>(count);
+                List<Embedding> embeddings = new ArrayList<>(count);
+                List<TextSegment> segments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    ids.add(StoreCodec.readString(in));
+                    embeddings.add(StoreCodec.readEmbedding(in));
+                    segments.add(in.readBoolean() ? StoreCodec.readSegment(in) : null);
+                }
+                delegate.addAll(ids, embeddings, segments);
+            }
+            case REMOVE_IDS -> {
+                int count = in.readInt();
+                List<String> ids = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    ids.add(StoreCodec.readString(in));
+                }
+                delegate.removeAll(ids);
+            }
+            case REMOVE_FILTER -> delegate.removeAll(StoreCodec.readFilter(in));
+            case REMOVE_ALL -> {
+                delegate.removeAll();
+                complete = false;
+            }
+            case COMPLETE -> complete = true;
+            default -> throw new IOException("Unknown write-ahead log record type " + type);
+        }
+        if (type != COMPLETE) {
+            changed = true;
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return add(embedding, null);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), textSegment == null ? null : List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> newIds = generateIds(embeddings.size());
+        addAll(newIds, embeddings, null);
+        return newIds;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (ids.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings and embedded must have the same size");
+        }
+        List<byte[]> records = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += ENTRIES_PER_RECORD) {
+            int from = start;
+            int to = Math.min(ids.size(), from + ENTRIES_PER_RECORD);
+            records.add(encode(out -> {
+                out.writeInt(to - from);
+                for (int i = from; i < to; i++) {
+                    StoreCodec.writeString(out, ids.get(i));
+                    StoreCodec.writeEmbedding(out, embeddings.get(i));
+                    TextSegment segment = embedded == null ? null : embedded.get(i);
+                    out.writeBoolean(segment != null);
+                    if (segment != null) {
+                        StoreCodec.writeSegment(out, segment);
+                    }
+                }
+            }));
+        }
+        mutate(ADD, records, () -> delegate.checkAddable(ids, embeddings),
+                () -> delegate.addAll(ids, embeddings, embedded));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        byte[] record = encode(out -> {
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                StoreCodec.writeString(out, id);
+            }
+        });
+        mutate(REMOVE_IDS, List.of(record), () -> delegate.removeAll(ids));
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        Objects.requireNonNull(filter, "filter");
+        byte[] record = encode(out -> StoreCodec.writeFilter(out, filter));
+        mutate(REMOVE_FILTER, List.of(record), () -> delegate.removeAll(filter));
+    }
+
+    /**
+     * Removes all entries. The store is no longer complete until it is marked again.
+     */
+    @Override
+    public void removeAll() {
+        mutate(REMOVE_ALL, List.of(new byte[0]), () -> {
+            delegate.removeAll();
+            complete = false;
+        });
+    }
+
+    /**
+     * Marks the contents complete, once the store has been filled. The marker is durable when this
+     * method returns and is kept until {@link #removeAll()} is called.
+     */
+    public void markComplete() {
+        mutate(COMPLETE, List.of(new byte[0]), () -> complete = true);
+    }
+
+    /**
+     * Checks whether the contents were marked complete, as opposed to being left over from filling
+     * the store when the process stopped.
+     *
+     * @return Whether {@link #markComplete()} was called since the store was last cleared
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return delegate.search(request);
+    }
+
+    /**
+     * Gets the number of live entries.
+     *
+     * @return The number of entries that have not been removed
+     */
+    public int size() {
+        return delegate.size();
+    }
+
+    private void mutate(byte type, List<byte[]> records, Runnable change) {
+        mutate(type, records, () -> {
+        }, change);
+    }
+
+    /**
+     * Checks a mutation, logs it, applies it to the in-memory store and waits until it is durable.
+     * The mutation is checked first so that one the store rejects is never logged, where it would
+     * fail again on every recovery, and applied only once it is logged.
+     */
+    private void mutate(byte type, List<byte[]> records, Runnable check, Runnable change) {
+        WriteAheadLog target;
+        long sequence = 0;
+        mutationLock.lock();
+        try {
+            ensureWritable();
+            check.run();
+            target = log;
+            try {
+                for (byte[] record : records) {
+                    sequence = target.append(type, record);
+                }
+            } catch (IOException e) {
+                throw fail(new UncheckedIOException("Failed to write to the write-ahead log", e));
+            }
+            try {
+                change.run();
+            } catch (RuntimeException e) {
+                throw fail(e);
+            }
+            if (type != COMPLETE) {
+                changed = true;
+            }
+        } finally {
+            mutationLock.unlock();
+        }
+        try {
+            target.sync(sequence);
+        } catch (IOException e) {
+            throw fail(new UncheckedIOException("Failed to flush the write-ahead log", e));
+        }
+        if (target.size() >= snapshotLogBytes && snapshotScheduled.compareAndSet(false, true)) {
+            snapshotter.execute(() -> {
+                snapshotScheduled.set(false);
+                snapshotIfChanged();
+            });
+        }
+    }
+
+    private void ensureWritable() {
+        if (closed) {
+            throw new IllegalStateException("The embedding store is closed");
+        }
+        if (failure != null) {
+            throw new IllegalStateException("The embedding store failed to write its log and must be reopened", failure);
+        }
+    }
+
+    /**
+     * Marks the store failed after the log and the in-memory store may have diverged.
+     */
+    private RuntimeException fail(RuntimeException e) {
+        if (failure == null) {
+            failure = e;
+            logger.error("The embedding store rejects all further changes until it is reopened", e);
+        }
+        return e;
+    }
+
+    private void snapshotIfChanged() {
+        try {
+            if (hasLoggedChanges()) {
+                snapshot();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to snapshot the embedding store; changes remain in the write-ahead log", e);
+        }
+    }
+
+    private boolean hasLoggedChanges() {
+        mutationLock.lock();
+        try {
+            return !closed && failure == null && changed;
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the live entries and deletes the snapshots and logs it supersedes.
+     * Mutations are only blocked while the log is switched to a new generation and the entries are
+     * pinned, not while the snapshot is written.
+     *
+     * @throws IOException if the snapshot cannot be written
+     * @throws IllegalStateException if the store has failed, as its entries may not match the log
+     */
+    public void snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            long snapshotGeneration;
+            ShardedEmbeddingStore.View view;
+            WriteAheadLog next;
+            long marker = 0;
+            mutationLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                ensureWritable();
+                WriteAheadLog previous = log;
+                snapshotGeneration = generation + 1;
+                next = WriteAheadLog.create(logPath(snapshotGeneration), fingerprint);
+                if (complete) {
+                    // The new generation replaces the logs holding the marker.
+                    marker = next.append(COMPLETE, new byte[0]);
+                }
+                log = next;
+                generation = snapshotGeneration;
+                changed = false;
+                previous.close();
+                view = delegate.view();
+            } finally {
+                mutationLock.unlock();
+            }
+
+            long start = System.nanoTime();
+            try (view) {
+                next.sync(marker);
+                IndexArtifact.write(snapshotPath(snapshotGeneration), fingerprint, view.dimension(), view.size(),
+                        view.entries());
+            }
+            syncDirectory();
+            for (Path path : generationFiles()) {
+                if (generationOf(path) < snapshotGeneration) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            logger.info("Snapshot {} of {} entries written in {} ms", snapshotGeneration, view.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            int deleted = delegate.deletedCount();
+            if (deleted > 0 && deleted >= compactionRatio * (deleted + delegate.size())) {
+                delegate.compact();
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Stops background snapshots and closes the log. Everything logged so far stays durable and is
+     * recovered on the next start.
+     */
+    @Override
+    public void close() throws IOException {
+        snapshotter.shutdownNow();
+        snapshotLock.lock();
+        mutationLock.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                log.close();
+            }
+        } finally {
+            mutationLock.unlock();
+            snapshotLock.unlock();
+        }
+    }
+
+    WriteAheadLog log() {
+        mutationLock.lock();
+        try {
+            return log;
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    Path logPath(long generation) {
+        return directory.resolve("wal-" + generation + ".log");
+    }
+
+    Path snapshotPath(long generation) {
+        return directory.resolve("snapshot-" + generation + ".bin");
+    }
+
+    private TreeMap<Long, Path> generations(Pattern pattern) throws IOException {
+        TreeMap<Long, Path> generations = new TreeMap<>();
+        for (Path path : generationFiles()) {
+            Matcher matcher = pattern.matcher(path.getFileName().toString());
+            if (matcher.matches()) {
+                generations.put(Long.parseLong(matcher.group(1)), path);
+            }
+        }
+        return generations;
+    }
+
+    private List<Path> generationFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> generationOf(path) >= 0).toList();
+        }
+    }
+
+    private static long generationOf(Path path) {
+        String name = path.getFileName().toString();
+        for (Pattern pattern : List.of(SNAPSHOT_FILE, WAL_FILE)) {
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.matches()) {
+                return Long.parseLong(matcher.group(1));
+            }
+        }
+        return -1;
+    }
+
+    /** Makes the rename of a new snapshot durable; not every platform can open a directory for this. */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Cannot sync directory {}", directory, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            writer.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
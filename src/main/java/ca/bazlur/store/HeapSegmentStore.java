@@ -0,0 +1,33 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps segments on the heap as they are.
+ */
+final class HeapSegmentStore implements SegmentStore {
+    private final List<TextSegment> segments = new ArrayList<>();
+
+    @Override
+    public void add(TextSegment segment) {
+        segments.add(segment);
+    }
+
+    @Override
+    public TextSegment get(int ordinal) {
+        return segments.get(ordinal);
+    }
+
+    @Override
+    public void remove(int ordinal) {
+        segments.set(ordinal, null);
+    }
+
+    @Override
+    public void clear() {
+        segments.clear();
+    }
+}
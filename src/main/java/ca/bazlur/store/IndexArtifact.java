@@ -0,0 +1,251 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A prebuilt, versioned knowledge base index: the embedded segments together with the
+ * fingerprint of the model and settings that produced them.
+ *
+ * <p>The binary layout is a magic number and format version, the {@link IndexFingerprint},
+ * the vector dimension and entry count, followed by one record per entry (id, vector, segment).
+ * The header can be checked without reading the entries, so a stale index is rejected cheaply.
+ */
+public final class IndexArtifact {
+    /** Magic number at the start of every index file ("KBIX"). */
+    static final int MAGIC = 0x4B424958;
+    /**
+     * Current binary format version. Version 2 segments carry the extracted filter metadata, and
+     * version 3 fingerprints the deduplication similarity and window size.
+     */
+    static final short FORMAT_VERSION = 3;
+
+    /**
+     * A single embedded segment of the index.
+     *
+     * @param id The embedding id
+     * @param embedding The embedding vector
+     * @param segment The embedded text segment
+     */
+    public record Entry(String id, Embedding embedding, TextSegment segment) {
+    }
+
+    private final IndexFingerprint fingerprint;
+    private final List<Entry> entries;
+
+    /**
+     * Creates a new index artifact.
+     *
+     * @param fingerprint The fingerprint of the model and settings used to build the entries
+     * @param entries The embedded segments
+     */
+    public IndexArtifact(IndexFingerprint fingerprint, List<Entry> entries) {
+        this.fingerprint = fingerprint;
+        this.entries = List.copyOf(entries);
+    }
+
+    public IndexFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets the dimension of the vectors in this index.
+     *
+     * @return The vector dimension, or 0 if the index is empty
+     */
+    public int getDimension() {
+        return entries.isEmpty() ? 0 : entries.get(0).embedding().dimension();
+    }
+
+    /**
+     * Adds all entries of this index to the given embedding store.
+     *
+     * @param embeddingStore The store to populate
+     * @return The populated store
+     */
+    public EmbeddingStore<TextSegment> loadInto(EmbeddingStore<TextSegment> embeddingStore) {
+        if (!entries.isEmpty()) {
+            embeddingStore.addAll(
+                    entries.stream().map(Entry::id).toList(),
+                    entries.stream().map(Entry::embedding).toList(),
+                    entries.stream().map(Entry::segment).toList());
+        }
+        return embeddingStore;
+    }
+
+    /**
+     * Creates a sharded in-memory embedding store holding all entries of this index.
+     *
+     * @return The populated embedding store
+     */
+    public EmbeddingStore<TextSegment> toEmbeddingStore() {
+        return loadInto(new ShardedEmbeddingStore());
+    }
+
+    /**
+     * Writes this index to a file. The file is written next to the target, flushed to disk and
+     * moved into place, so readers never observe a partially written index, even after a crash.
+     *
+     * @param path The file to write
+     * @throws IOException if writing fails
+     */
+    public void write(Path path) throws IOException {
+        write(path, fingerprint, getDimension(), entries.size(), entries.iterator());
+    }
+
+    /**
+     * Writes an index to a file from entries that are read as they are written, so the entries
+     * never have to be held in memory at once. The file is written like {@link #write(Path)}.
+     *
+     * @param path The file to write
+     * @param fingerprint The fingerprint of the model and settings used to build the entries
+     * @param dimension The dimension of every embedding
+     * @param count The number of entries
+     * @param entries Supplies exactly {@code count} entries
+     * @throws IOException if writing fails or the number of entries differs from the count
+     */
+    static void write(Path path, IndexFingerprint fingerprint, int dimension, int count,
+                      Iterator<Entry> entries) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                write(Channels.newOutputStream(channel), fingerprint, dimension, count, entries);
+                channel.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes this index to a stream.
+     *
+     * @param outputStream The stream to write to; it is flushed but not closed
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        write(outputStream, fingerprint, getDimension(), entries.size(), entries.iterator());
+    }
+
+    private static void write(OutputStream outputStream, IndexFingerprint fingerprint, int dimension, int count,
+                              Iterator<Entry> entries) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        StoreCodec.writeFingerprint(out, fingerprint);
+        out.writeInt(dimension);
+        out.writeInt(count);
+        int written = 0;
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            StoreCodec.writeString(out, entry.id());
+            StoreCodec.writeEmbedding(out, entry.embedding());
+            StoreCodec.writeSegment(out, entry.segment());
+            written++;
+        }
+        if (written != count) {
+            throw new IOException("Wrote " + written + " index entries, expected " + count);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads an index from a stream regardless of its fingerprint.
+     *
+     * @param inputStream The stream to read from
+     * @return The index
+     * @throws IOException if the stream is not a valid index or reading fails
+     */
+    public static IndexArtifact read(InputStream inputStream) throws IOException {
+        return read(inputStream, null).orElseThrow();
+    }
+
+    /**
+     * Reads an index from a stream if it was built with the expected fingerprint.
+     * Entries are only read once the header matches.
+     *
+     * @param inputStream The stream to read from
+     * @param expected The required fingerprint, or null to accept any
+     * @return The index, or empty if its fingerprint does not match
+     * @throws IOException if the stream is not a valid index or reading fails
+     */
+    public static Optional<IndexArtifact> read(InputStream inputStream, IndexFingerprint expected) throws IOException {
+        return read(inputStream, expected, 0, 1);
+    }
+
+    /**
+     * Reads one slice of an index if it was built with the expected fingerprint. Entry {@code i}
+     * belongs to slice {@code i % sliceCount}; entries of other slices are skipped while reading,
+     * so memory use is bounded by the slice rather than the whole index.
+     *
+     * @param inputStream The stream to read from
+     * @param expected The required fingerprint, or null to accept any
+     * @param slice The slice to keep, from 0 to {@code sliceCount - 1}
+     * @param sliceCount The number of slices the index is divided into
+     * @return The slice, or empty if the fingerprint does not match or, when a fingerprint is
+     *         required, the index was written in an older format whose fingerprint is incomplete
+     * @throws IOException if the stream is not a valid index or reading fails
+     */
+    public static Optional<IndexArtifact> read(InputStream inputStream, IndexFingerprint expected,
+                                               int slice, int sliceCount) throws IOException {
+        if (sliceCount < 1 || slice < 0 || slice >= sliceCount) {
+            throw new IllegalArgumentException("Invalid slice " + slice + " of " + sliceCount);
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a knowledge base index file");
+        }
+        short version = in.readShort();
+        if (expected != null && version > 0 && version < FORMAT_VERSION) {
+            return Optional.empty();
+        }
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported index format version: " + version);
+        }
+        IndexFingerprint fingerprint = StoreCodec.readFingerprint(in);
+        if (expected != null && !expected.equals(fingerprint)) {
+            return Optional.empty();
+        }
+        int dimension = in.readInt();
+        int count = in.readInt();
+        List<Entry> entries = new ArrayList<>(count / sliceCount + 1);
+        for (int i = 0; i < count; i++) {
+            String id = StoreCodec.readString(in);
+            Embedding embedding = StoreCodec.readEmbedding(in);
+            if (embedding.dimension() != dimension) {
+                throw new IOException("Entry " + id + " has dimension " + embedding.dimension() + ", expected " + dimension);
+            }
+            TextSegment segment = StoreCodec.readSegment(in);
+            if (i % sliceCount == slice) {
+                entries.add(new Entry(id, embedding, segment));
+            }
+        }
+        return Optional.of(new IndexArtifact(fingerprint, entries));
+    }
+}
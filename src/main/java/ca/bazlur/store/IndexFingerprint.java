@@ -0,0 +1,36 @@
+package ca.bazlur.store;
+
+import ca.bazlur.config.ConfigProvider;
+
+/**
+ * Identifies the embedding model and the splitting and deduplication settings an index was built
+ * with. A prebuilt index is only reused when its fingerprint equals the one derived from the
+ * current configuration, since vectors from a different model are not comparable and other
+ * settings produce other segments.
+ *
+ * @param provider The embedding provider name
+ * @param embeddingModel The embedding model name
+ * @param chunkSize The document chunk size used when splitting
+ * @param chunkOverlap The document chunk overlap used when splitting
+ * @param dedupSimilarity The similarity from which segments were collapsed as near copies
+ * @param windowChars The size of the windows the sources were read in
+ */
+public record IndexFingerprint(String provider, String embeddingModel, int chunkSize, int chunkOverlap,
+                               double dedupSimilarity, int windowChars) {
+
+    /**
+     * Derives the fingerprint for the given configuration.
+     *
+     * @param config The application configuration
+     * @return The fingerprint an index must carry to be usable with this configuration
+     */
+    public static IndexFingerprint from(ConfigProvider config) {
+        return new IndexFingerprint(
+                String.valueOf(config.getEmbeddingProvider()),
+                String.valueOf(config.getEmbeddingModelName()),
+                config.getChunkSize(),
+                config.getChunkOverlap(),
+                config.getDedupSimilarity(),
+                config.getIngestWindowChars());
+    }
+}
@@ -0,0 +1,317 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.ContainsString;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Not;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from metadata values to compressed bitsets of entry ordinals.
+ *
+ * <p>Filters on indexed keys are compiled into bitset operations, so a filtered search only
+ * scores the entries that can match. Keys listed as multi-valued hold comma-separated lists;
+ * each element is indexed on its own, and equality and membership filters match any element.
+ * Filters the index cannot answer are left as a residual that is tested per candidate, where
+ * conditions on multi-valued keys are likewise tested element by element.
+ * Not thread-safe; {@link ShardedEmbeddingStore} guards it with its read-write lock.
+ */
+public class MetadataIndex {
+
+    /**
+     * The result of compiling a filter against the index.
+     *
+     * @param candidates The ordinals that can match, or null if every ordinal can match
+     * @param residual The part of the filter that still has to be tested per entry, or null
+     */
+    public record Plan(RoaringBitmap candidates, Filter residual) {
+    }
+
+    private final Set<String> indexedKeys;
+    private final Set<String> multiValuedKeys;
+    private final Map<String, Map<Object, RoaringBitmap>> postings = new HashMap<>();
+    private final RoaringBitmap all = new RoaringBitmap();
+
+    /**
+     * Creates an index.
+     *
+     * @param indexedKeys The metadata keys to index
+     * @param multiValuedKeys The indexed keys whose values are comma-separated lists
+     */
+    public MetadataIndex(Set<String> indexedKeys, Set<String> multiValuedKeys) {
+        this.indexedKeys = Set.copyOf(indexedKeys);
+        this.multiValuedKeys = Set.copyOf(multiValuedKeys);
+    }
+
+    /**
+     * Creates an index that indexes no keys; every filter is then evaluated per entry.
+     *
+     * @return An empty index
+     */
+    public static MetadataIndex none() {
+        return new MetadataIndex(Set.of(), Set.of());
+    }
+
+    void add(int ordinal, Metadata metadata) {
+        all.add(ordinal);
+        if (metadata == null) {
+            return;
+        }
+        Map<String, Object> fields = metadata.toMap();
+        for (String key : indexedKeys) {
+            Object value = fields.get(key);
+            if (value == null) {
+                continue;
+            }
+            Map<Object, RoaringBitmap> values = postings.computeIfAbsent(key, k -> new HashMap<>());
+            for (Object element : elements(key, value)) {
+                values.computeIfAbsent(element, v -> new RoaringBitmap()).add(ordinal);
+            }
+        }
+    }
+
+    void remove(int ordinal) {
+        all.remove(ordinal);
+    }
+
+    void clear() {
+        postings.clear();
+        all.clear();
+    }
+
+    /**
+     * Shrinks the bitsets to their most compact representation. Worth calling after bulk loads.
+     */
+    void optimize() {
+        all.runOptimize();
+        postings.values().forEach(values -> values.values().forEach(RoaringBitmap::runOptimize));
+    }
+
+    /**
+     * Compiles a filter into candidate ordinals and a residual filter. Removed entries are never candidates.
+     *
+     * @param filter The filter, or null
+     * @return The plan
+     */
+    public Plan compile(Filter filter) {
+        if (filter == null) {
+            return new Plan(null, null);
+        }
+        Plan plan = plan(filter);
+        if (plan.candidates() != null) {
+            plan.candidates().and(all);
+        }
+        return plan;
+    }
+
+    private Plan plan(Filter filter) {
+        if (filter instanceof And and) {
+            Plan left = plan(and.left());
+            Plan right = plan(and.right());
+            return new Plan(intersect(left.candidates(), right.candidates()), combine(left.residual(), right.residual()));
+        }
+        if (filter instanceof Or or) {
+            Plan left = plan(or.left());
+            Plan right = plan(or.right());
+            if (left.residual() != null || right.residual() != null) {
+                return new Plan(null, elementwise(filter));
+            }
+            return new Plan(union(left.candidates(), right.candidates()), null);
+        }
+        if (filter instanceof Not not) {
+            Plan inner = plan(not.expression());
+            if (inner.residual() != null) {
+                return new Plan(null, elementwise(filter));
+            }
+            return new Plan(complement(inner.candidates()), null);
+        }
+        String key = keyOf(filter);
+        if (key == null || !indexedKeys.contains(key)) {
+            return new Plan(null, elementwise(filter));
+        }
+        return new Plan(evaluate(key, filter), null);
+    }
+
+    /**
+     * Rewrites a filter that is tested per entry so that conditions on multi-valued keys match an
+     * entry when they match one of its elements, as they do when the index answers them.
+     * Conditions on other keys are kept as they are.
+     */
+    private Filter elementwise(Filter filter) {
+        if (filter instanceof And and) {
+            Filter left = elementwise(and.left());
+            Filter right = elementwise(and.right());
+            return left == and.left() && right == and.right() ? filter : new And(left, right);
+        }
+        if (filter instanceof Or or) {
+            Filter left = elementwise(or.left());
+            Filter right = elementwise(or.right());
+            return left == or.left() && right == or.right() ? filter : new Or(left, right);
+        }
+        if (filter instanceof Not not) {
+            Filter inner = elementwise(not.expression());
+            return inner == not.expression() ? filter : new Not(inner);
+        }
+        String key = keyOf(filter);
+        if (key == null || !multiValuedKeys.contains(key)) {
+            return filter;
+        }
+        if (filter instanceof IsNotEqualTo isNotEqualTo) {
+            return new Not(new AnyElement(key, new IsEqualTo(key, isNotEqualTo.comparisonValue())));
+        }
+        if (filter instanceof IsNotIn isNotIn) {
+            return new Not(new AnyElement(key, new IsIn(key, isNotIn.comparisonValues())));
+        }
+        return new AnyElement(key, filter);
+    }
+
+    /**
+     * Matches an entry if the condition matches any element of its multi-valued key. Entries
+     * without the key are tested as they are.
+     */
+    private record AnyElement(String key, Filter condition) implements Filter {
+
+        @Override
+        public boolean test(Object object) {
+            if (!(object instanceof Metadata metadata) || !metadata.containsKey(key)) {
+                return condition.test(object);
+            }
+            for (String element : String.valueOf(metadata.toMap().get(key)).split(",")) {
+                if (!element.isBlank() && condition.test(Metadata.from(key, element.trim()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private RoaringBitmap evaluate(String key, Filter filter) {
+        Map<Object, RoaringBitmap> values = postings.getOrDefault(key, Map.of());
+        if (filter instanceof IsEqualTo isEqualTo) {
+            return valuesMatching(key, values, List.of(isEqualTo.comparisonValue()));
+        }
+        if (filter instanceof IsIn isIn) {
+            return valuesMatching(key, values, isIn.comparisonValues());
+        }
+        if (filter instanceof IsNotEqualTo isNotEqualTo) {
+            return complement(valuesMatching(key, values, List.of(isNotEqualTo.comparisonValue())));
+        }
+        if (filter instanceof IsNotIn isNotIn) {
+            return complement(valuesMatching(key, values, isNotIn.comparisonValues()));
+        }
+        // Range and substring filters: test each distinct value once instead of each entry.
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Object, RoaringBitmap> entry : values.entrySet()) {
+            if (filter.test(Metadata.from(Map.of(key, entry.getKey())))) {
+                result.or(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private RoaringBitmap valuesMatching(String key, Map<Object, RoaringBitmap> values, Collection<?> comparisonValues) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (Object comparisonValue : comparisonValues) {
+            RoaringBitmap exact = values.get(normalize(key, comparisonValue));
+            if (exact != null) {
+                result.or(exact);
+                continue;
+            }
+            // Numbers may be stored with a different boxed type than the comparison value.
+            if (comparisonValue instanceof Number) {
+                IsEqualTo equalTo = new IsEqualTo(key, comparisonValue);
+                for (Map.Entry<Object, RoaringBitmap> entry : values.entrySet()) {
+                    if (entry.getKey() instanceof Number && equalTo.test(Metadata.from(Map.of(key, entry.getKey())))) {
+                        result.or(entry.getValue());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private Object normalize(String key, Object value) {
+        return multiValuedKeys.contains(key) ? String.valueOf(value).trim() : value;
+    }
+
+    private List<Object> elements(String key, Object value) {
+        if (!multiValuedKeys.contains(key)) {
+            return List.of(value);
+        }
+        List<Object> elements = new ArrayList<>();
+        for (String element : String.valueOf(value).split(",")) {
+            if (!element.isBlank()) {
+                elements.add(element.trim());
+            }
+        }
+        return elements;
+    }
+
+    private static String keyOf(Filter filter) {
+        if (filter instanceof IsEqualTo f) {
+            return f.key();
+        } else if (filter instanceof IsNotEqualTo f) {
+            return f.key();
+        } else if (filter instanceof IsIn f) {
+            return f.key();
+        } else if (filter instanceof IsNotIn f) {
+            return f.key();
+        } else if (filter instanceof IsGreaterThan f) {
+            return f.key();
+        } else if (filter instanceof IsGreaterThanOrEqualTo f) {
+            return f.key();
+        } else if (filter instanceof IsLessThan f) {
+            return f.key();
+        } else if (filter instanceof IsLessThanOrEqualTo f) {
+            return f.key();
+        } else if (filter instanceof ContainsString f) {
+            return f.key();
+        }
+        return null;
+    }
+
+    private RoaringBitmap complement(RoaringBitmap bitmap) {
+        return bitmap == null ? new RoaringBitmap() : RoaringBitmap.andNot(all, bitmap);
+    }
+
+    private static RoaringBitmap intersect(RoaringBitmap left, RoaringBitmap right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        return RoaringBitmap.and(left, right);
+    }
+
+    private static RoaringBitmap union(RoaringBitmap left, RoaringBitmap right) {
+        return RoaringBitmap.or(left, right);
+    }
+
+    private static Filter combine(Filter left, Filter right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        return left.and(right);
+    }
+}
@@ -0,0 +1,50 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+/**
+ * Holds the text segments of an embedding store by entry ordinal.
+ *
+ * <p>Segments are only read for the few matches a search returns and for metadata filters the
+ * {@link MetadataIndex} cannot answer, so they need not stay on the heap as objects. Not
+ * thread-safe for writes; {@link ShardedEmbeddingStore} guards it with its read-write lock, and
+ * implementations must allow concurrent reads.
+ */
+public interface SegmentStore {
+
+    /**
+     * Creates a store that keeps segments on the heap as they are.
+     *
+     * @return An empty store
+     */
+    static SegmentStore onHeap() {
+        return new HeapSegmentStore();
+    }
+
+    /**
+     * Appends a segment at the next ordinal.
+     *
+     * @param segment The segment, or null for an entry without one
+     */
+    void add(TextSegment segment);
+
+    /**
+     * Gets the segment at an ordinal.
+     *
+     * @param ordinal The entry ordinal
+     * @return The segment, or null if the entry has none or was removed
+     */
+    TextSegment get(int ordinal);
+
+    /**
+     * Releases the segment of a removed entry.
+     *
+     * @param ordinal The entry ordinal
+     */
+    void remove(int ordinal);
+
+    /**
+     * Removes all segments and starts again at ordinal 0.
+     */
+    void clear();
+}
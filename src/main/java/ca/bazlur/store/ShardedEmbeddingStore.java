@@ -0,0 +1,735 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory embedding store that partitions vectors into per-core shards and scores them in
+ * parallel on a fork-join pool.
+ *
+ * <p>Vectors are normalized on insertion and kept in one contiguous {@code float[]} per shard, so
+ * cosine similarity is a plain dot product over cache-friendly memory. Each shard search keeps a
+ * bounded heap of its best candidates and the per-shard heaps are merged into the global top-k.
+ * Stores smaller than the parallel threshold are searched on the calling thread, where the fork
+ * and join overhead would outweigh the scan itself.
+ *
+ * <p>Every entry gets a global ordinal in insertion order. Metadata filters are first compiled
+ * against a {@link MetadataIndex} into a bitset of candidate ordinals, so only entries that can
+ * match are scored. Removal only marks the ordinal as deleted; {@link #compact()} reclaims the space.
+ *
+ * <p>Segments are held by a {@link SegmentStore}, which may keep them compressed off the heap; a
+ * search only reads the segments of the matches it returns and of candidates it has to test
+ * against a residual filter.
+ */
+public class ShardedEmbeddingStore implements EmbeddingStore<TextSegment> {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedEmbeddingStore.class);
+
+    /** Default number of live vectors below which searches stay on the calling thread. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 10_000;
+
+    private static final Map<Integer, ForkJoinPool> SEARCH_POOLS = new ConcurrentHashMap<>();
+    private static final int INITIAL_SHARD_CAPACITY = 64;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final Shard[] shards;
+    private final MetadataIndex metadataIndex;
+
+    private final Map<String, Integer> ordinalsById = new HashMap<>();
+    private final List<String> ids = new ArrayList<>();
+    private final SegmentStore segments;
+    private final BitSet deleted = new BitSet();
+    private int dimension;
+    private int liveCount;
+
+    /** The number of open views; while there are any, the segments of removed entries are retained. */
+    private int pins;
+    private final BitSet retained = new BitSet();
+    private final Condition unpinned = lock.writeLock().newCondition();
+
+    /**
+     * Creates a store with one shard per available processor and the default parallel threshold.
+     */
+    public ShardedEmbeddingStore() {
+        this(0, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param parallelism The number of shards and search threads; values below 1 use the number of available processors
+     * @param parallelThreshold The number of live vectors from which searches are run in parallel
+     */
+    public ShardedEmbeddingStore(int parallelism, int parallelThreshold) {
+        this(parallelism, parallelThreshold, MetadataIndex.none());
+    }
+
+    /**
+     * Creates a store whose metadata filters are answered by the given index where possible.
+     *
+     * @param parallelism The number of shards and search threads; values below 1 use the number of available processors
+     * @param parallelThreshold The number of vectors to score from which searches are run in parallel
+     * @param metadataIndex An empty metadata index owned by this store
+     */
+    public ShardedEmbeddingStore(int parallelism, int parallelThreshold, MetadataIndex metadataIndex) {
+        this(parallelism, parallelThreshold, metadataIndex, SegmentStore.onHeap());
+    }
+
+    /**
+     * Creates a store whose segments are held by the given segment store.
+     *
+     * @param parallelism The number of shards and search threads; values below 1 use the number of available processors
+     * @param parallelThreshold The number of vectors to score from which searches are run in parallel
+     * @param metadataIndex An empty metadata index owned by this store
+     * @param segments An empty segment store owned by this store
+     */
+    public ShardedEmbeddingStore(int parallelism, int parallelThreshold, MetadataIndex metadataIndex,
+                                 SegmentStore segments) {
+        this.metadataIndex = metadataIndex;
+        this.segments = segments;
+        int shardCount = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = searchPool(shardCount);
+        this.parallelThreshold = parallelThreshold;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    /**
+     * Gets the shared search pool for the given parallelism. Stores with the same parallelism share
+     * a pool so that many stores in one JVM do not multiply the number of search threads.
+     */
+    private static ForkJoinPool searchPool(int parallelism) {
+        return SEARCH_POOLS.computeIfAbsent(parallelism, p -> new ForkJoinPool(p, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("vector-search-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false));
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return add(embedding, null);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), textSegment == null ? null : List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> newIds = generateIds(embeddings.size());
+        addAll(newIds, embeddings, null);
+        return newIds;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (ids.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings and embedded must have the same size");
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                addInternal(ids.get(i), embeddings.get(i), embedded == null ? null : embedded.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks that {@link #addAll(List, List, List)} would accept the entries, without adding them.
+     *
+     * @param ids The ids of the entries
+     * @param embeddings The embeddings of the entries
+     * @throws IllegalArgumentException if an embedding does not match the dimension of the store or of the others
+     */
+    void checkAddable(List<String> ids, List<Embedding> embeddings) {
+        lock.readLock().lock();
+        try {
+            int expected = dimension;
+            for (int i = 0; i < ids.size(); i++) {
+                Objects.requireNonNull(ids.get(i), "id");
+                int length = embeddings.get(i).vector().length;
+                if (expected == 0) {
+                    expected = length;
+                } else if (length != expected) {
+                    throw new IllegalArgumentException(
+                            "Embedding dimension " + length + " does not match store dimension " + expected);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addInternal(String id, Embedding embedding, TextSegment segment) {
+        Objects.requireNonNull(id, "id");
+        float[] vector = embedding.vector();
+        if (dimension == 0) {
+            dimension = vector.length;
+        } else if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Embedding dimension " + vector.length + " does not match store dimension " + dimension);
+        }
+        Integer existing = ordinalsById.get(id);
+        if (existing != null) {
+            markDeleted(existing);
+        }
+
+        int ordinal = ids.size();
+        ids.add(id);
+        segments.add(segment);
+        ordinalsById.put(id, ordinal);
+        shards[ordinal % shards.length].add(normalize(vector), dimension);
+        metadataIndex.add(ordinal, segment == null ? null : segment.metadata());
+        liveCount++;
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer ordinal = ordinalsById.get(id);
+                if (ordinal != null) {
+                    markDeleted(ordinal);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        Objects.requireNonNull(filter, "filter");
+        lock.writeLock().lock();
+        try {
+            // Compiled like a search filter, so that removal and search agree on what matches.
+            MetadataIndex.Plan plan = metadataIndex.compile(filter);
+            RoaringBitmap candidates = plan.candidates();
+            if (candidates == null) {
+                candidates = RoaringBitmap.bitmapOfRange(0, ids.size());
+            }
+            for (int ordinal : candidates.toArray()) {
+                if (accepts(ordinal, plan.residual())) {
+                    markDeleted(ordinal);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            awaitUnpinned();
+            ordinalsById.clear();
+            ids.clear();
+            segments.clear();
+            deleted.clear();
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Shard(i);
+            }
+            metadataIndex.clear();
+            dimension = 0;
+            liveCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markDeleted(int ordinal) {
+        if (!deleted.get(ordinal)) {
+            deleted.set(ordinal);
+            ordinalsById.remove(ids.get(ordinal));
+            if (pins > 0) {
+                retained.set(ordinal);
+            } else {
+                segments.remove(ordinal);
+            }
+            metadataIndex.remove(ordinal);
+            liveCount--;
+        }
+    }
+
+    /**
+     * Rewrites the shards without deleted entries, reclaiming their space and rebalancing the shards.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            awaitUnpinned();
+            if (deleted.isEmpty()) {
+                return;
+            }
+            List<IndexArtifact.Entry> live = liveEntries();
+            int removed = ids.size() - live.size();
+            removeAll();
+            for (IndexArtifact.Entry entry : live) {
+                addInternal(entry.id(), entry.embedding(), entry.segment());
+            }
+            metadataIndex.optimize();
+            logger.debug("Compacted embedding store, reclaimed {} deleted entries", removed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of live entries.
+     *
+     * @return The number of entries that have not been removed
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of removed entries whose space {@link #compact()} would reclaim.
+     *
+     * @return The number of deleted entries
+     */
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return ids.size() - liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a consistent snapshot of all live entries in insertion order. Embeddings are returned
+     * normalized, which does not change their cosine similarity.
+     *
+     * @return The live entries
+     */
+    public List<IndexArtifact.Entry> entries() {
+        lock.readLock().lock();
+        try {
+            return liveEntries();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Pins the live entries as of now, so that they can be read while the store goes on changing.
+     * Entries added later are not part of the view, and entries removed later stay readable through
+     * it until it is closed. Clearing or compacting the store waits until all views are closed.
+     *
+     * @return The view, which must be closed
+     */
+    View view() {
+        lock.writeLock().lock();
+        try {
+            pins++;
+            return new View(ids.size(), (BitSet) deleted.clone(), liveCount, dimension);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Waits until no view is open; clearing or rewriting the entries would pull them from under it. */
+    private void awaitUnpinned() {
+        while (pins > 0) {
+            unpinned.awaitUninterruptibly();
+        }
+    }
+
+    private List<IndexArtifact.Entry> liveEntries() {
+        List<IndexArtifact.Entry> entries = new ArrayList<>(liveCount);
+        for (int ordinal = 0; ordinal < ids.size(); ordinal++) {
+            if (!deleted.get(ordinal)) {
+                entries.add(new IndexArtifact.Entry(ids.get(ordinal), Embedding.from(vectorOf(ordinal)), segments.get(ordinal)));
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (liveCount == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            float[] query = request.queryEmbedding().vector();
+            if (query.length != dimension) {
+                throw new IllegalArgumentException(
+                        "Query dimension " + query.length + " does not match store dimension " + dimension);
+            }
+            MetadataIndex.Plan plan = metadataIndex.compile(request.filter());
+            ShardQuery shardQuery = new ShardQuery(
+                    normalize(query),
+                    request.maxResults(),
+                    request.minScore(),
+                    plan.residual());
+
+            RoaringBitmap candidates = plan.candidates();
+            int workload = candidates == null ? liveCount : candidates.getCardinality();
+            boolean parallel = workload >= parallelThreshold && shards.length > 1;
+            TopKCollector merged;
+            if (candidates == null) {
+                merged = parallel ? searchShardsInParallel(shardQuery) : searchShards(shardQuery);
+            } else if (candidates.isEmpty()) {
+                merged = new TopKCollector(0);
+            } else {
+                merged = parallel ? searchCandidatesInParallel(shardQuery, candidates)
+                        : searchCandidates(shardQuery, candidates, 0, ids.size());
+            }
+            return toResult(merged);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TopKCollector searchShards(ShardQuery query) {
+        TopKCollector collector = new TopKCollector(query.maxResults());
+        for (Shard shard : shards) {
+            shard.search(query, collector);
+        }
+        return collector;
+    }
+
+    private TopKCollector searchShardsInParallel(ShardQuery query) {
+        List<ForkJoinTask<TopKCollector>> tasks = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            tasks.add(pool.submit(() -> {
+                TopKCollector collector = new TopKCollector(query.maxResults());
+                shard.search(query, collector);
+                return collector;
+            }));
+        }
+        return merge(query, tasks);
+    }
+
+    /**
+     * Scores only the candidate ordinals within {@code [from, to)} produced by the metadata index.
+     */
+    private TopKCollector searchCandidates(ShardQuery query, RoaringBitmap candidates, int from, int to) {
+        TopKCollector collector = new TopKCollector(query.maxResults());
+        double minCosine = query.minCosine();
+        PeekableIntIterator iterator = candidates.getIntIterator();
+        iterator.advanceIfNeeded(from);
+        while (iterator.hasNext() && iterator.peekNext() < to) {
+            int ordinal = iterator.next();
+            if (!accepts(ordinal, query.residual())) {
+                continue;
+            }
+            Shard shard = shards[ordinal % shards.length];
+            double cosine = dot(query.vector(), shard.vectors, (ordinal / shards.length) * dimension);
+            if (cosine >= minCosine && cosine > collector.threshold()) {
+                collector.offer(cosine, ordinal);
+            }
+        }
+        return collector;
+    }
+
+    private TopKCollector searchCandidatesInParallel(ShardQuery query, RoaringBitmap candidates) {
+        int total = ids.size();
+        int ranges = shards.length;
+        List<ForkJoinTask<TopKCollector>> tasks = new ArrayList<>(ranges);
+        for (int i = 0; i < ranges; i++) {
+            int from = (int) ((long) total * i / ranges);
+            int to = (int) ((long) total * (i + 1) / ranges);
+            tasks.add(pool.submit(() -> searchCandidates(query, candidates, from, to)));
+        }
+        return merge(query, tasks);
+    }
+
+    private static TopKCollector merge(ShardQuery query, List<ForkJoinTask<TopKCollector>> tasks) {
+        TopKCollector merged = new TopKCollector(query.maxResults());
+        for (ForkJoinTask<TopKCollector> task : tasks) {
+            merged.addAll(task.join());
+        }
+        return merged;
+    }
+
+    private EmbeddingSearchResult<TextSegment> toResult(TopKCollector collector) {
+        int size = collector.size();
+        double[] scores = new double[size];
+        int[] ordinals = new int[size];
+        collector.drainDescending(scores, ordinals);
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int ordinal = ordinals[i];
+            matches.add(new EmbeddingMatch<>(
+                    RelevanceScore.fromCosineSimilarity(scores[i]),
+                    ids.get(ordinal),
+                    Embedding.from(vectorOf(ordinal)),
+                    segments.get(ordinal)));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * Entries are dealt to shards round-robin in ordinal order, so an ordinal's shard and its
+     * position within the shard follow from the ordinal alone.
+     */
+    private float[] vectorOf(int ordinal) {
+        return shards[ordinal % shards.length].vector(ordinal / shards.length, dimension);
+    }
+
+    /**
+     * Checks whether an entry is visible to a query. Called by scans before scoring.
+     */
+    private boolean accepts(int ordinal, Filter residual) {
+        if (deleted.get(ordinal)) {
+            return false;
+        }
+        if (residual == null) {
+            return true;
+        }
+        TextSegment segment = segments.get(ordinal);
+        return segment != null && residual.test(segment.metadata());
+    }
+
+    private static float[] normalize(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        float[] normalized = vector.clone();
+        if (sum > 0) {
+            float scale = (float) (1.0 / Math.sqrt(sum));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] query, float[] vectors, int offset) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int length = query.length;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += query[i] * vectors[offset + i];
+            s1 += query[i + 1] * vectors[offset + i + 1];
+            s2 += query[i + 2] * vectors[offset + i + 2];
+            s3 += query[i + 3] * vectors[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += query[i] * vectors[offset + i];
+        }
+        return (double) s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * A search prepared once and shared by all shard tasks.
+     *
+     * @param vector The normalized query vector
+     * @param maxResults The number of results to return
+     * @param minScore The minimum relevance score
+     * @param residual The part of the metadata filter not answered by the metadata index, or null
+     */
+    private record ShardQuery(float[] vector, int maxResults, double minScore, Filter residual) {
+
+        /**
+         * Relevance is monotonic in cosine similarity, so scans compare raw similarities.
+         */
+        double minCosine() {
+            return 2 * minScore - 1;
+        }
+    }
+
+    /**
+     * The live entries of the store at the time {@link #view()} was called.
+     */
+    final class View implements AutoCloseable {
+        private static final int CHUNK_SIZE = 256;
+
+        private final int end;
+        private final BitSet deletedAtPin;
+        private final int size;
+        private final int dimension;
+        private boolean closed;
+
+        private View(int end, BitSet deletedAtPin, int size, int dimension) {
+            this.end = end;
+            this.deletedAtPin = deletedAtPin;
+            this.size = size;
+            this.dimension = dimension;
+        }
+
+        /**
+         * Gets the number of entries in the view.
+         *
+         * @return The number of live entries when the view was taken
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Gets the dimension of the vectors in the view.
+         *
+         * @return The vector dimension, or 0 if the store was empty
+         */
+        int dimension() {
+            return dimension;
+        }
+
+        /**
+         * Iterates over the entries in insertion order. Embeddings are normalized. The entries are
+         * read a chunk at a time under the store's read lock, so neither searches nor mutations
+         * wait for the whole iteration.
+         *
+         * @return The entries
+         */
+        Iterator<IndexArtifact.Entry> entries() {
+            return new Iterator<>() {
+                private final Deque<IndexArtifact.Entry> chunk = new ArrayDeque<>(CHUNK_SIZE);
+                private int next = deletedAtPin.nextClearBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    if (chunk.isEmpty() && next < end) {
+                        readChunk();
+                    }
+                    return !chunk.isEmpty();
+                }
+
+                @Override
+                public IndexArtifact.Entry next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return chunk.removeFirst();
+                }
+
+                private void readChunk() {
+                    lock.readLock().lock();
+                    try {
+                        while (chunk.size() < CHUNK_SIZE && next < end) {
+                            chunk.addLast(new IndexArtifact.Entry(
+                                    ids.get(next), Embedding.from(vectorOf(next)), segments.get(next)));
+                            next = deletedAtPin.nextClearBit(next + 1);
+                        }
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+            };
+        }
+
+        /**
+         * Unpins the entries; once the last view is closed, the segments of entries removed
+         * meanwhile are released.
+         */
+        @Override
+        public void close() {
+            lock.writeLock().lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (--pins == 0) {
+                    for (int ordinal = retained.nextSetBit(0); ordinal >= 0; ordinal = retained.nextSetBit(ordinal + 1)) {
+                        segments.remove(ordinal);
+                    }
+                    retained.clear();
+                    unpinned.signalAll();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * A partition of the store's vectors kept in one contiguous array. Shard {@code s} holds the
+     * ordinals {@code s, s + n, s + 2n, ...} where {@code n} is the number of shards.
+     */
+    private final class Shard {
+        private final int index;
+        private float[] vectors = new float[0];
+        private int count;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        void add(float[] vector, int dimension) {
+            if ((count + 1) * dimension > vectors.length) {
+                vectors = Arrays.copyOf(vectors, Math.max(INITIAL_SHARD_CAPACITY, count * 2) * dimension);
+            }
+            System.arraycopy(vector, 0, vectors, count * dimension, dimension);
+            count++;
+        }
+
+        float[] vector(int local, int dimension) {
+            return Arrays.copyOfRange(vectors, local * dimension, (local + 1) * dimension);
+        }
+
+        void search(ShardQuery query, TopKCollector collector) {
+            double minCosine = query.minCosine();
+            float[] vector = query.vector();
+            int dimension = vector.length;
+            for (int local = 0; local < count; local++) {
+                int ordinal = local * shards.length + index;
+                if (!accepts(ordinal, query.residual())) {
+                    continue;
+                }
+                double cosine = dot(vector, vectors, local * dimension);
+                if (cosine >= minCosine && cosine > collector.threshold()) {
+                    collector.offer(cosine, ordinal);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.ContainsString;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Not;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Binary encoding of strings, embeddings, text segments and metadata filters shared by the on-disk
+ * index formats and the shard protocol.
+ */
+public final class StoreCodec {
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_UUID = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_FLOAT = 5;
+    private static final byte TYPE_DOUBLE = 6;
+
+    private static final byte FILTER_NONE = 0;
+    private static final byte FILTER_AND = 1;
+    private static final byte FILTER_OR = 2;
+    private static final byte FILTER_NOT = 3;
+    private static final byte FILTER_EQUAL = 4;
+    private static final byte FILTER_NOT_EQUAL = 5;
+    private static final byte FILTER_GREATER = 6;
+    private static final byte FILTER_GREATER_OR_EQUAL = 7;
+    private static final byte FILTER_LESS = 8;
+    private static final byte FILTER_LESS_OR_EQUAL = 9;
+    private static final byte FILTER_CONTAINS = 10;
+    private static final byte FILTER_IN = 11;
+    private static final byte FILTER_NOT_IN = 12;
+
+    private StoreCodec() {
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string. Unlike {@link DataOutput#writeUTF(String)} this has no 64KB limit.
+     *
+     * @param out The output to write to
+     * @param value The string to write
+     * @throws IOException if writing fails
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in The input to read from
+     * @return The string
+     * @throws IOException if reading fails
+     */
+    public static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the fingerprint of the model and settings that produced a set of embeddings.
+     *
+     * @param out The output to write to
+     * @param fingerprint The fingerprint to write
+     * @throws IOException if writing fails
+     */
+    public static void writeFingerprint(DataOutput out, IndexFingerprint fingerprint) throws IOException {
+        writeString(out, fingerprint.provider());
+        writeString(out, fingerprint.embeddingModel());
+        out.writeInt(fingerprint.chunkSize());
+        out.writeInt(fingerprint.chunkOverlap());
+        out.writeDouble(fingerprint.dedupSimilarity());
+        out.writeInt(fingerprint.windowChars());
+    }
+
+    /**
+     * Reads a fingerprint written by {@link #writeFingerprint(DataOutput, IndexFingerprint)}.
+     *
+     * @param in The input to read from
+     * @return The fingerprint
+     * @throws IOException if reading fails
+     */
+    public static IndexFingerprint readFingerprint(DataInput in) throws IOException {
+        return new IndexFingerprint(readString(in), readString(in), in.readInt(), in.readInt(), in.readDouble(),
+                in.readInt());
+    }
+
+    /**
+     * Writes the vector of an embedding.
+     *
+     * @param out The output to write to
+     * @param embedding The embedding to write
+     * @throws IOException if writing fails
+     */
+    public static void writeEmbedding(DataOutput out, Embedding embedding) throws IOException {
+        float[] vector = embedding.vector();
+        out.writeInt(vector.length);
+        for (float value : vector) {
+            out.writeFloat(value);
+        }
+    }
+
+    /**
+     * Reads an embedding written by {@link #writeEmbedding(DataOutput, Embedding)}.
+     *
+     * @param in The input to read from
+     * @return The embedding
+     * @throws IOException if reading fails
+     */
+    public static Embedding readEmbedding(DataInput in) throws IOException {
+        float[] vector = new float[in.readInt()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = in.readFloat();
+        }
+        return Embedding.from(vector);
+    }
+
+    /**
+     * Writes a text segment including its metadata.
+     *
+     * @param out The output to write to
+     * @param segment The segment to write
+     * @throws IOException if writing fails
+     */
+    public static void writeSegment(DataOutput out, TextSegment segment) throws IOException {
+        writeString(out, segment.text());
+        Map<String, Object> metadata = segment.metadata().toMap();
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a text segment written by {@link #writeSegment(DataOutput, TextSegment)}.
+     *
+     * @param in The input to read from
+     * @return The segment
+     * @throws IOException if reading fails or the data is malformed
+     */
+    public static TextSegment readSegment(DataInput in) throws IOException {
+        String text = readString(in);
+        int size = in.readInt();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            Object value = readValue(in);
+            metadata.put(key, value);
+        }
+        return TextSegment.from(text, Metadata.from(metadata));
+    }
+
+    /**
+     * Writes a metadata filter expression tree.
+     *
+     * @param out The output to write to
+     * @param filter The filter to write, or null
+     * @throws IOException if writing fails or the filter type is not supported
+     */
+    public static void writeFilter(DataOutput out, Filter filter) throws IOException {
+        if (filter == null) {
+            out.writeByte(FILTER_NONE);
+        } else if (filter instanceof And and) {
+            out.writeByte(FILTER_AND);
+            writeFilter(out, and.left());
+            writeFilter(out, and.right());
+        } else if (filter instanceof Or or) {
+            out.writeByte(FILTER_OR);
+            writeFilter(out, or.left());
+            writeFilter(out, or.right());
+        } else if (filter instanceof Not not) {
+            out.writeByte(FILTER_NOT);
+            writeFilter(out, not.expression());
+        } else if (filter instanceof IsEqualTo f) {
+            writeComparison(out, FILTER_EQUAL, f.key(), f.comparisonValue());
+        } else if (filter instanceof IsNotEqualTo f) {
+            writeComparison(out, FILTER_NOT_EQUAL, f.key(), f.comparisonValue());
+        } else if (filter instanceof IsGreaterThan f) {
+            writeComparison(out, FILTER_GREATER, f.key(), f.comparisonValue());
+        } else if (filter instanceof IsGreaterThanOrEqualTo f) {
+            writeComparison(out, FILTER_GREATER_OR_EQUAL, f.key(), f.comparisonValue());
+        } else if (filter instanceof IsLessThan f) {
+            writeComparison(out, FILTER_LESS, f.key(), f.comparisonValue());
+        } else if (filter instanceof IsLessThanOrEqualTo f) {
+            writeComparison(out, FILTER_LESS_OR_EQUAL, f.key(), f.comparisonValue());
+        } else if (filter instanceof ContainsString f) {
+            writeComparison(out, FILTER_CONTAINS, f.key(), f.comparisonValue());
+        } else if (filter instanceof IsIn f) {
+            writeMembership(out, FILTER_IN, f.key(), f.comparisonValues());
+        } else if (filter instanceof IsNotIn f) {
+            writeMembership(out, FILTER_NOT_IN, f.key(), f.comparisonValues());
+        } else {
+            throw new IOException("Unsupported filter type: " + filter.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #writeFilter(DataOutput, Filter)}.
+     *
+     * @param in The input to read from
+     * @return The filter, or null if none was written
+     * @throws IOException if reading fails or the data is malformed
+     */
+    public static Filter readFilter(DataInput in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case FILTER_NONE -> null;
+            case FILTER_AND -> new And(readFilter(in), readFilter(in));
+            case FILTER_OR -> new Or(readFilter(in), readFilter(in));
+            case FILTER_NOT -> new Not(readFilter(in));
+            case FILTER_EQUAL -> new IsEqualTo(readString(in), readValue(in));
+            case FILTER_NOT_EQUAL -> new IsNotEqualTo(readString(in), readValue(in));
+            case FILTER_GREATER -> new IsGreaterThan(readString(in), (Comparable<?>) readValue(in));
+            case FILTER_GREATER_OR_EQUAL -> new IsGreaterThanOrEqualTo(readString(in), (Comparable<?>) readValue(in));
+            case FILTER_LESS -> new IsLessThan(readString(in), (Comparable<?>) readValue(in));
+            case FILTER_LESS_OR_EQUAL -> new IsLessThanOrEqualTo(readString(in), (Comparable<?>) readValue(in));
+            case FILTER_CONTAINS -> new ContainsString(readString(in), String.valueOf(readValue(in)));
+            case FILTER_IN -> new IsIn(readString(in), readValues(in));
+            case FILTER_NOT_IN -> new IsNotIn(readString(in), readValues(in));
+            default -> throw new IOException("Unknown filter type: " + type);
+        };
+    }
+
+    private static void writeComparison(DataOutput out, byte type, String key, Object value) throws IOException {
+        out.writeByte(type);
+        writeString(out, key);
+        writeValue(out, value);
+    }
+
+    private static void writeMembership(DataOutput out, byte type, String key, Collection<?> values) throws IOException {
+        out.writeByte(type);
+        writeString(out, key);
+        out.writeInt(values.size());
+        for (Object value : values) {
+            writeValue(out, value);
+        }
+    }
+
+    private static List<Object> readValues(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<Object> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readValue(in));
+        }
+        return values;
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value instanceof UUID uuid) {
+            out.writeByte(TYPE_UUID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else if (value instanceof Integer i) {
+            out.writeByte(TYPE_INT);
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(l);
+        } else if (value instanceof Float f) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat(f);
+        } else if (value instanceof Double d) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(d);
+        } else {
+            out.writeByte(TYPE_STRING);
+            writeString(out, String.valueOf(value));
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case TYPE_STRING -> readString(in);
+            case TYPE_UUID -> new UUID(in.readLong(), in.readLong());
+            case TYPE_INT -> in.readInt();
+            case TYPE_LONG -> in.readLong();
+            case TYPE_FLOAT -> in.readFloat();
+            case TYPE_DOUBLE -> in.readDouble();
+            default -> throw new IOException("Unknown metadata value type: " + type);
+        };
+    }
+}
@@ -0,0 +1,109 @@
+package ca.bazlur.store;
+
+/**
+ * Bounded min-heap keeping the {@code k} highest scoring ordinals seen so far.
+ * Uses primitive arrays so a scan over millions of vectors allocates nothing per candidate.
+ * Not thread-safe; each search task owns its collector and collectors are merged afterwards.
+ */
+final class TopKCollector {
+    private final int capacity;
+    private final double[] scores;
+    private final int[] ordinals;
+    private int size;
+
+    TopKCollector(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        this.scores = new double[this.capacity];
+        this.ordinals = new int[this.capacity];
+    }
+
+    /**
+     * Gets the score a candidate has to beat to enter the collector.
+     *
+     * @return The lowest retained score, or negative infinity while the collector is not full
+     */
+    double threshold() {
+        return size < capacity ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    void offer(double score, int ordinal) {
+        if (capacity == 0) {
+            return;
+        }
+        if (size < capacity) {
+            scores[size] = score;
+            ordinals[size] = ordinal;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            scores[0] = score;
+            ordinals[0] = ordinal;
+            siftDown(0);
+        }
+    }
+
+    void addAll(TopKCollector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.scores[i], other.ordinals[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Drains the collector into arrays sorted by descending score.
+     *
+     * @param outScores Receives the scores; must hold at least {@link #size()} elements
+     * @param outOrdinals Receives the ordinals; must hold at least {@link #size()} elements
+     */
+    void drainDescending(double[] outScores, int[] outOrdinals) {
+        for (int i = size - 1; i >= 0; i--) {
+            outScores[i] = scores[0];
+            outOrdinals[i] = ordinals[0];
+            size--;
+            scores[0] = scores[size];
+            ordinals[0] = ordinals[size];
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                break;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && scores[right] < scores[left]) {
+                smallest = right;
+            }
+            if (scores[index] <= scores[smallest]) {
+                break;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int ordinal = ordinals[a];
+        ordinals[a] = ordinals[b];
+        ordinals[b] = ordinal;
+    }
+}
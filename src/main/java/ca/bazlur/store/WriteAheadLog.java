@@ -0,0 +1,351 @@
+package ca.bazlur.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * One generation of the append-only log of embedding store mutations.
+ *
+ * <p>The file starts with a magic number, format version and the {@link IndexFingerprint} of the
+ * embeddings it holds, followed by records of the form {@code length, CRC32C, type, payload}.
+ * A record that is cut short or fails its checksum marks the end of the log: it can only be the
+ * tail of a write interrupted by a crash, and is truncated when the log is reopened.
+ *
+ * <p>Appends go to the OS page cache; {@link #sync(long)} makes them durable with group commit.
+ * Whichever caller reaches the sync first flushes every record appended so far with a single
+ * {@code fsync}, and callers whose records were covered by it return without flushing again, so
+ * concurrent writers share the cost of one disk flush.
+ */
+final class WriteAheadLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    /** Magic number at the start of every log file ("KBWL"). */
+    static final int MAGIC = 0x4B42574C;
+    /** Current format version. Version 2 fingerprints the deduplication similarity and window size. */
+    static final short FORMAT_VERSION = 2;
+
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    /** Applies a replayed record. */
+    @FunctionalInterface
+    interface RecordHandler {
+        void apply(byte type, DataInputStream payload) throws IOException;
+    }
+
+    /**
+     * The outcome of replaying a log.
+     *
+     * @param records The number of intact records applied
+     * @param headerLength The length of the file header
+     * @param validLength The length of the intact part of the file
+     * @param torn Whether the file ended with a damaged or incomplete record
+     */
+    record Replay(int records, long headerLength, long validLength, boolean torn) {
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long headerLength;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private long appended;
+    private long size;
+    private volatile long durable;
+    private volatile long syncs;
+
+    private WriteAheadLog(Path path, FileChannel channel, long headerLength, long size) {
+        this.path = path;
+        this.channel = channel;
+        this.headerLength = headerLength;
+        this.size = size;
+    }
+
+    /**
+     * Creates a new, empty log file.
+     *
+     * @param path The file to create; it must not exist
+     * @param fingerprint The fingerprint of the embeddings that will be logged
+     * @return The log, open for appending
+     * @throws IOException if the file cannot be created
+     */
+    static WriteAheadLog create(Path path, IndexFingerprint fingerprint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeShort(FORMAT_VERSION);
+        StoreCodec.writeFingerprint(header, fingerprint);
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new WriteAheadLog(path, channel, bytes.size(), bytes.size());
+    }
+
+    /**
+     * Reopens a replayed log for appending, cutting off a torn tail.
+     *
+     * @param path The log file
+     * @param replay The outcome of replaying the file
+     * @return The log, open for appending
+     * @throws IOException if the file cannot be opened
+     */
+    static WriteAheadLog reopen(Path path, Replay replay) throws IOException {
+        long validLength = replay.validLength();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+            channel.position(validLength);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new WriteAheadLog(path, channel, replay.headerLength(), validLength);
+    }
+
+    /**
+     * Replays the records of a log file if it was written for the expected fingerprint.
+     *
+     * @param path The log file
+     * @param expected The fingerprint the logged embeddings must have
+     * @param handler Receives each intact record in order
+     * @return The outcome, or empty if the fingerprint does not match or the log was written in an
+     *         older format
+     * @throws IOException if the file is not a log or reading fails
+     */
+    static Optional<Replay> replay(Path path, IndexFingerprint expected, RecordHandler handler) throws IOException {
+        try (InputStream file = Files.newInputStream(path)) {
+            CountingInputStream counting = new CountingInputStream(new BufferedInputStream(file));
+            DataInputStream in = new DataInputStream(counting);
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a write-ahead log");
+            }
+            short version = in.readShort();
+            if (version > 0 && version < FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported write-ahead log version " + version + " in " + path);
+            }
+            if (!StoreCodec.readFingerprint(in).equals(expected)) {
+                return Optional.empty();
+            }
+
+            long fileSize = Files.size(path);
+            long headerLength = counting.count;
+            int records = 0;
+            long validLength = headerLength;
+            while (validLength < fileSize) {
+                byte[] payload = readRecord(in, fileSize - validLength);
+                if (payload == null) {
+                    logger.warn("Discarding {} bytes of incomplete or damaged records at the end of {}",
+                            fileSize - validLength, path);
+                    return Optional.of(new Replay(records, headerLength, validLength, true));
+                }
+                handler.apply(payload[0], new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1)));
+                records++;
+                validLength = counting.count;
+            }
+            return Optional.of(new Replay(records, headerLength, validLength, false));
+        }
+    }
+
+    /**
+     * Reads the next record, or returns null if it is incomplete or fails its checksum.
+     */
+    private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        if (remaining < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        int length = in.readInt();
+        int checksum = in.readInt();
+        if (length < 1 || length > remaining - RECORD_HEADER_BYTES) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        try {
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+        return checksum(payload) == checksum ? payload : null;
+    }
+
+    /**
+     * Appends a record. It is not durable until {@link #sync(long)} has been called with the returned sequence.
+     *
+     * @param type The record type
+     * @param payload The record payload
+     * @return The sequence number of the record
+     * @throws IOException if writing fails
+     */
+    long append(byte type, byte[] payload) throws IOException {
+        byte[] body = new byte[payload.length + 1];
+        body[0] = type;
+        System.arraycopy(payload, 0, body, 1, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + body.length);
+        record.putInt(body.length).putInt(checksum(body)).put(body).flip();
+
+        appendLock.lock();
+        try {
+            writeFully(channel, record);
+            size += record.limit();
+            return ++appended;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the record with the given sequence number is on disk.
+     *
+     * @param sequence A sequence number returned by {@link #append(byte, byte[])}
+     * @throws IOException if flushing fails
+     */
+    void sync(long sequence) throws IOException {
+        if (durable >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (durable >= sequence) {
+                return;
+            }
+            long target;
+            appendLock.lock();
+            try {
+                target = appended;
+            } finally {
+                appendLock.unlock();
+            }
+            channel.force(false);
+            syncs++;
+            durable = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the size of the log file.
+     *
+     * @return The size in bytes, including the header
+     */
+    long size() {
+        appendLock.lock();
+        try {
+            return size;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether any records have been logged in this generation.
+     *
+     * @return Whether the log holds records
+     */
+    boolean hasRecords() {
+        return size() > headerLength;
+    }
+
+    /** Gets the number of disk flushes so far; concurrent syncs share one flush. */
+    long syncCount() {
+        return syncs;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Flushes all appended records and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        appendLock.lock();
+        long last;
+        try {
+            last = appended;
+        } finally {
+            appendLock.unlock();
+        }
+        sync(last);
+        channel.close();
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** Tracks the read position, which {@link DataInputStream} does not expose. */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ca.bazlur.store.remote;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link ShardClient} that talks to a {@link ShardServer} over HTTP.
+ */
+public class HttpShardClient implements ShardClient {
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+
+    private final URI searchUri;
+    private final Duration timeout;
+
+    /**
+     * Creates a client for the shard server at the given base URL.
+     *
+     * @param baseUrl The shard server base URL, for example {@code http://localhost:8081}
+     * @param timeout The per-request timeout
+     */
+    public HttpShardClient(String baseUrl, Duration timeout) {
+        String trimmed = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.searchUri = URI.create(trimmed + ShardProtocol.SEARCH_PATH);
+        this.timeout = timeout;
+    }
+
+    @Override
+    public String name() {
+        return searchUri.getAuthority();
+    }
+
+    @Override
+    public CompletableFuture<List<EmbeddingMatch<TextSegment>>> search(EmbeddingSearchRequest request) {
+        byte[] body;
+        try {
+            body = ShardProtocol.encodeRequest(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest httpRequest = HttpRequest.newBuilder(searchUri)
+                .timeout(timeout)
+                .header("Content-Type", ShardProtocol.CONTENT_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return HTTP_CLIENT.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(this::decode);
+    }
+
+    private List<EmbeddingMatch<TextSegment>> decode(HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Shard " + name() + " answered HTTP " + response.statusCode());
+        }
+        try {
+            return ShardProtocol.decodeMatches(response.body());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed response from shard " + name(), e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ca.bazlur.store.remote;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only embedding store that fans each search out to all index shards in parallel and merges
+ * their local top-k into the global top-k.
+ *
+ * <p>Every shard gets the same timeout. A shard that fails or does not answer in time contributes
+ * no matches, so a slow or dead node degrades recall instead of blocking the answer.
+ * Content is ingested on the shard servers, so all mutating operations are unsupported.
+ */
+public class ScatterGatherEmbeddingStore implements EmbeddingStore<TextSegment> {
+    private static final Logger logger = LoggerFactory.getLogger(ScatterGatherEmbeddingStore.class);
+
+    private final List<ShardClient> shards;
+    private final Duration shardTimeout;
+
+    /**
+     * Creates a scatter-gather store.
+     *
+     * @param shards The shards holding the slices of the index
+     * @param shardTimeout The time each shard has to answer a search
+     */
+    public ScatterGatherEmbeddingStore(List<ShardClient> shards, Duration shardTimeout) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.shardTimeout = shardTimeout;
+    }
+
+    /**
+     * Creates a scatter-gather store over HTTP shard servers.
+     *
+     * @param shardUrls The base URLs of the shard servers
+     * @param shardTimeout The time each shard has to answer a search
+     * @return The store
+     */
+    public static ScatterGatherEmbeddingStore overHttp(List<String> shardUrls, Duration shardTimeout) {
+        List<ShardClient> clients = new ArrayList<>();
+        for (String url : shardUrls) {
+            clients.add(new HttpShardClient(url, shardTimeout));
+        }
+        return new ScatterGatherEmbeddingStore(clients, shardTimeout);
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        List<CompletableFuture<List<EmbeddingMatch<TextSegment>>>> futures = new ArrayList<>(shards.size());
+        for (ShardClient shard : shards) {
+            futures.add(searchShard(shard, request));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        List<EmbeddingMatch<TextSegment>> merged = new ArrayList<>();
+        for (CompletableFuture<List<EmbeddingMatch<TextSegment>>> future : futures) {
+            merged.addAll(future.join());
+        }
+        merged.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+        return new EmbeddingSearchResult<>(merged.subList(0, Math.min(request.maxResults(), merged.size())));
+    }
+
+    private CompletableFuture<List<EmbeddingMatch<TextSegment>>> searchShard(ShardClient shard, EmbeddingSearchRequest request) {
+        CompletableFuture<List<EmbeddingMatch<TextSegment>>> future;
+        try {
+            future = shard.search(request);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future
+                .orTimeout(shardTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    logger.warn("Shard {} did not answer ({}); returning partial results", shard.name(), e.toString());
+                    return List.of();
+                });
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        throw readOnly();
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("The distributed index is read-only; ingest on the shard servers");
+    }
+}
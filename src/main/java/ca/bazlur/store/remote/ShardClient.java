@@ -0,0 +1,29 @@
+package ca.bazlur.store.remote;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous search against one shard of a distributed index.
+ */
+public interface ShardClient {
+
+    /**
+     * Gets a human-readable name of the shard, used in logs.
+     *
+     * @return The shard name
+     */
+    String name();
+
+    /**
+     * Searches the shard without blocking the caller.
+     *
+     * @param request The search request
+     * @return The shard's local top matches, sorted by descending score
+     */
+    CompletableFuture<List<EmbeddingMatch<TextSegment>>> search(EmbeddingSearchRequest request);
+}
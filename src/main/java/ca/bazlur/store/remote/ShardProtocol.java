@@ -0,0 +1,82 @@
+package ca.bazlur.store.remote;
+
+import ca.bazlur.store.StoreCodec;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary request and response bodies exchanged between {@link HttpShardClient} and {@link ShardServer}.
+ * Vectors travel as raw floats, which is far smaller and cheaper to parse than JSON. Metadata
+ * filters travel with the request, so each shard applies them against its own metadata index.
+ */
+final class ShardProtocol {
+    static final String SEARCH_PATH = "/search";
+    static final String HEALTH_PATH = "/health";
+    static final String CONTENT_TYPE = "application/octet-stream";
+
+    private ShardProtocol() {
+    }
+
+    static byte[] encodeRequest(EmbeddingSearchRequest request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(request.maxResults());
+        out.writeDouble(request.minScore());
+        StoreCodec.writeEmbedding(out, request.queryEmbedding());
+        StoreCodec.writeFilter(out, request.filter());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static EmbeddingSearchRequest decodeRequest(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        int maxResults = in.readInt();
+        double minScore = in.readDouble();
+        return EmbeddingSearchRequest.builder()
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .queryEmbedding(StoreCodec.readEmbedding(in))
+                .filter(StoreCodec.readFilter(in))
+                .build();
+    }
+
+    static byte[] encodeMatches(List<EmbeddingMatch<TextSegment>> matches) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(matches.size());
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            out.writeDouble(match.score());
+            StoreCodec.writeString(out, match.embeddingId());
+            StoreCodec.writeEmbedding(out, match.embedding());
+            out.writeBoolean(match.embedded() != null);
+            if (match.embedded() != null) {
+                StoreCodec.writeSegment(out, match.embedded());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static List<EmbeddingMatch<TextSegment>> decodeMatches(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        int count = in.readInt();
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double score = in.readDouble();
+            String id = StoreCodec.readString(in);
+            var embedding = StoreCodec.readEmbedding(in);
+            TextSegment segment = in.readBoolean() ? StoreCodec.readSegment(in) : null;
+            matches.add(new EmbeddingMatch<>(score, id, embedding, segment));
+        }
+        return matches;
+    }
+}
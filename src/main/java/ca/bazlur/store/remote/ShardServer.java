@@ -0,0 +1,112 @@
+package ca.bazlur.store.remote;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves searches over one slice of the knowledge base index to {@link HttpShardClient}s.
+ *
+ * <p>{@code POST /search} takes a binary search request and answers with the shard's local top-k.
+ * {@code GET /health} answers {@code OK} while the server is running. A search request that cannot
+ * be decoded is answered with 400, a search that fails on the shard with 500.
+ */
+public class ShardServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ShardServer.class);
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a shard server. The server does not accept requests until {@link #start()} is called.
+     *
+     * @param embeddingStore The store holding this shard's slice of the index
+     * @param port The port to listen on, or 0 to pick a free port
+     * @throws IOException if the port cannot be bound
+     */
+    public ShardServer(EmbeddingStore<TextSegment> embeddingStore, int port) throws IOException {
+        this.embeddingStore = embeddingStore;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext(ShardProtocol.SEARCH_PATH, this::handleSearch);
+        server.createContext(ShardProtocol.HEALTH_PATH, this::handleHealth);
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Shard server listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        logger.info("Shard server on port {} stopped", getPort());
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            EmbeddingSearchRequest request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = ShardProtocol.decodeRequest(body.readAllBytes());
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Rejected malformed shard search request", e);
+                sendText(exchange, 400, String.valueOf(e.getMessage()));
+                return;
+            }
+            byte[] response;
+            try {
+                List<EmbeddingMatch<TextSegment>> matches = embeddingStore.search(request).matches();
+                response = ShardProtocol.encodeMatches(matches);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Shard search failed", e);
+                sendText(exchange, 500, String.valueOf(e.getMessage()));
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", ShardProtocol.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sendText(exchange, 200, "OK");
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
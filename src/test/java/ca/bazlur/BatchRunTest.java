@@ -0,0 +1,92 @@
+package ca.bazlur;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRunTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static List<JsonNode> lines(StringWriter results) throws Exception {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : results.toString().split("\n")) {
+            lines.add(JSON.readTree(line));
+        }
+        return lines;
+    }
+
+    @Test
+    void testQuestionsAreAnsweredConcurrentlyUpToTheLimit() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        StringWriter results = new StringWriter();
+        String questions = "q1\nq2\n\n# skipped\nq3\nq4\nq5\nq6\n";
+
+        BatchRun.Summary summary = BatchRun.run(question -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return "answer to " + question;
+        }, new BufferedReader(new StringReader(questions)), results, 3);
+
+        assertEquals(new BatchRun.Summary(6, 0), summary);
+        assertEquals(3, maxInFlight.get());
+        List<JsonNode> lines = lines(results);
+        assertEquals(6, lines.size());
+        assertEquals(List.of(1, 2, 5, 6, 7, 8), lines.stream().map(line -> line.get("line").asInt()).sorted().toList());
+        for (JsonNode line : lines) {
+            assertEquals("answer to " + line.get("question").asText(), line.get("answer").asText());
+            assertTrue(line.get("millis").asLong() >= 40);
+            assertTrue(line.has("waitMillis"));
+        }
+    }
+
+    @Test
+    void testResultsAreWrittenInCompletionOrder() throws Exception {
+        StringWriter results = new StringWriter();
+
+        BatchRun.run(question -> {
+            try {
+                Thread.sleep(question.equals("slow") ? 300 : 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return question;
+        }, new BufferedReader(new StringReader("slow\nfast\n")), results, 2);
+
+        assertEquals(List.of("fast", "slow"), lines(results).stream().map(line -> line.get("question").asText()).toList());
+    }
+
+    @Test
+    void testFailedQuestionIsReportedAndTheRunGoesOn() throws Exception {
+        StringWriter results = new StringWriter();
+
+        BatchRun.Summary summary = BatchRun.run(question -> {
+            if (question.contains("\"")) {
+                throw new IllegalStateException("model unavailable");
+            }
+            return "ok";
+        }, new BufferedReader(new StringReader("What is \"PUMP-001\"?\nWhat is VALVE-001?\n")), results, 1);
+
+        assertEquals(new BatchRun.Summary(1, 1), summary);
+        List<JsonNode> lines = lines(results);
+        assertEquals("What is \"PUMP-001\"?", lines.get(0).get("question").asText());
+        assertEquals("model unavailable", lines.get(0).get("error").asText());
+        assertFalse(lines.get(0).has("answer"));
+        assertEquals("ok", lines.get(1).get("answer").asText());
+    }
+}
@@ -0,0 +1,21 @@
+package ca.bazlur;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrainingRunTest {
+
+    @Test
+    void testScriptedSessionRunsAgainstTheStub() throws Exception {
+        Properties overrides = new Properties();
+        overrides.setProperty("ai.provider", "OLLAMA");
+        overrides.setProperty("embedding.provider", "");
+        overrides.setProperty("ollama.log.requests", "false");
+        overrides.setProperty("ollama.log.responses", "false");
+
+        assertEquals(4, TrainingRun.run(overrides));
+    }
+}
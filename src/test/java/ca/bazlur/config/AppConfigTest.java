@@ -2,6 +2,8 @@ package ca.bazlur.config;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -19,17 +21,50 @@ class AppConfigTest {
 
         // Verify default values
         assertEquals(AIProvider.OPENAI, config.getAIProvider());
+        assertNull(config.getFallbackProvider());
+        assertEquals(5_000, config.getHedgeDelayMillis());
         assertEquals("gpt-3.5-turbo", config.getChatModelName());
+        assertNull(config.getSmallChatModelName());
+        assertEquals(20, config.getRouterSimpleMaxWords());
+        assertEquals(0.75, config.getRouterSimpleMinScore());
+        assertTrue(config.isWarmupEnabled());
+        assertEquals(240, config.getWarmupKeepAliveSeconds());
         assertEquals("text-embedding-3-small", config.getEmbeddingModelName());
         assertEquals("demo", config.getApiKey());
         assertNull(config.getBaseUrl()); // OpenAI doesn't use baseUrl
         assertEquals(3, config.getMaxResults());
         assertEquals(0.6, config.getMinScore());
+        assertEquals(3, config.getMaxSubQueries());
+        assertEquals(20, config.getSessionCandidates());
+        assertEquals(0.7, config.getSessionMinSimilarity());
         assertEquals(10, config.getChatMemoryMessages());
+        assertEquals(2000, config.getChatMemoryMaxTokens());
         assertEquals(300, config.getChunkSize());
         assertEquals(30, config.getChunkOverlap());
+        assertEquals(0.9, config.getDedupSimilarity());
+        assertEquals(65_536, config.getIngestWindowChars());
+        assertEquals(1_048_576, config.getIngestBatchChars());
+        assertEquals(8, config.getIngestMaxConcurrency());
+        assertEquals(32_768, config.getIngestMaxBatchTokens());
+        assertEquals(10, config.getIngestMaxRetries());
+        assertNull(config.getIngestCheckpointPath());
         assertFalse(config.isLogRequests());
         assertFalse(config.isLogResponses());
+        assertEquals("knowledge-index.bin", config.getIndexPath());
+        assertEquals(0, config.getSearchParallelism());
+        assertEquals(10_000, config.getSearchParallelThreshold());
+        assertEquals(16 * 1024, config.getSegmentBlockBytes());
+        assertEquals(256, config.getSegmentCacheBlocks());
+        assertTrue(config.getShardUrls().isEmpty());
+        assertEquals(500, config.getShardTimeoutMillis());
+        assertNull(config.getStoreDir());
+        assertEquals(300, config.getStoreSnapshotIntervalSeconds());
+        assertEquals(64L << 20, config.getStoreSnapshotLogBytes());
+        assertEquals(0.2, config.getStoreCompactionRatio());
+        assertNull(config.getKnowledgeBaseDir());
+        assertEquals(1L << 30, config.getKnowledgeBaseMemoryBytes());
+        assertEquals(8, config.getBatchConcurrency());
+        assertEquals(64, config.getBatchEmbeddingSize());
     }
 
     @Test
@@ -71,6 +106,7 @@ class AppConfigTest {
         Properties properties = new Properties();
         properties.setProperty("ai.provider", "OLLAMA");
         properties.setProperty("ollama.chat.model", "llama2");
+        properties.setProperty("ollama.chat.model.small", "llama3.2:1b");
         properties.setProperty("ollama.embedding.model", "nomic-embed-text");
         properties.setProperty("ollama.base.url", "http://localhost:12345");
         properties.setProperty("retriever.max.results", "5");
@@ -86,6 +122,7 @@ class AppConfigTest {
         // Verify custom values
         assertEquals(AIProvider.OLLAMA, config.getAIProvider());
         assertEquals("llama2", config.getChatModelName());
+        assertEquals("llama3.2:1b", config.getSmallChatModelName());
         assertEquals("nomic-embed-text", config.getEmbeddingModelName());
         assertNull(config.getApiKey()); // Ollama doesn't use apiKey
         assertEquals("http://localhost:12345", config.getBaseUrl());
@@ -98,6 +135,52 @@ class AppConfigTest {
         assertTrue(config.isLogResponses());
     }
 
+    @Test
+    void testShardUrls() {
+        Properties properties = new Properties();
+        properties.setProperty("retriever.shards", "http://node-1:8081, http://node-2:8081,");
+        properties.setProperty("retriever.shard.timeout.ms", "250");
+
+        AppConfig config = new AppConfig(properties);
+
+        assertEquals(List.of("http://node-1:8081", "http://node-2:8081"), config.getShardUrls());
+        assertEquals(250, config.getShardTimeoutMillis());
+    }
+
+    @Test
+    void testLocalEmbeddingProvider() {
+        Properties properties = new Properties();
+        properties.setProperty("ai.provider", "OLLAMA");
+        properties.setProperty("embedding.provider", "local");
+        properties.setProperty("local.embedding.threads", "2");
+
+        AppConfig config = new AppConfig(properties);
+
+        assertEquals(AIProvider.OLLAMA, config.getAIProvider());
+        assertEquals(AIProvider.LOCAL, config.getEmbeddingProvider());
+        assertEquals("all-minilm-l6-v2-q", config.getEmbeddingModelName());
+        assertNull(config.getLocalEmbeddingModelPath());
+        assertEquals(2, config.getLocalEmbeddingThreads());
+
+        properties.setProperty("local.embedding.model.path", "/models/e5.onnx");
+        assertEquals("/models/e5.onnx", config.getEmbeddingModelName());
+    }
+
+    @Test
+    void testEmbeddingProviderDefaultsToAIProvider() {
+        Properties properties = new Properties();
+        properties.setProperty("ai.provider", "OLLAMA");
+
+        AppConfig config = new AppConfig(properties);
+        assertEquals(AIProvider.OLLAMA, config.getEmbeddingProvider());
+
+        // Remote embeddings share the AI provider's credentials, and LOCAL cannot chat.
+        properties.setProperty("embedding.provider", "OPENAI");
+        assertEquals(AIProvider.OLLAMA, config.getEmbeddingProvider());
+        properties.setProperty("ai.provider", "LOCAL");
+        assertEquals(AIProvider.OPENAI, config.getAIProvider());
+    }
+
     @Test
     void testInvalidNumericValues() {
         // Create properties with invalid numeric values
@@ -126,6 +209,18 @@ class AppConfigTest {
         assertTrue(config instanceof AppConfig);
     }
 
+    @Test
+    void testFactoryMethodWithOverrides() {
+        // Overrides take precedence over application.properties
+        Properties overrides = new Properties();
+        overrides.setProperty("ai.provider", "OPENAI");
+        overrides.setProperty("openai.base.url", "http://localhost:8080/v1");
+
+        ConfigProvider config = AppConfig.create(overrides);
+        assertEquals(AIProvider.OPENAI, config.getAIProvider());
+        assertEquals("http://localhost:8080/v1", config.getBaseUrl());
+    }
+
     @Test
     void testSingleton() {
         // Verify that getInstance returns the same instance
@@ -133,4 +228,57 @@ class AppConfigTest {
         AppConfig instance2 = AppConfig.getInstance();
         assertSame(instance1, instance2);
     }
+
+    @Test
+    void testFallbackProvider() {
+        Properties properties = new Properties();
+        properties.setProperty("ai.provider", "OPENAI");
+        properties.setProperty("openai.chat.model", "gpt-4");
+        properties.setProperty("ai.fallback.provider", "ollama");
+        properties.setProperty("ollama.chat.model", "llama3");
+        properties.setProperty("ollama.base.url", "http://ollama:11434");
+        AppConfig config = new AppConfig(properties);
+
+        assertEquals(AIProvider.OLLAMA, config.getFallbackProvider());
+        ConfigProvider fallback = config.forProvider(config.getFallbackProvider());
+        assertEquals(AIProvider.OLLAMA, fallback.getAIProvider());
+        assertEquals("llama3", fallback.getChatModelName());
+        assertEquals("http://ollama:11434", fallback.getBaseUrl());
+        assertEquals("gpt-4", config.getChatModelName());
+
+        properties.setProperty("ai.fallback.provider", "OPENAI");
+        assertNull(config.getFallbackProvider());
+        properties.setProperty("ai.fallback.provider", "LOCAL");
+        assertNull(config.getFallbackProvider());
+    }
+
+    @Test
+    void testIngestCheckpointDefaultsToTheStoreDirectory() {
+        Properties properties = new Properties();
+        properties.setProperty("store.dir", "data");
+        AppConfig config = new AppConfig(properties);
+
+        assertEquals(Path.of("data", "ingest-checkpoint.bin").toString(), config.getIngestCheckpointPath());
+        properties.setProperty("ingest.checkpoint.path", "");
+        assertNull(config.getIngestCheckpointPath());
+        properties.setProperty("ingest.checkpoint.path", "runs/checkpoint.bin");
+        assertEquals("runs/checkpoint.bin", config.getIngestCheckpointPath());
+    }
+
+    @Test
+    void testForKnowledgeBaseKeepsItsFilesInItsDirectory() {
+        Properties properties = new Properties();
+        properties.setProperty("kb.dir", "plants");
+        properties.setProperty("index.path", "indexes/knowledge-index.bin");
+        properties.setProperty("store.dir", "data");
+        AppConfig config = new AppConfig(properties);
+
+        ConfigProvider plant = config.forKnowledgeBase(Path.of("plants", "north"));
+
+        assertEquals(Path.of("plants", "north", "knowledge-index.bin").toString(), plant.getIndexPath());
+        assertEquals(Path.of("plants", "north", "store").toString(), plant.getStoreDir());
+        assertEquals(Path.of("plants", "north", "ingest-checkpoint.bin").toString(), plant.getIngestCheckpointPath());
+        assertNull(plant.getKnowledgeBaseDir());
+        assertEquals("indexes/knowledge-index.bin", config.getIndexPath());
+    }
 }
@@ -0,0 +1,72 @@
+package ca.bazlur.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    @Test
+    void testHistogramPercentilesAreWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getPercentileNanos(50) / 1e6, 5);
+        assertEquals(990, histogram.getPercentileNanos(99) / 1e6, 10);
+        assertEquals(1000, histogram.getPercentileNanos(99.9) / 1e6, 10);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.getMaxNanos());
+        assertEquals(500.5, histogram.getMeanNanos() / 1e6, 0.001);
+        assertEquals(0, new LatencyHistogram().getPercentileNanos(99));
+    }
+
+    @Test
+    void testClosedLoopRunsConcurrentUsersAndCountsFailures() throws Exception {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AtomicInteger calls = new AtomicInteger();
+        LoadGenerator.Target target = (prompt, firstToken) -> {
+            threads.add(Thread.currentThread().toString());
+            Thread.sleep(5);
+            firstToken.run();
+            Thread.sleep(5);
+            if (calls.incrementAndGet() % 10 == 0) {
+                throw new IllegalStateException("backend down");
+            }
+        };
+        LoadGenerator generator = new LoadGenerator(target, List.of("a", "b"),
+                new LoadGenerator.Settings(4, 0, Duration.ZERO, Duration.ofMillis(500), Duration.ZERO));
+
+        LoadReport report = generator.run();
+
+        assertTrue(threads.size() >= 4, "expected 4 virtual users, saw " + threads.size());
+        assertEquals(calls.get(), report.successes() + report.getErrorCount());
+        assertEquals(calls.get() / 10, report.errors().get("IllegalStateException"));
+        assertEquals(report.successes(), report.timeToFirstToken().getCount());
+        assertTrue(report.latency().getPercentileNanos(50) >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(report.timeToFirstToken().getPercentileNanos(50) < report.latency().getPercentileNanos(50));
+        assertTrue(report.getThroughput() > 100, "throughput " + report.getThroughput());
+    }
+
+    @Test
+    void testOpenLoopMeasuresFromTheScheduledStart() throws Exception {
+        // One request at a time at 100/s against a 50 ms target: requests queue up, and latency must show it.
+        LoadGenerator generator = new LoadGenerator((prompt, firstToken) -> Thread.sleep(50), List.of("a"),
+                new LoadGenerator.Settings(1, 100, Duration.ZERO, Duration.ofMillis(300), Duration.ZERO));
+
+        LoadReport report = generator.run();
+
+        assertTrue(report.latency().getMaxNanos() > TimeUnit.MILLISECONDS.toNanos(200),
+                "max latency " + report.latency().getMaxNanos() / 1e6 + " ms");
+        assertEquals(0, report.timeToFirstToken().getCount());
+        assertTrue(report.format().contains("n/a (target does not stream)"));
+    }
+}
@@ -0,0 +1,135 @@
+package ca.bazlur.loadtest;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StubModelServerTest {
+
+    private StubModelServer server;
+
+    private StubModelServer start(double errorRate) throws IOException {
+        server = new StubModelServer(new StubModelServer.Behavior(
+                LatencyDistribution.fixed(Duration.ZERO), LatencyDistribution.fixed(Duration.ZERO),
+                0, 5, errorRate, 0, 16), 0);
+        server.start();
+        return server;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testOllamaClientsTalkToTheStub() throws Exception {
+        start(0);
+        ChatLanguageModel chat = OllamaChatModel.builder().baseUrl(server.getOllamaBaseUrl()).modelName("llama3").build();
+        EmbeddingModel embeddings = OllamaEmbeddingModel.builder().baseUrl(server.getOllamaBaseUrl()).modelName("llama3").build();
+
+        assertEquals(5, chat.chat("What is the status of PUMP-001?").split(" ").length);
+        List<Embedding> vectors = embeddings.embedAll(List.of(TextSegment.from("a"), TextSegment.from("b"))).content();
+        assertEquals(2, vectors.size());
+        assertEquals(16, vectors.get(0).dimension());
+        assertStreams(OllamaStreamingChatModel.builder().baseUrl(server.getOllamaBaseUrl()).modelName("llama3").build());
+    }
+
+    @Test
+    void testOpenAiClientsTalkToTheStub() throws Exception {
+        start(0);
+        ChatLanguageModel chat = OpenAiChatModel.builder()
+                .baseUrl(server.getOpenAiBaseUrl()).apiKey("stub").modelName("gpt-4.1").build();
+        EmbeddingModel embeddings = OpenAiEmbeddingModel.builder()
+                .baseUrl(server.getOpenAiBaseUrl()).apiKey("stub").modelName("text-embedding-3-small").build();
+
+        assertEquals(5, chat.chat("What is the status of PUMP-001?").split(" ").length);
+        assertEquals(16, embeddings.embed("PUMP-001").content().dimension());
+        assertStreams(OpenAiStreamingChatModel.builder()
+                .baseUrl(server.getOpenAiBaseUrl()).apiKey("stub").modelName("gpt-4.1").build());
+    }
+
+    private static void assertStreams(StreamingChatLanguageModel model) throws Exception {
+        AtomicInteger partials = new AtomicInteger();
+        CompletableFuture<ChatResponse> response = new CompletableFuture<>();
+        model.chat("Which components are connected to VALVE-001?", new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                // Ollama closes the stream with an empty message.
+                if (!partialResponse.isEmpty()) {
+                    partials.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                response.complete(completeResponse);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                response.completeExceptionally(error);
+            }
+        });
+
+        assertEquals(5, response.get(10, TimeUnit.SECONDS).aiMessage().text().split(" ").length);
+        assertEquals(5, partials.get());
+    }
+
+    @Test
+    void testInjectedErrorsFailRequests() throws Exception {
+        start(1);
+        ChatLanguageModel chat = OllamaChatModel.builder()
+                .baseUrl(server.getOllamaBaseUrl()).modelName("llama3").maxRetries(0).build();
+
+        assertThrows(RuntimeException.class, () -> chat.chat("hello"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void testEmbeddingsOfSimilarTextsAreSimilar() {
+        float[] pump = StubModelServer.embedding("status of PUMP-001 in sector A", 384);
+        float[] pumpAgain = StubModelServer.embedding("PUMP-001 status", 384);
+        float[] tank = StubModelServer.embedding("oxygen levels inside TANK-A", 384);
+
+        double related = CosineSimilarity.between(Embedding.from(pump), Embedding.from(pumpAgain));
+        double unrelated = CosineSimilarity.between(Embedding.from(pump), Embedding.from(tank));
+        assertTrue(related > unrelated, related + " <= " + unrelated);
+    }
+
+    @Test
+    void testLatencyDistributionMatchesItsPercentiles() {
+        LatencyDistribution distribution = new LatencyDistribution(Duration.ofMillis(100), Duration.ofMillis(400));
+        java.util.Random random = new java.util.Random(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(distribution.sample(random).toNanos());
+        }
+
+        assertEquals(100, histogram.getPercentileNanos(50) / 1e6, 3);
+        assertEquals(400, histogram.getPercentileNanos(99) / 1e6, 20);
+    }
+}
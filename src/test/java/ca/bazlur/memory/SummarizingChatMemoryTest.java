@@ -0,0 +1,183 @@
+package ca.bazlur.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class SummarizingChatMemoryTest {
+
+    /** Counts one token per word. */
+    private static final Tokenizer WORDS = new Tokenizer() {
+        @Override
+        public int estimateTokenCountInText(String text) {
+            return text.isBlank() ? 0 : text.trim().split("\\s+").length;
+        }
+
+        @Override
+        public int estimateTokenCountInMessage(ChatMessage message) {
+            if (message instanceof SystemMessage system) {
+                return estimateTokenCountInText(system.text());
+            } else if (message instanceof UserMessage user) {
+                return estimateTokenCountInText(user.singleText());
+            }
+            return estimateTokenCountInText(((AiMessage) message).text());
+        }
+
+        @Override
+        public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+            int count = 0;
+            for (ChatMessage message : messages) {
+                count += estimateTokenCountInMessage(message);
+            }
+            return count;
+        }
+    };
+
+    /** Runs tasks only when asked to, so tests control when a summary arrives. */
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static ChatLanguageModel summarizer(String summary) {
+        ChatLanguageModel model = mock(ChatLanguageModel.class);
+        when(model.chat(anyList())).thenReturn(ChatResponse.builder().aiMessage(AiMessage.from(summary)).build());
+        return model;
+    }
+
+    private static void addTurn(SummarizingChatMemory memory, String question, String answer) {
+        memory.add(UserMessage.from(question));
+        memory.add(AiMessage.from(answer));
+    }
+
+    @Test
+    void testTurnsWithinBudgetAreKeptVerbatim() {
+        ManualExecutor executor = new ManualExecutor();
+        SummarizingChatMemory memory = new SummarizingChatMemory("id", 100, 10, WORDS, summarizer("unused"), executor);
+
+        memory.add(SystemMessage.from("be brief"));
+        addTurn(memory, "status of PUMP-001", "running");
+
+        assertEquals(3, memory.messages().size());
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    void testOldTurnsAreSummarizedInTheBackground() {
+        ManualExecutor executor = new ManualExecutor();
+        ChatLanguageModel summarizer = summarizer("PUMP-001 overheats");
+        SummarizingChatMemory memory = new SummarizingChatMemory("id", 12, 10, WORDS, summarizer, executor);
+
+        memory.add(SystemMessage.from("be brief"));
+        addTurn(memory, "why is PUMP-001 hot", "bearing wear and low lubrication");
+        addTurn(memory, "what next", "check lubrication levels");
+
+        // The evicted turn stays in the prompt until its summary is ready.
+        assertEquals(5, memory.messages().size());
+        verifyNoInteractions(summarizer);
+
+        executor.runAll();
+
+        // The system message stays unchanged, so the cached prompt prefix stays valid.
+        List<ChatMessage> messages = memory.messages();
+        assertEquals(4, messages.size());
+        assertEquals("be brief", ((SystemMessage) messages.get(0)).text());
+        assertEquals("Summary of the earlier conversation:\nPUMP-001 overheats",
+                ((SystemMessage) messages.get(1)).text());
+        assertEquals("what next", ((UserMessage) messages.get(2)).singleText());
+        assertEquals("PUMP-001 overheats", memory.getSummary());
+    }
+
+    @Test
+    void testMessageLimitAlsoTriggersSummarization() {
+        ManualExecutor executor = new ManualExecutor();
+        SummarizingChatMemory memory = new SummarizingChatMemory("id", 1_000, 2, WORDS, summarizer("earlier"), executor);
+
+        addTurn(memory, "one", "1");
+        addTurn(memory, "two", "2");
+        executor.runAll();
+
+        assertEquals(List.of("Summary of the earlier conversation:\nearlier", "two", "2"),
+                memory.messages().stream().map(SummarizingChatMemoryTest::text).toList());
+    }
+
+    @Test
+    void testFailedSummaryKeepsTurnsVerbatim() {
+        ManualExecutor executor = new ManualExecutor();
+        ChatLanguageModel summarizer = mock(ChatLanguageModel.class);
+        when(summarizer.chat(anyList())).thenThrow(new RuntimeException("model down"));
+        SummarizingChatMemory memory = new SummarizingChatMemory("id", 1_000, 2, WORDS, summarizer, executor);
+
+        addTurn(memory, "one", "1");
+        addTurn(memory, "two", "2");
+        executor.runAll();
+
+        assertEquals(4, memory.messages().size());
+        assertNull(memory.getSummary());
+    }
+
+    @Test
+    void testFailingSummarizerKeepsThePromptWithinBudget() {
+        ChatLanguageModel summarizer = mock(ChatLanguageModel.class);
+        when(summarizer.chat(anyList())).thenThrow(new RuntimeException("model down"));
+        SummarizingChatMemory memory = new SummarizingChatMemory("id", 12, 10, WORDS, summarizer, Runnable::run);
+
+        memory.add(SystemMessage.from("be brief"));
+        for (int i = 0; i < 20; i++) {
+            addTurn(memory, "status of PUMP-00" + i, "running fine");
+            assertTrue(WORDS.estimateTokenCountInMessages(memory.messages()) <= 12);
+        }
+
+        List<String> texts = memory.messages().stream().map(SummarizingChatMemoryTest::text).toList();
+        assertEquals("status of PUMP-0019", texts.get(texts.size() - 2));
+        assertNull(memory.getSummary());
+        // Retries back off instead of following every turn.
+        verify(summarizer, times(1)).chat(anyList());
+    }
+
+    @Test
+    void testClearDiscardsSummaryInFlight() {
+        ManualExecutor executor = new ManualExecutor();
+        SummarizingChatMemory memory = new SummarizingChatMemory("id", 1_000, 2, WORDS, summarizer("stale"), executor);
+
+        addTurn(memory, "one", "1");
+        addTurn(memory, "two", "2");
+        memory.clear();
+        executor.runAll();
+
+        assertTrue(memory.messages().isEmpty());
+        assertNull(memory.getSummary());
+    }
+
+    private static String text(ChatMessage message) {
+        if (message instanceof SystemMessage system) {
+            return system.text();
+        } else if (message instanceof UserMessage user) {
+            return user.singleText();
+        }
+        return ((AiMessage) message).text();
+    }
+}
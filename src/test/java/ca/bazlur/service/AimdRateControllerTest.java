@@ -0,0 +1,80 @@
+package ca.bazlur.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AimdRateControllerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private AimdRateController controller() {
+        return new AimdRateController(8, 100, 1600, Duration.ofSeconds(1), clock::get);
+    }
+
+    @Test
+    void testSuccessIncreasesAdditivelyAndRateLimitHalves() throws InterruptedException {
+        AimdRateController controller = controller();
+        assertEquals(2, controller.getConcurrency());
+        assertEquals(400, controller.getBatchTokens());
+
+        for (int i = 0; i < 20; i++) {
+            controller.acquire(10);
+            controller.onSuccess();
+        }
+        int concurrency = controller.getConcurrency();
+        int batchTokens = controller.getBatchTokens();
+        assertTrue(concurrency > 2 && concurrency < 8, "concurrency " + concurrency);
+        assertTrue(batchTokens > 400, "batch tokens " + batchTokens);
+
+        controller.acquire(10);
+        controller.onRateLimited();
+        assertEquals(Math.max(1, concurrency / 2), controller.getConcurrency(), 1);
+        assertTrue(controller.getBatchTokens() <= batchTokens / 2 + 1);
+    }
+
+    @Test
+    void testRateLimitsDuringAPauseHalveOnlyOnce() throws InterruptedException {
+        AimdRateController controller = controller();
+        controller.acquire(10);
+        controller.acquire(10);
+
+        controller.onRateLimited();
+        controller.onRateLimited();
+
+        assertEquals(1, controller.getConcurrency());
+        assertEquals(200, controller.getBatchTokens());
+        assertEquals(Duration.ofSeconds(1).toNanos(), controller.delayNanos(10));
+
+        clock.set(Duration.ofSeconds(1).toNanos());
+        assertEquals(0, controller.delayNanos(10));
+        controller.acquire(10);
+        controller.onRateLimited();
+        assertEquals(Duration.ofSeconds(2).toNanos(), controller.delayNanos(10), "backoff doubles");
+    }
+
+    @Test
+    void testRequestsWaitForTheReportedTokenBudget() {
+        AimdRateController controller = controller();
+        controller.updateLimits(100L, Duration.ofSeconds(10), 50L, Duration.ofSeconds(3));
+
+        assertEquals(0, controller.delayNanos(50));
+        assertEquals(Duration.ofSeconds(3).toNanos(), controller.delayNanos(51));
+
+        clock.set(Duration.ofSeconds(3).toNanos());
+        assertEquals(0, controller.delayNanos(51));
+    }
+
+    @Test
+    void testResetHeadersAreParsed() {
+        assertEquals(Duration.ofMinutes(6), RateLimitTrackingHttpClient.parseDuration("6m0s"));
+        assertEquals(Duration.ofMillis(120), RateLimitTrackingHttpClient.parseDuration("120ms"));
+        assertEquals(Duration.ofMillis(1500), RateLimitTrackingHttpClient.parseDuration("1.5s"));
+        assertEquals(Duration.ofSeconds(3723), RateLimitTrackingHttpClient.parseDuration("1h2m3s"));
+        assertNull(RateLimitTrackingHttpClient.parseDuration("soon"));
+        assertNull(RateLimitTrackingHttpClient.parseDuration(null));
+    }
+}
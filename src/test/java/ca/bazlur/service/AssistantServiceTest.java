@@ -2,13 +2,21 @@ package ca.bazlur.service;
 
 import ca.bazlur.config.ConfigProvider;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -56,4 +64,55 @@ class AssistantServiceTest {
 
         verify(mockAssistant).chat("test message");
     }
+
+    @Test
+    void testRegistryMessagesKeepTheConversationOfTheirKnowledgeBase(@TempDir Path directory) throws Exception {
+        Files.createDirectory(directory.resolve("north"));
+        Files.createDirectory(directory.resolve("south"));
+        KnowledgeBaseRegistry registry = new KnowledgeBaseRegistry(directory, 150,
+                knowledgeBase -> new KnowledgeBaseRegistry.Loaded(new InMemoryEmbeddingStore<>(), 100));
+        AssistantService service = new AssistantService(configProvider, registry) {
+            @Override
+            protected void initialize() {
+            }
+        };
+
+        AssistantService.KnowledgeBaseAssistant mockAssistant = mock(AssistantService.KnowledgeBaseAssistant.class);
+        when(mockAssistant.chat(anyString(), anyString())).thenReturn("test response");
+        Field assistantField = AssistantService.class.getDeclaredField("knowledgeBaseAssistant");
+        assistantField.setAccessible(true);
+        assistantField.set(service, mockAssistant);
+
+        assertEquals("test response", service.processMessage("north", "test message", null));
+        assertEquals("test response", service.processMessage("south", "test message", null));
+        assertThrows(IllegalArgumentException.class, () -> service.processMessage("west", "test message", null));
+
+        verify(mockAssistant).chat("north", "test message");
+        verify(mockAssistant).chat("south", "test message");
+        verifyNoMoreInteractions(mockAssistant);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRetrieversOfUnloadedKnowledgeBasesAreDropped(@TempDir Path directory) throws Exception {
+        Files.createDirectory(directory.resolve("north"));
+        Files.createDirectory(directory.resolve("south"));
+        KnowledgeBaseRegistry registry = new KnowledgeBaseRegistry(directory, 150,
+                knowledgeBase -> new KnowledgeBaseRegistry.Loaded(new InMemoryEmbeddingStore<>(), 100));
+        AssistantService service = new AssistantService(configProvider, registry) {
+            @Override
+            protected void initialize() {
+            }
+        };
+        Field retrieversField = AssistantService.class.getDeclaredField("retrievers");
+        retrieversField.setAccessible(true);
+        Map<String, ContentRetriever> retrievers = (Map<String, ContentRetriever>) retrieversField.get(service);
+
+        registry.get("north");
+        retrievers.put("north", query -> List.of());
+        registry.get("south");
+        retrievers.put("south", query -> List.of());
+
+        assertEquals(Set.of("south"), retrievers.keySet());
+    }
 }
\ No newline at end of file
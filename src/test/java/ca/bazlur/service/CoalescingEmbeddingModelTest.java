@@ -0,0 +1,92 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingEmbeddingModelTest {
+
+    /** Embeds a text as its length and records the size of each call. */
+    private static final class RecordingModel implements EmbeddingModel {
+        final List<Integer> calls = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch firstCallStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            calls.add(segments.size());
+            firstCallStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (segments.stream().anyMatch(segment -> segment.text().equals("fail"))) {
+                throw new IllegalStateException("provider down");
+            }
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{segment.text().length()}))
+                    .toList());
+        }
+    }
+
+    @Test
+    void testConcurrentRequestsAreJoinedIntoBatches() throws Exception {
+        RecordingModel delegate = new RecordingModel();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, 4);
+
+        List<Future<Embedding>> embeddings = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            embeddings.add(executor.submit(() -> model.embed("x").content()));
+            delegate.firstCallStarted.await();
+            for (int i = 1; i <= 6; i++) {
+                String text = "x".repeat(i + 1);
+                embeddings.add(executor.submit(() -> model.embed(text).content()));
+            }
+            Thread.sleep(200);
+            delegate.release.countDown();
+        }
+
+        assertEquals(List.of(1, 4, 2), delegate.calls);
+        for (int i = 0; i < embeddings.size(); i++) {
+            assertEquals(i + 1, embeddings.get(i).get().vector()[0]);
+        }
+    }
+
+    @Test
+    void testEmbedAllKeepsTheOrderOfItsSegments() {
+        RecordingModel delegate = new RecordingModel();
+        delegate.release.countDown();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, 2);
+
+        List<Embedding> embeddings = model.embedAll(List.of(
+                TextSegment.from("a"), TextSegment.from("bbb"), TextSegment.from("cc"))).content();
+
+        assertEquals(List.of(1f, 3f, 2f), embeddings.stream().map(embedding -> embedding.vector()[0]).toList());
+        assertEquals(List.of(2, 1), delegate.calls);
+    }
+
+    @Test
+    void testFailureReachesTheCallersOfTheBatch() {
+        RecordingModel delegate = new RecordingModel();
+        delegate.release.countDown();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, 8);
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> model.embed("fail"));
+
+        assertEquals("provider down", error.getMessage());
+        assertEquals(1f, model.embed("a").content().vector()[0]);
+    }
+}
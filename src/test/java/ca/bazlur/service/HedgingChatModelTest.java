@@ -0,0 +1,132 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgingChatModelTest {
+
+    private static final ChatRequest REQUEST = ChatRequest.builder().messages(UserMessage.from("Status of PUMP-001?")).build();
+
+    /** Answers after a fixed latency, or fails, and records whether it was cancelled. */
+    private static final class FakeModel implements ChatLanguageModel {
+        final String answer;
+        final Duration latency;
+        final RuntimeException error;
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        FakeModel(String answer, Duration latency, RuntimeException error) {
+            this.answer = answer;
+            this.latency = latency;
+            this.error = error;
+        }
+
+        @Override
+        public ChatResponse chat(ChatRequest request) {
+            calls.incrementAndGet();
+            if (error != null) {
+                throw error;
+            }
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new IllegalStateException(e);
+            }
+            return ChatResponse.builder().aiMessage(AiMessage.from(answer)).build();
+        }
+    }
+
+    private static FakeModel answering(String answer, Duration latency) {
+        return new FakeModel(answer, latency, null);
+    }
+
+    private static FakeModel failing(String message) {
+        return new FakeModel(null, Duration.ZERO, new IllegalStateException(message));
+    }
+
+    private static HedgingChatModel hedging(FakeModel primary, FakeModel secondary, AtomicLong clock) {
+        return new HedgingChatModel(List.of(
+                new HedgingChatModel.Backend("primary", primary),
+                new HedgingChatModel.Backend("secondary", secondary)),
+                Duration.ofMillis(50), Duration.ofSeconds(30), clock::get);
+    }
+
+    @Test
+    void testFastPrimaryIsNotHedged() {
+        FakeModel primary = answering("primary", Duration.ZERO);
+        FakeModel secondary = answering("secondary", Duration.ZERO);
+        HedgingChatModel model = hedging(primary, secondary, new AtomicLong());
+
+        assertEquals("primary", model.chat(REQUEST).aiMessage().text());
+        assertEquals(0, secondary.calls.get());
+        assertEquals(0, model.getFailureRate("primary"));
+    }
+
+    @Test
+    void testSlowPrimaryIsHedgedAndCancelled() throws InterruptedException {
+        FakeModel primary = answering("primary", Duration.ofSeconds(30));
+        FakeModel secondary = answering("secondary", Duration.ZERO);
+        HedgingChatModel model = hedging(primary, secondary, new AtomicLong());
+
+        long start = System.nanoTime();
+        assertEquals("secondary", model.chat(REQUEST).aiMessage().text());
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(5)) < 0);
+        assertTrue(primary.interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(model.getFailureRate("primary") > 0);
+        assertEquals(0, model.getFailureRate("secondary"));
+    }
+
+    @Test
+    void testFailureFailsOverWithoutWaiting() {
+        FakeModel primary = failing("primary down");
+        FakeModel secondary = answering("secondary", Duration.ZERO);
+        HedgingChatModel model = new HedgingChatModel(List.of(
+                new HedgingChatModel.Backend("primary", primary),
+                new HedgingChatModel.Backend("secondary", secondary)), Duration.ofSeconds(30));
+
+        assertEquals("secondary", model.chat(REQUEST).aiMessage().text());
+    }
+
+    @Test
+    void testAllBackendsFailing() {
+        HedgingChatModel model = hedging(failing("primary down"), failing("secondary down"), new AtomicLong());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> model.chat(REQUEST));
+        assertEquals("primary down", e.getMessage());
+        assertEquals("secondary down", e.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    void testUnhealthyBackendIsAskedLastUntilItRecovers() {
+        AtomicLong clock = new AtomicLong();
+        FakeModel primary = answering("primary", Duration.ofSeconds(30));
+        FakeModel secondary = answering("secondary", Duration.ZERO);
+        HedgingChatModel model = hedging(primary, secondary, clock);
+
+        model.chat(REQUEST);
+        model.chat(REQUEST);
+        assertEquals(2, primary.calls.get());
+
+        assertEquals("secondary", model.chat(REQUEST).aiMessage().text());
+        assertEquals(2, primary.calls.get());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        model.chat(REQUEST);
+        assertEquals(3, primary.calls.get());
+    }
+}
@@ -0,0 +1,164 @@
+package ca.bazlur.service;
+
+import ca.bazlur.config.AppConfig;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KnowledgeBaseRegistryTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<String> loads = new ArrayList<>();
+
+    private KnowledgeBaseRegistry registry(long memoryBytes, String... names) throws Exception {
+        for (String name : names) {
+            Files.createDirectory(directory.resolve(name));
+        }
+        return new KnowledgeBaseRegistry(directory, memoryBytes, knowledgeBase -> {
+            synchronized (loads) {
+                loads.add(knowledgeBase.getFileName().toString());
+            }
+            return new KnowledgeBaseRegistry.Loaded(new InMemoryEmbeddingStore<>(), 100);
+        });
+    }
+
+    @Test
+    void testKnowledgeBasesAreLoadedOnFirstUse() throws Exception {
+        KnowledgeBaseRegistry registry = registry(1_000, "north", "south");
+
+        assertEquals(List.of("north", "south"), registry.names());
+        assertTrue(registry.loadedNames().isEmpty());
+        EmbeddingStore<TextSegment> north = registry.get("north");
+        assertSame(north, registry.get("north"));
+
+        assertEquals(List.of("north"), loads);
+        assertEquals(100, registry.getLoadedBytes());
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneLoad() throws Exception {
+        AtomicInteger loaderCalls = new AtomicInteger();
+        Files.createDirectory(directory.resolve("north"));
+        KnowledgeBaseRegistry registry = new KnowledgeBaseRegistry(directory, 1_000, knowledgeBase -> {
+            loaderCalls.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new KnowledgeBaseRegistry.Loaded(new InMemoryEmbeddingStore<>(), 100);
+        });
+
+        List<Future<EmbeddingStore<TextSegment>>> stores = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                stores.add(executor.submit(() -> registry.get("north")));
+            }
+        }
+
+        assertEquals(1, loaderCalls.get());
+        for (Future<EmbeddingStore<TextSegment>> store : stores) {
+            assertSame(stores.get(0).get(), store.get());
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedKnowledgeBasesAreUnloaded() throws Exception {
+        KnowledgeBaseRegistry registry = registry(250, "a", "b", "c");
+
+        registry.get("a");
+        registry.get("b");
+        registry.get("a");
+        registry.get("c");
+
+        assertEquals(List.of("a", "c"), registry.loadedNames());
+        assertEquals(200, registry.getLoadedBytes());
+
+        registry.get("b");
+        assertEquals(List.of("c", "b"), registry.loadedNames());
+        assertEquals(List.of("a", "b", "c", "b"), loads);
+    }
+
+    @Test
+    void testUnloadListenersAreToldAboutUnloadedKnowledgeBases() throws Exception {
+        KnowledgeBaseRegistry registry = registry(250, "a", "b", "c");
+        List<String> unloaded = new ArrayList<>();
+        registry.addUnloadListener(unloaded::add);
+
+        registry.get("a");
+        registry.get("b");
+        registry.get("c");
+        assertEquals(List.of("a"), unloaded);
+
+        registry.close();
+        assertEquals(List.of("a", "b", "c"), unloaded);
+    }
+
+    @Test
+    void testUnknownKnowledgeBaseIsRejected() throws Exception {
+        KnowledgeBaseRegistry registry = registry(1_000, "north");
+
+        assertThrows(IllegalArgumentException.class, () -> registry.get("west"));
+        assertThrows(IllegalArgumentException.class, () -> registry.get("../" + directory.getFileName()));
+        assertThrows(IllegalArgumentException.class, () -> registry.get("north/.."));
+        assertFalse(registry.contains("west"));
+        assertTrue(registry.contains("north"));
+        assertTrue(loads.isEmpty());
+    }
+
+    @Test
+    void testIndexIsBuiltOnceAndReused() throws Exception {
+        Path north = Files.createDirectory(directory.resolve("north"));
+        Files.writeString(north.resolve("components.txt"), """
+                Component ID: PUMP-001
+                Type: Centrifugal pump
+                Status: Running
+                """);
+        Properties properties = new Properties();
+        properties.setProperty("ai.provider", "OLLAMA");
+        properties.setProperty("embedding.provider", "LOCAL");
+        properties.setProperty("kb.dir", directory.toString());
+        properties.setProperty("store.dir", "");
+        properties.setProperty("ingest.checkpoint.path", "");
+
+        try (KnowledgeBaseRegistry registry = new KnowledgeBaseRegistry(AppConfig.create(properties))) {
+            assertEquals(1, search(registry.get("north")));
+        }
+        Path index = north.resolve("knowledge-index.bin");
+        assertTrue(Files.isRegularFile(index));
+        long modified = Files.getLastModifiedTime(index).toMillis();
+
+        try (KnowledgeBaseRegistry registry = new KnowledgeBaseRegistry(AppConfig.create(properties))) {
+            assertEquals(1, search(registry.get("north")));
+            assertEquals(Files.size(index), registry.getLoadedBytes());
+        }
+        assertEquals(modified, Files.getLastModifiedTime(index).toMillis());
+    }
+
+    private static int search(EmbeddingStore<TextSegment> store) {
+        float[] vector = new float[384];
+        vector[0] = 1;
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(vector))
+                .maxResults(10)
+                .build()).matches().size();
+    }
+}
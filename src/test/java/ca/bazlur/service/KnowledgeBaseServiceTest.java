@@ -2,7 +2,16 @@ package ca.bazlur.service;
 
 import ca.bazlur.config.AIProvider;
 import ca.bazlur.config.ConfigProvider;
+import ca.bazlur.store.DurableEmbeddingStore;
+import ca.bazlur.store.IndexArtifact;
+import ca.bazlur.store.IndexFingerprint;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
 import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
@@ -11,6 +20,7 @@ import dev.langchain4j.store.embedding.IngestionResult;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -18,12 +28,25 @@ import org.mockito.quality.Strictness;
 import org.mockito.junit.jupiter.MockitoSettings;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,10 +55,13 @@ class KnowledgeBaseServiceTest {
 
   @Mock private ConfigProvider configProvider;
 
+  private int ingestedBatches;
+
   @BeforeEach
   void setUp() {
     // Default to OpenAI provider for tests
     lenient().when(configProvider.getAIProvider()).thenReturn(AIProvider.OPENAI);
+    lenient().when(configProvider.getEmbeddingProvider()).thenReturn(AIProvider.OPENAI);
     lenient().when(configProvider.getApiKey()).thenReturn("test-api-key");
     lenient().when(configProvider.getBaseUrl()).thenReturn("http://localhost:11434");
     lenient().when(configProvider.getEmbeddingModelName()).thenReturn("test-embedding-model");
@@ -43,6 +69,12 @@ class KnowledgeBaseServiceTest {
     lenient().when(configProvider.isLogResponses()).thenReturn(false);
     lenient().when(configProvider.getChunkSize()).thenReturn(300);
     lenient().when(configProvider.getChunkOverlap()).thenReturn(30);
+    lenient().when(configProvider.getIngestWindowChars()).thenReturn(65_536);
+    lenient().when(configProvider.getDedupSimilarity()).thenReturn(0.9);
+    lenient().when(configProvider.getIngestBatchChars()).thenReturn(1_048_576);
+    lenient().when(configProvider.getIngestMaxConcurrency()).thenReturn(8);
+    lenient().when(configProvider.getIngestMaxBatchTokens()).thenReturn(32_768);
+    lenient().when(configProvider.getIngestMaxRetries()).thenReturn(10);
   }
 
   @Test
@@ -92,6 +124,7 @@ class KnowledgeBaseServiceTest {
 
       ingestorMock.when(() -> EmbeddingStoreIngestor.builder()).thenReturn(builder);
       when(builder.documentSplitter(any())).thenReturn(builder);
+      when(builder.textSegmentTransformer(any())).thenReturn(builder);
       when(builder.embeddingModel(any())).thenReturn(builder);
       when(builder.embeddingStore(any())).thenReturn(builder);
       when(builder.build()).thenReturn(ingestor);
@@ -103,10 +136,238 @@ class KnowledgeBaseServiceTest {
 
       ingestorMock.verify(() -> EmbeddingStoreIngestor.builder());
       verify(builder).documentSplitter(any());
+      verify(builder).textSegmentTransformer(any(SegmentDeduplicator.class));
       verify(builder).embeddingModel(any());
       verify(builder).embeddingStore(any());
       verify(builder).build();
       verify(ingestor).ingest(anyList());
     }
   }
+
+  @Test
+  void testLoadKnowledgeBaseIngestsInBatches() {
+    when(configProvider.getIngestWindowChars()).thenReturn(32);
+    when(configProvider.getIngestBatchChars()).thenReturn(64);
+    KnowledgeBaseService service =
+        new KnowledgeBaseService(configProvider, List.of("large.txt")) {
+          @Override
+          protected InputStream getResourceAsStream(String resourceName) {
+            return new ByteArrayInputStream("PUMP-001 is running.\n".repeat(10).getBytes());
+          }
+        };
+
+    try (MockedStatic<EmbeddingStoreIngestor> ingestorMock =
+        mockStatic(EmbeddingStoreIngestor.class)) {
+      EmbeddingStoreIngestor.Builder builder = mock(EmbeddingStoreIngestor.Builder.class, RETURNS_SELF);
+      EmbeddingStoreIngestor ingestor = mock(EmbeddingStoreIngestor.class);
+      ingestorMock.when(() -> EmbeddingStoreIngestor.builder()).thenReturn(builder);
+      when(builder.build()).thenReturn(ingestor);
+
+      service.loadKnowledgeBase();
+
+      // Ten 21-character lines, one per window, flushed once a batch reaches 64 characters.
+      verify(ingestor, times(2)).ingest(argThat((List<Document> batch) -> batch.size() == 4));
+      verify(ingestor).ingest(argThat((List<Document> batch) -> batch.size() == 2));
+    }
+  }
+
+  @Test
+  void testLoadKnowledgeBaseReingestsAnUnfinishedDurableStore(@TempDir Path storeDir)
+      throws Exception {
+    when(configProvider.getIngestWindowChars()).thenReturn(32);
+    when(configProvider.getIngestBatchChars()).thenReturn(64);
+    when(configProvider.getStoreDir()).thenReturn(storeDir.toString());
+    when(configProvider.getStoreSnapshotIntervalSeconds()).thenReturn(0L);
+    when(configProvider.getStoreSnapshotLogBytes()).thenReturn(Long.MAX_VALUE);
+    when(configProvider.getStoreCompactionRatio()).thenReturn(0.5);
+
+    // The embedding model fails on the second of three batches.
+    assertThrows(RuntimeException.class, () -> loadKnowledgeBase(2));
+
+    try (DurableEmbeddingStore store = loadKnowledgeBase(0)) {
+      assertEquals(10, store.size());
+      assertTrue(store.isComplete());
+    }
+    try (DurableEmbeddingStore store = loadKnowledgeBase(1)) {
+      assertEquals(10, store.size());
+      assertEquals(0, ingestedBatches);
+    }
+  }
+
+  @Test
+  void testLoadKnowledgeBaseResumesFromTheCheckpoint(@TempDir Path storeDir) throws Exception {
+    ObjectMapper json = new ObjectMapper();
+    List<String> embedded = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger successes = new AtomicInteger(3);
+    HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+    server.createContext(
+        "/embeddings",
+        exchange -> {
+          try (exchange) {
+            JsonNode request = json.readTree(exchange.getRequestBody());
+            if (successes.getAndDecrement() <= 0) {
+              exchange.sendResponseHeaders(500, -1);
+              return;
+            }
+            ObjectNode response = json.createObjectNode().put("object", "list").put("model", "test");
+            ArrayNode data = response.putArray("data");
+            for (JsonNode input : request.path("input")) {
+              embedded.add(input.asText());
+              data.addObject()
+                  .put("object", "embedding")
+                  .put("index", data.size() - 1)
+                  .putArray("embedding")
+                  .add(1f)
+                  .add(0f);
+            }
+            response.putObject("usage").put("prompt_tokens", 1).put("total_tokens", 1);
+            byte[] body = json.writeValueAsBytes(response);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+          }
+        });
+    server.start();
+    try {
+      when(configProvider.getBaseUrl()).thenReturn("http://localhost:" + server.getAddress().getPort());
+      when(configProvider.getIngestWindowChars()).thenReturn(32);
+      when(configProvider.getIngestBatchChars()).thenReturn(64);
+      when(configProvider.getIngestMaxConcurrency()).thenReturn(1);
+      when(configProvider.getIngestMaxBatchTokens()).thenReturn(8);
+      when(configProvider.getIngestMaxRetries()).thenReturn(0);
+      when(configProvider.getIngestCheckpointPath())
+          .thenReturn(storeDir.resolve("ingest-checkpoint.bin").toString());
+      when(configProvider.getStoreDir()).thenReturn(storeDir.toString());
+      when(configProvider.getStoreSnapshotIntervalSeconds()).thenReturn(0L);
+      when(configProvider.getStoreSnapshotLogBytes()).thenReturn(Long.MAX_VALUE);
+      when(configProvider.getStoreCompactionRatio()).thenReturn(0.5);
+      // Eight distinct 30-character lines, one segment per window and one per request.
+      String text =
+          IntStream.range(0, 8)
+              .mapToObj(i -> "Record %d alpha%d beta%d gamma%d.%n".formatted(i, i, i, i))
+              .collect(Collectors.joining());
+
+      assertThrows(RuntimeException.class, () -> knowledgeBaseService(text).loadKnowledgeBase());
+      assertEquals(3, embedded.size());
+
+      successes.set(Integer.MAX_VALUE);
+      try (DurableEmbeddingStore store =
+          (DurableEmbeddingStore) knowledgeBaseService(text).loadKnowledgeBase()) {
+        assertEquals(8, store.size());
+        assertTrue(store.isComplete());
+        assertEquals(8, embedded.size());
+        assertEquals(8, Set.copyOf(embedded).size());
+      }
+      assertFalse(Files.exists(storeDir.resolve("ingest-checkpoint.bin")));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private KnowledgeBaseService knowledgeBaseService(String text) {
+    return new KnowledgeBaseService(configProvider, List.of("records.txt")) {
+      @Override
+      protected InputStream getResourceAsStream(String resourceName) {
+        return new ByteArrayInputStream(text.getBytes());
+      }
+    };
+  }
+
+  /**
+   * Loads ten one-line windows in batches of four through an ingestor that embeds them into the
+   * store, failing on the given batch.
+   *
+   * @param failingBatch The batch the embedding model fails on, from 1, or 0 to embed them all
+   */
+  private DurableEmbeddingStore loadKnowledgeBase(int failingBatch) {
+    KnowledgeBaseService service =
+        new KnowledgeBaseService(configProvider, List.of("large.txt")) {
+          @Override
+          protected InputStream getResourceAsStream(String resourceName) {
+            return new ByteArrayInputStream("PUMP-001 is running.\n".repeat(10).getBytes());
+          }
+        };
+
+    try (MockedStatic<EmbeddingStoreIngestor> ingestorMock =
+        mockStatic(EmbeddingStoreIngestor.class)) {
+      EmbeddingStoreIngestor.Builder builder = mock(EmbeddingStoreIngestor.Builder.class, RETURNS_SELF);
+      EmbeddingStoreIngestor ingestor = mock(EmbeddingStoreIngestor.class);
+      AtomicReference<EmbeddingStore<TextSegment>> store = new AtomicReference<>();
+      AtomicInteger batches = new AtomicInteger();
+      ingestorMock.when(() -> EmbeddingStoreIngestor.builder()).thenReturn(builder);
+      when(builder.embeddingStore(any()))
+          .thenAnswer(invocation -> {
+            store.set(invocation.getArgument(0));
+            return builder;
+          });
+      when(builder.build()).thenReturn(ingestor);
+      when(ingestor.ingest(anyList()))
+          .thenAnswer(invocation -> {
+            if (batches.incrementAndGet() == failingBatch) {
+              throw new RuntimeException("Embedding request failed");
+            }
+            List<Document> batch = invocation.getArgument(0);
+            for (Document document : batch) {
+              store.get().add(Embedding.from(new float[] {1f, 0f}), document.toTextSegment());
+            }
+            return mock(IngestionResult.class);
+          });
+
+      EmbeddingStore<TextSegment> result = service.loadKnowledgeBase();
+      ingestedBatches = batches.get();
+      return assertInstanceOf(DurableEmbeddingStore.class, result);
+    }
+  }
+
+  @Test
+  void testLoadPrebuiltIndexWhenMissing() {
+    when(configProvider.getIndexPath()).thenReturn("missing-index.bin");
+    KnowledgeBaseService service = new KnowledgeBaseService(configProvider);
+
+    assertTrue(service.loadPrebuiltIndex().isEmpty());
+  }
+
+  @Test
+  void testLoadPrebuiltIndexWithMatchingFingerprint() throws Exception {
+    when(configProvider.getIndexPath()).thenReturn("test-index.bin");
+    byte[] index = writeIndex(IndexFingerprint.from(configProvider));
+    KnowledgeBaseService service =
+        new KnowledgeBaseService(configProvider) {
+          @Override
+          protected InputStream getResourceAsStream(String resourceName) {
+            return new ByteArrayInputStream(index);
+          }
+        };
+
+    Optional<EmbeddingStore<TextSegment>> store = service.loadPrebuiltIndex();
+
+    assertTrue(store.isPresent());
+  }
+
+  @Test
+  void testLoadPrebuiltIndexWithStaleFingerprint() throws Exception {
+    when(configProvider.getIndexPath()).thenReturn("test-index.bin");
+    byte[] index = writeIndex(new IndexFingerprint("OPENAI", "other-model", 300, 30, 0.9, 65_536));
+    KnowledgeBaseService service =
+        new KnowledgeBaseService(configProvider) {
+          @Override
+          protected InputStream getResourceAsStream(String resourceName) {
+            return new ByteArrayInputStream(index);
+          }
+        };
+
+    assertTrue(service.loadPrebuiltIndex().isEmpty());
+  }
+
+  private byte[] writeIndex(IndexFingerprint fingerprint) throws Exception {
+    IndexArtifact artifact =
+        new IndexArtifact(
+            fingerprint,
+            List.of(
+                new IndexArtifact.Entry(
+                    "id-1", Embedding.from(new float[] {1f, 0f}), TextSegment.from("PUMP-001"))));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    artifact.write(out);
+    return out.toByteArray();
+  }
 }
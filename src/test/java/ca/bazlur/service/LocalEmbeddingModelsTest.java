@@ -0,0 +1,47 @@
+package ca.bazlur.service;
+
+import ca.bazlur.config.ConfigProvider;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LocalEmbeddingModelsTest {
+
+    private static ConfigProvider localConfig() {
+        ConfigProvider config = mock(ConfigProvider.class);
+        when(config.getEmbeddingModelName()).thenReturn("all-minilm-l6-v2-q");
+        when(config.getLocalEmbeddingThreads()).thenReturn(2);
+        return config;
+    }
+
+    @Test
+    void testEmbedsInProcessAndSharesTheModel() {
+        EmbeddingModel model = LocalEmbeddingModels.get(localConfig());
+        assertSame(model, LocalEmbeddingModels.get(localConfig()));
+
+        List<Embedding> embeddings = model.embedAll(List.of(
+                TextSegment.from("High temperature on PUMP-001"),
+                TextSegment.from("PUMP-001 is overheating"),
+                TextSegment.from("Before entering TANK-B, test the atmosphere for oxygen"))).content();
+
+        assertEquals(3, embeddings.size());
+        assertEquals(384, embeddings.get(0).dimension());
+        assertTrue(CosineSimilarity.between(embeddings.get(0), embeddings.get(1))
+                > CosineSimilarity.between(embeddings.get(0), embeddings.get(2)));
+    }
+
+    @Test
+    void testCustomModelRequiresTokenizer() {
+        ConfigProvider config = localConfig();
+        when(config.getLocalEmbeddingModelPath()).thenReturn("/models/custom.onnx");
+
+        assertThrows(IllegalStateException.class, () -> LocalEmbeddingModels.get(config));
+    }
+}
@@ -0,0 +1,107 @@
+package ca.bazlur.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelWarmerTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /** A request received by the fake Ollama server. */
+    private record Received(String path, JsonNode body) {
+    }
+
+    private final List<Received> received = new CopyOnWriteArrayList<>();
+    private HttpServer ollama;
+    private String baseUrl;
+
+    @BeforeEach
+    void startOllama() throws IOException {
+        ollama = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ollama.createContext("/", exchange -> {
+            JsonNode body = JSON.readTree(exchange.getRequestBody());
+            received.add(new Received(exchange.getRequestURI().getPath(), body));
+            byte[] response = body.path("model").asText().equals("missing")
+                    ? "{\"error\":\"model not found\"}".getBytes(StandardCharsets.UTF_8)
+                    : "{\"done\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(body.path("model").asText().equals("missing") ? 404 : 200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        ollama.start();
+        baseUrl = "http://localhost:" + ollama.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopOllama() {
+        ollama.stop(0);
+    }
+
+    private ModelWarmer warmer(List<ModelWarmer.OllamaModel> models, Duration keepAliveInterval, AtomicLong clock) {
+        return new ModelWarmer(models, keepAliveInterval, HttpClient.newHttpClient(), clock::get);
+    }
+
+    @Test
+    void testWarmUpLoadsEveryModelWithoutGenerating() {
+        ModelWarmer warmer = warmer(List.of(
+                new ModelWarmer.OllamaModel(baseUrl, "llama3.2", false),
+                new ModelWarmer.OllamaModel(baseUrl + "/", "nomic-embed-text", true)), Duration.ofSeconds(240), new AtomicLong());
+
+        warmer.warmUp();
+
+        assertEquals(2, received.size());
+        assertEquals("/api/generate", received.get(0).path());
+        assertEquals("{\"model\":\"llama3.2\",\"keep_alive\":\"480s\"}", received.get(0).body().toString());
+        assertEquals("/api/embed", received.get(1).path());
+        assertEquals("{\"model\":\"nomic-embed-text\",\"input\":[],\"keep_alive\":\"480s\"}", received.get(1).body().toString());
+    }
+
+    @Test
+    void testFailingModelDoesNotStopTheWarmUp() {
+        ModelWarmer warmer = warmer(List.of(
+                new ModelWarmer.OllamaModel("http://localhost:1", "unreachable", false),
+                new ModelWarmer.OllamaModel(baseUrl, "missing", false),
+                new ModelWarmer.OllamaModel(baseUrl, "llama3.2", false)), Duration.ZERO, new AtomicLong());
+
+        warmer.warmUp();
+
+        assertEquals(List.of("missing", "llama3.2"), received.stream().map(r -> r.body().path("model").asText()).toList());
+        assertFalse(received.get(1).body().has("keep_alive"));
+    }
+
+    @Test
+    void testKeepAliveOnlyRunsWhenIdle() {
+        AtomicLong clock = new AtomicLong();
+        ModelWarmer warmer = warmer(List.of(new ModelWarmer.OllamaModel(baseUrl, "llama3.2", false)),
+                Duration.ofSeconds(240), clock);
+
+        clock.set(Duration.ofSeconds(200).toNanos());
+        warmer.keepAlive();
+        assertEquals(0, received.size());
+
+        clock.set(Duration.ofSeconds(250).toNanos());
+        warmer.touch();
+        clock.set(Duration.ofSeconds(400).toNanos());
+        warmer.keepAlive();
+        assertEquals(0, received.size());
+
+        clock.set(Duration.ofSeconds(500).toNanos());
+        warmer.keepAlive();
+        assertEquals(1, received.size());
+    }
+}
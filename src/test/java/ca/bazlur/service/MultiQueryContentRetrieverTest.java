@@ -0,0 +1,89 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiQueryContentRetrieverTest {
+
+    /** Embeds texts by the topics they mention, and counts its calls. */
+    private static final class TopicEmbeddingModel implements EmbeddingModel {
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            batchSizes.add(segments.size());
+            return Response.from(segments.stream().map(segment -> vector(segment.text())).toList());
+        }
+
+        private static Embedding vector(String text) {
+            String lower = text.toLowerCase();
+            return Embedding.from(new float[]{
+                    lower.contains("pressure") ? 1f : 0f,
+                    lower.contains("safety") ? 1f : 0f,
+                    0.1f});
+        }
+    }
+
+    private static InMemoryEmbeddingStore<TextSegment> store(TopicEmbeddingModel model) {
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        for (String text : List.of("Pressure readings of PIPE-002", "Safety procedure for pipes",
+                "Pressure and safety limits", "Unrelated component notes")) {
+            TextSegment segment = TextSegment.from(text);
+            segment.metadata().put("source", text.startsWith("Safety") ? "safety.txt" : "components.txt");
+            store.add(TopicEmbeddingModel.vector(text), segment);
+        }
+        return store;
+    }
+
+    @Test
+    void testSubQueriesAreEmbeddedInOneBatchAndFused() {
+        TopicEmbeddingModel model = new TopicEmbeddingModel();
+        MultiQueryContentRetriever retriever = new MultiQueryContentRetriever(store(model), model,
+                new QueryDecomposer(3), 3, 0.6, query -> null);
+
+        List<String> texts = retriever.retrieve(Query.from("why is PIPE-002 pressure low and what's the safety procedure?"))
+                .stream().map(Content::textSegment).map(TextSegment::text).toList();
+
+        assertEquals(List.of(2), model.batchSizes);
+        assertEquals(3, texts.size());
+        assertEquals("Pressure and safety limits", texts.get(0));
+        assertTrue(texts.containsAll(List.of("Pressure readings of PIPE-002", "Safety procedure for pipes")));
+    }
+
+    @Test
+    void testFilterAppliesToEverySubQuery() {
+        TopicEmbeddingModel model = new TopicEmbeddingModel();
+        MultiQueryContentRetriever retriever = new MultiQueryContentRetriever(store(model), model,
+                new QueryDecomposer(3), 3, 0.0, query -> metadataKey("source").isEqualTo("components.txt"));
+
+        List<Content> contents = retriever.retrieve(Query.from("what is the pressure? what is the safety procedure?"));
+
+        assertFalse(contents.isEmpty());
+        assertTrue(contents.stream().allMatch(c -> "components.txt".equals(c.textSegment().metadata().getString("source"))));
+    }
+
+    @Test
+    void testFusionRanksSharedMatchesFirst() {
+        EmbeddingMatch<TextSegment> a = new EmbeddingMatch<>(0.9, "a", null, TextSegment.from("a"));
+        EmbeddingMatch<TextSegment> b = new EmbeddingMatch<>(0.8, "b", null, TextSegment.from("b"));
+        EmbeddingMatch<TextSegment> c = new EmbeddingMatch<>(0.7, "c", null, TextSegment.from("c"));
+
+        List<EmbeddingMatch<TextSegment>> fused = MultiQueryContentRetriever.fuse(List.of(
+                List.of(a, b), List.of(c, b)), 2);
+
+        assertEquals(List.of("b", "a"), fused.stream().map(EmbeddingMatch::embeddingId).toList());
+    }
+}
@@ -0,0 +1,52 @@
+package ca.bazlur.service;
+
+import ca.bazlur.service.QueryComplexityClassifier.Complexity;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryComplexityClassifierTest {
+
+    private final QueryComplexityClassifier classifier = new QueryComplexityClassifier(20, 0.75);
+
+    private static List<Content> retrieved(String text, double score) {
+        return List.of(Content.from(TextSegment.from(text), Map.of(ContentMetadata.SCORE, score)));
+    }
+
+    @Test
+    void testConfidentLookupIsSimple() {
+        assertEquals(Complexity.SIMPLE, classifier.classify("When were PUMP-001 bearings last replaced?",
+                retrieved("Maintenance Note: PUMP-001 bearings replaced on 2024-03-02.", 0.86)));
+    }
+
+    @Test
+    void testReasoningQuestionIsComplex() {
+        assertEquals(Complexity.COMPLEX, classifier.classify("Why is PIPE-002 pressure low?",
+                retrieved("Component ID: PIPE-002. Pressure 2.1 bar.", 0.9)));
+        assertEquals(Complexity.COMPLEX, classifier.classify("Compare PUMP-001 and PUMP-002",
+                retrieved("Component ID: PUMP-001.", 0.9)));
+    }
+
+    @Test
+    void testWeakOrMismatchedRetrievalIsComplex() {
+        assertEquals(Complexity.COMPLEX, classifier.classify("When were PUMP-001 bearings last replaced?",
+                retrieved("Maintenance Note: PUMP-001 bearings replaced on 2024-03-02.", 0.6)));
+        assertEquals(Complexity.COMPLEX, classifier.classify("When were PUMP-001 bearings last replaced?",
+                retrieved("Maintenance Note: PUMP-007 bearings replaced on 2024-03-02.", 0.9)));
+        assertEquals(Complexity.COMPLEX, classifier.classify("When were PUMP-001 bearings last replaced?", List.of()));
+    }
+
+    @Test
+    void testLongQuestionIsComplex() {
+        String question = "What is the current status of PUMP-001 given the readings from last week, the alarms "
+                + "raised yesterday and the maintenance notes from the last shift?";
+
+        assertEquals(Complexity.COMPLEX, classifier.classify(question, retrieved("Component ID: PUMP-001.", 0.9)));
+    }
+}
@@ -0,0 +1,43 @@
+package ca.bazlur.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryDecomposerTest {
+
+    @Test
+    void testCompoundQuestionIsSplitWithComponentCarriedOver() {
+        QueryDecomposer decomposer = new QueryDecomposer(3);
+
+        assertEquals(List.of("why is PIPE-002 pressure low", "what's the safety procedure for PIPE-002"),
+                decomposer.decompose("why is PIPE-002 pressure low and what's the safety procedure?"));
+    }
+
+    @Test
+    void testSentencesAreSplit() {
+        QueryDecomposer decomposer = new QueryDecomposer(3);
+
+        assertEquals(List.of("What is the status of PUMP-001", "When was VALVE-003 last serviced"),
+                decomposer.decompose("What is the status of PUMP-001? When was VALVE-003 last serviced?"));
+    }
+
+    @Test
+    void testSimpleQuestionsStayWhole() {
+        QueryDecomposer decomposer = new QueryDecomposer(3);
+
+        assertEquals(List.of("What is the pressure and temperature of PIPE-002?"),
+                decomposer.decompose("What is the pressure and temperature of PIPE-002?"));
+        assertEquals(List.of("Status of PUMP-001?"), decomposer.decompose("Status of PUMP-001?"));
+    }
+
+    @Test
+    void testSubQueriesAreCapped() {
+        String question = "What is PUMP-001? What is PUMP-002? What is PUMP-003?";
+
+        assertEquals(List.of("What is PUMP-001", "What is PUMP-002"), new QueryDecomposer(2).decompose(question));
+        assertEquals(List.of(question), new QueryDecomposer(1).decompose(question));
+    }
+}
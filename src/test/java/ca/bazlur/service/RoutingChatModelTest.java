@@ -0,0 +1,39 @@
+package ca.bazlur.service;
+
+import ca.bazlur.service.QueryComplexityClassifier.Complexity;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingChatModelTest {
+
+    private static ChatLanguageModel answering(String answer) {
+        return new ChatLanguageModel() {
+            @Override
+            public ChatResponse chat(ChatRequest request) {
+                return ChatResponse.builder().aiMessage(AiMessage.from(answer)).build();
+            }
+        };
+    }
+
+    @Test
+    void testRequestsAreRoutedByComplexity() {
+        AtomicReference<Complexity> complexity = new AtomicReference<>();
+        RoutingChatModel model = new RoutingChatModel(answering("small"), answering("large"), complexity::get);
+        ChatRequest request = ChatRequest.builder().messages(UserMessage.from("Status of PUMP-001?")).build();
+
+        complexity.set(Complexity.SIMPLE);
+        assertEquals("small", model.chat(request).aiMessage().text());
+        complexity.set(Complexity.COMPLEX);
+        assertEquals("large", model.chat(request).aiMessage().text());
+        complexity.set(null);
+        assertEquals("large", model.chat(request).aiMessage().text());
+    }
+}
@@ -0,0 +1,110 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentDeduplicatorTest {
+
+    private static final String PREAMBLE = "Safety Procedure S010: Before any work on the cooling loop, notify the control room, "
+            + "lock out all pumps feeding the loop, verify zero pressure on the gauges, wear gloves and goggles, "
+            + "and keep a second person present at the isolation valves until the work permit is closed.";
+
+    private static TextSegment segment(String text, String source, int index) {
+        return TextSegment.from(text, new Metadata().put(SegmentMetadataExtractor.SOURCE, source).put("index", String.valueOf(index)));
+    }
+
+    @Test
+    void testExactDuplicatesAreMergedIntoTheFirstOccurrence() {
+        SegmentDeduplicator deduplicator = new SegmentDeduplicator(new SegmentMetadataExtractor(), 0.9);
+
+        List<TextSegment> result = deduplicator.transformAll(List.of(
+                segment(PREAMBLE, "runbook-a.txt", 0),
+                segment("Fault ID: F001. Description: High Temperature on PUMP-001.", "runbook-a.txt", 1),
+                segment("  " + PREAMBLE.toUpperCase().replace(", ", ",\n"), "runbook-b.txt", 4)));
+
+        assertEquals(2, result.size());
+        Metadata canonical = result.get(0).metadata();
+        assertEquals(PREAMBLE, result.get(0).text());
+        assertEquals("runbook-a.txt", canonical.getString(SegmentMetadataExtractor.SOURCE));
+        assertEquals("runbook-b.txt#4", canonical.getString(SegmentDeduplicator.COPIES));
+        assertNull(result.get(1).metadata().getString(SegmentDeduplicator.COPIES));
+    }
+
+    @Test
+    void testCopiesNameTheWindowOfTheDroppedSegment() {
+        SegmentDeduplicator deduplicator = new SegmentDeduplicator(new SegmentMetadataExtractor(), 0.9);
+        TextSegment copy = segment(PREAMBLE, "runbook-b.txt", 4);
+        copy.metadata().put(StreamingDocumentLoader.OFFSET, 65_536L);
+
+        List<TextSegment> result = deduplicator.transformAll(List.of(segment(PREAMBLE, "runbook-a.txt", 0), copy));
+
+        assertEquals("runbook-b.txt@65536#4", result.get(0).metadata().getString(SegmentDeduplicator.COPIES));
+    }
+
+    @Test
+    void testNearDuplicatesAreDropped() {
+        SegmentDeduplicator deduplicator = new SegmentDeduplicator(new SegmentMetadataExtractor(), 0.8);
+        String copy = PREAMBLE.replace("gloves and goggles", "gloves and safety goggles");
+
+        List<TextSegment> result = deduplicator.transformAll(List.of(
+                segment(PREAMBLE, "runbook-a.txt", 0),
+                segment(copy, "runbook-c.txt", 2)));
+
+        assertEquals(1, result.size());
+        assertEquals("runbook-c.txt#2", result.get(0).metadata().getString(SegmentDeduplicator.COPIES));
+    }
+
+    @Test
+    void testChangedReadingsAreNotDuplicates() {
+        SegmentDeduplicator deduplicator = new SegmentDeduplicator(new SegmentMetadataExtractor(), 0.9);
+
+        List<TextSegment> result = deduplicator.transformAll(List.of(
+                segment("Component ID: SENSOR-T1. Type: Temperature Sensor. Monitors: PUMP-001 Casing. Reading: 65C. Unit: Celsius. Location: Sector A.", "components.txt", 0),
+                segment("Component ID: SENSOR-T1. Type: Temperature Sensor. Monitors: PUMP-001 Casing. Reading: 115C. Unit: Celsius. Location: Sector A.", "components.txt", 1)));
+
+        assertEquals(2, result.size());
+    }
+
+    @Test
+    void testThresholdOfOneOnlyDropsExactDuplicates() {
+        SegmentDeduplicator deduplicator = new SegmentDeduplicator(new SegmentMetadataExtractor(), 1.0);
+        String copy = PREAMBLE.replace("gloves and goggles", "gloves and safety goggles");
+
+        assertEquals(2, deduplicator.transformAll(List.of(
+                segment(PREAMBLE, "runbook-a.txt", 0),
+                segment(copy, "runbook-c.txt", 2),
+                segment(PREAMBLE, "runbook-d.txt", 0))).size());
+    }
+
+    @Test
+    void testMinHashEstimatesJaccardSimilarity() {
+        var a = SegmentDeduplicator.shingles(SegmentDeduplicator.normalize(PREAMBLE));
+        var b = SegmentDeduplicator.shingles(SegmentDeduplicator.normalize(PREAMBLE.replace("control room", "shift lead")));
+
+        assertEquals(SegmentDeduplicator.jaccard(a, b), SegmentDeduplicator.estimatedSimilarity(
+                SegmentDeduplicator.signature(a), SegmentDeduplicator.signature(b)), 0.15);
+    }
+
+    @Test
+    void testCopiesOfEarlierBatchesAreDroppedWithoutTheirMetadata() {
+        SegmentDeduplicator deduplicator = new SegmentDeduplicator(new SegmentMetadataExtractor(), 0.8);
+        String copy = PREAMBLE.replace("gloves and goggles", "gloves and safety goggles");
+
+        List<TextSegment> first = deduplicator.transformAll(List.of(segment(PREAMBLE, "runbook-a.txt", 0)));
+        List<TextSegment> second = deduplicator.transformAll(List.of(
+                segment(PREAMBLE.toUpperCase(), "runbook-b.txt", 0),
+                segment(copy, "runbook-c.txt", 3),
+                segment("Fault ID: F001. Description: High Temperature on PUMP-001.", "runbook-c.txt", 4)));
+
+        // The canonical segment is already stored, so its copies are not recorded.
+        assertEquals("runbook-a.txt", first.get(0).metadata().getString(SegmentMetadataExtractor.SOURCE));
+        assertNull(first.get(0).metadata().getString(SegmentDeduplicator.COPIES));
+        assertEquals(1, second.size());
+        assertEquals("runbook-c.txt", second.get(0).metadata().getString(SegmentMetadataExtractor.SOURCE));
+    }
+}
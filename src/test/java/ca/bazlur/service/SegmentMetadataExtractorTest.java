@@ -0,0 +1,34 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentMetadataExtractorTest {
+
+    private final SegmentMetadataExtractor extractor = new SegmentMetadataExtractor();
+
+    @Test
+    void testExtractsRecordTypesAndComponents() {
+        TextSegment segment = TextSegment.from("""
+                Fault ID: F004. Description: Leakage detected at HEAT-EXCHANGER-001. Location: Sectors A-C.
+                Safety Procedure S001: Before servicing PUMP-001, ensure MOTOR-001 is locked out and HEAT-EXCHANGER-001 is isolated.""",
+                Metadata.from(SegmentMetadataExtractor.SOURCE, "knowledge.txt"));
+
+        Metadata metadata = extractor.transform(segment).metadata();
+
+        assertEquals("knowledge.txt", metadata.getString(SegmentMetadataExtractor.SOURCE));
+        assertEquals("fault,safety_procedure", metadata.getString(SegmentMetadataExtractor.RECORD_TYPE));
+        assertEquals("HEAT-EXCHANGER-001,PUMP-001,MOTOR-001", metadata.getString(SegmentMetadataExtractor.COMPONENTS));
+    }
+
+    @Test
+    void testPlainTextGetsNoExtraMetadata() {
+        TextSegment transformed = extractor.transform(TextSegment.from("No records here."));
+
+        assertEquals("No records here.", transformed.text());
+        assertTrue(transformed.metadata().toMap().isEmpty());
+    }
+}
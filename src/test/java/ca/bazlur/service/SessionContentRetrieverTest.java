@@ -0,0 +1,116 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionContentRetrieverTest {
+
+    /** Embeds texts by the topics they mention. */
+    private static final class TopicEmbeddingModel implements EmbeddingModel {
+        int embedded;
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            embedded += segments.size();
+            return Response.from(segments.stream().map(segment -> vector(segment.text())).toList());
+        }
+
+        private static Embedding vector(String text) {
+            String lower = text.toLowerCase();
+            return Embedding.from(new float[]{
+                    lower.contains("pump") ? 1f : 0f,
+                    lower.contains("status") ? 1f : 0f,
+                    lower.contains("safety") ? 1f : 0f,
+                    lower.contains("pressure") ? 1f : 0f,
+                    0.1f});
+        }
+    }
+
+    /** Counts the searches. */
+    private static final class CountingStore extends InMemoryEmbeddingStore<TextSegment> {
+        int searches;
+
+        @Override
+        public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+            searches++;
+            return super.search(request);
+        }
+    }
+
+    private TopicEmbeddingModel model;
+    private CountingStore store;
+    private final AtomicReference<Filter> filter = new AtomicReference<>();
+    private SessionContentRetriever retriever;
+
+    @BeforeEach
+    void setUp() {
+        model = new TopicEmbeddingModel();
+        store = new CountingStore();
+        for (String text : List.of("PUMP-001 status: running", "PUMP-001 safety procedure: lock out first",
+                "PIPE-002 pressure readings", "Unrelated notes")) {
+            TextSegment segment = TextSegment.from(text);
+            segment.metadata().put("source", text.contains("safety") ? "safety.txt" : "components.txt");
+            store.add(TopicEmbeddingModel.vector(text), segment);
+        }
+        MultiQueryContentRetriever delegate = new MultiQueryContentRetriever(store, model,
+                new QueryDecomposer(3), 1, 0.8, query -> filter.get());
+        retriever = new SessionContentRetriever(delegate, model, 1, 0.8, 4, 0.5, query -> filter.get());
+    }
+
+    private List<String> retrieve(String question) {
+        return retriever.retrieve(Query.from(question)).stream()
+                .map(Content::textSegment).map(TextSegment::text).toList();
+    }
+
+    @Test
+    void testFollowUpIsRescoredFromCachedCandidates() {
+        assertEquals(List.of("PUMP-001 status: running"), retrieve("What is the status of PUMP-001?"));
+        assertEquals(List.of("PUMP-001 safety procedure: lock out first"),
+                retrieve("What is the safety procedure for PUMP-001?"));
+
+        assertEquals(1, store.searches);
+        assertEquals(2, model.embedded);
+    }
+
+    @Test
+    void testNewComponentSearchesTheStore() {
+        retrieve("What is the status of PUMP-001?");
+        retrieve("What is the status of PUMP-002?");
+
+        assertEquals(2, store.searches);
+    }
+
+    @Test
+    void testDissimilarQuestionSearchesTheStore() {
+        retrieve("What is the status of PUMP-001?");
+        assertEquals(List.of("PIPE-002 pressure readings"), retrieve("Show the pressure readings"));
+
+        assertEquals(2, store.searches);
+    }
+
+    @Test
+    void testFilterChangeSearchesTheStore() {
+        retrieve("What is the status of PUMP-001?");
+        filter.set(metadataKey("source").isEqualTo("safety.txt"));
+        retrieve("What is the status of PUMP-001?");
+        retrieve("What is the safety procedure for PUMP-001?");
+
+        assertEquals(2, store.searches);
+    }
+}
@@ -0,0 +1,57 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StableContentInjectorTest {
+
+    private static Content content(String text, String source, int index) {
+        TextSegment segment = TextSegment.from(text);
+        segment.metadata().put(SegmentMetadataExtractor.SOURCE, source);
+        segment.metadata().put("index", String.valueOf(index));
+        return Content.from(segment);
+    }
+
+    private static Content content(String text, String source, long offset, int index) {
+        Content content = content(text, source, index);
+        content.textSegment().metadata().put(StreamingDocumentLoader.OFFSET, offset);
+        return content;
+    }
+
+    @Test
+    void testContentIsInjectedInDocumentOrder() {
+        Content pump = content("PUMP-001 is running", "components.txt", 2);
+        Content valve = content("VALVE-003 is closed", "components.txt", 10);
+        Content procedure = content("Isolate the pump before servicing", "procedures.txt", 0);
+        StableContentInjector injector = new StableContentInjector();
+        UserMessage question = UserMessage.from("What about PUMP-001?");
+
+        ChatMessage byScore = injector.inject(List.of(procedure, valve, pump), question);
+        ChatMessage shuffled = injector.inject(List.of(valve, pump, procedure), question);
+
+        String text = ((UserMessage) byScore).singleText();
+        assertEquals(text, ((UserMessage) shuffled).singleText());
+        assertTrue(text.indexOf("PUMP-001 is running") < text.indexOf("VALVE-003 is closed"));
+        assertTrue(text.indexOf("VALVE-003 is closed") < text.indexOf("Isolate the pump"));
+    }
+
+    @Test
+    void testSegmentsOfLaterWindowsFollowThoseOfEarlierOnes() {
+        Content first = content("PUMP-001 is running", "components.txt", 0, 7);
+        Content second = content("VALVE-003 is closed", "components.txt", 65_536, 0);
+        Content third = content("TANK-002 is full", "components.txt", 65_536, 3);
+        StableContentInjector injector = new StableContentInjector();
+
+        String text = ((UserMessage) injector.inject(List.of(third, second, first), UserMessage.from("Status?"))).singleText();
+
+        assertTrue(text.indexOf("PUMP-001 is running") < text.indexOf("VALVE-003 is closed"));
+        assertTrue(text.indexOf("VALVE-003 is closed") < text.indexOf("TANK-002 is full"));
+    }
+}
@@ -0,0 +1,99 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.document.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingDocumentLoaderTest {
+
+    private static List<String> texts(Iterator<Document> windows) {
+        List<String> texts = new ArrayList<>();
+        windows.forEachRemaining(document -> texts.add(document.text()));
+        return texts;
+    }
+
+    @Test
+    void testWindowsAreCutAtLineBreaks() {
+        StreamingDocumentLoader loader = new StreamingDocumentLoader(30);
+        String content = "Fault ID: F001. Pump hot.\nRule ID: R001. Alert.\nEvent ID: E001. Drop.\n";
+
+        Iterator<Document> windows = loader.windows("knowledge.txt", new StringReader(content));
+        List<String> texts = texts(windows);
+
+        assertEquals(List.of("Fault ID: F001. Pump hot.\n", "Rule ID: R001. Alert.\n", "Event ID: E001. Drop.\n"), texts);
+        assertEquals(content, String.join("", texts));
+    }
+
+    @Test
+    void testLongLinesAreCutBetweenWords() {
+        StreamingDocumentLoader loader = new StreamingDocumentLoader(10);
+
+        List<String> texts = texts(loader.windows("log.txt", new StringReader("alpha beta gamma delta")));
+
+        assertEquals(List.of("alpha ", "beta ", "gamma ", "delta"), texts);
+    }
+
+    @Test
+    void testWindowsCarrySourceMetadata() {
+        StreamingDocumentLoader loader = new StreamingDocumentLoader(100);
+
+        Document document = loader.windows("components.txt", new StringReader("Component ID: PUMP-001.\n\n  \n")).next();
+
+        assertEquals("components.txt", document.metadata().getString(SegmentMetadataExtractor.SOURCE));
+        assertEquals(0L, document.metadata().getLong(StreamingDocumentLoader.OFFSET));
+    }
+
+    @Test
+    void testWindowsCarryTheirOffsetInTheSource() {
+        StreamingDocumentLoader loader = new StreamingDocumentLoader(30);
+        String content = "Fault ID: F001. Pump hot.\n\n\nRule ID: R001. Alert.\nEvent ID: E001. Drop.\n";
+
+        List<Long> offsets = new ArrayList<>();
+        loader.windows("knowledge.txt", new StringReader(content))
+                .forEachRemaining(document -> offsets.add(document.metadata().getLong(StreamingDocumentLoader.OFFSET)));
+
+        assertEquals(List.of(0L, 28L, 50L), offsets);
+    }
+
+    @Test
+    void testMappedReaderDecodesAcrossRegionBoundaries(@TempDir Path directory) throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            content.append("Température ").append(i).append(" °C — capteur SENSOR-T").append(i % 7).append('\n');
+        }
+        Path file = directory.resolve("large.txt");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+
+        StringBuilder read = new StringBuilder();
+        // Odd-sized regions make multi-byte characters straddle region boundaries.
+        try (Reader reader = new MappedFileReader(file, 37)) {
+            char[] buffer = new char[64];
+            int count;
+            while ((count = reader.read(buffer, 0, buffer.length)) >= 0) {
+                read.append(buffer, 0, count);
+            }
+        }
+
+        assertEquals(content.toString(), read.toString());
+    }
+
+    @Test
+    void testMappedReaderHandlesEmptyFiles(@TempDir Path directory) throws Exception {
+        Path file = Files.createFile(directory.resolve("empty.txt"));
+
+        try (Reader reader = new MappedFileReader(file)) {
+            assertEquals(-1, reader.read(new char[8], 0, 8));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ca.bazlur.service;
+
+import ca.bazlur.loadtest.LatencyDistribution;
+import ca.bazlur.loadtest.StubModelServer;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.exception.RateLimitException;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThrottledEmbeddingModelTest {
+
+    /** Embeds a text as its length, rejecting every request once the allowed calls are used up. */
+    private static final class LimitedEmbeddingModel implements EmbeddingModel {
+        final List<String> embedded = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger rateLimited = new AtomicInteger();
+        volatile int allowedCalls;
+        volatile int rateLimitEvery;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        LimitedEmbeddingModel(int allowedCalls, int rateLimitEvery) {
+            this.allowedCalls = allowedCalls;
+            this.rateLimitEvery = rateLimitEvery;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            int call = calls.incrementAndGet();
+            if (call > allowedCalls || (rateLimitEvery > 0 && call % rateLimitEvery == 0)) {
+                rateLimited.incrementAndGet();
+                throw new RateLimitException("429 Too Many Requests");
+            }
+            segments.forEach(segment -> embedded.add(segment.text()));
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{segment.text().length()}))
+                    .toList());
+        }
+    }
+
+    private static List<TextSegment> segments(int count) {
+        return IntStream.range(0, count).mapToObj(i -> TextSegment.from("segment " + "x".repeat(i % 50) + i)).toList();
+    }
+
+    private static AimdRateController controller() {
+        return new AimdRateController(4, 20, 80, Duration.ofMillis(1), System::nanoTime);
+    }
+
+    @Test
+    void testRateLimitedRequestsAreRetriedAndResultsKeepTheirOrder() {
+        LimitedEmbeddingModel delegate = new LimitedEmbeddingModel(Integer.MAX_VALUE, 3);
+        AimdRateController controller = controller();
+        ThrottledEmbeddingModel model = new ThrottledEmbeddingModel(delegate, controller,
+                EmbeddingCheckpoint.inMemory(), 5);
+        List<TextSegment> segments = segments(200);
+
+        List<Embedding> embeddings = model.embedAll(segments).content();
+
+        assertEquals(200, embeddings.size());
+        for (int i = 0; i < segments.size(); i++) {
+            assertEquals(segments.get(i).text().length(), embeddings.get(i).vector()[0]);
+        }
+        assertTrue(delegate.rateLimited.get() > 0);
+        assertEquals(200, delegate.embedded.size(), "every segment is embedded exactly once");
+    }
+
+    @Test
+    void testFailedIngestionResumesFromTheCheckpoint(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("checkpoint.bin");
+        LimitedEmbeddingModel delegate = new LimitedEmbeddingModel(5, 0);
+        List<TextSegment> segments = segments(200);
+
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/model")) {
+            ThrottledEmbeddingModel model = new ThrottledEmbeddingModel(delegate, controller(), checkpoint, 2);
+            assertThrows(RateLimitException.class, () -> model.embedAll(segments));
+        }
+        int embeddedBeforeFailure = delegate.embedded.size();
+        assertTrue(embeddedBeforeFailure > 0 && embeddedBeforeFailure < 200);
+
+        delegate.allowedCalls = Integer.MAX_VALUE;
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/model")) {
+            assertEquals(embeddedBeforeFailure, checkpoint.size());
+            ThrottledEmbeddingModel model = new ThrottledEmbeddingModel(delegate, controller(), checkpoint, 2);
+            assertEquals(200, model.embedAll(segments).content().size());
+        }
+        assertEquals(200, delegate.embedded.size(), "no segment is embedded twice");
+    }
+
+    @Test
+    void testCheckpointOfAnotherModelIsDiscarded(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("checkpoint.bin");
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/a")) {
+            checkpoint.putAll(List.of("text"), List.of(Embedding.from(new float[]{1f, 2f})));
+        }
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/a")) {
+            assertArrayEquals(new float[]{1f, 2f}, checkpoint.get("text").vector());
+        }
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/b")) {
+            assertNull(checkpoint.get("text"));
+        }
+    }
+
+    @Test
+    void testDamagedCheckpointRecordIsDiscardedWithTheRecordsAfterIt(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("checkpoint.bin");
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/model")) {
+            checkpoint.putAll(List.of("a", "b"), List.of(Embedding.from(new float[]{1f, 2f}), Embedding.from(new float[]{3f, 4f})));
+        }
+        long intactLength = Files.size(file);
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/model")) {
+            checkpoint.putAll(List.of("c", "d"), List.of(Embedding.from(new float[]{5f, 6f}), Embedding.from(new float[]{7f, 8f})));
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        // A flipped bit in the vector of "c" and a torn length field after the file
+        bytes[(int) intactLength + 8 + 32] ^= 1;
+        Files.write(file, Arrays.copyOf(bytes, bytes.length + 3));
+
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/model")) {
+            assertEquals(2, checkpoint.size());
+            assertArrayEquals(new float[]{3f, 4f}, checkpoint.get("b").vector());
+            assertNull(checkpoint.get("c"));
+            assertNull(checkpoint.get("d"));
+            assertEquals(intactLength, Files.size(file));
+        }
+    }
+
+    @Test
+    void testCheckpointInUseCannotBeOpenedAgain(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("checkpoint.bin");
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/model")) {
+            checkpoint.putAll(List.of("a"), List.of(Embedding.from(new float[]{1f})));
+
+            assertThrows(IOException.class, () -> EmbeddingCheckpoint.open(file, "stub/model"));
+            checkpoint.putAll(List.of("b"), List.of(Embedding.from(new float[]{2f})));
+        }
+        try (EmbeddingCheckpoint checkpoint = EmbeddingCheckpoint.open(file, "stub/model")) {
+            assertEquals(2, checkpoint.size());
+        }
+    }
+
+    @Test
+    void testOpenAiRateLimitsAreAbsorbed() throws Exception {
+        StubModelServer.Behavior behavior = new StubModelServer.Behavior(
+                LatencyDistribution.fixed(Duration.ZERO), LatencyDistribution.fixed(Duration.ZERO),
+                0, 8, 0, 0.3, 16);
+        try (StubModelServer stub = new StubModelServer(behavior, 0)) {
+            stub.start();
+            AimdRateController controller = controller();
+            EmbeddingModel openAi = OpenAiEmbeddingModel.builder()
+                    .baseUrl(stub.getOpenAiBaseUrl())
+                    .apiKey("stub")
+                    .modelName("text-embedding-3-small")
+                    .httpClientBuilder(RateLimitTrackingHttpClient.builder(controller))
+                    .maxRetries(0)
+                    .build();
+            ThrottledEmbeddingModel model = new ThrottledEmbeddingModel(openAi, controller,
+                    EmbeddingCheckpoint.inMemory(), 20);
+
+            List<Embedding> embeddings = model.embedAll(segments(100)).content();
+
+            assertEquals(100, embeddings.size());
+            assertTrue(embeddings.stream().allMatch(embedding -> embedding.dimension() == 16));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ca.bazlur.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZeroCopyDocumentSplitterTest {
+
+    private static final int[][] SIZES = {{300, 30}, {300, 0}, {100, 50}, {1000, 100}, {40, 10}, {12, 12}};
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = ZeroCopyDocumentSplitterTest.class.getResourceAsStream("/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void assertSameSegments(String text, int maxSegmentSize, int maxOverlapSize) {
+        Document document = Document.from(text, Metadata.from("source", "test.txt"));
+        ZeroCopyDocumentSplitter splitter = new ZeroCopyDocumentSplitter(maxSegmentSize, maxOverlapSize);
+        List<TextSegment> expected;
+        try {
+            expected = DocumentSplitters.recursive(maxSegmentSize, maxOverlapSize).split(document);
+        } catch (RuntimeException e) {
+            // An overlap as long as a segment leaves no room for the next character.
+            assertThrows(RuntimeException.class, () -> splitter.split(document));
+            return;
+        }
+
+        assertEquals(expected, splitter.split(document), "segments of " + maxSegmentSize + "/" + maxOverlapSize);
+    }
+
+    @Test
+    void testKnowledgeFilesAreSplitLikeTheRecursiveSplitter() throws IOException {
+        for (String name : List.of("components.txt", "knowledge.txt")) {
+            String text = resource(name);
+            for (int[] size : SIZES) {
+                assertSameSegments(text, size[0], size[1]);
+            }
+        }
+    }
+
+    @Test
+    void testLongLinesSentencesAndWordsAreSplitLikeTheRecursiveSplitter() {
+        Random random = new Random(42);
+        String[] words = {"pump", "valve", "PUMP-001", "pressure", "is", "the", "a", "bearing", "replaced",
+                "lubrication", "Supercalifragilisticexpialidocious-sensor-calibration-procedure"};
+        for (int document = 0; document < 20; document++) {
+            StringBuilder text = new StringBuilder();
+            int sentences = 1 + random.nextInt(40);
+            for (int i = 0; i < sentences; i++) {
+                int length = 1 + random.nextInt(30);
+                for (int j = 0; j < length; j++) {
+                    text.append(j == 0 ? "" : random.nextInt(10) == 0 ? "  " : " ")
+                            .append(words[random.nextInt(words.length)]);
+                }
+                text.append(". ");
+                switch (random.nextInt(8)) {
+                    case 0 -> text.append("\n");
+                    case 1 -> text.append("\n \n");
+                    case 2 -> text.append("\r\n\r\n\r\n");
+                    default -> {
+                    }
+                }
+            }
+            for (int[] size : SIZES) {
+                assertSameSegments(text.toString(), size[0], size[1]);
+            }
+        }
+    }
+
+    @Test
+    void testCharBufferViewIsSplitLikeItsText() throws IOException {
+        String text = resource("components.txt");
+        char[] padded = ("header\n\n" + text + "\n\ntrailer").toCharArray();
+        CharBuffer view = CharBuffer.wrap(padded, 8, text.length());
+        ZeroCopyDocumentSplitter splitter = new ZeroCopyDocumentSplitter(300, 30);
+
+        assertEquals(splitter.split(Document.from(text)), splitter.split(view, new Metadata()));
+    }
+
+    @Test
+    void testDocumentsAreSplitInParallel() throws IOException {
+        ZeroCopyDocumentSplitter splitter = new ZeroCopyDocumentSplitter(200, 40);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            documents.add(Document.from(resource(i % 2 == 0 ? "components.txt" : "knowledge.txt")));
+        }
+        List<List<TextSegment>> sequential = documents.stream().map(splitter::split).toList();
+
+        List<List<TextSegment>> parallel = IntStream.range(0, documents.size()).parallel()
+                .mapToObj(i -> splitter.split(documents.get(i)))
+                .toList();
+
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    void testOverlapLargerThanSegmentIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ZeroCopyDocumentSplitter(100, 101));
+        assertThrows(IllegalArgumentException.class, () -> new ZeroCopyDocumentSplitter(0, 0));
+    }
+}
@@ -0,0 +1,80 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedSegmentStoreTest {
+
+    private static TextSegment segment(int i) {
+        return TextSegment.from("Component ID: PUMP-" + i + ". Inspect the seal every 500 hours of operation.",
+                Metadata.from(Map.of("source", "components.txt", "index", i)));
+    }
+
+    @Test
+    void testSegmentsRoundTripAcrossBlocks() {
+        CompressedSegmentStore store = new CompressedSegmentStore(1024, 4);
+        for (int i = 0; i < 500; i++) {
+            store.add(i % 50 == 7 ? null : segment(i));
+        }
+
+        assertTrue(store.getCompressedBytes() > 0);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i % 50 == 7 ? null : segment(i), store.get(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(500));
+    }
+
+    @Test
+    void testBlocksAreCompressed() {
+        CompressedSegmentStore store = new CompressedSegmentStore(4096, 4);
+        long uncompressed = 0;
+        for (int i = 0; i < 1_000; i++) {
+            store.add(segment(i));
+            uncompressed += segment(i).text().length();
+        }
+
+        assertTrue(store.getCompressedBytes() < uncompressed / 3,
+                store.getCompressedBytes() + " compressed bytes for " + uncompressed + " characters of text");
+    }
+
+    @Test
+    void testRecentlyReadBlocksAreCached() {
+        CompressedSegmentStore store = new CompressedSegmentStore(1024, 2);
+        for (int i = 0; i < 200; i++) {
+            store.add(segment(i));
+        }
+
+        store.get(0);
+        store.get(1);
+        store.get(0);
+        assertEquals(1, store.getCacheMisses());
+        assertEquals(2, store.getCacheHits());
+
+        store.get(100);
+        store.get(150);
+        store.get(0);
+        assertEquals(4, store.getCacheMisses());
+    }
+
+    @Test
+    void testRemoveAndClear() {
+        CompressedSegmentStore store = new CompressedSegmentStore(1024, 2);
+        for (int i = 0; i < 100; i++) {
+            store.add(segment(i));
+        }
+
+        store.remove(42);
+        assertNull(store.get(42));
+        assertEquals(segment(43), store.get(43));
+
+        store.clear();
+        assertEquals(0, store.getCompressedBytes());
+        store.add(segment(7));
+        assertEquals(segment(7), store.get(0));
+    }
+}
@@ -0,0 +1,194 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DurableEmbeddingStoreTest {
+
+    private static final IndexFingerprint FINGERPRINT =
+            new IndexFingerprint("OLLAMA", "nomic-embed-text", 300, 30, 0.9, 65_536);
+
+    private static DurableEmbeddingStore open(Path dir, IndexFingerprint fingerprint) throws IOException {
+        return new DurableEmbeddingStore(dir, fingerprint, new ShardedEmbeddingStore(2, 0),
+                Duration.ZERO, Long.MAX_VALUE, 0.2);
+    }
+
+    private static DurableEmbeddingStore open(Path dir) throws IOException {
+        return open(dir, FINGERPRINT);
+    }
+
+    private static void add(DurableEmbeddingStore store, String id, String source, float... vector) {
+        store.addAll(List.of(id), List.of(Embedding.from(vector)),
+                List.of(TextSegment.from("Segment " + id, Metadata.from(Map.of("source", source)))));
+    }
+
+    private static List<String> ids(DurableEmbeddingStore store) {
+        return store.search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(Embedding.from(new float[]{1f, 1f, 1f}))
+                        .maxResults(10)
+                        .build())
+                .matches().stream()
+                .map(EmbeddingMatch::embeddingId)
+                .sorted()
+                .toList();
+    }
+
+    private static List<String> files(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    @Test
+    void testMutationsAreRecoveredFromTheLog(@TempDir Path dir) throws IOException {
+        try (DurableEmbeddingStore store = open(dir)) {
+            add(store, "a", "pumps.txt", 1f, 0f, 0f);
+            add(store, "b", "valves.txt", 0f, 1f, 0f);
+            add(store, "c", "valves.txt", 0f, 0f, 1f);
+            store.removeAll(List.of("a"));
+            store.removeAll(MetadataFilterBuilder.metadataKey("source").isEqualTo("valves.txt"));
+            add(store, "d", "pumps.txt", 1f, 1f, 0f);
+        }
+
+        try (DurableEmbeddingStore recovered = open(dir)) {
+            assertEquals(1, recovered.size());
+            assertEquals(List.of("d"), ids(recovered));
+            assertEquals("Segment d", recovered.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(new float[]{1f, 1f, 0f}))
+                    .build()).matches().get(0).embedded().text());
+        }
+    }
+
+    @Test
+    void testRecoveryLoadsTheSnapshotAndReplaysTheTail(@TempDir Path dir) throws IOException {
+        try (DurableEmbeddingStore store = open(dir)) {
+            add(store, "a", "pumps.txt", 1f, 0f, 0f);
+            add(store, "b", "valves.txt", 0f, 1f, 0f);
+            store.snapshot();
+            add(store, "c", "valves.txt", 0f, 0f, 1f);
+            store.removeAll(List.of("b"));
+
+            assertEquals(List.of("snapshot-2.bin", "wal-2.log"), files(dir));
+        }
+
+        try (DurableEmbeddingStore recovered = open(dir)) {
+            assertEquals(List.of("a", "c"), ids(recovered));
+            recovered.removeAll();
+        }
+        try (DurableEmbeddingStore cleared = open(dir)) {
+            assertEquals(0, cleared.size());
+        }
+    }
+
+    @Test
+    void testCompletionMarkerSurvivesSnapshotsAndIsClearedByRemoveAll(@TempDir Path dir) throws IOException {
+        try (DurableEmbeddingStore store = open(dir)) {
+            add(store, "a", "pumps.txt", 1f, 0f, 0f);
+            assertFalse(store.isComplete());
+        }
+
+        try (DurableEmbeddingStore partial = open(dir)) {
+            assertEquals(List.of("a"), ids(partial));
+            assertFalse(partial.isComplete());
+            add(partial, "b", "valves.txt", 0f, 1f, 0f);
+            partial.snapshot();
+            partial.markComplete();
+            partial.snapshot();
+        }
+
+        try (DurableEmbeddingStore recovered = open(dir)) {
+            assertTrue(recovered.isComplete());
+            assertEquals(List.of("a", "b"), ids(recovered));
+            recovered.removeAll();
+            assertFalse(recovered.isComplete());
+        }
+        try (DurableEmbeddingStore cleared = open(dir)) {
+            assertFalse(cleared.isComplete());
+            assertEquals(0, cleared.size());
+        }
+    }
+
+    @Test
+    void testSnapshotCompactsRemovedEntries(@TempDir Path dir) throws IOException {
+        ShardedEmbeddingStore delegate = new ShardedEmbeddingStore(2, 0);
+        try (DurableEmbeddingStore store = new DurableEmbeddingStore(dir, FINGERPRINT, delegate,
+                Duration.ZERO, Long.MAX_VALUE, 0.5)) {
+            add(store, "a", "pumps.txt", 1f, 0f, 0f);
+            add(store, "b", "pumps.txt", 0f, 1f, 0f);
+            add(store, "c", "pumps.txt", 0f, 0f, 1f);
+            store.removeAll(List.of("a"));
+            store.snapshot();
+            assertEquals(1, delegate.deletedCount());
+
+            store.removeAll(List.of("b"));
+            store.snapshot();
+            assertEquals(0, delegate.deletedCount());
+            assertEquals(List.of("c"), ids(store));
+        }
+    }
+
+    @Test
+    void testRejectedMutationIsNotLogged(@TempDir Path dir) throws IOException {
+        try (DurableEmbeddingStore store = open(dir)) {
+            add(store, "a", "pumps.txt", 1f, 0f, 0f);
+            assertThrows(IllegalArgumentException.class, () -> add(store, "b", "pumps.txt", 1f, 0f));
+            add(store, "c", "pumps.txt", 0f, 0f, 1f);
+        }
+
+        try (DurableEmbeddingStore recovered = open(dir)) {
+            assertEquals(List.of("a", "c"), ids(recovered));
+        }
+    }
+
+    @Test
+    void testLogFailureRejectsLaterMutations(@TempDir Path dir) throws IOException {
+        try (DurableEmbeddingStore store = open(dir)) {
+            add(store, "a", "pumps.txt", 1f, 0f, 0f);
+            store.log().close();
+
+            assertThrows(UncheckedIOException.class, () -> add(store, "b", "pumps.txt", 0f, 1f, 0f));
+            assertEquals(List.of("a"), ids(store));
+            assertThrows(IllegalStateException.class, () -> store.removeAll(List.of("a")));
+            assertThrows(IllegalStateException.class, store::snapshot);
+            assertEquals(List.of("a"), ids(store));
+        }
+
+        try (DurableEmbeddingStore recovered = open(dir)) {
+            add(recovered, "b", "pumps.txt", 0f, 1f, 0f);
+            assertEquals(List.of("a", "b"), ids(recovered));
+        }
+    }
+
+    @Test
+    void testFilesOfAnotherEmbeddingModelAreMovedAside(@TempDir Path dir) throws IOException {
+        try (DurableEmbeddingStore store = open(dir)) {
+            add(store, "a", "pumps.txt", 1f, 0f, 0f);
+            store.snapshot();
+            add(store, "b", "pumps.txt", 0f, 1f, 0f);
+        }
+
+        IndexFingerprint other = new IndexFingerprint("OPENAI", "text-embedding-3-small", 300, 30, 0.9, 65_536);
+        try (DurableEmbeddingStore store = open(dir, other)) {
+            assertEquals(0, store.size());
+        }
+        assertTrue(files(dir).stream().anyMatch(name -> name.startsWith("stale-")));
+        assertFalse(files(dir).contains("snapshot-2.bin"));
+    }
+}
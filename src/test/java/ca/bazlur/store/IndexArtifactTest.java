@@ -0,0 +1,116 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexArtifactTest {
+
+    private static final IndexFingerprint FINGERPRINT =
+            new IndexFingerprint("OLLAMA", "nomic-embed-text", 300, 30, 0.9, 65_536);
+
+    private IndexArtifact createArtifact() {
+        Metadata metadata = Metadata.from(Map.of("source", "components.txt", "index", 7));
+        return new IndexArtifact(FINGERPRINT, List.of(
+                new IndexArtifact.Entry("a", Embedding.from(new float[]{1f, 0f, 0f}),
+                        TextSegment.from("Component ID: PUMP-001.", metadata)),
+                new IndexArtifact.Entry("b", Embedding.from(new float[]{0f, 1f, 0f}),
+                        TextSegment.from("Component ID: VALVE-001."))));
+    }
+
+    @Test
+    void testRoundTrip(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("index.bin");
+        createArtifact().write(file);
+
+        IndexArtifact read;
+        try (InputStream in = Files.newInputStream(file)) {
+            read = IndexArtifact.read(in);
+        }
+
+        assertEquals(FINGERPRINT, read.getFingerprint());
+        assertEquals(3, read.getDimension());
+        assertEquals(createArtifact().getEntries(), read.getEntries());
+        assertEquals(7, read.getEntries().get(0).segment().metadata().getInteger("index"));
+    }
+
+    @Test
+    void testFingerprintMismatchSkipsEntries() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createArtifact().write(out);
+
+        IndexFingerprint other = new IndexFingerprint("OPENAI", "text-embedding-3-small", 300, 30, 0.9, 65_536);
+        Optional<IndexArtifact> read = IndexArtifact.read(new ByteArrayInputStream(out.toByteArray()), other);
+
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    void testOtherDedupOrWindowSettingsDoNotMatch() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createArtifact().write(out);
+        byte[] index = out.toByteArray();
+
+        assertTrue(IndexArtifact.read(new ByteArrayInputStream(index),
+                new IndexFingerprint("OLLAMA", "nomic-embed-text", 300, 30, 0.8, 65_536)).isEmpty());
+        assertTrue(IndexArtifact.read(new ByteArrayInputStream(index),
+                new IndexFingerprint("OLLAMA", "nomic-embed-text", 300, 30, 0.9, 32_768)).isEmpty());
+    }
+
+    @Test
+    void testIndexOfAnOlderFormatIsStale() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createArtifact().write(out);
+        byte[] index = out.toByteArray();
+        index[5] = (byte) (IndexArtifact.FORMAT_VERSION - 1);
+
+        assertTrue(IndexArtifact.read(new ByteArrayInputStream(index), FINGERPRINT).isEmpty());
+        assertThrows(IOException.class, () -> IndexArtifact.read(new ByteArrayInputStream(index)));
+    }
+
+    @Test
+    void testReadSlice() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createArtifact().write(out);
+
+        IndexArtifact slice = IndexArtifact.read(new ByteArrayInputStream(out.toByteArray()), FINGERPRINT, 1, 2)
+                .orElseThrow();
+
+        assertEquals(List.of("b"), slice.getEntries().stream().map(IndexArtifact.Entry::id).toList());
+    }
+
+    @Test
+    void testInvalidFileIsRejected() {
+        InputStream in = new ByteArrayInputStream("not an index".getBytes());
+        assertThrows(IOException.class, () -> IndexArtifact.read(in));
+    }
+
+    @Test
+    void testToEmbeddingStore() {
+        EmbeddingStore<TextSegment> store = createArtifact().toEmbeddingStore();
+
+        var matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{0f, 1f, 0f}))
+                .maxResults(1)
+                .build()).matches();
+
+        assertEquals(1, matches.size());
+        assertEquals("b", matches.get(0).embeddingId());
+    }
+}
@@ -0,0 +1,96 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.List;
+import java.util.Set;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataIndexTest {
+
+    private static MetadataIndex index() {
+        MetadataIndex index = new MetadataIndex(Set.of("source", "components", "year"), Set.of("components"));
+        index.add(0, new Metadata().put("source", "components.txt").put("components", "PUMP-001,VALVE-001").put("year", 2020));
+        index.add(1, new Metadata().put("source", "knowledge.txt").put("components", "TANK-A").put("year", 2022));
+        index.add(2, new Metadata().put("source", "knowledge.txt").put("components", "PUMP-001, TANK-A").put("year", 2024));
+        index.add(3, new Metadata().put("source", "components.txt").put("note", "spare"));
+        return index;
+    }
+
+    private static List<Integer> ordinals(RoaringBitmap bitmap) {
+        return bitmap.stream().boxed().toList();
+    }
+
+    @Test
+    void testEqualityOnMultiValuedKeyMatchesAnyElement() {
+        MetadataIndex.Plan plan = index().compile(metadataKey("components").isEqualTo("TANK-A"));
+
+        assertEquals(List.of(1, 2), ordinals(plan.candidates()));
+        assertNull(plan.residual());
+    }
+
+    @Test
+    void testLogicalOperatorsBecomeBitsetOperations() {
+        MetadataIndex index = index();
+
+        assertEquals(List.of(2), ordinals(index.compile(
+                metadataKey("source").isEqualTo("knowledge.txt").and(metadataKey("components").isIn("PUMP-001"))).candidates()));
+        assertEquals(List.of(0, 1, 2), ordinals(index.compile(
+                metadataKey("source").isEqualTo("knowledge.txt").or(metadataKey("components").isEqualTo("VALVE-001"))).candidates()));
+        assertEquals(List.of(0, 3), ordinals(index.compile(
+                Filter.not(metadataKey("source").isEqualTo("knowledge.txt"))).candidates()));
+        assertEquals(List.of(1, 2), ordinals(index.compile(metadataKey("year").isGreaterThan(2021)).candidates()));
+    }
+
+    @Test
+    void testNumericEqualityIgnoresBoxedType() {
+        assertEquals(List.of(1), ordinals(index().compile(metadataKey("year").isEqualTo(2022L)).candidates()));
+    }
+
+    @Test
+    void testUnindexedKeysAreLeftAsResidual() {
+        Filter unindexed = metadataKey("note").isEqualTo("spare");
+        MetadataIndex.Plan plan = index().compile(metadataKey("source").isEqualTo("components.txt").and(unindexed));
+
+        assertEquals(List.of(0, 3), ordinals(plan.candidates()));
+        assertEquals(unindexed, plan.residual());
+
+        Filter or = metadataKey("source").isEqualTo("knowledge.txt").or(unindexed);
+        MetadataIndex.Plan orPlan = index().compile(or);
+        assertNull(orPlan.candidates());
+        assertEquals(or, orPlan.residual());
+    }
+
+    @Test
+    void testResidualMatchesMultiValuedKeysElementwise() {
+        Metadata tankAndPump = new Metadata().put("components", "PUMP-001, TANK-A");
+        MetadataIndex index = index();
+
+        Filter or = index.compile(metadataKey("components").isEqualTo("TANK-A").or(metadataKey("note").isEqualTo("spare"))).residual();
+        assertTrue(or.test(tankAndPump));
+        assertFalse(or.test(new Metadata().put("components", "PUMP-001")));
+
+        Filter notEqual = index.compile(metadataKey("components").isNotEqualTo("PUMP-001").or(metadataKey("note").isEqualTo("spare"))).residual();
+        assertFalse(notEqual.test(tankAndPump));
+        assertTrue(notEqual.test(new Metadata().put("components", "TANK-A")));
+        assertTrue(notEqual.test(new Metadata()));
+
+        Filter not = index.compile(Filter.not(metadataKey("components").isIn("TANK-A").and(metadataKey("note").isEqualTo("spare")))).residual();
+        assertFalse(not.test(new Metadata().put("components", "PUMP-001,TANK-A").put("note", "spare")));
+        assertTrue(not.test(tankAndPump));
+    }
+
+    @Test
+    void testRemovedOrdinalsAreNeverCandidates() {
+        MetadataIndex index = index();
+        index.remove(2);
+
+        assertEquals(List.of(0), ordinals(index.compile(metadataKey("components").isEqualTo("PUMP-001")).candidates()));
+        assertEquals(List.of(0, 3), ordinals(index.compile(metadataKey("source").isNotEqualTo("knowledge.txt")).candidates()));
+    }
+}
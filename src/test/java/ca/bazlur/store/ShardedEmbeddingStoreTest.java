@@ -0,0 +1,235 @@
+package ca.bazlur.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedEmbeddingStoreTest {
+
+    private static final int DIMENSION = 16;
+
+    private static Embedding randomEmbedding(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return Embedding.from(vector);
+    }
+
+    private static List<Embedding> populate(ShardedEmbeddingStore store, int count) {
+        Random random = new Random(42);
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            embeddings.add(randomEmbedding(random));
+            segments.add(TextSegment.from("segment " + i, Metadata.from("parity", i % 2 == 0 ? "even" : "odd")));
+            ids.add("id-" + i);
+        }
+        store.addAll(ids, embeddings, segments);
+        return embeddings;
+    }
+
+    private static List<String> bruteForce(List<Embedding> embeddings, Embedding query, int k) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < embeddings.size(); i++) {
+            indexes.add(i);
+        }
+        return indexes.stream()
+                .sorted(Comparator.comparingDouble((Integer i) -> CosineSimilarity.between(embeddings.get(i), query)).reversed())
+                .limit(k)
+                .map(i -> "id-" + i)
+                .toList();
+    }
+
+    @Test
+    void testSequentialAndParallelSearchMatchBruteForce() {
+        ShardedEmbeddingStore sequential = new ShardedEmbeddingStore(4, Integer.MAX_VALUE);
+        ShardedEmbeddingStore parallel = new ShardedEmbeddingStore(4, 0);
+        List<Embedding> embeddings = populate(sequential, 1_000);
+        populate(parallel, 1_000);
+
+        Embedding query = randomEmbedding(new Random(7));
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(10)
+                .build();
+
+        List<String> expected = bruteForce(embeddings, query, 10);
+        assertEquals(expected, sequential.search(request).matches().stream().map(EmbeddingMatch::embeddingId).toList());
+        assertEquals(expected, parallel.search(request).matches().stream().map(EmbeddingMatch::embeddingId).toList());
+    }
+
+    @Test
+    void testScoresAreRelevanceScores() {
+        ShardedEmbeddingStore store = new ShardedEmbeddingStore(2, 0);
+        store.add("a", Embedding.from(new float[]{1f, 0f}));
+        store.add("b", Embedding.from(new float[]{0f, 1f}));
+
+        List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{2f, 0f}))
+                .maxResults(2)
+                .minScore(0.6)
+                .build()).matches();
+
+        assertEquals(1, matches.size());
+        assertEquals("a", matches.get(0).embeddingId());
+        assertEquals(RelevanceScore.fromCosineSimilarity(1.0), matches.get(0).score(), 1e-6);
+    }
+
+    @Test
+    void testFilterIsApplied() {
+        ShardedEmbeddingStore store = new ShardedEmbeddingStore(3, 0);
+        populate(store, 100);
+
+        List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(randomEmbedding(new Random(3)))
+                .maxResults(20)
+                .filter(metadataKey("parity").isEqualTo("odd"))
+                .build()).matches();
+
+        assertEquals(20, matches.size());
+        assertTrue(matches.stream().allMatch(m -> "odd".equals(m.embedded().metadata().getString("parity"))));
+    }
+
+    @Test
+    void testIndexedFilterMatchesUnindexedFilter() {
+        MetadataIndex index = new MetadataIndex(Set.of("parity"), Set.of());
+        ShardedEmbeddingStore unindexed = new ShardedEmbeddingStore(4, Integer.MAX_VALUE);
+        ShardedEmbeddingStore sequential = new ShardedEmbeddingStore(4, Integer.MAX_VALUE, index);
+        ShardedEmbeddingStore parallel = new ShardedEmbeddingStore(4, 0, new MetadataIndex(Set.of("parity"), Set.of()));
+        populate(unindexed, 1_000);
+        populate(sequential, 1_000);
+        populate(parallel, 1_000);
+        unindexed.remove("id-1");
+        sequential.remove("id-1");
+        parallel.remove("id-1");
+
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(randomEmbedding(new Random(11)))
+                .maxResults(15)
+                .filter(metadataKey("parity").isEqualTo("odd").and(metadataKey("missing").isNotEqualTo("x")))
+                .build();
+
+        List<String> expected = unindexed.search(request).matches().stream().map(EmbeddingMatch::embeddingId).toList();
+        assertEquals(15, expected.size());
+        assertFalse(expected.contains("id-1"));
+        assertEquals(expected, sequential.search(request).matches().stream().map(EmbeddingMatch::embeddingId).toList());
+        assertEquals(expected, parallel.search(request).matches().stream().map(EmbeddingMatch::embeddingId).toList());
+    }
+
+    @Test
+    void testCompressedSegmentsMatchHeapSegments() {
+        ShardedEmbeddingStore onHeap = new ShardedEmbeddingStore(4, 0);
+        ShardedEmbeddingStore compressed = new ShardedEmbeddingStore(4, 0, MetadataIndex.none(),
+                new CompressedSegmentStore(512, 2));
+        populate(onHeap, 1_000);
+        populate(compressed, 1_000);
+        onHeap.removeAll(metadataKey("parity").isEqualTo("even"));
+        compressed.removeAll(metadataKey("parity").isEqualTo("even"));
+        compressed.compact();
+
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(randomEmbedding(new Random(5)))
+                .maxResults(10)
+                .filter(metadataKey("parity").isNotEqualTo("even"))
+                .build();
+
+        List<EmbeddingMatch<TextSegment>> expected = onHeap.search(request).matches();
+        List<EmbeddingMatch<TextSegment>> actual = compressed.search(request).matches();
+        assertEquals(10, actual.size());
+        assertEquals(expected.stream().map(EmbeddingMatch::embeddingId).toList(),
+                actual.stream().map(EmbeddingMatch::embeddingId).toList());
+        assertEquals(expected.stream().map(EmbeddingMatch::embedded).toList(),
+                actual.stream().map(EmbeddingMatch::embedded).toList());
+    }
+
+    @Test
+    void testRemoveAndCompact() {
+        ShardedEmbeddingStore store = new ShardedEmbeddingStore(2, 0);
+        List<Embedding> embeddings = populate(store, 10);
+
+        store.remove("id-3");
+        store.removeAll(metadataKey("parity").isEqualTo("even"));
+        assertEquals(4, store.size());
+
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(embeddings.get(3))
+                .maxResults(10)
+                .build();
+        List<String> before = store.search(request).matches().stream().map(EmbeddingMatch::embeddingId).toList();
+        assertFalse(before.contains("id-3"));
+
+        store.compact();
+        assertEquals(4, store.size());
+        assertEquals(List.of("id-1", "id-5", "id-7", "id-9"),
+                store.entries().stream().map(IndexArtifact.Entry::id).toList());
+        assertEquals(before, store.search(request).matches().stream().map(EmbeddingMatch::embeddingId).toList());
+    }
+
+    @Test
+    void testRemovalByFilterMatchesLikeSearch() {
+        ShardedEmbeddingStore store = new ShardedEmbeddingStore(2, 0,
+                new MetadataIndex(Set.of("components"), Set.of("components")));
+        Random random = new Random(7);
+        String[] components = {"PUMP-001,VALVE-001", "TANK-A", "PUMP-001, TANK-A", "VALVE-001"};
+        for (int i = 0; i < components.length; i++) {
+            store.addAll(List.of("id-" + i), List.of(randomEmbedding(random)),
+                    List.of(TextSegment.from("segment " + i, new Metadata().put("components", components[i]).put("line", i))));
+        }
+
+        store.removeAll(metadataKey("components").isEqualTo("PUMP-001"));
+        assertEquals(List.of("id-1", "id-3"), store.entries().stream().map(IndexArtifact.Entry::id).toList());
+
+        // An Or with a condition the index cannot answer is tested per entry.
+        store.removeAll(metadataKey("components").isIn("TANK-A").or(metadataKey("line").isEqualTo(3)));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testViewKeepsTheEntriesItPinned() {
+        ShardedEmbeddingStore store = new ShardedEmbeddingStore(2, 0, MetadataIndex.none(),
+                new CompressedSegmentStore(512, 2));
+        populate(store, 600);
+        store.remove("id-0");
+
+        List<IndexArtifact.Entry> entries = new ArrayList<>();
+        try (ShardedEmbeddingStore.View view = store.view()) {
+            store.removeAll(metadataKey("parity").isEqualTo("odd"));
+            store.add("id-600", randomEmbedding(new Random(1)));
+            view.entries().forEachRemaining(entries::add);
+
+            assertEquals(599, view.size());
+            assertEquals(DIMENSION, view.dimension());
+        }
+
+        assertEquals(599, entries.size());
+        assertEquals("id-1", entries.get(0).id());
+        assertEquals("segment 599", entries.get(598).segment().text());
+        assertEquals(300, store.size());
+        store.compact();
+        assertEquals(List.of("id-2", "id-4"), store.entries().stream().limit(2).map(IndexArtifact.Entry::id).toList());
+    }
+
+    @Test
+    void testDimensionMismatchIsRejected() {
+        ShardedEmbeddingStore store = new ShardedEmbeddingStore(2, 0);
+        store.add(Embedding.from(new float[]{1f, 0f}));
+
+        assertThrows(IllegalArgumentException.class, () -> store.add(Embedding.from(new float[]{1f, 0f, 0f})));
+    }
+}
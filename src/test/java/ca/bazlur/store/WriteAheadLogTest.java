@@ -0,0 +1,114 @@
+package ca.bazlur.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    private static final IndexFingerprint FINGERPRINT =
+            new IndexFingerprint("OLLAMA", "nomic-embed-text", 300, 30, 0.9, 65_536);
+
+    private static List<String> replay(Path file, IndexFingerprint fingerprint, List<WriteAheadLog.Replay> outcome)
+            throws IOException {
+        List<String> records = new ArrayList<>();
+        Optional<WriteAheadLog.Replay> replay = WriteAheadLog.replay(file, fingerprint,
+                (type, payload) -> records.add(type + ":" + new String(payload.readAllBytes(), StandardCharsets.UTF_8)));
+        replay.ifPresent(outcome::add);
+        return replay.isPresent() ? records : null;
+    }
+
+    @Test
+    void testRecordsAreReplayedInOrder(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("wal-1.log");
+        try (WriteAheadLog log = WriteAheadLog.create(file, FINGERPRINT)) {
+            assertFalse(log.hasRecords());
+            log.append((byte) 1, "first".getBytes(StandardCharsets.UTF_8));
+            log.sync(log.append((byte) 2, "second".getBytes(StandardCharsets.UTF_8)));
+            assertTrue(log.hasRecords());
+        }
+
+        List<WriteAheadLog.Replay> outcome = new ArrayList<>();
+        assertEquals(List.of("1:first", "2:second"), replay(file, FINGERPRINT, outcome));
+        assertEquals(2, outcome.get(0).records());
+        assertFalse(outcome.get(0).torn());
+        assertEquals(Files.size(file), outcome.get(0).validLength());
+    }
+
+    @Test
+    void testTornTailIsTruncatedOnReopen(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("wal-1.log");
+        try (WriteAheadLog log = WriteAheadLog.create(file, FINGERPRINT)) {
+            log.append((byte) 1, "kept".getBytes(StandardCharsets.UTF_8));
+        }
+        long intact = Files.size(file);
+        // A record whose header promises more bytes than were written before the crash.
+        Files.write(file, new byte[]{0, 0, 0, 42, 1, 2, 3, 4, 1, 'x'}, StandardOpenOption.APPEND);
+
+        List<WriteAheadLog.Replay> outcome = new ArrayList<>();
+        assertEquals(List.of("1:kept"), replay(file, FINGERPRINT, outcome));
+        WriteAheadLog.Replay replay = outcome.get(0);
+        assertTrue(replay.torn());
+        assertEquals(intact, replay.validLength());
+
+        try (WriteAheadLog log = WriteAheadLog.reopen(file, replay)) {
+            assertEquals(intact, Files.size(file));
+            log.append((byte) 2, "after".getBytes(StandardCharsets.UTF_8));
+        }
+        outcome.clear();
+        assertEquals(List.of("1:kept", "2:after"), replay(file, FINGERPRINT, outcome));
+        assertFalse(outcome.get(0).torn());
+    }
+
+    @Test
+    void testCorruptedRecordEndsTheLog(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("wal-1.log");
+        try (WriteAheadLog log = WriteAheadLog.create(file, FINGERPRINT)) {
+            log.append((byte) 1, "good".getBytes(StandardCharsets.UTF_8));
+            log.append((byte) 1, "flipped".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x01;
+        Files.write(file, bytes);
+
+        List<WriteAheadLog.Replay> outcome = new ArrayList<>();
+        assertEquals(List.of("1:good"), replay(file, FINGERPRINT, outcome));
+        assertTrue(outcome.get(0).torn());
+    }
+
+    @Test
+    void testSyncCoversEveryRecordAppendedBeforeIt(@TempDir Path dir) throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.create(dir.resolve("wal-1.log"), FINGERPRINT)) {
+            long first = log.append((byte) 1, new byte[]{1});
+            log.append((byte) 1, new byte[]{2});
+            long third = log.append((byte) 1, new byte[]{3});
+
+            log.sync(third);
+            log.sync(first);
+            log.sync(third);
+
+            assertEquals(1, log.syncCount());
+        }
+    }
+
+    @Test
+    void testLogOfAnotherFingerprintIsNotReplayed(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("wal-1.log");
+        try (WriteAheadLog log = WriteAheadLog.create(file, FINGERPRINT)) {
+            log.append((byte) 1, "stale".getBytes(StandardCharsets.UTF_8));
+        }
+
+        IndexFingerprint other = new IndexFingerprint("OPENAI", "text-embedding-3-small", 300, 30, 0.9, 65_536);
+        assertNull(replay(file, other, new ArrayList<>()));
+    }
+}
@@ -0,0 +1,144 @@
+package ca.bazlur.store.remote;
+
+import ca.bazlur.store.ShardedEmbeddingStore;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScatterGatherEmbeddingStoreTest {
+
+    private final List<ShardServer> servers = new ArrayList<>();
+
+    @BeforeEach
+    void startShards() throws Exception {
+        servers.add(startShard("a", new float[]{1f, 0f, 0f}, "b", new float[]{0.8f, 0.6f, 0f}));
+        servers.add(startShard("c", new float[]{0.9f, 0.1f, 0f}, "d", new float[]{0f, 0f, 1f}));
+    }
+
+    @AfterEach
+    void stopShards() {
+        servers.forEach(ShardServer::close);
+    }
+
+    private static ShardServer startShard(String id1, float[] v1, String id2, float[] v2) throws Exception {
+        ShardedEmbeddingStore store = new ShardedEmbeddingStore(1, 0);
+        store.addAll(List.of(id1, id2), List.of(Embedding.from(v1), Embedding.from(v2)),
+                List.of(TextSegment.from("text " + id1, Metadata.from("source", "components.txt")),
+                        TextSegment.from("text " + id2)));
+        ShardServer server = new ShardServer(store, 0);
+        server.start();
+        return server;
+    }
+
+    private List<String> shardUrls() {
+        return servers.stream().map(server -> "http://localhost:" + server.getPort()).toList();
+    }
+
+    private static EmbeddingSearchRequest request(int maxResults) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{1f, 0f, 0f}))
+                .maxResults(maxResults)
+                .build();
+    }
+
+    @Test
+    void testMergesTopKAcrossShards() {
+        ScatterGatherEmbeddingStore store = ScatterGatherEmbeddingStore.overHttp(shardUrls(), Duration.ofSeconds(5));
+
+        List<EmbeddingMatch<TextSegment>> matches = store.search(request(3)).matches();
+
+        assertEquals(List.of("a", "c", "b"), matches.stream().map(EmbeddingMatch::embeddingId).toList());
+        assertEquals("text a", matches.get(0).embedded().text());
+        assertEquals("components.txt", matches.get(0).embedded().metadata().getString("source"));
+    }
+
+    @Test
+    void testFiltersAreAppliedOnTheShards() {
+        ScatterGatherEmbeddingStore store = ScatterGatherEmbeddingStore.overHttp(shardUrls(), Duration.ofSeconds(5));
+
+        List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{1f, 0f, 0f}))
+                .maxResults(4)
+                .filter(metadataKey("source").isIn("components.txt", "knowledge.txt")
+                        .and(metadataKey("source").isNotEqualTo("knowledge.txt")))
+                .build()).matches();
+
+        assertEquals(List.of("a", "c"), matches.stream().map(EmbeddingMatch::embeddingId).toList());
+    }
+
+    @Test
+    void testSlowAndFailingShardsYieldPartialResults() {
+        List<ShardClient> clients = new ArrayList<>();
+        clients.add(new HttpShardClient(shardUrls().get(0), Duration.ofSeconds(5)));
+        clients.add(new ShardClient() {
+            @Override
+            public String name() {
+                return "stalled";
+            }
+
+            @Override
+            public CompletableFuture<List<EmbeddingMatch<TextSegment>>> search(EmbeddingSearchRequest request) {
+                return new CompletableFuture<>();
+            }
+        });
+        clients.add(new HttpShardClient("http://localhost:1", Duration.ofSeconds(5)));
+        ScatterGatherEmbeddingStore store = new ScatterGatherEmbeddingStore(clients, Duration.ofMillis(300));
+
+        long start = System.nanoTime();
+        List<EmbeddingMatch<TextSegment>> matches = store.search(request(3)).matches();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(List.of("a", "b"), matches.stream().map(EmbeddingMatch::embeddingId).toList());
+        assertTrue(elapsedMillis < 3_000, "search should not wait for the stalled shard");
+    }
+
+    @Test
+    void testMalformedRequestsAndShardFailuresAreTold() throws Exception {
+        ShardServer failing = new ShardServer(new InMemoryEmbeddingStore<>() {
+            @Override
+            public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+                throw new IllegalStateException("index unavailable");
+            }
+        }, 0);
+        failing.start();
+        servers.add(failing);
+        HttpClient client = HttpClient.newHttpClient();
+
+        assertEquals(400, post(client, shardUrls().get(0), new byte[]{1, 2, 3}));
+        assertEquals(500, post(client, "http://localhost:" + failing.getPort(), ShardProtocol.encodeRequest(request(3))));
+        assertEquals(200, post(client, shardUrls().get(0), ShardProtocol.encodeRequest(request(3))));
+    }
+
+    private static int post(HttpClient client, String url, byte[] body) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url + ShardProtocol.SEARCH_PATH))
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build(), HttpResponse.BodyHandlers.discarding())
+                .statusCode();
+    }
+
+    @Test
+    void testStoreIsReadOnly() {
+        ScatterGatherEmbeddingStore store = ScatterGatherEmbeddingStore.overHttp(shardUrls(), Duration.ofSeconds(1));
+
+        assertThrows(UnsupportedOperationException.class, () -> store.add(Embedding.from(new float[]{1f, 0f, 0f})));
+    }
+}